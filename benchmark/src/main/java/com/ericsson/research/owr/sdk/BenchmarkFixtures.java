@@ -0,0 +1,208 @@
+/*
+ * Copyright (c) 2015, Ericsson AB.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package com.ericsson.research.owr.sdk;
+
+/**
+ * Descriptions captured from real browsers, used as input for the benchmarks.
+ */
+final class BenchmarkFixtures {
+    private BenchmarkFixtures() {}
+
+    /**
+     * A JSEP offer from Chrome with audio and video.
+     */
+    static final String CHROME_OFFER = "{\"sdp\":\"v=0\\r\\n" +
+            "o=- 7407423127539558064 2 IN IP4 127.0.0.1\\r\\n" +
+            "s=-\\r\\n" +
+            "t=0 0\\r\\n" +
+            "a=group:BUNDLE audio video\\r\\n" +
+            "a=msid-semantic: WMS KJgfgjRFHmkuBHKhgoIHPkGpBRzErIAU4qQ3\\r\\n" +
+            "m=audio 50238 RTP/SAVPF 111 103 104 9 0 8 106 105 13 126\\r\\n" +
+            "c=IN IP4 129.192.20.149\\r\\n" +
+            "a=rtcp:50238 IN IP4 129.192.20.149\\r\\n" +
+            "a=candidate:4000241536 1 udp 2122260223 129.192.20.149 50238 typ host generation 0\\r\\n" +
+            "a=candidate:4000241536 2 udp 2122260223 129.192.20.149 50238 typ host generation 0\\r\\n" +
+            "a=candidate:3039919289 1 udp 2122194687 147.214.153.229 49997 typ host generation 0\\r\\n" +
+            "a=candidate:3039919289 2 udp 2122194687 147.214.153.229 49997 typ host generation 0\\r\\n" +
+            "a=ice-ufrag:eNiJLDtGPTtx8J8b\\r\\n" +
+            "a=ice-pwd:7f1lY4bUNTcw/DxFk4a0LY3j\\r\\n" +
+            "a=ice-options:google-ice\\r\\n" +
+            "a=fingerprint:sha-256 A8:B1:8B:70:89:B2:56:10:98:87:4F:A2:4A:0D:FE:76:C6:5C:8D:9D:4F:0B:12:4C:DB:B0:FC:08:8E:FF:B5:43\\r\\n" +
+            "a=setup:actpass\\r\\n" +
+            "a=mid:audio\\r\\n" +
+            "a=extmap:1 urn:ietf:params:rtp-hdrext:ssrc-audio-level\\r\\n" +
+            "a=extmap:3 http://www.webrtc.org/experiments/rtp-hdrext/abs-send-time\\r\\n" +
+            "a=sendrecv\\r\\n" +
+            "a=rtcp-mux\\r\\n" +
+            "a=rtpmap:111 opus/48000/2\\r\\n" +
+            "a=fmtp:111 minptime=10; useinbandfec=1\\r\\n" +
+            "a=rtpmap:103 ISAC/16000\\r\\n" +
+            "a=rtpmap:104 ISAC/32000\\r\\n" +
+            "a=rtpmap:9 G722/8000\\r\\n" +
+            "a=rtpmap:0 PCMU/8000\\r\\n" +
+            "a=rtpmap:8 PCMA/8000\\r\\n" +
+            "a=rtpmap:106 CN/32000\\r\\n" +
+            "a=rtpmap:105 CN/16000\\r\\n" +
+            "a=rtpmap:13 CN/8000\\r\\n" +
+            "a=rtpmap:126 telephone-event/8000\\r\\n" +
+            "a=maxptime:60\\r\\n" +
+            "a=ssrc:669595811 cname:pYPXnl/14H8HkFDP\\r\\n" +
+            "a=ssrc:669595811 msid:KJgfgjRFHmkuBHKhgoIHPkGpBRzErIAU4qQ3 0afb7ebc-24ae-489b-95af-8fc45217e81e\\r\\n" +
+            "a=ssrc:669595811 mslabel:KJgfgjRFHmkuBHKhgoIHPkGpBRzErIAU4qQ3\\r\\n" +
+            "a=ssrc:669595811 label:0afb7ebc-24ae-489b-95af-8fc45217e81e\\r\\n" +
+            "m=video 50238 RTP/SAVPF 100 116 117 96\\r\\n" +
+            "c=IN IP4 129.192.20.149\\r\\n" +
+            "a=rtcp:50238 IN IP4 129.192.20.149\\r\\n" +
+            "a=candidate:4000241536 1 udp 2122260223 129.192.20.149 50238 typ host generation 0\\r\\n" +
+            "a=candidate:4000241536 2 udp 2122260223 129.192.20.149 50238 typ host generation 0\\r\\n" +
+            "a=candidate:3039919289 1 udp 2122194687 147.214.153.229 49997 typ host generation 0\\r\\n" +
+            "a=candidate:3039919289 2 udp 2122194687 147.214.153.229 49997 typ host generation 0\\r\\n" +
+            "a=ice-ufrag:eNiJLDtGPTtx8J8b\\r\\n" +
+            "a=ice-pwd:7f1lY4bUNTcw/DxFk4a0LY3j\\r\\n" +
+            "a=ice-options:google-ice\\r\\n" +
+            "a=fingerprint:sha-256 A8:B1:8B:70:89:B2:56:10:98:87:4F:A2:4A:0D:FE:76:C6:5C:8D:9D:4F:0B:12:4C:DB:B0:FC:08:8E:FF:B5:43\\r\\n" +
+            "a=setup:actpass\\r\\n" +
+            "a=mid:video\\r\\n" +
+            "a=extmap:2 urn:ietf:params:rtp-hdrext:toffset\\r\\n" +
+            "a=extmap:3 http://www.webrtc.org/experiments/rtp-hdrext/abs-send-time\\r\\n" +
+            "a=sendrecv\\r\\n" +
+            "a=rtcp-mux\\r\\n" +
+            "a=rtpmap:100 VP8/90000\\r\\n" +
+            "a=rtcp-fb:100 ccm fir\\r\\n" +
+            "a=rtcp-fb:100 nack\\r\\n" +
+            "a=rtcp-fb:100 nack pli\\r\\n" +
+            "a=rtcp-fb:100 goog-remb\\r\\n" +
+            "a=rtpmap:116 red/90000\\r\\n" +
+            "a=rtpmap:117 ulpfec/90000\\r\\n" +
+            "a=rtpmap:96 rtx/90000\\r\\n" +
+            "a=fmtp:96 apt=100\\r\\n" +
+            "a=ssrc-group:FID 3815039976 1660953852\\r\\n" +
+            "a=ssrc:3815039976 cname:pYPXnl/14H8HkFDP\\r\\n" +
+            "a=ssrc:3815039976 msid:KJgfgjRFHmkuBHKhgoIHPkGpBRzErIAU4qQ3 304afecb-f5fd-42a1-b9d3-80b61e28794\\r\\n" +
+            "a=ssrc:3815039976 mslabel:KJgfgjRFHmkuBHKhgoIHPkGpBRzErIAU4qQ3\\r\\n" +
+            "a=ssrc:3815039976 label:304afecb-f5fd-42a1-b9d3-080b61e28794\\r\\n" +
+            "a=ssrc:1660953852 cname:pYPXnl/14H8HkFDP\\r\\n" +
+            "a=ssrc:1660953852 msid:KJgfgjRFHmkuBHKhgoIHPkGpBRzErIAU4qQ3 304afecb-f5fd-42a1-b9d3-80b61e28794\\r\\n" +
+            "a=ssrc:1660953852 mslabel:KJgfgjRFHmkuBHKhgoIHPkGpBRzErIAU4qQ3\\r\\n" +
+            "a=ssrc:1660953852 label:304afecb-f5fd-42a1-b9d3-080b61e28794\\r\\n" +
+            "\",\"type\":\"offer\"}";
+
+
+    /**
+     * An SDP offer from Firefox with audio, video and a data channel.
+     */
+    static final String FIREFOX_SDP = "" +
+            "v=0\r\n" +
+            "o=Mozilla-SIPUA-35.0.1 1021 0 IN IP4 0.0.0.0\r\n" +
+            "s=SIP Call\r\n" +
+            "t=0 0\r\n" +
+            "a=ice-ufrag:90293b3d\r\n" +
+            "a=ice-pwd:ab4334b9f3efb523ba45c11ec3152350\r\n" +
+            "a=fingerprint:sha-256 6C:B4:AB:6C:86:7E:6C:C8:69:68:CE:53:A1:3E:36:D2:1D:5B:4E:CC:39:2E:C7:4D:3F:A8:04:B5:0E:EB:74:9D\r\n" +
+            "m=audio 9 RTP/SAVPF 109 9 0 8 101\r\n" +
+            "c=IN IP4 0.0.0.0\r\n" +
+            "a=rtpmap:109 opus/48000/2\r\n" +
+            "a=ptime:20\r\n" +
+            "a=rtpmap:9 G722/8000\r\n" +
+            "a=rtpmap:0 PCMU/8000\r\n" +
+            "a=rtpmap:8 PCMA/8000\r\n" +
+            "a=rtpmap:101 telephone-event/8000\r\n" +
+            "a=fmtp:101 0-15\r\n" +
+            "a=sendrecv\r\n" +
+            "a=extmap:1 urn:ietf:params:rtp-hdrext:ssrc-audio-level\r\n" +
+            "a=setup:actpass\r\n" +
+            "a=rtcp-mux\r\n" +
+            "a=candidate:0 1 UDP 2130379007 172.20.10.2 51830 typ host\r\n" +
+            "a=candidate:0 2 UDP 2130379006 172.20.10.2 59310 typ host\r\n" +
+            "a=candidate:1 1 UDP 1694236671 90.237.24.157 41535 typ srflx raddr 172.20.10.2 rport 51830\r\n" +
+            "a=candidate:0 1 UDP 2130379007 172.20.10.2 51830 typ host\r\n" +
+            "a=candidate:0 2 UDP 2130379006 172.20.10.2 59310 typ host\r\n" +
+            "a=candidate:1 1 UDP 1694236671 90.237.24.157 41535 typ srflx raddr 172.20.10.2 rport 51830\r\n" +
+            "a=candidate:1 2 UDP 1694236670 90.237.24.157 48703 typ srflx raddr 172.20.10.2 rport 59310\r\n" +
+            "a=candidate:3 1 UDP 100401151 192.36.158.14 64686 typ relay raddr 192.36.158.14 rport 64686\r\n" +
+            "a=candidate:3 2 UDP 100401150 192.36.158.14 59208 typ relay raddr 192.36.158.14 rport 59208\r\n" +
+            "m=video 9 RTP/SAVPF 120 126 97\r\n" +
+            "c=IN IP4 0.0.0.0\r\n" +
+            "a=rtpmap:120 VP8/90000\r\n" +
+            "a=rtpmap:126 H264/90000\r\n" +
+            "a=fmtp:126 PROFILE=0;LEVEL=0;profile-level-id=42e01f;packetization-mode=1;level-asymmetry-allowed=1;parameter-add=1;usedtx=0;stereo=0;useinbandfec=0;cbr=0\r\n" +
+            "a=rtpmap:97 H264/90000\r\n" +
+            "a=fmtp:97 PROFILE=0;LEVEL=0;profile-level-id=42e01f;packetization-mode=0;level-asymmetry-allowed=1;parameter-add=1;usedtx=0;stereo=0;useinbandfec=0;cbr=0\r\n" +
+            "a=sendrecv\r\n" +
+            "a=rtcp-fb:120 nack\r\n" +
+            "a=rtcp-fb:120 nack pli\r\n" +
+            "a=rtcp-fb:120 ccm fir\r\n" +
+            "a=rtcp-fb:126 nack\r\n" +
+            "a=rtcp-fb:126 nack pli\r\n" +
+            "a=rtcp-fb:126 ccm fir\r\n" +
+            "a=rtcp-fb:97 nack\r\n" +
+            "a=rtcp-fb:97 nack pli\r\n" +
+            "a=rtcp-fb:97 ccm fir\r\n" +
+            "a=setup:actpass\r\n" +
+            "a=rtcp-mux\r\n" +
+            "a=candidate:0 1 UDP 2130379007 172.20.10.2 63183 typ host\r\n" +
+            "a=candidate:0 2 UDP 2130379006 172.20.10.2 62121 typ host\r\n" +
+            "a=candidate:0 1 UDP 2130379007 172.20.10.2 63183 typ host\r\n" +
+            "a=candidate:0 2 UDP 2130379006 172.20.10.2 62121 typ host\r\n" +
+            "a=candidate:1 1 UDP 1694236671 90.237.24.157 43849 typ srflx raddr 172.20.10.2 rport 63183\r\n" +
+            "a=candidate:1 2 UDP 1694236670 90.237.24.157 39502 typ srflx raddr 172.20.10.2 rport 62121\r\n" +
+            "a=candidate:3 1 UDP 100401151 192.36.158.14 56914 typ relay raddr 192.36.158.14 rport 56914\r\n" +
+            "a=candidate:3 2 UDP 100401150 192.36.158.14 54995 typ relay raddr 192.36.158.14 rport 54995\r\n" +
+            "m=application 9 DTLS/SCTP 5000\r\n" +
+            "c=IN IP4 0.0.0.0\r\n" +
+            "a=sctpmap:5000 webrtc-datachannel 256\r\n" +
+            "a=setup:actpass\r\n" +
+            "a=candidate:0 1 UDP 2130379007 172.20.10.2 51850 typ host\r\n" +
+            "a=candidate:0 2 UDP 2130379006 172.20.10.2 61466 typ host\r\n" +
+            "a=candidate:0 1 UDP 2130379007 172.20.10.2 51850 typ host\r\n" +
+            "a=candidate:0 2 UDP 2130379006 172.20.10.2 61466 typ host\r\n" +
+            "a=candidate:1 1 UDP 1694236671 90.237.24.157 35856 typ srflx raddr 172.20.10.2 rport 51850\r\n" +
+            "a=candidate:1 2 UDP 1694236670 90.237.24.157 32790 typ srflx raddr 172.20.10.2 rport 61466\r\n" +
+            "a=candidate:3 1 UDP 100401151 192.36.158.14 55300 typ relay raddr 192.36.158.14 rport 55300\r\n" +
+            "a=candidate:3 2 UDP 100401150 192.36.158.14 61720 typ relay raddr 192.36.158.14 rport 61720\r\n";
+
+
+    static final String[] CANDIDATE_ATTRIBUTES = new String[] {
+            "candidate:4000241536 1 udp 2122260223 129.192.20.149 50238 typ host generation 0",
+            "candidate:1 2 UDP 1694236670 192.36.158.14 55590 typ srflx raddr 10.0.2.15 rport 55590",
+            "candidate:2 1 TCP 1019216383 10.0.2.15 9 typ host tcptype active",
+            "candidate:3 1 udp 2122129151 2001:db8::1:2:3 50239 typ host generation 0",
+            "candidate:4 1 UDP 92217087 192.36.158.14 61422 typ relay raddr 192.36.158.14 rport 55590",
+    };
+
+    static final String PEM = "-----BEGIN CERTIFICATE-----\n" +
+            "MIIBmTCCAQKgAwIBAgIEf/zbODANBgkqhkiG9w0BAQsFADARMQ8wDQYDVQQDDAZX\n" +
+            "ZWJSVEMwHhcNMTUwMzIzMTA1NzQxWhcNMTUwNDIyMTA1NzQxWjARMQ8wDQYDVQQD\n" +
+            "DAZXZWJSVEMwgZ8wDQYJKoZIhvcNAQEBBQADgY0AMIGJAoGBAMJ4CHcE8NNCWIMO\n" +
+            "uWs1wF79LJ46kfLZzNzCWaGzc0PdCo8pdjfS1cWvnleXdNaIg8qpLqW9C71Jx3A5\n" +
+            "gx2HUCDopX/TOslhVk5OnjSknTPR5qq3JhF/s+/qxFkd0y3sbAVUTocQ0uiAb+eK\n" +
+            "zzY8x8rvw6ge5A7/hCA2i3fXdaHxAgMBAAEwDQYJKoZIhvcNAQELBQADgYEApknp\n" +
+            "WGIXxUMaTQq/ULCJhPXzB+a7eBZtOL8xbe5OiHfD+lJxvifh9pZXH6n6yw+IkcxY\n" +
+            "IHiheIjRdcEngg1K7RAZf2dg2utWPj6U3KrZ6vlqU1EYsb/26zV4DZUjtfS5iQJL\n" +
+            "HGZ/v03ZrrOkJCrWC1ISmDDJcONRiZcpMV2V3mI=\n" +
+            "-----END CERTIFICATE-----";
+
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2015, Ericsson AB.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package com.ericsson.research.owr.sdk;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Benchmarks candidate conversion, each invocation converts all candidates in BenchmarkFixtures.CANDIDATE_ATTRIBUTES,
+ * or all candidates in a storm of STORM_SIZE candidates with Chrome style extension attributes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CandidateBenchmark {
+    private static final int STORM_SIZE = 500;
+
+    private String[] mAttributes;
+    private String[] mStormAttributes;
+    private RtcCandidate[] mCandidates;
+    private JSONObject[] mJsepCandidates;
+
+    @Setup
+    public void setup() throws JSONException {
+        mAttributes = BenchmarkFixtures.CANDIDATE_ATTRIBUTES;
+        mCandidates = new RtcCandidate[mAttributes.length];
+        mJsepCandidates = new JSONObject[mAttributes.length];
+        for (int i = 0; i < mAttributes.length; i++) {
+            mCandidates[i] = RtcCandidates.fromSdpAttribute(mAttributes[i]);
+            JSONObject json = new JSONObject();
+            json.put("candidate", mAttributes[i]);
+            json.put("sdpMid", "audio");
+            json.put("sdpMLineIndex", 0);
+            mJsepCandidates[i] = json;
+        }
+        mStormAttributes = new String[STORM_SIZE];
+        for (int i = 0; i < STORM_SIZE; i++) {
+            mStormAttributes[i] = "candidate:" + (842163049 + i) + " " + (i % 2 + 1) + " udp " + (1677729535 - i) +
+                    " 90.237." + (i / 256) + "." + (i % 256) + " " + (30000 + i) + " typ srflx raddr 10.0.2.15 rport " +
+                    (50000 + i) + " generation 0 ufrag xM3B network-id 1 network-cost 10";
+        }
+    }
+
+    @Benchmark
+    public void fromSdpAttribute(Blackhole blackhole) {
+        for (String attribute : mAttributes) {
+            blackhole.consume(RtcCandidates.fromSdpAttribute(attribute));
+        }
+    }
+
+    @Benchmark
+    public void toSdpAttribute(Blackhole blackhole) {
+        for (RtcCandidate candidate : mCandidates) {
+            blackhole.consume(RtcCandidates.toSdpAttribute(candidate));
+        }
+    }
+
+    @Benchmark
+    public void fromJsep(Blackhole blackhole) {
+        for (JSONObject json : mJsepCandidates) {
+            blackhole.consume(RtcCandidates.fromJsep(json));
+        }
+    }
+
+    @Benchmark
+    public void fromSdpAttributeStorm(Blackhole blackhole) {
+        for (String attribute : mStormAttributes) {
+            blackhole.consume(RtcCandidates.fromSdpAttribute(attribute));
+        }
+    }
+
+    /**
+     * The regular expression based parser that fromSdpAttribute used to be, as a baseline.
+     */
+    @Benchmark
+    public void fromSdpAttributeStormRegex(Blackhole blackhole) {
+        for (String attribute : mStormAttributes) {
+            blackhole.consume(RegexCandidateParser.parse(attribute));
+        }
+    }
+
+    private static class RegexCandidateParser {
+        private static final Pattern sPattern = Pattern.compile("^" +
+                "(?:a=)?candidate:" +
+                "(\\d+) " + // foundation
+                "(1|2) " + // component
+                "(UDP|TCP) " + // transport
+                "([\\d\\.]*) " + // priority
+                "([\\d\\.a-f:]*) " + // address, ipv4 or ipv6
+                "(\\d*)" + // port
+                " typ (host|srflx|prflx|relay)" + // type
+                "(?: raddr ([\\d\\.a-f:]*) rport (\\d*))?" + // reflexive address and port
+                "(?: tcptype (active|passive|so))?" + // tcp type
+                ".*" + // ignore the rest
+                "(?:\\r\\n)?$"
+                , Pattern.CASE_INSENSITIVE
+        );
+
+        static RtcCandidate parse(String candidateAttribute) {
+            Matcher matcher = sPattern.matcher(candidateAttribute);
+            if (!matcher.matches()) {
+                return null;
+            }
+            RtcCandidate.ComponentType componentType = Integer.parseInt(matcher.group(2), 10) == 1 ?
+                    RtcCandidate.ComponentType.RTP : RtcCandidate.ComponentType.RTCP;
+            RtcCandidate.CandidateType candidateType;
+            switch (matcher.group(7).toLowerCase(Locale.ENGLISH)) {
+                case "host":
+                    candidateType = RtcCandidate.CandidateType.HOST;
+                    break;
+                case "srflx":
+                    candidateType = RtcCandidate.CandidateType.SERVER_REFLEXIVE;
+                    break;
+                case "prflx":
+                    candidateType = RtcCandidate.CandidateType.PEER_REFLEXIVE;
+                    break;
+                default:
+                    candidateType = RtcCandidate.CandidateType.RELAY;
+                    break;
+            }
+            RtcCandidate.TransportType transportType = RtcCandidate.TransportType.UDP;
+            if (!"udp".equals(matcher.group(3).toLowerCase(Locale.ENGLISH))) {
+                String tcpType = matcher.group(10);
+                transportType = tcpType == null ? RtcCandidate.TransportType.TCP_ACTIVE :
+                        RtcCandidate.TransportType.valueOf("TCP_" + tcpType.toUpperCase(Locale.ENGLISH));
+            }
+            String relatedAddress = matcher.group(8);
+            int relatedPort = relatedAddress == null ? -1 : Integer.parseInt(matcher.group(9), 10);
+            return new RtcCandidateImpl(matcher.group(1), componentType, transportType,
+                    Integer.parseInt(matcher.group(4), 10), matcher.group(5), Integer.parseInt(matcher.group(6), 10),
+                    candidateType, relatedAddress, relatedPort);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2015, Ericsson AB.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package com.ericsson.research.owr.sdk;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks conversion between SDP, the sdp.js JSON format, JSEP messages and session descriptions.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SdpBenchmark {
+    @Param({"chrome", "firefox"})
+    public String fixture;
+
+    private String mSdp;
+    private JSONObject mSdpJson;
+    private JSONObject mJsep;
+    private SessionDescription mSessionDescription;
+    private ByteBuffer mSdpBuffer;
+
+    @Setup
+    public void setup() throws JSONException, InvalidDescriptionException {
+        switch (fixture) {
+            case "chrome":
+                mJsep = new JSONObject(BenchmarkFixtures.CHROME_OFFER);
+                mSdp = mJsep.getString("sdp");
+                break;
+            case "firefox":
+                mSdp = BenchmarkFixtures.FIREFOX_SDP;
+                mJsep = new JSONObject();
+                mJsep.put("type", "offer");
+                mJsep.put("sdp", mSdp);
+                break;
+            default:
+                throw new IllegalArgumentException("unknown fixture: " + fixture);
+        }
+        mSdpJson = SdpProcessor.sdpToJson(mSdp);
+        mSessionDescription = SessionDescriptions.fromJsep(mJsep);
+        byte[] bytes = mSdp.getBytes(Charset.forName("UTF-8"));
+        mSdpBuffer = ByteBuffer.allocateDirect(bytes.length);
+        mSdpBuffer.put(bytes).flip();
+    }
+
+    @Benchmark
+    public JSONObject sdpToJson() throws InvalidDescriptionException {
+        return SdpProcessor.sdpToJson(mSdp);
+    }
+
+    @Benchmark
+    public String jsonToSdp() throws InvalidDescriptionException {
+        return SdpProcessor.jsonToSdp(mSdpJson);
+    }
+
+    @Benchmark
+    public SessionDescription fromJsep() throws InvalidDescriptionException {
+        return SessionDescriptions.fromJsep(mJsep);
+    }
+
+    @Benchmark
+    public SessionDescription fromSdp() throws InvalidDescriptionException {
+        return SessionDescriptions.fromSdp(SessionDescription.Type.OFFER, mSdp);
+    }
+
+    /**
+     * Measures parsing of SDP that is received as UTF-8 in a direct buffer, as it would be from a socket channel.
+     */
+    @Benchmark
+    public SessionDescription fromSdpBuffer() throws InvalidDescriptionException {
+        return SessionDescriptions.fromSdp(SessionDescription.Type.OFFER, mSdpBuffer.duplicate());
+    }
+
+    /**
+     * Measures toJsep for a description that has already been serialized once, which only copies the cached message.
+     */
+    @Benchmark
+    public JSONObject toJsep() {
+        return SessionDescriptions.toJsep(mSessionDescription);
+    }
+
+    @Benchmark
+    public JSONObject toJsepUncached() {
+        return SessionDescriptions.createJsep(mSessionDescription);
+    }
+
+    @Benchmark
+    public String toSdpUncached() {
+        return SdpGenerator.generate(mSessionDescription);
+    }
+}
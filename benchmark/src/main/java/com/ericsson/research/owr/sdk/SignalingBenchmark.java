@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2015, Ericsson AB.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package com.ericsson.research.owr.sdk;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares JSEP signaling messages with the binary encoding, for both session descriptions and candidates.
+ * The JSEP benchmarks include serializing the JSON to and from its wire format, and the message sizes are
+ * printed during setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SignalingBenchmark {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Param({"chrome", "firefox"})
+    public String fixture;
+
+    private SessionDescription mSessionDescription;
+    private byte[] mJsepMessage;
+    private byte[] mBinaryMessage;
+    private RtcCandidate[] mCandidates;
+    private byte[][] mJsepCandidateMessages;
+    private byte[][] mBinaryCandidateMessages;
+
+    @Setup
+    public void setup() throws JSONException, InvalidDescriptionException {
+        switch (fixture) {
+            case "chrome":
+                mSessionDescription = SessionDescriptions.fromJsep(new JSONObject(BenchmarkFixtures.CHROME_OFFER));
+                break;
+            case "firefox":
+                mSessionDescription = SessionDescriptions.fromSdp(SessionDescription.Type.OFFER, BenchmarkFixtures.FIREFOX_SDP);
+                break;
+            default:
+                throw new IllegalArgumentException("unknown fixture: " + fixture);
+        }
+        mJsepMessage = SessionDescriptions.createJsep(mSessionDescription).toString().getBytes(UTF_8);
+        mBinaryMessage = SessionDescriptions.toBinary(mSessionDescription);
+
+        String[] attributes = BenchmarkFixtures.CANDIDATE_ATTRIBUTES;
+        mCandidates = new RtcCandidate[attributes.length];
+        mJsepCandidateMessages = new byte[attributes.length][];
+        mBinaryCandidateMessages = new byte[attributes.length][];
+        int jsepCandidateBytes = 0;
+        int binaryCandidateBytes = 0;
+        for (int i = 0; i < attributes.length; i++) {
+            RtcCandidateImpl candidate = (RtcCandidateImpl) RtcCandidates.fromSdpAttribute(attributes[i]);
+            candidate.setStreamIndex(0);
+            candidate.setStreamId("audio");
+            mCandidates[i] = candidate;
+            mJsepCandidateMessages[i] = RtcCandidates.toJsep(candidate).toString().getBytes(UTF_8);
+            mBinaryCandidateMessages[i] = RtcCandidates.toBinary(candidate);
+            jsepCandidateBytes += mJsepCandidateMessages[i].length;
+            binaryCandidateBytes += mBinaryCandidateMessages[i].length;
+        }
+
+        System.out.println(fixture + " session description: JSEP " + mJsepMessage.length +
+                " bytes, binary " + mBinaryMessage.length + " bytes");
+        System.out.println(attributes.length + " candidates: JSEP " + jsepCandidateBytes +
+                " bytes, binary " + binaryCandidateBytes + " bytes");
+    }
+
+    @Benchmark
+    public byte[] encodeJsep() {
+        return SessionDescriptions.createJsep(mSessionDescription).toString().getBytes(UTF_8);
+    }
+
+    @Benchmark
+    public SessionDescription decodeJsep() throws JSONException, InvalidDescriptionException {
+        return SessionDescriptions.fromJsep(new JSONObject(new String(mJsepMessage, UTF_8)));
+    }
+
+    @Benchmark
+    public byte[] encodeBinary() {
+        return SessionDescriptions.toBinary(mSessionDescription);
+    }
+
+    @Benchmark
+    public SessionDescription decodeBinary() throws InvalidDescriptionException {
+        return SessionDescriptions.fromBinary(mBinaryMessage);
+    }
+
+    @Benchmark
+    public void encodeJsepCandidates(Blackhole blackhole) {
+        for (RtcCandidate candidate : mCandidates) {
+            blackhole.consume(RtcCandidates.toJsep(candidate).toString().getBytes(UTF_8));
+        }
+    }
+
+    @Benchmark
+    public void decodeJsepCandidates(Blackhole blackhole) throws JSONException {
+        for (byte[] message : mJsepCandidateMessages) {
+            blackhole.consume(RtcCandidates.fromJsep(new JSONObject(new String(message, UTF_8))));
+        }
+    }
+
+    @Benchmark
+    public void encodeBinaryCandidates(Blackhole blackhole) {
+        for (RtcCandidate candidate : mCandidates) {
+            blackhole.consume(RtcCandidates.toBinary(candidate));
+        }
+    }
+
+    @Benchmark
+    public void decodeBinaryCandidates(Blackhole blackhole) {
+        for (byte[] message : mBinaryCandidateMessages) {
+            blackhole.consume(RtcCandidates.fromBinary(message));
+        }
+    }
+}
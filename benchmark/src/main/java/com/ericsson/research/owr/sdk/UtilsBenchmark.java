@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2015, Ericsson AB.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package com.ericsson.research.owr.sdk;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the payload negotiation and certificate fingerprint helpers in Utils.
+ *
+ * Payload lists are taken from the Chrome video offer, which is intersected with the Firefox video offer.
+ * Utils.transformPayloads isn't covered, since it creates OpenWebRTC payload objects that need the native
+ * library, the filtering and RTX lookup it does on its input is the same as in the benchmarked methods.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UtilsBenchmark {
+    private List<RtcPayload> mPayloads;
+    private List<RtcPayload> mFilterPayloads;
+
+    @Setup
+    public void setup() throws JSONException, InvalidDescriptionException {
+        SessionDescription chrome = SessionDescriptions.fromJsep(new JSONObject(BenchmarkFixtures.CHROME_OFFER));
+        SessionDescription firefox = SessionDescriptions.fromSdp(SessionDescription.Type.OFFER, BenchmarkFixtures.FIREFOX_SDP);
+        mPayloads = findVideoPayloads(chrome);
+        mFilterPayloads = findVideoPayloads(firefox);
+    }
+
+    private static List<RtcPayload> findVideoPayloads(SessionDescription sessionDescription) {
+        for (StreamDescription streamDescription : sessionDescription.getStreamDescriptions()) {
+            if (streamDescription.getType() == StreamType.VIDEO) {
+                return streamDescription.getPayloads();
+            }
+        }
+        throw new IllegalStateException("fixture has no video stream");
+    }
+
+    @Benchmark
+    public List<RtcPayload> intersectPayloads() {
+        return Utils.intersectPayloads(mPayloads, mFilterPayloads);
+    }
+
+    @Benchmark
+    public List<RtcPayload> reorderPayloadsByFilter() {
+        return Utils.reorderPayloadsByFilter(mPayloads, mFilterPayloads);
+    }
+
+    @Benchmark
+    public List<RtcPayload> selectPreferredPayload() {
+        return Utils.selectPreferredPayload(mPayloads);
+    }
+
+    @Benchmark
+    public String fingerprintFromPem() {
+        return Utils.fingerprintFromPem(BenchmarkFixtures.PEM, "sha-256");
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2015, Ericsson AB.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package com.ericsson.research.owr.sdk;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class CandidatePoliciesTest extends TestCase {
+    private static final RtcCandidate sHost = candidate("1", RtcCandidate.CandidateType.HOST, RtcCandidate.TransportType.UDP, "192.168.1.2");
+    private static final RtcCandidate sHostTcp = candidate("2", RtcCandidate.CandidateType.HOST, RtcCandidate.TransportType.TCP_PASSIVE, "192.168.1.2");
+    private static final RtcCandidate sHostIpv6 = candidate("3", RtcCandidate.CandidateType.HOST, RtcCandidate.TransportType.UDP, "2001:db8::1");
+    private static final RtcCandidate sSrflx = candidate("4", RtcCandidate.CandidateType.SERVER_REFLEXIVE, RtcCandidate.TransportType.UDP, "203.0.113.7");
+    private static final RtcCandidate sRelay = candidate("5", RtcCandidate.CandidateType.RELAY, RtcCandidate.TransportType.UDP, "198.51.100.3");
+    private static final List<RtcCandidate> sCandidates = Arrays.asList(sHost, sHostTcp, sHostIpv6, sSrflx, sRelay);
+    private static final List<RtcCandidate> sNone = Collections.emptyList();
+
+    private static RtcCandidate candidate(String foundation, RtcCandidate.CandidateType type, RtcCandidate.TransportType transportType, String address) {
+        return new RtcCandidateImpl(0, null, null, null, foundation, RtcCandidate.ComponentType.RTP, transportType,
+                2113937151, address, 5000, type, null, 0);
+    }
+
+    public void testRelayOnly() {
+        CandidatePolicy policy = CandidatePolicies.relayOnly();
+        assertEquals(Collections.singletonList(sRelay), policy.selectLocalCandidates(sNone, sCandidates));
+        assertEquals(sCandidates, policy.selectRemoteCandidates(sNone, sCandidates));
+    }
+
+    public void testNoTcp() {
+        CandidatePolicy policy = CandidatePolicies.noTcp();
+        List<RtcCandidate> expected = Arrays.asList(sHost, sHostIpv6, sSrflx, sRelay);
+        assertEquals(expected, policy.selectLocalCandidates(sNone, sCandidates));
+        assertEquals(expected, policy.selectRemoteCandidates(sNone, sCandidates));
+    }
+
+    public void testIpv6First() {
+        CandidatePolicy policy = CandidatePolicies.ipv6First();
+        List<RtcCandidate> expected = Arrays.asList(sHostIpv6, sHost, sHostTcp, sSrflx, sRelay);
+        assertEquals(expected, policy.selectLocalCandidates(sNone, sCandidates));
+        assertEquals(expected, policy.selectRemoteCandidates(sNone, sCandidates));
+    }
+
+    public void testMaxPerType() {
+        CandidatePolicy policy = CandidatePolicies.maxPerType(2);
+        assertEquals(Arrays.asList(sHost, sHostTcp, sSrflx, sRelay), policy.selectLocalCandidates(sNone, sCandidates));
+        // candidates that have already been selected count towards the limit
+        assertEquals(Arrays.asList(sHostTcp, sSrflx), policy.selectRemoteCandidates(
+                Collections.singletonList(sHost), Arrays.asList(sHostTcp, sHostIpv6, sSrflx)));
+        assertEquals(sNone, CandidatePolicies.maxPerType(0).selectLocalCandidates(sNone, sCandidates));
+
+        try {
+            CandidatePolicies.maxPerType(-1);
+            throw new RuntimeException("should not be reached");
+        } catch (IllegalArgumentException ignored) {
+        }
+    }
+
+    public void testChain() {
+        CandidatePolicy policy = CandidatePolicies.chain(CandidatePolicies.noTcp(), CandidatePolicies.ipv6First(),
+                CandidatePolicies.maxPerType(1));
+        assertEquals(Arrays.asList(sHostIpv6, sSrflx, sRelay), policy.selectLocalCandidates(sNone, sCandidates));
+        assertEquals(sCandidates, CandidatePolicies.chain().selectRemoteCandidates(sNone, sCandidates));
+
+        try {
+            CandidatePolicies.chain(CandidatePolicies.noTcp(), null);
+            throw new RuntimeException("should not be reached");
+        } catch (NullPointerException ignored) {
+        }
+    }
+}
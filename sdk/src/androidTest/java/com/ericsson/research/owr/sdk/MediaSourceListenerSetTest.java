@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2015, Ericsson AB.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package com.ericsson.research.owr.sdk;
+
+import com.ericsson.research.owr.MediaSource;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+public class MediaSourceListenerSetTest extends TestCase {
+    private static class QueueExecutor implements Executor {
+        private final List<Runnable> mTasks = new ArrayList<>();
+
+        @Override
+        public void execute(Runnable runnable) {
+            mTasks.add(runnable);
+        }
+
+        int runAll() {
+            int count = mTasks.size();
+            for (Runnable task : mTasks) {
+                task.run();
+            }
+            mTasks.clear();
+            return count;
+        }
+    }
+
+    private static class CountingListener implements MediaSourceListener {
+        private int mCount = 0;
+
+        @Override
+        public void setMediaSource(MediaSource mediaSource) {
+            mCount++;
+        }
+    }
+
+    public void testExecutors() {
+        MediaSourceListenerSet set = new MediaSourceListenerSet();
+        QueueExecutor executor = new QueueExecutor();
+        CountingListener queued = new CountingListener();
+        CountingListener direct = new CountingListener();
+
+        set.addListener(queued, executor);
+        assertEquals(0, queued.mCount);
+        assertEquals(1, executor.runAll());
+        assertEquals(1, queued.mCount);
+
+        set.addListener(direct, CallbackExecutors.direct());
+        assertEquals(1, direct.mCount);
+
+        set.notifyListeners(null);
+        assertEquals(2, direct.mCount);
+        assertEquals(1, queued.mCount);
+        assertEquals(1, executor.runAll());
+        assertEquals(2, queued.mCount);
+
+        // adding a listener again replaces its executor
+        set.addListener(queued, CallbackExecutors.direct());
+        assertEquals(3, queued.mCount);
+        set.notifyListeners(null);
+        assertEquals(4, queued.mCount);
+        assertEquals(3, direct.mCount);
+        assertEquals(0, executor.runAll());
+    }
+
+    public void testInvalidArguments() {
+        MediaSourceListenerSet set = new MediaSourceListenerSet();
+        try {
+            set.addListener(null, CallbackExecutors.direct());
+            throw new RuntimeException("should not be reached");
+        } catch (NullPointerException ignored) {
+        }
+        try {
+            set.addListener(new CountingListener(), null);
+            throw new RuntimeException("should not be reached");
+        } catch (NullPointerException ignored) {
+        }
+    }
+}
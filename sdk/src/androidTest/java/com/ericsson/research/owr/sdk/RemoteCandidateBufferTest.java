@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2015, Ericsson AB.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package com.ericsson.research.owr.sdk;
+
+import junit.framework.TestCase;
+
+import java.util.List;
+
+public class RemoteCandidateBufferTest extends TestCase {
+    private static RtcCandidate candidate(int index, String id, String foundation, RtcCandidate.ComponentType componentType, int port) {
+        return new RtcCandidateImpl(index, id, null, null, foundation, componentType, RtcCandidate.TransportType.UDP,
+                2113937151, "192.168.1.2", port, RtcCandidate.CandidateType.HOST, null, 0);
+    }
+
+    public void testDeduplication() {
+        RemoteCandidateBuffer buffer = new RemoteCandidateBuffer(10);
+        assertTrue(buffer.isEmpty());
+        assertTrue(buffer.add(candidate(0, null, "1", RtcCandidate.ComponentType.RTP, 5000)));
+        assertFalse(buffer.add(candidate(0, null, "1", RtcCandidate.ComponentType.RTP, 5000)));
+        assertTrue(buffer.add(candidate(0, null, "1", RtcCandidate.ComponentType.RTCP, 5000)));
+        assertTrue(buffer.add(candidate(0, null, "1", RtcCandidate.ComponentType.RTP, 5001)));
+        assertTrue(buffer.add(candidate(0, null, "2", RtcCandidate.ComponentType.RTP, 5000)));
+        assertTrue(buffer.add(candidate(1, null, "1", RtcCandidate.ComponentType.RTP, 5000)));
+        assertFalse(buffer.add(candidate(-1, null, "1", RtcCandidate.ComponentType.RTP, 5000)));
+        assertEquals(5, buffer.size());
+
+        List<RtcCandidate> candidates = buffer.take(0, null);
+        assertEquals(4, candidates.size());
+        assertEquals(RtcCandidate.ComponentType.RTP, candidates.get(0).getComponentType());
+        assertEquals(RtcCandidate.ComponentType.RTCP, candidates.get(1).getComponentType());
+        assertEquals(5001, candidates.get(2).getPort());
+        assertEquals("2", candidates.get(3).getFoundation());
+        assertEquals(1, buffer.size());
+        assertTrue(buffer.take(0, null).isEmpty());
+
+        // a candidate can be added again once it has been taken
+        assertTrue(buffer.add(candidate(0, null, "1", RtcCandidate.ComponentType.RTP, 5000)));
+        assertEquals(2, buffer.size());
+        buffer.clear();
+        assertTrue(buffer.isEmpty());
+        assertTrue(buffer.take(1, null).isEmpty());
+    }
+
+    public void testStreamIds() {
+        RemoteCandidateBuffer buffer = new RemoteCandidateBuffer(10);
+        assertTrue(buffer.add(candidate(-1, "audio", "1", RtcCandidate.ComponentType.RTP, 5000)));
+        assertFalse(buffer.add(candidate(-1, "audio", "1", RtcCandidate.ComponentType.RTP, 5000)));
+        assertTrue(buffer.add(candidate(-1, "video", "1", RtcCandidate.ComponentType.RTP, 5000)));
+        assertTrue(buffer.add(candidate(0, "audio", "1", RtcCandidate.ComponentType.RTP, 5000)));
+        assertTrue(buffer.add(candidate(0, "audio", "2", RtcCandidate.ComponentType.RTP, 5000)));
+        assertEquals(4, buffer.size());
+
+        List<RtcCandidate> candidates = buffer.take(0, "audio");
+        assertEquals(2, candidates.size());
+        assertEquals("1", candidates.get(0).getFoundation());
+        assertEquals("2", candidates.get(1).getFoundation());
+        assertEquals(1, buffer.size());
+
+        candidates = buffer.take(1, "video");
+        assertEquals(1, candidates.size());
+        assertEquals("video", candidates.get(0).getStreamId());
+        assertTrue(buffer.isEmpty());
+    }
+
+    public void testLimit() {
+        RemoteCandidateBuffer buffer = new RemoteCandidateBuffer(3);
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i < 3, buffer.add(candidate(i % 2, null, "1", RtcCandidate.ComponentType.RTP, 5000 + i)));
+        }
+        assertEquals(3, buffer.size());
+        assertEquals(2, buffer.take(0, null).size());
+        assertEquals(1, buffer.size());
+        assertTrue(buffer.add(candidate(0, null, "1", RtcCandidate.ComponentType.RTP, 6000)));
+        assertTrue(buffer.add(candidate(0, null, "1", RtcCandidate.ComponentType.RTP, 6001)));
+        assertFalse(buffer.add(candidate(0, null, "1", RtcCandidate.ComponentType.RTP, 6002)));
+
+        try {
+            new RemoteCandidateBuffer(-1);
+            throw new RuntimeException("should not be reached");
+        } catch (IllegalArgumentException ignored) {
+        }
+    }
+}
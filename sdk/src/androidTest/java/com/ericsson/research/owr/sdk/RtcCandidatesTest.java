@@ -32,9 +32,13 @@ import com.ericsson.research.owr.TransportType;
 
 import junit.framework.TestCase;
 
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public class RtcCandidatesTest extends TestCase {
     public static final String TAG = "RtcCandidatesTest";
 
@@ -60,6 +64,16 @@ public class RtcCandidatesTest extends TestCase {
             "candidate:2848939570 1 udp 41819903 192.36.158.14 59508 typ relay raddr 129.192.20.168 rport 65202 generation 0",
             "candidate:2802908053 1 tcp 1518280447 192.168.59.3 0 typ host tcptype active generation 0",
             "candidate:1653677941 1 tcp 1518214911 129.192.20.168 0 typ host tcptype active generation 0",
+            "candidate:2 1 UDP 1694236671 90.237.24.157 35856 TYP SRFLX RADDR 172.20.10.2 RPORT 51850",
+            "candidate:842163049 1 udp 1677729535 90.237.24.157 35856 typ srflx raddr 172.20.10.2 rport 51850 generation 0 ufrag xM3B network-id 1 network-cost 10",
+            "candidate:1 1 tcp 1518280447 192.168.59.3 9 typ host generation 0 tcptype active",
+            "candidate:Ab+/9 1 UDP 2130379007 172.20.10.2 51850 typ host",
+    };
+
+    private static final String[] validIpv6AttributeLines = new String[] {
+            "candidate:3 1 UDP 2130706431 2001:db8::1 51850 typ host",
+            "candidate:4 2 UDP 1694498815 2001:DB8:0:0:8:800:200C:417A 35856 typ srflx raddr fe80::1:abcd rport 51850",
+            "candidate:5 1 TCP 1518280447 ::ffff:192.0.2.128 9 typ host tcptype active",
     };
 
     private static final String[] invalidAttributeLines = new String[] {
@@ -81,6 +95,14 @@ public class RtcCandidatesTest extends TestCase {
             "candidate:15 2 UDP 100401150 192.36.158.14 61720 typ relay raddr 172.20.10.2 rport",
             "candidate:16 1 UDP 100401151 192.36.158.14 55300 typ relay raddr 172.20.10.2",
             "candidate:17 2 UDP 100401150 192.36.158.14 61720 typ relay raddr 61466",
+            "candidate:18 1 UDP 2130379007 172.20.10.2  typ host",
+            "candidate:19 1 UDP 21303790070 172.20.10.2 51850 typ host",
+            "candidate:20 1 UDP 2130379007 172.20.10.2 518500 typ host",
+            "candidate:21 1 UDP 2130379007 172.20.10.2 51850 typ hosts",
+            "candidate:22 01 UDP 2130379007 172.20.10.2 51850 typ host",
+            "candidate:23 1 UDP 2130379007 172.20.10.2 51850 typ host\r\n\r\n",
+            "candidate:24 1 UDP 2130379007 172.20.10.2 51850 typ srflx raddr 172.20.10.2 rport 5a",
+            "candidate: 1 UDP 2130379007 172.20.10.2 51850 typ host",
     };
 
     public void testAttributeConversion() {
@@ -100,6 +122,11 @@ public class RtcCandidatesTest extends TestCase {
             RtcCandidate candidate = RtcCandidates.fromSdpAttribute(line);
             assertNotNull(line, candidate);
         }
+        for (String line : validIpv6AttributeLines) {
+            RtcCandidate candidate = RtcCandidates.fromSdpAttribute(line);
+            assertNotNull(line, candidate);
+            assertEquals(line, RtcCandidates.toSdpAttribute(candidate));
+        }
         for (String invalidLine : invalidAttributeLines) {
             RtcCandidate candidate = RtcCandidates.fromSdpAttribute(invalidLine);
             assertNull(invalidLine, candidate);
@@ -107,6 +134,22 @@ public class RtcCandidatesTest extends TestCase {
     }
 
 
+    public void testExtensionAttributes() {
+        RtcCandidate candidate = RtcCandidates.fromSdpAttribute(validNoMirrorAttributeLines[7]);
+        assertEquals("842163049", candidate.getFoundation());
+        assertEquals(RtcCandidate.CandidateType.SERVER_REFLEXIVE, candidate.getType());
+        assertEquals("172.20.10.2", candidate.getRelatedAddress());
+        assertEquals(51850, candidate.getRelatedPort());
+
+        candidate = RtcCandidates.fromSdpAttribute(validNoMirrorAttributeLines[8]);
+        assertEquals(RtcCandidate.TransportType.TCP_ACTIVE, candidate.getTransportType());
+        assertEquals(9, candidate.getPort());
+
+        candidate = RtcCandidates.fromSdpAttribute(validIpv6AttributeLines[1]);
+        assertEquals("2001:DB8:0:0:8:800:200C:417A", candidate.getAddress());
+        assertEquals("fe80::1:abcd", candidate.getRelatedAddress());
+    }
+
     private static String[] validJsepJsons = new String[] {
             "{\"sdpMid\":\"video\",\"sdpMLineIndex\":1,\"candidate\":\"candidate:1 2 UDP 2130379006 172.20.10.2 61466 typ host\"}",
             "{\"sdpMid\":null,\"sdpMLineIndex\":1,\"candidate\":\"candidate:1 2 UDP 2130379006 172.20.10.2 61466 typ host\"}",
@@ -169,6 +212,51 @@ public class RtcCandidatesTest extends TestCase {
         assertEquals(1, backToJson[7].optInt("sdpMLineIndex"));
     }
 
+    public void testJsepArrayConversion() throws JSONException {
+        JSONArray json = new JSONArray();
+        for (String validJsepJson : validJsepJsons) {
+            json.put(new JSONObject(validJsepJson));
+        }
+        json.put("not a candidate");
+        json.put(new JSONObject("{\"candidate\":\"candidate:1 2 UDP 2130379006 172.20.10.2 61466 typ host\"}"));
+
+        List<RtcCandidate> candidates = RtcCandidates.fromJsepArray(json);
+        assertEquals(validJsepJsons.length, candidates.size());
+        for (int i = 0; i < validJsepJsons.length; i++) {
+            assertEquals(RtcCandidates.fromJsep(new JSONObject(validJsepJsons[i])), candidates.get(i));
+        }
+
+        List<RtcCandidate> withoutContext = new ArrayList<>(candidates);
+        withoutContext.add(RtcCandidates.fromSdpAttribute(validAttributeLines[0]));
+        JSONArray backToJson = RtcCandidates.toJsepArray(withoutContext);
+        assertEquals(validJsepJsons.length, backToJson.length());
+        for (int i = 0; i < validJsepJsons.length; i++) {
+            assertEquals(RtcCandidates.toJsep(candidates.get(i)).toString(), backToJson.getJSONObject(i).toString());
+        }
+        assertEquals(candidates, RtcCandidates.fromJsepArray(backToJson));
+        assertEquals(0, RtcCandidates.toJsepArray(new ArrayList<RtcCandidate>()).length());
+    }
+
+    public void testBinaryConversion() throws JSONException {
+        for (String validJsepJson : validJsepJsons) {
+            RtcCandidate candidate = RtcCandidates.fromJsep(new JSONObject(validJsepJson));
+            byte[] data = RtcCandidates.toBinary(candidate);
+            assertNotNull(data);
+            assertTrue(data.length < RtcCandidates.toJsep(candidate).toString().length());
+            RtcCandidate decoded = RtcCandidates.fromBinary(data);
+            assertEquals(candidate, decoded);
+            assertEquals(candidate.getStreamId(), decoded.getStreamId());
+            assertEquals(candidate.getStreamIndex(), decoded.getStreamIndex());
+            assertEquals(RtcCandidates.toSdpAttribute(candidate), RtcCandidates.toSdpAttribute(decoded));
+
+            byte[] truncated = new byte[data.length - 1];
+            System.arraycopy(data, 0, truncated, 0, truncated.length);
+            assertNull(RtcCandidates.fromBinary(truncated));
+        }
+        assertNull(RtcCandidates.toBinary(RtcCandidates.fromSdpAttribute(validAttributeLines[0])));
+        assertNull(RtcCandidates.fromBinary(new byte[] {(byte) (BinaryCodec.VERSION + 1), 2}));
+    }
+
     public void testFromOwrCandidate() {
         Candidate candidate = new Candidate(CandidateType.PEER_REFLEXIVE, ComponentType.RTP);
         candidate.setUfrag("asd");
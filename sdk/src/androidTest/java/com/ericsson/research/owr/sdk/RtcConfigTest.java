@@ -81,4 +81,77 @@ public class RtcConfigTest extends AndroidTestCase {
         assertSame(config.getDefaultAudioPayloads(), config2.getDefaultAudioPayloads());
         assertSame(config.getDefaultVideoPayloads(), config2.getDefaultVideoPayloads());
     }
+
+    public void testLocalCandidateBatching() {
+        RtcConfig defaultConfig = RtcConfigs.defaultConfig("stun.example.com");
+        assertEquals(0, defaultConfig.getLocalCandidateBatchWindow());
+        assertEquals(Integer.MAX_VALUE, defaultConfig.getLocalCandidateBatchSize());
+
+        RtcConfig config = RtcConfigs.withLocalCandidateBatching(defaultConfig, 100, 8);
+        assertEquals(100, config.getLocalCandidateBatchWindow());
+        assertEquals(8, config.getLocalCandidateBatchSize());
+        assertSame(defaultConfig.getDefaultAudioPayloads(), config.getDefaultAudioPayloads());
+        assertSame(defaultConfig.getDefaultVideoPayloads(), config.getDefaultVideoPayloads());
+        assertSame(defaultConfig.getHelperServers(), config.getHelperServers());
+        assertEquals(defaultConfig.shouldRespectRemotePayloadOrder(), config.shouldRespectRemotePayloadOrder());
+
+        try {
+            RtcConfigs.withLocalCandidateBatching(null, 100, 8);
+            throw new RuntimeException("should not be reached");
+        } catch (NullPointerException ignored) {
+        }
+        try {
+            RtcConfigs.withLocalCandidateBatching(defaultConfig, -1, 8);
+            throw new RuntimeException("should not be reached");
+        } catch (IllegalArgumentException ignored) {
+        }
+        try {
+            RtcConfigs.withLocalCandidateBatching(defaultConfig, 100, 0);
+            throw new RuntimeException("should not be reached");
+        } catch (IllegalArgumentException ignored) {
+        }
+    }
+
+    public void testRemoteCandidateBufferLimit() {
+        RtcConfig defaultConfig = RtcConfigs.defaultConfig("stun.example.com");
+        assertEquals(256, defaultConfig.getRemoteCandidateBufferLimit());
+
+        RtcConfig config = RtcConfigs.withRemoteCandidateBufferLimit(defaultConfig, 16);
+        assertEquals(16, config.getRemoteCandidateBufferLimit());
+        RtcConfig batching = RtcConfigs.withLocalCandidateBatching(config, 100, 8);
+        assertEquals(16, batching.getRemoteCandidateBufferLimit());
+        assertEquals(100, batching.getLocalCandidateBatchWindow());
+
+        try {
+            RtcConfigs.withRemoteCandidateBufferLimit(defaultConfig, -1);
+            throw new RuntimeException("should not be reached");
+        } catch (IllegalArgumentException ignored) {
+        }
+    }
+
+    public void testCandidatePolicy() {
+        RtcConfig defaultConfig = RtcConfigs.defaultConfig("stun.example.com");
+        assertNull(defaultConfig.getCandidatePolicy());
+
+        CandidatePolicy policy = CandidatePolicies.relayOnly();
+        RtcConfig config = RtcConfigs.withCandidatePolicy(defaultConfig, policy);
+        assertSame(policy, config.getCandidatePolicy());
+        assertSame(policy, RtcConfigs.withRemoteCandidateBufferLimit(config, 16).getCandidatePolicy());
+
+        try {
+            RtcConfigs.withCandidatePolicy(defaultConfig, null);
+            throw new RuntimeException("should not be reached");
+        } catch (NullPointerException ignored) {
+        }
+    }
+
+    public void testTrickleFirst() {
+        RtcConfig defaultConfig = RtcConfigs.defaultConfig("stun.example.com");
+        assertFalse(defaultConfig.shouldTrickleAllCandidates());
+
+        RtcConfig config = RtcConfigs.withTrickleFirst(defaultConfig);
+        assertTrue(config.shouldTrickleAllCandidates());
+        assertTrue(RtcConfigs.withLocalCandidateBatching(config, 50, 4).shouldTrickleAllCandidates());
+        assertEquals(defaultConfig.getHelperServers(), config.getHelperServers());
+    }
 }
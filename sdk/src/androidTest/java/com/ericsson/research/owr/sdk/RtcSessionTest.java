@@ -37,6 +37,7 @@ import com.ericsson.research.owr.MediaType;
 import com.ericsson.research.owr.DataChannelReadyState;
 import com.ericsson.research.owr.Owr;
 
+import org.json.JSONArray;
 import org.json.JSONObject;
 
 import java.util.ArrayList;
@@ -46,6 +47,8 @@ import java.util.EnumSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
 public class RtcSessionTest extends OwrTestCase {
     private static final String TAG = "RtcSessionTest";
@@ -180,120 +183,716 @@ public class RtcSessionTest extends OwrTestCase {
 
         Log.d(TAG, "got all remote sources");
 
+        // every stream in the offer has to be ready before the offer is created
+        List<StreamSetupTimeline> timelines = out.getSetupTimelines();
+        assertEquals(3, timelines.size());
+        for (StreamSetupTimeline timeline : timelines) {
+            Log.d(TAG, "setup timeline: " + timeline);
+            assertTrue(timeline.hasReached(StreamSetupTimeline.Event.FIRST_CANDIDATE));
+            assertTrue(timeline.hasReached(StreamSetupTimeline.Event.FINGERPRINT));
+            assertTrue(timeline.getTimeSinceCreation(StreamSetupTimeline.Event.READY) >= 0);
+            assertTrue(timeline.getTime(StreamSetupTimeline.Event.READY) <=
+                    timeline.getTime(StreamSetupTimeline.Event.LOCAL_DESCRIPTION));
+        }
+        assertEquals(StreamType.AUDIO, timelines.get(2).getStreamType());
+        assertEquals("2", timelines.get(2).getMid());
+
         Log.d(TAG, "testing stop");
         out.stop();
         in.stop();
-        try {
-            Thread.sleep(200); // wait a bit for stop to complete
-        } catch (InterruptedException e) {
-            throw new RuntimeException(e);
-        }
-
-        Log.d(TAG, "stopped");
+        assertTrue(out.getSetupTimelines().isEmpty());
+        try {
+            Thread.sleep(200); // wait a bit for stop to complete
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+
+        Log.d(TAG, "stopped");
+    }
+
+    public void testEmptyCall() {
+        RtcConfig config = RtcConfigs.defaultConfig(Collections.<RtcConfig.HelperServer>emptyList());
+        final RtcSession out = RtcSessions.create(config);
+        final RtcSession in = RtcSessions.create(config);
+
+        final StreamSetMock streamSetMockOut = new StreamSetMock("initiator", Arrays.asList(
+                video("video1", false, false),
+                audio("audio1", false, false)
+        ));
+
+        final StreamSetMock streamSetMockIn = new StreamSetMock("peer", Arrays.asList(
+                video("video1", false, false),
+                audio("audio1", false, false)
+        ));
+
+        TestUtils.synchronous().timeout(5).run(new TestUtils.SynchronousBlock() {
+            @Override
+            public void run(final CountDownLatch latch) {
+                Owr.getCaptureSources(EnumSet.of(MediaType.VIDEO, MediaType.AUDIO), new CaptureSourcesCallback() {
+                    @Override
+                    public void onCaptureSourcesCallback(final List<MediaSource> list) {
+                        Log.d(TAG, "got capture sources: " + list.size());
+                        for (MediaSource source : list) {
+                            Log.d(TAG, "iterate source " + source.getName());
+                            if (source.getMediaType().contains(MediaType.VIDEO) && mVideoSource == null) {
+                                Log.d(TAG, "got video source: " + source + " " + source.getName());
+                                mVideoSource = source;
+                            } else if (source.getMediaType().contains(MediaType.AUDIO) && mAudioSource == null) {
+                                Log.d(TAG, "got audio source: " + source);
+                                mAudioSource = source;
+                            }
+                        }
+                        latch.countDown();
+                    }
+                });
+            }
+        });
+
+        TestUtils.synchronous().timeout(30).run(new TestUtils.SynchronousBlock() {
+            @Override
+            public void run(final CountDownLatch latch) {
+                out.setOnLocalDescriptionListener(new RtcSession.OnLocalDescriptionListener() {
+                    @Override
+                    public void onLocalDescription(final SessionDescription localDescription) {
+                        Log.w(TAG, "OFFER: " + SessionDescriptions.toJsep(localDescription));
+                        try {
+                            in.setRemoteDescription(localDescription);
+                        } catch (InvalidDescriptionException e) {
+                            throw new RuntimeException(e);
+                        }
+                        in.start(streamSetMockIn);
+                    }
+                });
+                in.setOnLocalDescriptionListener(new RtcSession.OnLocalDescriptionListener() {
+                    @Override
+                    public void onLocalDescription(final SessionDescription localDescription) {
+                        try {
+                            out.setRemoteDescription(localDescription);
+                        } catch (InvalidDescriptionException e) {
+                            throw new RuntimeException(e);
+                        }
+                        Log.w(TAG, "ANSWER: " + SessionDescriptions.toJsep(localDescription));
+                        latch.countDown();
+                    }
+                });
+                out.start(streamSetMockOut);
+                Log.d(TAG, "waiting for call start");
+            }
+        });
+
+        assertEquals(StreamMode.INACTIVE, streamSetMockOut.getMediaStream("video1").getStreamMode());
+        assertEquals(StreamMode.INACTIVE, streamSetMockOut.getMediaStream("audio1").getStreamMode());
+        assertEquals(StreamMode.INACTIVE, streamSetMockIn.getMediaStream("video1").getStreamMode());
+        assertEquals(StreamMode.INACTIVE, streamSetMockIn.getMediaStream("audio1").getStreamMode());
+
+        out.stop();
+        in.stop();
+    }
+
+    public void testJsepCall() {
+        RtcConfig config = RtcConfigs.defaultConfig(Collections.<RtcConfig.HelperServer>emptyList());
+        final RtcSession out = RtcSessions.create(config);
+        final RtcSession in = RtcSessions.create(config);
+
+        out.setOnLocalCandidateListener(new RtcSession.OnLocalCandidateListener() {
+            @Override
+            public void onLocalCandidate(final RtcCandidate candidate) {
+                assertSame(Looper.getMainLooper(), Looper.myLooper());
+                JSONObject json = RtcCandidates.toJsep(candidate);
+                Log.e(TAG, "LOCAL CANDIDATE out -> in: " + json);
+                in.addRemoteCandidate(RtcCandidates.fromJsep(json));
+            }
+        });
+        in.setOnLocalCandidateListener(new RtcSession.OnLocalCandidateListener() {
+            @Override
+            public void onLocalCandidate(final RtcCandidate candidate) {
+                assertSame(Looper.getMainLooper(), Looper.myLooper());
+                JSONObject json = RtcCandidates.toJsep(candidate);
+                Log.e(TAG, "LOCAL CANDIDATE in -> out: " + json);
+                out.addRemoteCandidate(RtcCandidates.fromJsep(json));
+            }
+        });
+
+        final StreamSetMock streamSetMockOut = new StreamSetMock("initiator", Arrays.asList(
+                video("video1", true, true),
+                audio("audio1", true, true)
+        ));
+
+        final StreamSetMock streamSetMockIn = new StreamSetMock("peer", Arrays.asList(
+                video("video1", true, true),
+                audio("audio1", true, true)
+        ));
+
+        TestUtils.synchronous().timeout(30).run(new TestUtils.SynchronousBlock() {
+            @Override
+            public void run(final CountDownLatch latch) {
+                out.setOnLocalDescriptionListener(new RtcSession.OnLocalDescriptionListener() {
+                    @Override
+                    public void onLocalDescription(final SessionDescription localDescription) {
+                        assertSame(Looper.getMainLooper(), Looper.myLooper());
+                        JSONObject jsepOffer = SessionDescriptions.toJsep(localDescription);
+                        try {
+                            in.setRemoteDescription(SessionDescriptions.fromJsep(jsepOffer));
+                        } catch (InvalidDescriptionException e) {
+                            throw new RuntimeException(e);
+                        }
+                        in.start(streamSetMockIn);
+                    }
+                });
+                in.setOnLocalDescriptionListener(new RtcSession.OnLocalDescriptionListener() {
+                    @Override
+                    public void onLocalDescription(final SessionDescription localDescription) {
+                        assertSame(Looper.getMainLooper(), Looper.myLooper());
+                        JSONObject jsepAnswer = SessionDescriptions.toJsep(localDescription);
+                        try {
+                            out.setRemoteDescription(SessionDescriptions.fromJsep(jsepAnswer));
+                        } catch (InvalidDescriptionException e) {
+                            throw new RuntimeException(e);
+                        }
+                        latch.countDown();
+                    }
+                });
+                out.start(streamSetMockOut);
+                Log.d(TAG, "waiting for call start");
+            }
+        });
+
+        assertEquals(StreamMode.SEND_RECEIVE, streamSetMockOut.getMediaStream("video1").getStreamMode());
+        assertEquals(StreamMode.SEND_RECEIVE, streamSetMockOut.getMediaStream("audio1").getStreamMode());
+        assertEquals(StreamMode.SEND_RECEIVE, streamSetMockIn.getMediaStream("video1").getStreamMode());
+        assertEquals(StreamMode.SEND_RECEIVE, streamSetMockIn.getMediaStream("audio1").getStreamMode());
+
+        SessionTimeline outTimeline = out.getTimeline();
+        assertEquals(SessionTimeline.Event.STOPPED, outTimeline.getEvent(0));
+        assertTrue(outTimeline.getNanosBetween(SessionTimeline.Event.START, SessionTimeline.Event.LOCAL_DESCRIPTION) > 0);
+        assertTrue(outTimeline.getNanosBetween(SessionTimeline.Event.WAIT_ANSWER, SessionTimeline.Event.ACTIVE) > 0);
+        SessionTimeline inTimeline = in.getTimeline();
+        assertTrue(inTimeline.getNanosBetween(SessionTimeline.Event.REMOTE_OFFER, SessionTimeline.Event.LOCAL_DESCRIPTION) > 0);
+
+        out.stop();
+        in.stop();
+
+        Log.d(TAG, "stopped");
+    }
+
+    public void testRenegotiation() {
+        RtcConfig config = RtcConfigs.defaultConfig(Collections.<RtcConfig.HelperServer>emptyList());
+        final RtcSession out = RtcSessions.create(config);
+        final RtcSession in = RtcSessions.create(config);
+
+        out.setOnLocalCandidateListener(new RtcSession.OnLocalCandidateListener() {
+            @Override
+            public void onLocalCandidate(final RtcCandidate candidate) {
+                in.addRemoteCandidate(candidate);
+            }
+        });
+        in.setOnLocalCandidateListener(new RtcSession.OnLocalCandidateListener() {
+            @Override
+            public void onLocalCandidate(final RtcCandidate candidate) {
+                out.addRemoteCandidate(candidate);
+            }
+        });
+
+        final StreamSetMock streamSetMockOut = new StreamSetMock("initiator", Collections.singletonList(
+                audio("audio1", true, true)
+        ));
+        final StreamSetMock streamSetMockIn = new StreamSetMock("peer", Collections.singletonList(
+                audio("audio1", true, true)
+        ));
+
+        exchangeDescriptions(out, in, streamSetMockOut, streamSetMockIn, OfferKind.START, null, 0);
+        assertEquals(StreamMode.SEND_RECEIVE, streamSetMockOut.getMediaStream("audio1").getStreamMode());
+        assertEquals(StreamMode.SEND_RECEIVE, streamSetMockIn.getMediaStream("audio1").getStreamMode());
+
+        // adding a stream keeps the audio stream running and sets up the video on the same transport agent
+        streamSetMockOut.addStream(video("video1", true, true));
+        streamSetMockIn.addStream(video("video1", true, true));
+        exchangeDescriptions(out, in, streamSetMockOut, streamSetMockIn, OfferKind.RENEGOTIATE, null, 0);
+        assertEquals(StreamMode.SEND_RECEIVE, streamSetMockOut.getMediaStream("audio1").getStreamMode());
+        assertEquals(StreamMode.SEND_RECEIVE, streamSetMockOut.getMediaStream("video1").getStreamMode());
+        assertEquals(StreamMode.SEND_RECEIVE, streamSetMockIn.getMediaStream("video1").getStreamMode());
+
+        TestUtils.synchronous().timeout(30).latchCount(2).run(new TestUtils.SynchronousBlock() {
+            @Override
+            public void run(final CountDownLatch latch) {
+                streamSetMockOut.getMediaStream("video1").waitForRemoteSource(latch);
+                streamSetMockIn.getMediaStream("video1").waitForRemoteSource(latch);
+            }
+        });
+
+        // removing a stream leaves its m-line in place as inactive
+        StreamSetMock.MediaStreamMock removedVideo = streamSetMockOut.getMediaStream("video1");
+        streamSetMockOut.removeStream("video1");
+        exchangeDescriptions(out, in, streamSetMockOut, streamSetMockIn, OfferKind.RENEGOTIATE, null, 0);
+        assertEquals(StreamMode.INACTIVE, removedVideo.getStreamMode());
+        assertEquals(StreamMode.SEND_RECEIVE, streamSetMockOut.getMediaStream("audio1").getStreamMode());
+        assertEquals(StreamMode.INACTIVE, streamSetMockIn.getMediaStream("video1").getStreamMode());
+        assertEquals(StreamMode.SEND_RECEIVE, streamSetMockIn.getMediaStream("audio1").getStreamMode());
+
+        try {
+            out.renegotiate(null);
+            throw new RuntimeException("should not be reached");
+        } catch (NullPointerException ignored) {
+        }
+
+        out.stop();
+        in.stop();
+    }
+
+    public void testIceRestart() {
+        RtcConfig config = RtcConfigs.defaultConfig(Collections.<RtcConfig.HelperServer>emptyList());
+        final RtcSession out = RtcSessions.create(config);
+        final RtcSession in = RtcSessions.create(config);
+
+        out.setOnLocalCandidateListener(new RtcSession.OnLocalCandidateListener() {
+            @Override
+            public void onLocalCandidate(final RtcCandidate candidate) {
+                in.addRemoteCandidate(candidate);
+            }
+        });
+        in.setOnLocalCandidateListener(new RtcSession.OnLocalCandidateListener() {
+            @Override
+            public void onLocalCandidate(final RtcCandidate candidate) {
+                out.addRemoteCandidate(candidate);
+            }
+        });
+
+        final StreamSetMock streamSetMockOut = new StreamSetMock("initiator", Arrays.asList(
+                video("video1", true, true),
+                audio("audio1", true, true)
+        ));
+        final StreamSetMock streamSetMockIn = new StreamSetMock("peer", Arrays.asList(
+                video("video1", true, true),
+                audio("audio1", true, true)
+        ));
+
+        final SessionDescription[] descriptions = new SessionDescription[4];
+        exchangeDescriptions(out, in, streamSetMockOut, streamSetMockIn, OfferKind.START, descriptions, 0);
+
+        // restarting ICE replaces the transports, but the streams stay connected and keep their mids
+        exchangeDescriptions(out, in, streamSetMockOut, streamSetMockIn, OfferKind.RESTART_ICE, descriptions, 2);
+        for (int i = 0; i < 2; i++) {
+            StreamDescription before = descriptions[i].getStreamDescriptions().get(0);
+            StreamDescription after = descriptions[i + 2].getStreamDescriptions().get(0);
+            assertEquals(before.getMid(), after.getMid());
+            assertFalse(before.getUfrag().equals(after.getUfrag()));
+            assertFalse(before.getPassword().equals(after.getPassword()));
+        }
+        assertEquals(StreamMode.SEND_RECEIVE, streamSetMockOut.getMediaStream("video1").getStreamMode());
+        assertEquals(StreamMode.SEND_RECEIVE, streamSetMockIn.getMediaStream("video1").getStreamMode());
+
+        TestUtils.synchronous().timeout(30).latchCount(4).run(new TestUtils.SynchronousBlock() {
+            @Override
+            public void run(final CountDownLatch latch) {
+                streamSetMockOut.getMediaStream("video1").waitForRemoteSource(latch);
+                streamSetMockOut.getMediaStream("audio1").waitForRemoteSource(latch);
+                streamSetMockIn.getMediaStream("video1").waitForRemoteSource(latch);
+                streamSetMockIn.getMediaStream("audio1").waitForRemoteSource(latch);
+            }
+        });
+
+        out.stop();
+        in.stop();
+    }
+
+    public void testPreparedCall() throws InterruptedException {
+        RtcConfig config = RtcConfigs.defaultConfig(Collections.<RtcConfig.HelperServer>emptyList());
+        RtcSessions.prepare(config, Arrays.asList(StreamType.VIDEO, StreamType.AUDIO));
+        // give the prepared sessions time to gather and to get their CNAME and SSRC before the call is made
+        Thread.sleep(1000);
+
+        final RtcSession out = RtcSessions.create(config);
+        final RtcSession in = RtcSessions.create(RtcConfigs.defaultConfig(Collections.<RtcConfig.HelperServer>emptyList()));
+        out.setOnLocalCandidateListener(new RtcSession.OnLocalCandidateListener() {
+            @Override
+            public void onLocalCandidate(final RtcCandidate candidate) {
+                in.addRemoteCandidate(candidate);
+            }
+        });
+        in.setOnLocalCandidateListener(new RtcSession.OnLocalCandidateListener() {
+            @Override
+            public void onLocalCandidate(final RtcCandidate candidate) {
+                out.addRemoteCandidate(candidate);
+            }
+        });
+
+        final StreamSetMock streamSetMockOut = new StreamSetMock("initiator", Arrays.asList(
+                video("video1", true, true),
+                audio("audio1", true, true)
+        ));
+        final StreamSetMock streamSetMockIn = new StreamSetMock("peer", Arrays.asList(
+                video("video1", true, true),
+                audio("audio1", true, true)
+        ));
+
+        final SessionDescription[] descriptions = new SessionDescription[2];
+        exchangeDescriptions(out, in, streamSetMockOut, streamSetMockIn, OfferKind.START, descriptions, 0);
+        // the prepared transport has been used, so it's no longer in the pool
+        assertFalse(RtcSessions.cancelPrepare(config));
+        for (StreamDescription streamDescription : descriptions[0].getStreamDescriptions()) {
+            assertNotNull(streamDescription.getCname());
+            assertFalse(streamDescription.getSsrcs().isEmpty());
+            assertFalse(streamDescription.getCandidates().isEmpty());
+        }
+
+        TestUtils.synchronous().timeout(30).latchCount(4).run(new TestUtils.SynchronousBlock() {
+            @Override
+            public void run(final CountDownLatch latch) {
+                streamSetMockOut.getMediaStream("video1").waitForRemoteSource(latch);
+                streamSetMockOut.getMediaStream("audio1").waitForRemoteSource(latch);
+                streamSetMockIn.getMediaStream("video1").waitForRemoteSource(latch);
+                streamSetMockIn.getMediaStream("audio1").waitForRemoteSource(latch);
+            }
+        });
+
+        out.stop();
+        in.stop();
+    }
+
+    private enum OfferKind {
+        START, RENEGOTIATE, RESTART_ICE
+    }
+
+    /**
+     * Runs an offer/answer round from out to in, the descriptions are stored from the given offset if an array is given.
+     */
+    private void exchangeDescriptions(final RtcSession out, final RtcSession in, final StreamSet streamSetOut,
+            final StreamSet streamSetIn, final OfferKind offerKind, final SessionDescription[] descriptions, final int offset) {
+        TestUtils.synchronous().timeout(30).run(new TestUtils.SynchronousBlock() {
+            @Override
+            public void run(final CountDownLatch latch) {
+                out.setOnLocalDescriptionListener(new RtcSession.OnLocalDescriptionListener() {
+                    @Override
+                    public void onLocalDescription(final SessionDescription localDescription) {
+                        assertEquals(SessionDescription.Type.OFFER, localDescription.getType());
+                        if (descriptions != null) {
+                            descriptions[offset] = localDescription;
+                        }
+                        try {
+                            in.setRemoteDescription(localDescription);
+                        } catch (InvalidDescriptionException e) {
+                            throw new RuntimeException(e);
+                        }
+                        if (offerKind == OfferKind.START) {
+                            in.start(streamSetIn);
+                        } else {
+                            in.renegotiate(streamSetIn);
+                        }
+                    }
+                });
+                in.setOnLocalDescriptionListener(new RtcSession.OnLocalDescriptionListener() {
+                    @Override
+                    public void onLocalDescription(final SessionDescription localDescription) {
+                        assertEquals(SessionDescription.Type.ANSWER, localDescription.getType());
+                        if (descriptions != null) {
+                            descriptions[offset + 1] = localDescription;
+                        }
+                        try {
+                            out.setRemoteDescription(localDescription);
+                        } catch (InvalidDescriptionException e) {
+                            throw new RuntimeException(e);
+                        }
+                        latch.countDown();
+                    }
+                });
+                switch (offerKind) {
+                    case START:
+                        out.start(streamSetOut);
+                        break;
+                    case RENEGOTIATE:
+                        out.renegotiate(streamSetOut);
+                        break;
+                    case RESTART_ICE:
+                        out.restartIce();
+                        break;
+                }
+            }
+        });
+    }
+
+    public void testBatchedCandidateCall() {
+        RtcConfig config = RtcConfigs.defaultConfig(Collections.<RtcConfig.HelperServer>emptyList());
+        final RtcSession out = RtcSessions.create(config);
+        final RtcSession in = RtcSessions.create(config);
+
+        out.setOnLocalCandidateListener(new CandidateBatcher(in));
+        in.setOnLocalCandidateListener(new CandidateBatcher(out));
+
+        final StreamSetMock streamSetMockOut = new StreamSetMock("initiator", Arrays.asList(
+                video("video1", true, true),
+                audio("audio1", true, true)
+        ));
+
+        final StreamSetMock streamSetMockIn = new StreamSetMock("peer", Arrays.asList(
+                video("video1", true, true),
+                audio("audio1", true, true)
+        ));
+
+        TestUtils.synchronous().timeout(30).run(new TestUtils.SynchronousBlock() {
+            @Override
+            public void run(final CountDownLatch latch) {
+                out.setOnLocalDescriptionListener(new RtcSession.OnLocalDescriptionListener() {
+                    @Override
+                    public void onLocalDescription(final SessionDescription localDescription) {
+                        try {
+                            in.setRemoteDescription(localDescription);
+                        } catch (InvalidDescriptionException e) {
+                            throw new RuntimeException(e);
+                        }
+                        in.start(streamSetMockIn);
+                    }
+                });
+                in.setOnLocalDescriptionListener(new RtcSession.OnLocalDescriptionListener() {
+                    @Override
+                    public void onLocalDescription(final SessionDescription localDescription) {
+                        try {
+                            out.setRemoteDescription(localDescription);
+                        } catch (InvalidDescriptionException e) {
+                            throw new RuntimeException(e);
+                        }
+                        latch.countDown();
+                    }
+                });
+                out.start(streamSetMockOut);
+            }
+        });
+
+        TestUtils.synchronous().timeout(15).latchCount(2).run(new TestUtils.SynchronousBlock() {
+            @Override
+            public void run(final CountDownLatch latch) {
+                streamSetMockOut.getMediaStream("audio1").waitForRemoteSource(latch);
+                streamSetMockIn.getMediaStream("audio1").waitForRemoteSource(latch);
+            }
+        });
+
+        out.stop();
+        in.stop();
+    }
+
+    public void testLocalCandidateBatchingCall() {
+        RtcConfig config = RtcConfigs.withLocalCandidateBatching(
+                RtcConfigs.defaultConfig(Collections.<RtcConfig.HelperServer>emptyList()), 50, 4);
+        final RtcSession out = RtcSessions.create(config);
+        final RtcSession in = RtcSessions.create(config);
+
+        final CandidateForwarder forwarderOut = new CandidateForwarder(in);
+        final CandidateForwarder forwarderIn = new CandidateForwarder(out);
+        out.setOnLocalCandidatesListener(forwarderOut);
+        in.setOnLocalCandidatesListener(forwarderIn);
+
+        final StreamSetMock streamSetMockOut = new StreamSetMock("initiator", Arrays.asList(
+                video("video1", true, true),
+                audio("audio1", true, true)
+        ));
+
+        final StreamSetMock streamSetMockIn = new StreamSetMock("peer", Arrays.asList(
+                video("video1", true, true),
+                audio("audio1", true, true)
+        ));
+
+        TestUtils.synchronous().timeout(30).run(new TestUtils.SynchronousBlock() {
+            @Override
+            public void run(final CountDownLatch latch) {
+                out.setOnLocalDescriptionListener(new RtcSession.OnLocalDescriptionListener() {
+                    @Override
+                    public void onLocalDescription(final SessionDescription localDescription) {
+                        try {
+                            in.setRemoteDescription(localDescription);
+                        } catch (InvalidDescriptionException e) {
+                            throw new RuntimeException(e);
+                        }
+                        in.start(streamSetMockIn);
+                    }
+                });
+                in.setOnLocalDescriptionListener(new RtcSession.OnLocalDescriptionListener() {
+                    @Override
+                    public void onLocalDescription(final SessionDescription localDescription) {
+                        try {
+                            out.setRemoteDescription(localDescription);
+                        } catch (InvalidDescriptionException e) {
+                            throw new RuntimeException(e);
+                        }
+                        latch.countDown();
+                    }
+                });
+                out.start(streamSetMockOut);
+            }
+        });
+
+        TestUtils.synchronous().timeout(15).latchCount(4).run(new TestUtils.SynchronousBlock() {
+            @Override
+            public void run(final CountDownLatch latch) {
+                forwarderOut.waitForEndOfCandidates(latch);
+                forwarderIn.waitForEndOfCandidates(latch);
+                streamSetMockOut.getMediaStream("audio1").waitForRemoteSource(latch);
+                streamSetMockIn.getMediaStream("audio1").waitForRemoteSource(latch);
+            }
+        });
+
+        out.stop();
+        in.stop();
     }
 
-    public void testEmptyCall() {
+    public void testDirectCallbackExecutor() {
         RtcConfig config = RtcConfigs.defaultConfig(Collections.<RtcConfig.HelperServer>emptyList());
         final RtcSession out = RtcSessions.create(config);
         final RtcSession in = RtcSessions.create(config);
+        final Executor executor = CallbackExecutors.direct();
+
+        out.setOnLocalCandidateListener(new DirectCandidateForwarder(in), executor);
+        in.setOnLocalCandidateListener(new DirectCandidateForwarder(out), executor);
 
         final StreamSetMock streamSetMockOut = new StreamSetMock("initiator", Arrays.asList(
-                video("video1", false, false),
-                audio("audio1", false, false)
+                video("video1", true, true),
+                audio("audio1", true, true)
         ));
 
         final StreamSetMock streamSetMockIn = new StreamSetMock("peer", Arrays.asList(
-                video("video1", false, false),
-                audio("audio1", false, false)
+                video("video1", true, true),
+                audio("audio1", true, true)
         ));
 
-        TestUtils.synchronous().timeout(5).run(new TestUtils.SynchronousBlock() {
+        TestUtils.synchronous().timeout(30).run(new TestUtils.SynchronousBlock() {
             @Override
             public void run(final CountDownLatch latch) {
-                Owr.getCaptureSources(EnumSet.of(MediaType.VIDEO, MediaType.AUDIO), new CaptureSourcesCallback() {
+                out.setOnLocalDescriptionListener(new RtcSession.OnLocalDescriptionListener() {
                     @Override
-                    public void onCaptureSourcesCallback(final List<MediaSource> list) {
-                        Log.d(TAG, "got capture sources: " + list.size());
-                        for (MediaSource source : list) {
-                            Log.d(TAG, "iterate source " + source.getName());
-                            if (source.getMediaType().contains(MediaType.VIDEO) && mVideoSource == null) {
-                                Log.d(TAG, "got video source: " + source + " " + source.getName());
-                                mVideoSource = source;
-                            } else if (source.getMediaType().contains(MediaType.AUDIO) && mAudioSource == null) {
-                                Log.d(TAG, "got audio source: " + source);
-                                mAudioSource = source;
-                            }
+                    public void onLocalDescription(final SessionDescription localDescription) {
+                        assertNotSame(Looper.getMainLooper(), Looper.myLooper());
+                        try {
+                            in.setRemoteDescription(localDescription);
+                        } catch (InvalidDescriptionException e) {
+                            throw new RuntimeException(e);
+                        }
+                        in.start(streamSetMockIn, executor);
+                    }
+                }, executor);
+                in.setOnLocalDescriptionListener(new RtcSession.OnLocalDescriptionListener() {
+                    @Override
+                    public void onLocalDescription(final SessionDescription localDescription) {
+                        assertNotSame(Looper.getMainLooper(), Looper.myLooper());
+                        try {
+                            out.setRemoteDescription(localDescription);
+                        } catch (InvalidDescriptionException e) {
+                            throw new RuntimeException(e);
                         }
                         latch.countDown();
                     }
-                });
+                }, executor);
+                out.start(streamSetMockOut, executor);
             }
         });
 
+        TestUtils.synchronous().timeout(15).latchCount(2).run(new TestUtils.SynchronousBlock() {
+            @Override
+            public void run(final CountDownLatch latch) {
+                streamSetMockOut.getMediaStream("audio1").waitForRemoteSource(latch);
+                streamSetMockIn.getMediaStream("audio1").waitForRemoteSource(latch);
+            }
+        });
+
+        out.stop();
+        in.stop();
+    }
+
+    private static class DirectCandidateForwarder implements RtcSession.OnLocalCandidateListener {
+        private final RtcSession mRemote;
+
+        private DirectCandidateForwarder(RtcSession remote) {
+            mRemote = remote;
+        }
+
+        @Override
+        public void onLocalCandidate(final RtcCandidate candidate) {
+            assertNotSame(Looper.getMainLooper(), Looper.myLooper());
+            mRemote.addRemoteCandidate(candidate);
+        }
+    }
+
+    /**
+     * Trickle-first mode leaves the candidates out of both descriptions, so the call can only be set up
+     * through the trickled candidates.
+     */
+    public void testTrickleFirstCall() {
+        RtcConfig config = RtcConfigs.withTrickleFirst(
+                RtcConfigs.defaultConfig(Collections.<RtcConfig.HelperServer>emptyList()));
+        final RtcSession out = RtcSessions.create(config);
+        final RtcSession in = RtcSessions.create(config);
+        final Executor executor = CallbackExecutors.direct();
+
+        out.setOnLocalCandidateListener(new DirectCandidateForwarder(in), executor);
+        in.setOnLocalCandidateListener(new DirectCandidateForwarder(out), executor);
+
+        final StreamSetMock streamSetMockOut = new StreamSetMock("initiator", Arrays.asList(
+                video("video1", true, true),
+                audio("audio1", true, true)
+        ));
+
+        final StreamSetMock streamSetMockIn = new StreamSetMock("peer", Arrays.asList(
+                video("video1", true, true),
+                audio("audio1", true, true)
+        ));
+
         TestUtils.synchronous().timeout(30).run(new TestUtils.SynchronousBlock() {
             @Override
             public void run(final CountDownLatch latch) {
                 out.setOnLocalDescriptionListener(new RtcSession.OnLocalDescriptionListener() {
                     @Override
                     public void onLocalDescription(final SessionDescription localDescription) {
-                        Log.w(TAG, "OFFER: " + SessionDescriptions.toJsep(localDescription));
+                        assertNoCandidates(localDescription);
                         try {
                             in.setRemoteDescription(localDescription);
                         } catch (InvalidDescriptionException e) {
                             throw new RuntimeException(e);
                         }
-                        in.start(streamSetMockIn);
+                        in.start(streamSetMockIn, executor);
                     }
-                });
+                }, executor);
                 in.setOnLocalDescriptionListener(new RtcSession.OnLocalDescriptionListener() {
                     @Override
                     public void onLocalDescription(final SessionDescription localDescription) {
+                        assertNoCandidates(localDescription);
                         try {
                             out.setRemoteDescription(localDescription);
                         } catch (InvalidDescriptionException e) {
                             throw new RuntimeException(e);
                         }
-                        Log.w(TAG, "ANSWER: " + SessionDescriptions.toJsep(localDescription));
                         latch.countDown();
                     }
-                });
-                out.start(streamSetMockOut);
-                Log.d(TAG, "waiting for call start");
+                }, executor);
+                out.start(streamSetMockOut, executor);
             }
         });
 
-        assertEquals(StreamMode.INACTIVE, streamSetMockOut.getMediaStream("video1").getStreamMode());
-        assertEquals(StreamMode.INACTIVE, streamSetMockOut.getMediaStream("audio1").getStreamMode());
-        assertEquals(StreamMode.INACTIVE, streamSetMockIn.getMediaStream("video1").getStreamMode());
-        assertEquals(StreamMode.INACTIVE, streamSetMockIn.getMediaStream("audio1").getStreamMode());
+        TestUtils.synchronous().timeout(15).latchCount(4).run(new TestUtils.SynchronousBlock() {
+            @Override
+            public void run(final CountDownLatch latch) {
+                streamSetMockOut.getMediaStream("video1").waitForRemoteSource(latch);
+                streamSetMockOut.getMediaStream("audio1").waitForRemoteSource(latch);
+                streamSetMockIn.getMediaStream("video1").waitForRemoteSource(latch);
+                streamSetMockIn.getMediaStream("audio1").waitForRemoteSource(latch);
+            }
+        });
 
         out.stop();
         in.stop();
     }
 
-    public void testJsepCall() {
+    private static void assertNoCandidates(SessionDescription sessionDescription) {
+        for (StreamDescription streamDescription : sessionDescription.getStreamDescriptions()) {
+            assertTrue(streamDescription.getCandidates().isEmpty());
+            assertNotNull(streamDescription.getUfrag());
+            assertNotNull(streamDescription.getPassword());
+        }
+    }
+
+    public void testMidOnlyCandidateCall() {
         RtcConfig config = RtcConfigs.defaultConfig(Collections.<RtcConfig.HelperServer>emptyList());
         final RtcSession out = RtcSessions.create(config);
         final RtcSession in = RtcSessions.create(config);
 
-        out.setOnLocalCandidateListener(new RtcSession.OnLocalCandidateListener() {
-            @Override
-            public void onLocalCandidate(final RtcCandidate candidate) {
-                assertSame(Looper.getMainLooper(), Looper.myLooper());
-                JSONObject json = RtcCandidates.toJsep(candidate);
-                Log.e(TAG, "LOCAL CANDIDATE out -> in: " + json);
-                in.addRemoteCandidate(RtcCandidates.fromJsep(json));
-            }
-        });
-        in.setOnLocalCandidateListener(new RtcSession.OnLocalCandidateListener() {
-            @Override
-            public void onLocalCandidate(final RtcCandidate candidate) {
-                assertSame(Looper.getMainLooper(), Looper.myLooper());
-                JSONObject json = RtcCandidates.toJsep(candidate);
-                Log.e(TAG, "LOCAL CANDIDATE in -> out: " + json);
-                out.addRemoteCandidate(RtcCandidates.fromJsep(json));
-            }
-        });
+        out.setOnLocalCandidateListener(new MidOnlyForwarder(in));
+        in.setOnLocalCandidateListener(new MidOnlyForwarder(out));
 
         final StreamSetMock streamSetMockOut = new StreamSetMock("initiator", Arrays.asList(
                 video("video1", true, true),
@@ -311,10 +910,10 @@ public class RtcSessionTest extends OwrTestCase {
                 out.setOnLocalDescriptionListener(new RtcSession.OnLocalDescriptionListener() {
                     @Override
                     public void onLocalDescription(final SessionDescription localDescription) {
-                        assertSame(Looper.getMainLooper(), Looper.myLooper());
-                        JSONObject jsepOffer = SessionDescriptions.toJsep(localDescription);
+                        assertEquals("0", localDescription.getStreamDescriptions().get(0).getMid());
+                        assertEquals("1", localDescription.getStreamDescriptions().get(1).getMid());
                         try {
-                            in.setRemoteDescription(SessionDescriptions.fromJsep(jsepOffer));
+                            in.setRemoteDescription(localDescription);
                         } catch (InvalidDescriptionException e) {
                             throw new RuntimeException(e);
                         }
@@ -324,10 +923,10 @@ public class RtcSessionTest extends OwrTestCase {
                 in.setOnLocalDescriptionListener(new RtcSession.OnLocalDescriptionListener() {
                     @Override
                     public void onLocalDescription(final SessionDescription localDescription) {
-                        assertSame(Looper.getMainLooper(), Looper.myLooper());
-                        JSONObject jsepAnswer = SessionDescriptions.toJsep(localDescription);
+                        assertEquals("0", localDescription.getStreamDescriptions().get(0).getMid());
+                        assertEquals("1", localDescription.getStreamDescriptions().get(1).getMid());
                         try {
-                            out.setRemoteDescription(SessionDescriptions.fromJsep(jsepAnswer));
+                            out.setRemoteDescription(localDescription);
                         } catch (InvalidDescriptionException e) {
                             throw new RuntimeException(e);
                         }
@@ -335,19 +934,109 @@ public class RtcSessionTest extends OwrTestCase {
                     }
                 });
                 out.start(streamSetMockOut);
-                Log.d(TAG, "waiting for call start");
             }
         });
 
-        assertEquals(StreamMode.SEND_RECEIVE, streamSetMockOut.getMediaStream("video1").getStreamMode());
-        assertEquals(StreamMode.SEND_RECEIVE, streamSetMockOut.getMediaStream("audio1").getStreamMode());
-        assertEquals(StreamMode.SEND_RECEIVE, streamSetMockIn.getMediaStream("video1").getStreamMode());
-        assertEquals(StreamMode.SEND_RECEIVE, streamSetMockIn.getMediaStream("audio1").getStreamMode());
+        TestUtils.synchronous().timeout(15).latchCount(2).run(new TestUtils.SynchronousBlock() {
+            @Override
+            public void run(final CountDownLatch latch) {
+                streamSetMockOut.getMediaStream("audio1").waitForRemoteSource(latch);
+                streamSetMockIn.getMediaStream("audio1").waitForRemoteSource(latch);
+            }
+        });
 
         out.stop();
         in.stop();
+    }
 
-        Log.d(TAG, "stopped");
+    /**
+     * Delivers local candidates to the other session with only a sdpMid, like some endpoints do
+     */
+    private static class MidOnlyForwarder implements RtcSession.OnLocalCandidateListener {
+        private final RtcSession mRemote;
+
+        private MidOnlyForwarder(RtcSession remote) {
+            mRemote = remote;
+        }
+
+        @Override
+        public void onLocalCandidate(final RtcCandidate candidate) {
+            assertNotNull(candidate.getStreamId());
+            JSONObject json = RtcCandidates.toJsep(candidate);
+            json.remove("sdpMLineIndex");
+            RtcCandidate midOnly = RtcCandidates.fromJsep(json);
+            assertEquals(-1, midOnly.getStreamIndex());
+            mRemote.addRemoteCandidate(midOnly);
+        }
+    }
+
+    /**
+     * Delivers batches of local candidates to the other session, and counts down a latch at the end of candidates
+     */
+    private static class CandidateForwarder implements RtcSession.OnLocalCandidatesListener {
+        private final RtcSession mRemote;
+        private CountDownLatch mLatch;
+        private boolean mEndOfCandidates = false;
+
+        private CandidateForwarder(RtcSession remote) {
+            mRemote = remote;
+        }
+
+        public synchronized void waitForEndOfCandidates(CountDownLatch latch) {
+            if (mEndOfCandidates) {
+                latch.countDown();
+            } else {
+                mLatch = latch;
+            }
+        }
+
+        @Override
+        public void onLocalCandidates(final List<RtcCandidate> candidates) {
+            assertSame(Looper.getMainLooper(), Looper.myLooper());
+            assertFalse(candidates.isEmpty());
+            assertTrue(candidates.size() <= 4);
+            mRemote.addRemoteCandidates(candidates);
+        }
+
+        @Override
+        public synchronized void onEndOfCandidates() {
+            assertSame(Looper.getMainLooper(), Looper.myLooper());
+            assertFalse(mEndOfCandidates);
+            mEndOfCandidates = true;
+            if (mLatch != null) {
+                mLatch.countDown();
+            }
+        }
+    }
+
+    /**
+     * Collects local candidates and delivers them to the other session as a JSEP array once per main loop iteration
+     */
+    private static class CandidateBatcher implements RtcSession.OnLocalCandidateListener, Runnable {
+        private final RtcSession mRemote;
+        private final Handler mHandler = new Handler(Looper.getMainLooper());
+        private final List<RtcCandidate> mCandidates = new ArrayList<>();
+
+        private CandidateBatcher(RtcSession remote) {
+            mRemote = remote;
+        }
+
+        @Override
+        public void onLocalCandidate(final RtcCandidate candidate) {
+            assertSame(Looper.getMainLooper(), Looper.myLooper());
+            if (mCandidates.isEmpty()) {
+                mHandler.post(this);
+            }
+            mCandidates.add(candidate);
+        }
+
+        @Override
+        public void run() {
+            JSONArray json = RtcCandidates.toJsepArray(mCandidates);
+            Log.d(TAG, "sending " + json.length() + " candidates");
+            mCandidates.clear();
+            mRemote.addRemoteCandidates(RtcCandidates.fromJsepArray(json));
+        }
     }
 
     public void testStopAndStartWithNew() {
@@ -674,6 +1363,106 @@ public class RtcSessionTest extends OwrTestCase {
         session2.addRemoteCandidate(candidate);
     }
 
+    public void testInterleavedEvents() throws InterruptedException {
+        RtcConfig config = RtcConfigs.defaultConfig(Collections.<RtcConfig.HelperServer>emptyList());
+        final RtcSession out = RtcSessions.create(config);
+        final RtcSession in = RtcSessions.create(config);
+
+        out.setOnLocalCandidateListener(new CandidateBatcher(in));
+        in.setOnLocalCandidateListener(new CandidateBatcher(out));
+
+        final StreamSetMock streamSetMockOut = new StreamSetMock("initiator", Arrays.asList(
+                video("video1", true, true),
+                audio("audio1", true, true)
+        ));
+
+        final StreamSetMock streamSetMockIn = new StreamSetMock("peer", Arrays.asList(
+                video("video1", true, true),
+                audio("audio1", true, true)
+        ));
+
+        // candidates for a stream that doesn't exist, they are dropped by the sessions but go through the same path
+        final int threadCount = 4;
+        final int eventCount = 1000;
+        final CountDownLatch done = new CountDownLatch(threadCount);
+        final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+        for (int i = 0; i < threadCount; i++) {
+            final int thread = i;
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int j = 0; j < eventCount; j++) {
+                            RtcSession session = j % 2 == 0 ? out : in;
+                            RtcCandidate candidate = new RtcCandidateImpl(99, "noise", "a", "b", "" + thread,
+                                    RtcCandidate.ComponentType.RTP, RtcCandidate.TransportType.UDP, 0,
+                                    "10.0." + thread + "." + (j % 250 + 1), j + 1, RtcCandidate.CandidateType.HOST, null, 0);
+                            if (j % 3 == 0) {
+                                session.addRemoteCandidates(Arrays.asList(candidate, candidate));
+                            } else {
+                                session.addRemoteCandidate(candidate);
+                            }
+                            if (j % 100 == 0) {
+                                session.getSetupTimelines();
+                            }
+                        }
+                    } catch (Throwable e) {
+                        errors.add(e);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+
+        TestUtils.synchronous().timeout(30).run(new TestUtils.SynchronousBlock() {
+            @Override
+            public void run(final CountDownLatch latch) {
+                out.setOnLocalDescriptionListener(new RtcSession.OnLocalDescriptionListener() {
+                    @Override
+                    public void onLocalDescription(final SessionDescription localDescription) {
+                        try {
+                            in.setRemoteDescription(localDescription);
+                        } catch (InvalidDescriptionException e) {
+                            throw new RuntimeException(e);
+                        }
+                        in.start(streamSetMockIn);
+                    }
+                });
+                in.setOnLocalDescriptionListener(new RtcSession.OnLocalDescriptionListener() {
+                    @Override
+                    public void onLocalDescription(final SessionDescription localDescription) {
+                        try {
+                            out.setRemoteDescription(localDescription);
+                        } catch (InvalidDescriptionException e) {
+                            throw new RuntimeException(e);
+                        }
+                        latch.countDown();
+                    }
+                });
+                out.start(streamSetMockOut);
+            }
+        });
+
+        TestUtils.synchronous().timeout(15).latchCount(2).run(new TestUtils.SynchronousBlock() {
+            @Override
+            public void run(final CountDownLatch latch) {
+                streamSetMockOut.getMediaStream("audio1").waitForRemoteSource(latch);
+                streamSetMockIn.getMediaStream("audio1").waitForRemoteSource(latch);
+            }
+        });
+
+        assertTrue(done.await(15, TimeUnit.SECONDS));
+        assertTrue(errors.toString(), errors.isEmpty());
+        assertEquals(2, out.getSetupTimelines().size());
+        assertEquals(2, in.getSetupTimelines().size());
+
+        out.stop();
+        in.stop();
+        assertTrue(out.getSetupTimelines().isEmpty());
+        assertTrue(in.getSetupTimelines().isEmpty());
+    }
+
     public void testInvalidCalls() {
         RtcConfig config = RtcConfigs.defaultConfig(Collections.<RtcConfig.HelperServer>emptyList());
         final RtcSession session = RtcSessions.create(config);
@@ -852,6 +1641,14 @@ public class RtcSessionTest extends OwrTestCase {
             return null;
         }
 
+        public void addStream(StreamConfig config) {
+            mStreams.add(new MediaStreamMock(config));
+        }
+
+        public void removeStream(String id) {
+            mStreams.remove(getMediaStream(id));
+        }
+
         public DataStreamMock getDataStream() {
             for (Stream stream : mStreams) {
                 if (stream instanceof DataStreamMock) {
@@ -26,6 +26,7 @@
 package com.ericsson.research.owr.sdk;
 
 import android.test.AndroidTestCase;
+import android.util.Log;
 import android.util.SparseArray;
 
 import org.json.JSONArray;
@@ -34,6 +35,7 @@ import org.json.JSONObject;
 
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.Map;
 
@@ -136,6 +138,38 @@ public class SdpProcessorTest extends AndroidTestCase {
             "c=IN IP4 0.0.0.0\r\n" +
             "a=sendrecv\r\n";
     private static final String sInvalidSdp = "y=application 0 NONE\r";
+    private static final String sEdgeCaseSdp = "" +
+            "v=0\r\n" +
+            "o=user@host 42 7 IN IP6 ::1\r\n" +
+            "s=\r\n" +
+            "t=1 2\r\n" +
+            "a=msid-semantic: WMS stream\r\n" +
+            "a=ice-ufrag:sessionUfrag\r\n" +
+            "a=ice-pwd:sessionPwd\r\n" +
+            "a=setup:passive\r\n" +
+            "m=audio 1 RTP/AVP  0 8 111 \r\n" +
+            "a=rtcp:12 IN IP4 1.2.3.4\r\n" +
+            "a=rtpmap:111 opus/48000/0\r\n" +
+            "a=fmtp:111 min-ptime=10;use-inband-fec=1;x=1e3;y=0x1F;z=-Infinity;w=5e-1;q=-;r=1_2\r\n" +
+            "a=ssrc:4294967295 cname:a+b/c@d.e\r\n" +
+            "a=ssrc:1 cname:other\r\n" +
+            "a=ssrc:4294967295 msid:stream track\r\n" +
+            "A=CANDIDATE:1 1 tcp 1 FE80::1 0 TYP host\r\n" +
+            "a=candidate:2 1 TCP 2 fe80::2 1234 typ host\r\n" +
+            "a=candidate:3 2 UDP 3 10.0.0.1 5000 typ srflx raddr  rport \r\n" +
+            "a=candidate:4 1 TCP 4 10.0.0.2 5001 typ relay raddr 10.0.0.3 rport 5002 tcptype passive\r\n" +
+            "a=fingerprint:SHA-1 ab:cd:ef\r\n" +
+            "m=video 1 RTP/SAVPF 100\n" +
+            "c=IN IP4 0.0.0.0\n" +
+            "a=rtcp-mux\n" +
+            "a=recvonly\n" +
+            "a=rtpmap:100 VP8/90000\n" +
+            "a=rtcp-fb:100 nack pli\n" +
+            "a=rtcp-fb:100 ccm fir\n" +
+            "a=msid:stream  videotrack\n" +
+            "m=text 1 RTP/AVP 0\n" +
+            "m=application 9 DTLS/SCTP 5000\r\n" +
+            "a=sctpmap:5000 webrtc-datachannel\r\n";
 
     public void testSimple() throws InvalidDescriptionException {
         JSONObject json = SdpProcessor.sdpToJson(sSimpleSdp);
@@ -164,6 +198,82 @@ public class SdpProcessorTest extends AndroidTestCase {
         assertEquals(0, mediaDescriptions.length());
     }
 
+    public void testParserMatchesScript() throws InvalidDescriptionException, JSONException {
+        for (String sdp : Arrays.asList(sSimpleSdp, sInvalidSdp, sDcSdp, sFfSdp, sEdgeCaseSdp)) {
+            assertJsonEquals(SdpProcessor.sdpToJsonWithScript(sdp), SdpProcessor.sdpToJson(sdp));
+        }
+    }
+
+    public void testParserPerformance() throws InvalidDescriptionException {
+        final int iterations = 50;
+        // warm up both implementations before measuring
+        SdpProcessor.sdpToJsonWithScript(sFfSdp);
+        SdpProcessor.sdpToJson(sFfSdp);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            SdpProcessor.sdpToJsonWithScript(sFfSdp);
+        }
+        long scriptTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            SdpProcessor.sdpToJson(sFfSdp);
+        }
+        long parserTime = System.nanoTime() - start;
+
+        Log.d(TAG, "sdp.js: " + scriptTime / iterations / 1000 + "us/parse, SdpParser: " +
+                parserTime / iterations / 1000 + "us/parse");
+        assertTrue(parserTime < scriptTime);
+    }
+
+    public void testWarmUp() throws InvalidDescriptionException, InterruptedException {
+        SdpProcessor.warmUp(true);
+        SdpProcessor.warmUp(true);
+        // waits for the warm-up to finish initializing sdp.js instead of doing it again
+        assertNotNull(SdpProcessor.sdpToJsonWithScript(sSimpleSdp));
+        assertTrue(SdpProcessor.getScriptInitTime() > 0);
+
+        for (int i = 0; i < 100 && SdpProcessor.getCodecWarmUpTime() < 0; i++) {
+            Thread.sleep(50);
+        }
+        assertTrue(SdpProcessor.getCodecWarmUpTime() > 0);
+        Log.d(TAG, "sdp.js init: " + SdpProcessor.getScriptInitTime() / 1000000 + "ms, codec warm-up: " +
+                SdpProcessor.getCodecWarmUpTime() / 1000 + "us");
+    }
+
+    public void testGeneratorMatchesScript() throws InvalidDescriptionException {
+        // sInvalidSdp has no session id, so both generators pick a random one, and sEdgeCaseSdp hits
+        // the sdp.js quirks that SdpGenerator fixes (dropped payload type 0, unfilled template placeholders)
+        for (String sdp : new String[] {sSimpleSdp, sDcSdp, sFfSdp}) {
+            JSONObject json = SdpProcessor.sdpToJson(sdp);
+            assertEquals(SdpProcessor.jsonToSdpWithScript(json), SdpProcessor.jsonToSdp(json));
+        }
+    }
+
+    public void testGeneratorPerformance() throws InvalidDescriptionException {
+        final int iterations = 50;
+        JSONObject json = SdpProcessor.sdpToJson(sFfSdp);
+        SdpProcessor.jsonToSdpWithScript(json);
+        SdpProcessor.jsonToSdp(json);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            SdpProcessor.jsonToSdpWithScript(json);
+        }
+        long scriptTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            SdpProcessor.jsonToSdp(json);
+        }
+        long generatorTime = System.nanoTime() - start;
+
+        Log.d(TAG, "sdp.js: " + scriptTime / iterations / 1000 + "us/generate, SdpGenerator: " +
+                generatorTime / iterations / 1000 + "us/generate");
+        assertTrue(generatorTime < scriptTime);
+    }
+
     public void testDatachannelSdp() throws InvalidDescriptionException {
         JSONObject json = SdpProcessor.sdpToJson(sDcSdp);
         assertNotNull(SdpProcessor.jsonToSdp(json));
@@ -411,6 +521,31 @@ public class SdpProcessorTest extends AndroidTestCase {
         assertEquals(fingerprint, dtls.optString("fingerprint"));
     }
 
+    private static void assertJsonEquals(Object expected, Object actual) throws JSONException {
+        if (expected instanceof JSONObject) {
+            assertTrue(actual instanceof JSONObject);
+            JSONObject expectedObject = (JSONObject) expected;
+            JSONObject actualObject = (JSONObject) actual;
+            assertEquals(expectedObject.length(), actualObject.length());
+            Iterator<String> keys = expectedObject.keys();
+            while (keys.hasNext()) {
+                String key = keys.next();
+                assertTrue("missing key: " + key, actualObject.has(key));
+                assertJsonEquals(expectedObject.get(key), actualObject.get(key));
+            }
+        } else if (expected instanceof JSONArray) {
+            assertTrue(actual instanceof JSONArray);
+            JSONArray expectedArray = (JSONArray) expected;
+            JSONArray actualArray = (JSONArray) actual;
+            assertEquals(expectedArray.length(), actualArray.length());
+            for (int i = 0; i < expectedArray.length(); i++) {
+                assertJsonEquals(expectedArray.get(i), actualArray.get(i));
+            }
+        } else {
+            assertEquals(expected, actual);
+        }
+    }
+
     private class IceCandidate {
         private final String mFoundation;
         private final int mComponentId;
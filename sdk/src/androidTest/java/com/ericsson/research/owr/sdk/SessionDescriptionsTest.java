@@ -26,6 +26,7 @@
 package com.ericsson.research.owr.sdk;
 
 import android.test.AndroidTestCase;
+import android.util.Log;
 
 import com.ericsson.research.owr.Owr;
 
@@ -33,10 +34,21 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class SessionDescriptionsTest extends AndroidTestCase {
+    private static final String TAG = "SessionDescriptionsTest";
 
     static {
         Owr.init();
@@ -396,6 +408,8 @@ public class SessionDescriptionsTest extends AndroidTestCase {
         assertEquals(2, desc.getStreamDescriptions().size());
 
         StreamDescription audio = desc.getStreamDescriptions().get(0);
+        assertEquals("audio", audio.getMid());
+        assertEquals("video", desc.getStreamDescriptions().get(1).getMid());
 
         assertEquals(-1, audio.getSctpPort());
         assertNull(audio.getAppLabel());
@@ -429,6 +443,248 @@ public class SessionDescriptionsTest extends AndroidTestCase {
         assertNull(audio.getPayloads().get(0).getParameters().get("useinbandfec"));
     }
 
+    public void testToJsepMatchesScript() throws JSONException, InvalidDescriptionException {
+        for (String jsepString : new String[] {sChromeOffer, sOwrAnswer}) {
+            SessionDescription desc = SessionDescriptions.fromJsep(new JSONObject(jsepString));
+            JSONObject jsep = SessionDescriptions.toJsep(desc);
+            String expected = SdpProcessor.jsonToSdpWithScript(jsep.getJSONObject("sessionDescription"));
+            assertEquals(expected, jsep.getString("sdp"));
+        }
+    }
+
+    public void testDirectCodecMatchesJson() throws JSONException, InvalidDescriptionException {
+        for (String jsepString : new String[] {sChromeOffer, sOwrAnswer}) {
+            JSONObject jsep = new JSONObject(jsepString);
+            SessionDescription desc = SessionDescriptions.fromJsep(jsep);
+            jsep.put("sessionDescription", SdpProcessor.sdpToJson(jsep.getString("sdp")));
+            SessionDescription descFromJson = SessionDescriptions.fromJsep(jsep);
+
+            assertEquals(descFromJson.getType(), desc.getType());
+            assertEquals(descFromJson.getSessionId(), desc.getSessionId());
+            assertEquals(descFromJson.getStreamDescriptions().size(), desc.getStreamDescriptions().size());
+            assertEquals(SessionDescriptions.toSdp(descFromJson), SessionDescriptions.toSdp(desc));
+            assertEquals(SessionDescriptions.toJsep(desc).getString("sdp"), SessionDescriptions.toSdp(desc));
+
+            SessionDescription sameDesc = SessionDescriptions.fromSdp(desc.getType(), SessionDescriptions.toSdp(desc));
+            assertEquals(SessionDescriptions.toSdp(desc), SessionDescriptions.toSdp(sameDesc));
+        }
+    }
+
+    public void testCachedRepresentations() throws JSONException, InvalidDescriptionException {
+        SessionDescription desc = SessionDescriptions.fromJsep(new JSONObject(sChromeOffer));
+        SessionDescription sameDesc = SessionDescriptions.fromJsep(new JSONObject(sChromeOffer));
+        SessionDescription otherDesc = SessionDescriptions.fromJsep(new JSONObject(sOwrAnswer));
+        assertEquals(desc, sameDesc);
+        assertEquals(desc.hashCode(), sameDesc.hashCode());
+        assertEquals(desc.getStreamDescriptions(), sameDesc.getStreamDescriptions());
+        assertFalse(desc.equals(otherDesc));
+
+        String sdp = SessionDescriptions.toSdp(desc);
+        assertSame(sdp, SessionDescriptions.toSdp(desc));
+
+        JSONObject jsep = SessionDescriptions.toJsep(desc);
+        assertSame(sdp, jsep.getString("sdp"));
+        jsep.put("type", "answer");
+        jsep.getJSONObject("sessionDescription").getJSONArray("mediaDescriptions").getJSONObject(0).put("type", "video");
+        JSONObject otherJsep = SessionDescriptions.toJsep(desc);
+        assertNotSame(jsep, otherJsep);
+        assertEquals("offer", otherJsep.getString("type"));
+        assertEquals("audio", otherJsep.getJSONObject("sessionDescription").getJSONArray("mediaDescriptions").getJSONObject(0).getString("type"));
+    }
+
+    public void testMutableStreamDescriptionIsCopied() {
+        MutableStreamDescription streamDescription = new MutableStreamDescription();
+        streamDescription.setType(StreamType.AUDIO);
+        streamDescription.setMode(StreamMode.SEND_RECEIVE);
+        streamDescription.setCname("cname");
+        SessionDescription desc = new SessionDescriptionImpl(SessionDescription.Type.OFFER, "123",
+                Arrays.<StreamDescription>asList(streamDescription));
+        String sdp = SessionDescriptions.toSdp(desc);
+
+        streamDescription.setMode(StreamMode.INACTIVE);
+        streamDescription.addSsrc(1234);
+        assertEquals(StreamMode.SEND_RECEIVE, desc.getStreamDescriptions().get(0).getMode());
+        assertTrue(desc.getStreamDescriptions().get(0).getSsrcs().isEmpty());
+        assertEquals(sdp, SdpGenerator.generate(desc));
+    }
+
+    public void testDiffAndPatch() throws JSONException, InvalidDescriptionException {
+        // generated SDP leaves out the BUNDLE group, so start from a description without one
+        String sdp = SessionDescriptions.toSdp(SessionDescriptions.fromJsep(new JSONObject(sChromeOffer)));
+        SessionDescription desc = SessionDescriptions.fromSdp(SessionDescription.Type.OFFER, sdp);
+        int videoIndex = sdp.indexOf("m=video");
+        String modifiedSdp = sdp.substring(0, videoIndex) +
+                sdp.substring(videoIndex).replace("a=sendrecv", "a=recvonly");
+        SessionDescription modifiedDesc = SessionDescriptions.fromSdp(SessionDescription.Type.OFFER, modifiedSdp);
+
+        SessionDescriptionDiff emptyDiff = SessionDescriptions.diff(desc, SessionDescriptions.fromSdp(SessionDescription.Type.OFFER, sdp));
+        assertTrue(emptyDiff.isEmpty());
+        assertTrue(emptyDiff.getChangedStreamIndices().isEmpty());
+        assertSame(desc, SessionDescriptions.patch(desc, emptyDiff));
+
+        SessionDescriptionDiff diff = SessionDescriptions.diff(desc, modifiedDesc);
+        assertFalse(diff.isEmpty());
+        assertEquals(2, diff.getStreamCount());
+        assertEquals(Collections.singletonList(1), diff.getChangedStreamIndices());
+        assertNull(diff.getStreamDescription(0));
+        assertEquals(StreamMode.RECEIVE_ONLY, diff.getStreamDescription(1).getMode());
+
+        SessionDescription patchedDesc = SessionDescriptions.patch(desc, diff);
+        assertEquals(modifiedDesc, patchedDesc);
+        assertSame(desc.getStreamDescriptions().get(0), patchedDesc.getStreamDescriptions().get(0));
+        assertEquals(modifiedSdp, SessionDescriptions.toSdp(patchedDesc));
+
+        SessionDescriptionDiff shrinkDiff = SessionDescriptions.diff(desc, new SessionDescriptionImpl(
+                SessionDescription.Type.OFFER, desc.getSessionId(), desc.getStreamDescriptions().subList(0, 1)));
+        assertEquals(1, shrinkDiff.getStreamCount());
+        assertTrue(shrinkDiff.getChangedStreamIndices().isEmpty());
+        assertEquals(1, SessionDescriptions.patch(desc, shrinkDiff).getStreamDescriptions().size());
+        SessionDescriptionDiff swapDiff = SessionDescriptions.diff(desc, new SessionDescriptionImpl(SessionDescription.Type.OFFER,
+                desc.getSessionId(), Arrays.asList(desc.getStreamDescriptions().get(1), desc.getStreamDescriptions().get(1))));
+        assertEquals(Collections.singletonList(0), swapDiff.getChangedStreamIndices());
+        try {
+            SessionDescriptions.patch(SessionDescriptions.patch(desc, shrinkDiff), swapDiff);
+            throw new RuntimeException("should not be reached");
+        } catch (IllegalArgumentException ignored) {
+        }
+    }
+
+    public void testBinaryConversion() throws JSONException, InvalidDescriptionException {
+        for (String json : new String[] {sChromeOffer, sOwrAnswer}) {
+            SessionDescription desc = SessionDescriptions.fromJsep(new JSONObject(json));
+            byte[] data = SessionDescriptions.toBinary(desc);
+            int jsepLength = SessionDescriptions.toJsep(desc).toString().length();
+            Log.d(TAG, "binary size: " + data.length + ", JSEP size: " + jsepLength);
+            assertTrue(data.length < jsepLength / 4);
+
+            SessionDescription decoded = SessionDescriptions.fromBinary(data);
+            assertEquals(desc, decoded);
+            assertEquals(SessionDescriptions.toSdp(desc), SessionDescriptions.toSdp(decoded));
+
+            byte[] truncated = new byte[data.length - 1];
+            System.arraycopy(data, 0, truncated, 0, truncated.length);
+            try {
+                SessionDescriptions.fromBinary(truncated);
+                throw new RuntimeException("should not be reached");
+            } catch (InvalidDescriptionException ignored) {
+            }
+            data[0]++;
+            try {
+                SessionDescriptions.fromBinary(data);
+                throw new RuntimeException("should not be reached");
+            } catch (InvalidDescriptionException ignored) {
+            }
+        }
+    }
+
+    public void testStreamingInput() throws JSONException, InvalidDescriptionException, IOException {
+        SessionDescription desc = SessionDescriptions.fromJsep(new JSONObject(sChromeOffer));
+        String sdp = new JSONObject(sChromeOffer).getString("sdp");
+        SessionDescription.Type type = SessionDescription.Type.OFFER;
+        byte[] bytes = sdp.getBytes("UTF-8");
+
+        assertEquals(desc, SessionDescriptions.fromSdp(type, new StringBuilder(sdp)));
+        assertEquals(desc, SessionDescriptions.fromSdp(type, CharBuffer.wrap(sdp)));
+        assertEquals(desc, SessionDescriptions.fromSdp(type, new StringReader(sdp)));
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        assertEquals(desc, SessionDescriptions.fromSdp(type, buffer));
+        assertFalse(buffer.hasRemaining());
+        ByteBuffer directBuffer = ByteBuffer.allocateDirect(bytes.length + 4);
+        directBuffer.put(new byte[] {1, 2}).put(bytes).put(new byte[] {3, 4});
+        directBuffer.position(2);
+        directBuffer.limit(2 + bytes.length);
+        assertEquals(desc, SessionDescriptions.fromSdp(type, directBuffer));
+
+        // a reader that returns a few characters at a time, like a socket would
+        Reader slowReader = new FilterReader(new StringReader(sdp)) {
+            @Override
+            public int read(char[] buffer, int offset, int length) throws IOException {
+                return super.read(buffer, offset, Math.min(length, 7));
+            }
+        };
+        assertEquals(desc, SessionDescriptions.fromSdp(type, slowReader));
+
+        byte[] invalidBytes = bytes.clone();
+        invalidBytes[10] = (byte) 0xff;
+        try {
+            SessionDescriptions.fromSdp(type, ByteBuffer.wrap(invalidBytes));
+            throw new RuntimeException("should not be reached");
+        } catch (InvalidDescriptionException ignored) {
+        }
+    }
+
+    public void testStreamingInputWithManyCandidates() throws JSONException, InvalidDescriptionException {
+        SessionDescription baseDesc = SessionDescriptions.fromJsep(new JSONObject(sChromeOffer));
+        String sdp = SessionDescriptions.toSdp(baseDesc);
+        int videoIndex = sdp.indexOf("m=video");
+        StringBuilder sb = new StringBuilder(sdp.substring(0, videoIndex));
+        for (int i = 0; i < 500; i++) {
+            sb.append("a=candidate:").append(i).append(" 1 UDP 2122260223 10.0.")
+                    .append(i / 256).append('.').append(i % 256).append(' ').append(50000 + i).append(" typ host\r\n");
+        }
+        sb.append(sdp.substring(videoIndex));
+
+        ByteBuffer buffer = ByteBuffer.wrap(sb.toString().getBytes(Charset.forName("UTF-8")));
+        SessionDescription desc = SessionDescriptions.fromSdp(SessionDescription.Type.OFFER, buffer);
+        StreamDescription audio = desc.getStreamDescriptions().get(0);
+        assertEquals(baseDesc.getStreamDescriptions().get(0).getCandidates().size() + 500, audio.getCandidates().size());
+        RtcCandidate last = audio.getCandidates().get(audio.getCandidates().size() - 1);
+        assertEquals("10.0.1.243", last.getAddress());
+        assertEquals(50499, last.getPort());
+        assertEquals(desc, SessionDescriptions.fromSdp(SessionDescription.Type.OFFER, sb));
+    }
+
+    public void testConcurrentConversion() throws Exception {
+        final JSONObject offer = new JSONObject(sChromeOffer);
+        final String expectedSdp = SessionDescriptions.toSdp(SessionDescriptions.fromJsep(offer));
+        final int iterations = 200;
+
+        runConversions(offer, expectedSdp, 1, iterations); // warm up
+        long singleThreadTime = 0;
+        for (int threadCount = 1; threadCount <= 8; threadCount *= 2) {
+            long time = runConversions(offer, expectedSdp, threadCount, iterations);
+            if (threadCount == 1) {
+                singleThreadTime = time;
+            }
+            Log.d(TAG, threadCount + " threads: " + iterations * threadCount * 1000000000L / time +
+                    " conversions/s, " + (float) singleThreadTime * threadCount / time + "x");
+        }
+    }
+
+    private static long runConversions(final JSONObject offer, final String expectedSdp, int threadCount, final int iterations) throws Exception {
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threadCount);
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        for (int i = 0; i < threadCount; i++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int j = 0; j < iterations; j++) {
+                            SessionDescription description = SessionDescriptions.fromJsep(offer);
+                            JSONObject jsep = SessionDescriptions.toJsep(description);
+                            assertEquals(expectedSdp, jsep.getString("sdp"));
+                        }
+                    } catch (Throwable e) {
+                        error.compareAndSet(null, e);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+        long startTime = System.nanoTime();
+        start.countDown();
+        done.await();
+        long time = System.nanoTime() - startTime;
+        if (error.get() != null) {
+            throw new AssertionError(error.get());
+        }
+        return time;
+    }
+
     public void testInvalidType() throws JSONException {
         JSONObject json = new JSONObject(sInvalidType);
         assertNotNull(json);
@@ -476,4 +732,59 @@ public class SessionDescriptionsTest extends AndroidTestCase {
         }
         throw new RuntimeException("should not be reached");
     }
+
+    public void testMid() throws Exception {
+        SessionDescription desc = SessionDescriptions.fromJsep(new JSONObject(sChromeOffer));
+        String sdp = SessionDescriptions.toSdp(desc);
+        assertTrue(sdp.contains("a=sendrecv\r\na=mid:audio\r\n"));
+        assertTrue(sdp.contains("a=sendrecv\r\na=mid:video\r\n"));
+
+        JSONObject json = SdpProcessor.sdpToJson(sdp);
+        assertEquals("audio", json.getJSONArray("mediaDescriptions").getJSONObject(0).getString("mid"));
+        assertEquals(sdp, SdpProcessor.jsonToSdpWithScript(json));
+
+        MutableStreamDescription streamDescription = new MutableStreamDescription();
+        streamDescription.setType(StreamType.AUDIO);
+        streamDescription.setMode(StreamMode.SEND_ONLY);
+        streamDescription.setFingerprint("AB:CD");
+        streamDescription.setFingerprintHashFunction("sha-256");
+        assertFalse(SdpGenerator.generate(streamDescription).contains("a=mid:"));
+        streamDescription.setMid("a~1");
+        assertTrue(SdpGenerator.generate(streamDescription).contains("a=sendonly\r\na=mid:a~1\r\n"));
+
+        SessionDescription withMid = new SessionDescriptionImpl(SessionDescription.Type.ANSWER, "1",
+                Collections.<StreamDescription>singletonList(streamDescription));
+        assertEquals("a~1", SessionDescriptions.fromBinary(SessionDescriptions.toBinary(withMid))
+                .getStreamDescriptions().get(0).getMid());
+        StreamDescription parsed = SessionDescriptions.fromSdp(SessionDescription.Type.ANSWER,
+                SessionDescriptions.toSdp(withMid)).getStreamDescriptions().get(0);
+        assertEquals("a~1", parsed.getMid());
+    }
+
+    public void testBundleGroup() throws Exception {
+        SessionDescription desc = SessionDescriptions.fromJsep(new JSONObject(sChromeOffer));
+        assertEquals(Arrays.asList("audio", "video"), desc.getBundleGroup());
+        JSONObject json = SdpProcessor.sdpToJson(new JSONObject(sChromeOffer).getString("sdp"));
+        assertEquals(2, json.getJSONArray("bundle").length());
+
+        // streams don't share a transport, so the group must never be written to SDP
+        String sdp = SessionDescriptions.toSdp(desc);
+        assertFalse(sdp.contains("a=group:"));
+        assertFalse(SdpProcessor.jsonToSdpWithScript(json).contains("a=group:"));
+        assertFalse(SdpProcessor.jsonToSdp(json).contains("a=group:"));
+        assertTrue(SessionDescriptions.fromSdp(SessionDescription.Type.OFFER, sdp).getBundleGroup().isEmpty());
+
+        assertEquals(desc, SessionDescriptions.fromBinary(SessionDescriptions.toBinary(desc)));
+        assertEquals(desc, SessionDescriptions.fromJsep(SessionDescriptions.toJsep(desc)));
+
+        SessionDescription unbundled = new SessionDescriptionImpl(desc.getType(), desc.getSessionId(),
+                desc.getStreamDescriptions());
+        assertTrue(unbundled.getBundleGroup().isEmpty());
+        assertFalse(unbundled.equals(desc));
+        assertFalse(SessionDescriptions.toSdp(unbundled).contains("a=group:"));
+        SessionDescriptionDiff diff = SessionDescriptions.diff(unbundled, desc);
+        assertFalse(diff.isEmpty());
+        assertTrue(diff.getChangedStreamIndices().isEmpty());
+        assertEquals(desc, SessionDescriptions.patch(unbundled, diff));
+    }
 }
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2015, Ericsson AB.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package com.ericsson.research.owr.sdk;
+
+import junit.framework.TestCase;
+
+public class SessionTimelineTest extends TestCase {
+    public void testRecorder() throws InterruptedException {
+        SessionTimeline.Recorder recorder = new SessionTimeline.Recorder(4);
+        SessionTimeline empty = recorder.snapshot();
+        assertEquals(0, empty.size());
+        assertEquals(0, empty.getDroppedCount());
+        assertEquals(SessionTimeline.NONE, empty.indexOf(SessionTimeline.Event.STOPPED, 0));
+
+        recorder.record(SessionTimeline.Event.STOPPED);
+        recorder.record(SessionTimeline.Event.PENDING_OFFER);
+        Thread.sleep(20);
+        recorder.record(SessionTimeline.Event.LOCAL_CANDIDATE, 1);
+        SessionTimeline timeline = recorder.snapshot();
+        assertEquals(3, timeline.size());
+        assertEquals(SessionTimeline.Event.STOPPED, timeline.getEvent(0));
+        assertEquals(SessionTimeline.NONE, timeline.getStreamIndex(0));
+        assertEquals(SessionTimeline.Event.LOCAL_CANDIDATE, timeline.getEvent(2));
+        assertEquals(1, timeline.getStreamIndex(2));
+        assertTrue(timeline.getTimeNanos(1) >= timeline.getTimeNanos(0));
+        assertTrue(timeline.getNanosBetween(SessionTimeline.Event.PENDING_OFFER,
+                SessionTimeline.Event.LOCAL_CANDIDATE) >= 20000000);
+        assertEquals(SessionTimeline.NONE, timeline.getNanosBetween(SessionTimeline.Event.LOCAL_CANDIDATE,
+                SessionTimeline.Event.PENDING_OFFER));
+        assertTrue(timeline.toString().contains("local_candidate[1]="));
+
+        // the oldest events are overwritten once the recorder is full
+        recorder.record(SessionTimeline.Event.WAIT_ANSWER);
+        recorder.record(SessionTimeline.Event.REMOTE_ANSWER);
+        recorder.record(SessionTimeline.Event.ACTIVE);
+        SessionTimeline wrapped = recorder.snapshot();
+        assertEquals(4, wrapped.size());
+        assertEquals(2, wrapped.getDroppedCount());
+        assertEquals(SessionTimeline.Event.LOCAL_CANDIDATE, wrapped.getEvent(0));
+        assertEquals(SessionTimeline.Event.ACTIVE, wrapped.getEvent(3));
+        assertEquals(2, wrapped.indexOf(SessionTimeline.Event.REMOTE_ANSWER, 0));
+        assertEquals(SessionTimeline.NONE, wrapped.indexOf(SessionTimeline.Event.REMOTE_ANSWER, 3));
+
+        // snapshots are not affected by later events
+        assertEquals(3, timeline.size());
+        assertEquals(SessionTimeline.Event.STOPPED, timeline.getEvent(0));
+    }
+
+    public void testStates() {
+        assertTrue(SessionTimeline.Event.STOPPED.isState());
+        assertTrue(SessionTimeline.Event.ACTIVE.isState());
+        assertFalse(SessionTimeline.Event.START.isState());
+        assertFalse(SessionTimeline.Event.REMOTE_CANDIDATE_BUFFERED.isState());
+        try {
+            new SessionTimeline.Recorder(0);
+            throw new RuntimeException("should not be reached");
+        } catch (IllegalArgumentException ignored) {
+        }
+    }
+}
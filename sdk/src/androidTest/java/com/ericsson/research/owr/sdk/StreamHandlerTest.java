@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2015, Ericsson AB.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package com.ericsson.research.owr.sdk;
+
+import com.ericsson.research.owr.Candidate;
+import com.ericsson.research.owr.MediaSession;
+import com.ericsson.research.owr.Session;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class StreamHandlerTest extends OwrTestCase {
+    private static RtcCandidate candidate(int index, String foundation, int port) {
+        return new RtcCandidateImpl(index, null, null, null, foundation, RtcCandidate.ComponentType.RTP,
+                RtcCandidate.TransportType.UDP, 1000, "127.0.0.1", port, RtcCandidate.CandidateType.HOST, null, 0);
+    }
+
+    private static StreamDescription remoteDescription(String ufrag, RtcCandidate... candidates) {
+        MutableStreamDescription streamDescription = new MutableStreamDescription();
+        streamDescription.setType(StreamType.DATA);
+        streamDescription.setMode(StreamMode.SEND_RECEIVE);
+        streamDescription.setMid("0");
+        streamDescription.setUfrag(ufrag);
+        streamDescription.setPassword("password");
+        for (RtcCandidate candidate : candidates) {
+            streamDescription.addCandidate(candidate);
+        }
+        return streamDescription;
+    }
+
+    private static List<Integer> remotePorts(RecordingStreamHandler handler) {
+        List<Integer> ports = new ArrayList<>();
+        for (Candidate candidate : handler.getRecordingSession().getRemoteCandidates()) {
+            ports.add(candidate.getPort());
+        }
+        return ports;
+    }
+
+    public void testRenegotiationDoesNotDuplicateRemoteCandidates() {
+        RecordingStreamHandler handler = new RecordingStreamHandler(
+                RtcConfigs.defaultConfig(Collections.<RtcConfig.HelperServer>emptyList()));
+        handler.setRemoteStreamDescription(remoteDescription("ufrag", candidate(0, "1", 5000), candidate(0, "2", 5002)));
+        assertEquals(2, handler.getRecordingSession().getRemoteCandidates().size());
+
+        // the same candidate trickled with a mid instead of in the description
+        RtcCandidate trickled = new RtcCandidateImpl(-1, "0", null, null, "3", RtcCandidate.ComponentType.RTP,
+                RtcCandidate.TransportType.UDP, 1000, "127.0.0.1", 5004, RtcCandidate.CandidateType.HOST, null, 0);
+        handler.onRemoteCandidate(trickled);
+        assertEquals(3, handler.getRecordingSession().getRemoteCandidates().size());
+
+        // a renegotiated description repeats the earlier candidates, only the new one should be added
+        handler.setRemoteStreamDescription(remoteDescription("ufrag", candidate(0, "1", 5000), candidate(0, "2", 5002),
+                candidate(0, "3", 5004), candidate(0, "4", 5006)));
+        assertEquals(Arrays.asList(5000, 5002, 5004, 5006), remotePorts(handler));
+        handler.stop();
+    }
+
+    public void testRenegotiationWithCandidatePolicy() {
+        RtcConfig config = RtcConfigs.withCandidatePolicy(
+                RtcConfigs.defaultConfig(Collections.<RtcConfig.HelperServer>emptyList()), CandidatePolicies.maxPerType(3));
+        RecordingStreamHandler handler = new RecordingStreamHandler(config);
+        handler.setRemoteStreamDescription(remoteDescription("ufrag", candidate(0, "1", 5000), candidate(0, "2", 5002)));
+        // the repeated candidates don't count against the limit a second time, so the new one still fits
+        handler.setRemoteStreamDescription(remoteDescription("ufrag", candidate(0, "1", 5000), candidate(0, "2", 5002),
+                candidate(0, "3", 5004)));
+        assertEquals(Arrays.asList(5000, 5002, 5004), remotePorts(handler));
+        handler.stop();
+    }
+
+    public void testMids() {
+        RtcConfig config = RtcConfigs.defaultConfig(Collections.<RtcConfig.HelperServer>emptyList());
+        RecordingStreamHandler offerer = new RecordingStreamHandler(config);
+        assertEquals("0", offerer.getMid());
+        offerer.stop();
+
+        MutableStreamDescription offer = (MutableStreamDescription) remoteDescription("ufrag");
+        offer.setMid("data");
+        RecordingStreamHandler answerer = new RecordingStreamHandler(config, offer);
+        assertEquals("data", answerer.getMid());
+        answerer.stop();
+
+        // an answer can't have mids if the offer didn't
+        offer.setMid(null);
+        RecordingStreamHandler midlessAnswerer = new RecordingStreamHandler(config, offer);
+        assertNull(midlessAnswerer.getMid());
+        assertNull(midlessAnswerer.getLocalStreamDescription().getMid());
+        midlessAnswerer.stop();
+    }
+
+    private static class RecordingSession extends MediaSession {
+        private final List<Candidate> mRemoteCandidates = new ArrayList<>();
+
+        RecordingSession(boolean isDtlsClient) {
+            super(isDtlsClient);
+        }
+
+        @Override
+        public void addRemoteCandidate(Candidate candidate) {
+            mRemoteCandidates.add(candidate);
+            super.addRemoteCandidate(candidate);
+        }
+
+        List<Candidate> getRemoteCandidates() {
+            return mRemoteCandidates;
+        }
+    }
+
+    private static class RecordingStreamHandler extends StreamHandler {
+        private final RecordingSession mRecordingSession;
+
+        RecordingStreamHandler(RtcConfig config) {
+            this(config, null);
+        }
+
+        RecordingStreamHandler(RtcConfig config, StreamDescription remoteDescription) {
+            super(0, remoteDescription, new StreamSet.Stream() {
+                @Override
+                public StreamType getType() {
+                    return StreamType.DATA;
+                }
+
+                @Override
+                public void setStreamMode(StreamMode mode) {
+                }
+            }, config, CallbackExecutors.direct(), CallbackExecutors.direct(), null);
+            mRecordingSession = (RecordingSession) getSession();
+        }
+
+        @Override
+        Session createSession(boolean isDtlsClient) {
+            return new RecordingSession(isDtlsClient);
+        }
+
+        RecordingSession getRecordingSession() {
+            return mRecordingSession;
+        }
+    }
+}
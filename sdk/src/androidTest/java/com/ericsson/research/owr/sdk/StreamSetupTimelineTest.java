@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2015, Ericsson AB.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package com.ericsson.research.owr.sdk;
+
+import junit.framework.TestCase;
+
+public class StreamSetupTimelineTest extends TestCase {
+    public void testRecorder() throws InterruptedException {
+        StreamSetupTimeline.Recorder recorder = new StreamSetupTimeline.Recorder();
+        StreamSetupTimeline empty = recorder.snapshot(1, "video", StreamType.VIDEO);
+        for (StreamSetupTimeline.Event event : StreamSetupTimeline.Event.values()) {
+            assertFalse(empty.hasReached(event));
+            assertEquals(StreamSetupTimeline.NOT_REACHED, empty.getTime(event));
+        }
+        assertEquals(1, empty.getStreamIndex());
+        assertEquals("video", empty.getMid());
+        assertEquals(StreamType.VIDEO, empty.getStreamType());
+
+        recorder.mark(StreamSetupTimeline.Event.SESSION_CREATED);
+        recorder.mark(StreamSetupTimeline.Event.FINGERPRINT);
+        StreamSetupTimeline first = recorder.snapshot(1, "video", StreamType.VIDEO);
+        Thread.sleep(20);
+        // only the first time of each event is kept
+        recorder.mark(StreamSetupTimeline.Event.FINGERPRINT);
+        recorder.mark(StreamSetupTimeline.Event.READY);
+        StreamSetupTimeline second = recorder.snapshot(1, "video", StreamType.VIDEO);
+
+        assertEquals(first.getTime(StreamSetupTimeline.Event.FINGERPRINT), second.getTime(StreamSetupTimeline.Event.FINGERPRINT));
+        assertFalse(first.hasReached(StreamSetupTimeline.Event.READY));
+        assertTrue(second.getTimeSinceCreation(StreamSetupTimeline.Event.READY) >= 20);
+        assertEquals(StreamSetupTimeline.NOT_REACHED, second.getTimeSinceCreation(StreamSetupTimeline.Event.CNAME));
+        assertFalse(first.equals(second));
+        assertEquals(second, recorder.snapshot(1, "video", StreamType.VIDEO));
+        assertEquals(second.hashCode(), recorder.snapshot(1, "video", StreamType.VIDEO).hashCode());
+        assertTrue(second.toString().contains("cname=-"));
+    }
+}
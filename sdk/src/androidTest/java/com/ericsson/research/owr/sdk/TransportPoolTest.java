@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2015, Ericsson AB.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package com.ericsson.research.owr.sdk;
+
+import com.ericsson.research.owr.Candidate;
+import com.ericsson.research.owr.CandidateType;
+import com.ericsson.research.owr.ComponentType;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class TransportPoolTest extends OwrTestCase {
+    private static final List<StreamType> sStreamTypes = Arrays.asList(StreamType.AUDIO, StreamType.VIDEO);
+
+    private static RtcConfig config() {
+        return RtcConfigs.defaultConfig(Collections.<RtcConfig.HelperServer>emptyList());
+    }
+
+    public void testTake() {
+        RtcConfig config = config();
+        assertNull(TransportPool.take(config, sStreamTypes));
+
+        TransportPool.prepare(config, sStreamTypes);
+        assertNull(TransportPool.take(config(), sStreamTypes));
+        assertNull(TransportPool.take(config, Arrays.asList(StreamType.VIDEO, StreamType.AUDIO)));
+        assertNull(TransportPool.take(config, Arrays.asList(StreamType.AUDIO, null)));
+        assertNull(TransportPool.take(config, Collections.singletonList(StreamType.AUDIO)));
+
+        TransportPool.PreparedTransport preparedTransport = TransportPool.take(config, sStreamTypes);
+        assertNotNull(preparedTransport);
+        assertNotNull(preparedTransport.getTransportAgent());
+        assertEquals(sStreamTypes, preparedTransport.getStreamTypes());
+        assertNotNull(preparedTransport.getSession(0).getSession());
+        assertNotNull(preparedTransport.getSession(1).getSession());
+        assertNotSame(preparedTransport.getSession(0).getSession(), preparedTransport.getSession(1).getSession());
+
+        // a prepared transport is only used once
+        assertNull(TransportPool.take(config, sStreamTypes));
+        assertFalse(TransportPool.cancel(config));
+    }
+
+    public void testCancel() {
+        RtcConfig config = config();
+        TransportPool.prepare(config, sStreamTypes);
+        TransportPool.prepare(config, sStreamTypes);
+        assertTrue(TransportPool.cancel(config));
+        assertFalse(TransportPool.cancel(config));
+        assertNull(TransportPool.take(config, sStreamTypes));
+    }
+
+    public void testRefresh() throws InterruptedException {
+        RtcConfig config = RtcConfigs.withPreparedTransportTtl(config(), 50);
+        TransportPool.prepare(config, sStreamTypes);
+        Thread.sleep(200);
+        TransportPool.PreparedTransport preparedTransport = TransportPool.take(config, sStreamTypes);
+        // the transport has been replaced by a fresh one, unless the refresh didn't get to run in time
+        if (preparedTransport != null) {
+            assertFalse(preparedTransport.isExpired());
+        }
+        TransportPool.cancel(config);
+    }
+
+    public void testRefreshLimit() throws InterruptedException {
+        RtcConfig config = RtcConfigs.withPreparedTransportTtl(config(), 20);
+        TransportPool.prepare(config, sStreamTypes);
+        TransportPool.PreparedTransport first = TransportPool.peek(config);
+        assertEquals(0, first.getRefreshCount());
+        Thread.sleep(20 * (TransportPool.MAX_REFRESH_COUNT + 1) + 500);
+        // the replaced transports have been released, and the pool gave up after the last refresh
+        assertTrue(first.getSession(0).isReleased());
+        assertTrue(first.getSession(1).isReleased());
+        assertNull(TransportPool.peek(config));
+        assertFalse(TransportPool.cancel(config));
+    }
+
+    public void testCancelReleasesSessions() {
+        RtcConfig config = config();
+        TransportPool.prepare(config, sStreamTypes);
+        TransportPool.PreparedTransport preparedTransport = TransportPool.peek(config);
+        assertFalse(preparedTransport.getSession(0).isReleased());
+        assertTrue(TransportPool.cancel(config));
+        assertTrue(preparedTransport.getSession(0).isReleased());
+        assertTrue(preparedTransport.getSession(1).isReleased());
+
+        // a released session doesn't keep events
+        preparedTransport.getSession(0).onNewCandidate(new Candidate(CandidateType.HOST, ComponentType.RTP));
+        assertEquals(0, preparedTransport.getSession(0).getPendingEventCount());
+    }
+
+    public void testPreparedSessionEvents() {
+        RtcConfig config = config();
+        TransportPool.prepare(config, Collections.singletonList(StreamType.DATA));
+        TransportPool.PreparedSession preparedSession = TransportPool.take(config,
+                Collections.singletonList(StreamType.DATA)).getSession(0);
+        int pending = preparedSession.getPendingEventCount();
+        preparedSession.onDtlsCertificateChanged("pem");
+        preparedSession.onNewCandidate(new Candidate(CandidateType.HOST, ComponentType.RTP));
+        preparedSession.onCandidateGatheringDone();
+        assertEquals(pending + 3, preparedSession.getPendingEventCount());
+    }
+
+    public void testPreparedMediaSessionEvents() {
+        RtcConfig config = config();
+        TransportPool.prepare(config, Collections.singletonList(StreamType.AUDIO));
+        TransportPool.PreparedSession preparedSession = TransportPool.take(config,
+                Collections.singletonList(StreamType.AUDIO)).getSession(0);
+        int pending = preparedSession.getPendingEventCount();
+        // the CNAME and SSRC are needed before a media stream is ready, so they are kept as well
+        preparedSession.onCnameChanged("cname");
+        preparedSession.onSendSsrcChanged(1234);
+        assertEquals(pending + 2, preparedSession.getPendingEventCount());
+    }
+
+    public void testInvalidArguments() {
+        try {
+            TransportPool.prepare(null, sStreamTypes);
+            throw new RuntimeException("should not be reached");
+        } catch (NullPointerException ignored) {
+        }
+        try {
+            TransportPool.prepare(config(), null);
+            throw new RuntimeException("should not be reached");
+        } catch (NullPointerException ignored) {
+        }
+        try {
+            TransportPool.prepare(config(), Collections.<StreamType>emptyList());
+            throw new RuntimeException("should not be reached");
+        } catch (IllegalArgumentException ignored) {
+        }
+        try {
+            TransportPool.prepare(config(), Arrays.asList(StreamType.AUDIO, null));
+            throw new RuntimeException("should not be reached");
+        } catch (NullPointerException ignored) {
+        }
+        try {
+            RtcConfigs.withPreparedTransportTtl(config(), 0);
+            throw new RuntimeException("should not be reached");
+        } catch (IllegalArgumentException ignored) {
+        }
+    }
+}
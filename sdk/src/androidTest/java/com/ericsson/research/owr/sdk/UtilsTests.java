@@ -1102,6 +1102,11 @@ public class UtilsTests extends TestCase {
             return null;
         }
 
+        @Override
+        public List<String> getBundleGroup() {
+            return Collections.emptyList();
+        }
+
         @Override
         public boolean hasStreamType(final StreamType streamType) {
             return false;
@@ -1125,6 +1130,11 @@ public class UtilsTests extends TestCase {
             return null;
         }
 
+        @Override
+        public String getMid() {
+            return null;
+        }
+
         @Override
         public String getUfrag() {
             return null;
@@ -0,0 +1,455 @@
+/*
+ * Copyright (c) 2015, Ericsson AB.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package com.ericsson.research.owr.sdk;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compact binary encoding of session descriptions and candidates, used as an alternative to JSEP
+ * messages when signaling bandwidth is limited.
+ *
+ * A message starts with a version byte and a message kind byte. Integers are written as varints, signed
+ * values that may be -1 are zigzag encoded, and enums are written as their ordinals. Strings are written
+ * as references into a string table that is built while the message is read, a reference of 0 is null,
+ * 1 means that a new string follows and is added to the table, and any other value refers to an earlier
+ * string. Repeated values such as ufrags, passwords and fingerprints are thereby only sent once.
+ */
+class BinaryCodec {
+    static final int VERSION = 3;
+
+    private static final int KIND_SESSION_DESCRIPTION = 1;
+    private static final int KIND_CANDIDATE = 2;
+
+    private static final int STRING_NULL = 0;
+    private static final int STRING_NEW = 1;
+    private static final int STRING_TABLE_OFFSET = 2;
+
+    private static final int VALUE_INT = 0;
+    private static final int VALUE_LONG = 1;
+    private static final int VALUE_DOUBLE = 2;
+    private static final int VALUE_BOOLEAN = 3;
+    private static final int VALUE_STRING = 4;
+
+    private static final int FLAG_RTCP_MUX = 1;
+    private static final int FLAG_NACK = 1;
+    private static final int FLAG_NACK_PLI = 2;
+    private static final int FLAG_CCM_FIR = 4;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private BinaryCodec() {}
+
+    static byte[] encode(SessionDescription sessionDescription) {
+        Writer writer = new Writer(KIND_SESSION_DESCRIPTION);
+        writer.writeVarint(sessionDescription.getType().ordinal());
+        writer.writeString(sessionDescription.getSessionId());
+        List<String> bundleGroup = sessionDescription.getBundleGroup();
+        writer.writeVarint(bundleGroup.size());
+        for (String mid : bundleGroup) {
+            writer.writeString(mid);
+        }
+        List<StreamDescription> streamDescriptions = sessionDescription.getStreamDescriptions();
+        writer.writeVarint(streamDescriptions.size());
+        for (StreamDescription streamDescription : streamDescriptions) {
+            writeStreamDescription(writer, streamDescription);
+        }
+        return writer.toByteArray();
+    }
+
+    static byte[] encode(RtcCandidate candidate) {
+        Writer writer = new Writer(KIND_CANDIDATE);
+        writeCandidate(writer, candidate);
+        return writer.toByteArray();
+    }
+
+    static SessionDescription decodeSessionDescription(byte[] data) throws InvalidDescriptionException {
+        Reader reader = new Reader(data, KIND_SESSION_DESCRIPTION);
+        SessionDescription.Type type = reader.readEnum(SessionDescription.Type.values());
+        String sessionId = reader.readString();
+        int bundleSize = reader.readCount();
+        List<String> bundleGroup = new ArrayList<>(bundleSize);
+        for (int i = 0; i < bundleSize; i++) {
+            bundleGroup.add(reader.readString());
+        }
+        int streamCount = reader.readCount();
+        List<StreamDescription> streamDescriptions = new ArrayList<>(streamCount);
+        for (int i = 0; i < streamCount; i++) {
+            streamDescriptions.add(readStreamDescription(reader));
+        }
+        reader.finish();
+        return new SessionDescriptionImpl(type, sessionId, streamDescriptions, bundleGroup);
+    }
+
+    static RtcCandidate decodeCandidate(byte[] data) throws InvalidDescriptionException {
+        Reader reader = new Reader(data, KIND_CANDIDATE);
+        RtcCandidate candidate = readCandidate(reader);
+        reader.finish();
+        return candidate;
+    }
+
+    private static void writeStreamDescription(Writer writer, StreamDescription streamDescription) {
+        writer.writeVarint(streamDescription.getType().ordinal());
+        writer.writeVarint(streamDescription.getMode().ordinal());
+        writer.writeString(streamDescription.getMid());
+        writer.writeString(streamDescription.getUfrag());
+        writer.writeString(streamDescription.getPassword());
+        writer.writeString(streamDescription.getDtlsSetup());
+        writer.writeString(streamDescription.getFingerprint());
+        writer.writeString(streamDescription.getFingerprintHashFunction());
+        if (streamDescription.getType() == StreamType.DATA) {
+            writer.writeSigned(streamDescription.getSctpPort());
+            writer.writeSigned(streamDescription.getSctpStreamCount());
+            writer.writeString(streamDescription.getAppLabel());
+        } else {
+            writer.writeString(streamDescription.getMediaStreamId());
+            writer.writeString(streamDescription.getMediaStreamTrackId());
+            writer.writeString(streamDescription.getCname());
+            writer.writeVarint(streamDescription.isRtcpMux() ? FLAG_RTCP_MUX : 0);
+            List<Long> ssrcs = streamDescription.getSsrcs();
+            writer.writeVarint(ssrcs.size());
+            for (long ssrc : ssrcs) {
+                writer.writeVarint(ssrc);
+            }
+            List<RtcPayload> payloads = streamDescription.getPayloads();
+            writer.writeVarint(payloads.size());
+            for (RtcPayload payload : payloads) {
+                writePayload(writer, payload);
+            }
+        }
+        List<RtcCandidate> candidates = streamDescription.getCandidates();
+        writer.writeVarint(candidates.size());
+        for (RtcCandidate candidate : candidates) {
+            writeCandidate(writer, candidate);
+        }
+    }
+
+    private static StreamDescription readStreamDescription(Reader reader) throws InvalidDescriptionException {
+        StreamType streamType = reader.readEnum(StreamType.values());
+        StreamMode mode = reader.readEnum(StreamMode.values());
+        String mid = reader.readString();
+        String ufrag = reader.readString();
+        String password = reader.readString();
+        String dtlsSetup = reader.readString();
+        String fingerprint = reader.readString();
+        String fingerprintHashFunction = reader.readString();
+        if (streamType == StreamType.DATA) {
+            int sctpPort = reader.readSigned();
+            int sctpStreamCount = reader.readSigned();
+            String appLabel = reader.readString();
+            List<RtcCandidate> candidates = readCandidates(reader);
+            return new StreamDescriptionImpl(streamType, mode, ufrag, password, candidates, dtlsSetup, fingerprint, fingerprintHashFunction, sctpPort, sctpStreamCount, appLabel, mid);
+        }
+        String mediaStreamId = reader.readString();
+        String mediaStreamTrackId = reader.readString();
+        String cname = reader.readString();
+        boolean rtcpMux = (reader.readVarint() & FLAG_RTCP_MUX) != 0;
+        int ssrcCount = reader.readCount();
+        List<Long> ssrcs = new ArrayList<>(ssrcCount);
+        for (int i = 0; i < ssrcCount; i++) {
+            ssrcs.add(reader.readVarLong());
+        }
+        int payloadCount = reader.readCount();
+        List<RtcPayload> payloads = new ArrayList<>(payloadCount);
+        for (int i = 0; i < payloadCount; i++) {
+            payloads.add(readPayload(reader));
+        }
+        List<RtcCandidate> candidates = readCandidates(reader);
+        return new StreamDescriptionImpl(streamType, mode, ufrag, password, candidates, dtlsSetup, fingerprint, fingerprintHashFunction, mediaStreamId, mediaStreamTrackId, cname, rtcpMux, ssrcs, payloads, mid);
+    }
+
+    private static void writePayload(Writer writer, RtcPayload payload) {
+        writer.writeVarint(payload.getPayloadType());
+        writer.writeString(payload.getEncodingName());
+        writer.writeVarint(payload.getClockRate());
+        writer.writeSigned(payload.getChannels());
+        int flags = 0;
+        if (payload.isNack()) {
+            flags |= FLAG_NACK;
+        }
+        if (payload.isNackPli()) {
+            flags |= FLAG_NACK_PLI;
+        }
+        if (payload.isCcmFir()) {
+            flags |= FLAG_CCM_FIR;
+        }
+        writer.writeVarint(flags);
+        Map<String, Object> parameters = payload.getParameters();
+        if (parameters == null) {
+            writer.writeVarint(0);
+            return;
+        }
+        writer.writeVarint(parameters.size());
+        for (Map.Entry<String, Object> parameter : parameters.entrySet()) {
+            writer.writeString(parameter.getKey());
+            writeValue(writer, parameter.getValue());
+        }
+    }
+
+    private static RtcPayload readPayload(Reader reader) throws InvalidDescriptionException {
+        int payloadType = reader.readVarint();
+        String encodingName = reader.readString();
+        int clockRate = reader.readVarint();
+        int channels = reader.readSigned();
+        int flags = reader.readVarint();
+        int parameterCount = reader.readCount();
+        Map<String, Object> parameters = null;
+        if (parameterCount > 0) {
+            parameters = new LinkedHashMap<>();
+            for (int i = 0; i < parameterCount; i++) {
+                String key = reader.readString();
+                parameters.put(key, readValue(reader));
+            }
+        }
+        return new RtcPayloadImpl(payloadType, encodingName, clockRate, parameters, channels,
+                (flags & FLAG_NACK) != 0, (flags & FLAG_NACK_PLI) != 0, (flags & FLAG_CCM_FIR) != 0);
+    }
+
+    private static void writeValue(Writer writer, Object value) {
+        if (value instanceof Integer) {
+            writer.writeVarint(VALUE_INT);
+            writer.writeSigned((Integer) value);
+        } else if (value instanceof Long) {
+            writer.writeVarint(VALUE_LONG);
+            writer.writeSigned((Long) value);
+        } else if (value instanceof Double || value instanceof Float) {
+            writer.writeVarint(VALUE_DOUBLE);
+            writer.writeVarint(Double.doubleToLongBits(((Number) value).doubleValue()));
+        } else if (value instanceof Boolean) {
+            writer.writeVarint(VALUE_BOOLEAN);
+            writer.writeVarint((Boolean) value ? 1 : 0);
+        } else {
+            writer.writeVarint(VALUE_STRING);
+            writer.writeString(value == null ? null : value.toString());
+        }
+    }
+
+    private static Object readValue(Reader reader) throws InvalidDescriptionException {
+        int valueType = reader.readVarint();
+        switch (valueType) {
+            case VALUE_INT:
+                return reader.readSigned();
+            case VALUE_LONG:
+                return reader.readSignedLong();
+            case VALUE_DOUBLE:
+                return Double.longBitsToDouble(reader.readVarLong());
+            case VALUE_BOOLEAN:
+                return reader.readVarint() != 0;
+            case VALUE_STRING:
+                return reader.readString();
+            default:
+                throw new InvalidDescriptionException("invalid parameter value type: " + valueType);
+        }
+    }
+
+    private static void writeCandidate(Writer writer, RtcCandidate candidate) {
+        writer.writeSigned(candidate.getStreamIndex());
+        writer.writeString(candidate.getStreamId());
+        writer.writeString(candidate.getUfrag());
+        writer.writeString(candidate.getPassword());
+        writer.writeString(candidate.getFoundation());
+        writer.writeVarint(candidate.getComponentType().ordinal());
+        writer.writeVarint(candidate.getTransportType().ordinal());
+        writer.writeVarint(candidate.getPriority() & 0xFFFFFFFFL);
+        writer.writeString(candidate.getAddress());
+        writer.writeVarint(candidate.getPort());
+        writer.writeVarint(candidate.getType().ordinal());
+        writer.writeString(candidate.getRelatedAddress());
+        writer.writeSigned(candidate.getRelatedPort());
+    }
+
+    private static RtcCandidate readCandidate(Reader reader) throws InvalidDescriptionException {
+        int streamIndex = reader.readSigned();
+        String streamId = reader.readString();
+        String ufrag = reader.readString();
+        String password = reader.readString();
+        String foundation = reader.readString();
+        RtcCandidate.ComponentType componentType = reader.readEnum(RtcCandidate.ComponentType.values());
+        RtcCandidate.TransportType transportType = reader.readEnum(RtcCandidate.TransportType.values());
+        int priority = (int) reader.readVarLong();
+        String address = reader.readString();
+        int port = reader.readVarint();
+        RtcCandidate.CandidateType type = reader.readEnum(RtcCandidate.CandidateType.values());
+        String relatedAddress = reader.readString();
+        int relatedPort = reader.readSigned();
+        return new RtcCandidateImpl(streamIndex, streamId, ufrag, password, foundation, componentType,
+                transportType, priority, address, port, type, relatedAddress, relatedPort);
+    }
+
+    private static List<RtcCandidate> readCandidates(Reader reader) throws InvalidDescriptionException {
+        int candidateCount = reader.readCount();
+        List<RtcCandidate> candidates = new ArrayList<>(candidateCount);
+        for (int i = 0; i < candidateCount; i++) {
+            candidates.add(readCandidate(reader));
+        }
+        return candidates;
+    }
+
+    private static class Writer {
+        private final ByteArrayOutputStream mOutput = new ByteArrayOutputStream(256);
+        private final Map<String, Integer> mStringTable = new HashMap<>();
+
+        Writer(int kind) {
+            mOutput.write(VERSION);
+            mOutput.write(kind);
+        }
+
+        void writeVarint(long value) {
+            while ((value & ~0x7FL) != 0) {
+                mOutput.write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            mOutput.write((int) value);
+        }
+
+        void writeSigned(long value) {
+            writeVarint((value << 1) ^ (value >> 63));
+        }
+
+        void writeString(String value) {
+            if (value == null) {
+                writeVarint(STRING_NULL);
+                return;
+            }
+            Integer index = mStringTable.get(value);
+            if (index != null) {
+                writeVarint(index + STRING_TABLE_OFFSET);
+                return;
+            }
+            mStringTable.put(value, mStringTable.size());
+            byte[] bytes = value.getBytes(UTF_8);
+            writeVarint(STRING_NEW);
+            writeVarint(bytes.length);
+            mOutput.write(bytes, 0, bytes.length);
+        }
+
+        byte[] toByteArray() {
+            return mOutput.toByteArray();
+        }
+    }
+
+    private static class Reader {
+        private final byte[] mData;
+        private int mPosition;
+        private final List<String> mStringTable = new ArrayList<>();
+
+        Reader(byte[] data, int kind) throws InvalidDescriptionException {
+            mData = data;
+            mPosition = 0;
+            int version = readByte();
+            if (version != VERSION) {
+                throw new InvalidDescriptionException("unsupported version: " + version);
+            }
+            int actualKind = readByte();
+            if (actualKind != kind) {
+                throw new InvalidDescriptionException("unexpected message kind: " + actualKind);
+            }
+        }
+
+        private int readByte() throws InvalidDescriptionException {
+            if (mPosition >= mData.length) {
+                throw new InvalidDescriptionException("unexpected end of data");
+            }
+            return mData[mPosition++] & 0xFF;
+        }
+
+        long readVarLong() throws InvalidDescriptionException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new InvalidDescriptionException("malformed varint");
+        }
+
+        int readVarint() throws InvalidDescriptionException {
+            long value = readVarLong();
+            if (value > Integer.MAX_VALUE) {
+                throw new InvalidDescriptionException("value out of range: " + value);
+            }
+            return (int) value;
+        }
+
+        int readCount() throws InvalidDescriptionException {
+            int count = readVarint();
+            // every element takes up at least one byte, so this protects against huge allocations
+            if (count > mData.length - mPosition) {
+                throw new InvalidDescriptionException("invalid count: " + count);
+            }
+            return count;
+        }
+
+        long readSignedLong() throws InvalidDescriptionException {
+            long value = readVarLong();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        int readSigned() throws InvalidDescriptionException {
+            return (int) readSignedLong();
+        }
+
+        <T extends Enum<T>> T readEnum(T[] values) throws InvalidDescriptionException {
+            int ordinal = readVarint();
+            if (ordinal >= values.length) {
+                throw new InvalidDescriptionException("invalid " + values.getClass().getComponentType().getSimpleName() + " ordinal: " + ordinal);
+            }
+            return values[ordinal];
+        }
+
+        String readString() throws InvalidDescriptionException {
+            int reference = readVarint();
+            if (reference == STRING_NULL) {
+                return null;
+            }
+            if (reference == STRING_NEW) {
+                int length = readCount();
+                String value = new String(mData, mPosition, length, UTF_8);
+                mPosition += length;
+                mStringTable.add(value);
+                return value;
+            }
+            int index = reference - STRING_TABLE_OFFSET;
+            if (index >= mStringTable.size()) {
+                throw new InvalidDescriptionException("invalid string reference: " + reference);
+            }
+            return mStringTable.get(index);
+        }
+
+        void finish() throws InvalidDescriptionException {
+            if (mPosition != mData.length) {
+                throw new InvalidDescriptionException("unexpected data after end of message");
+            }
+        }
+    }
+}
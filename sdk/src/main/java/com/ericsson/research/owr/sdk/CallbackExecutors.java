@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2015, Ericsson AB.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package com.ericsson.research.owr.sdk;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Executors that can be used to choose the thread that the callbacks of the SDK are called on.
+ */
+public class CallbackExecutors {
+    private static Executor sMainThreadExecutor;
+
+    private static final Executor sDirectExecutor = new Executor() {
+        @Override
+        public void execute(Runnable runnable) {
+            runnable.run();
+        }
+    };
+
+    private CallbackExecutors() {}
+
+    /**
+     * Returns the executor that is used when no executor is given, it posts the callbacks to the main Looper.
+     * @return an executor that runs tasks on the main thread
+     */
+    public static synchronized Executor mainThread() {
+        if (sMainThreadExecutor == null) {
+            final Handler handler = new Handler(Looper.getMainLooper());
+            sMainThreadExecutor = new Executor() {
+                @Override
+                public void execute(Runnable runnable) {
+                    handler.post(runnable);
+                }
+            };
+        }
+        return sMainThreadExecutor;
+    }
+
+    /**
+     * Returns an executor that calls the callbacks straight away on the thread of the SDK, skipping the hop to the
+     * main thread. The callbacks should return quickly, since they are blocking the SDK while they run.
+     * @return an executor that runs tasks on the calling thread
+     */
+    public static Executor direct() {
+        return sDirectExecutor;
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright (c) 2015, Ericsson AB.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package com.ericsson.research.owr.sdk;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An uninstantiable class that provides common candidate policies
+ */
+public class CandidatePolicies {
+    private CandidatePolicies() {
+    }
+
+    /**
+     * Creates a policy where only relay candidates are signaled. The policy doesn't restrict gathering or
+     * connectivity checks: the ICE agent still gathers host and server reflexive candidates and checks pairs
+     * from them, so the local addresses can still reach the peer through peer reflexive candidates, and media
+     * may still be sent directly. Remote candidates are not filtered.
+     * @return a new candidate policy
+     */
+    public static CandidatePolicy relayOnly() {
+        return new Filter(true, false) {
+            @Override
+            boolean accept(RtcCandidate candidate) {
+                return candidate.getType() == RtcCandidate.CandidateType.RELAY;
+            }
+        };
+    }
+
+    /**
+     * Creates a policy that drops all local and remote TCP candidates.
+     * @return a new candidate policy
+     */
+    public static CandidatePolicy noTcp() {
+        return new Filter(true, true) {
+            @Override
+            boolean accept(RtcCandidate candidate) {
+                return candidate.getTransportType() == RtcCandidate.TransportType.UDP;
+            }
+        };
+    }
+
+    /**
+     * Creates a policy that places IPv6 candidates before IPv4 candidates, keeping the order within each group.
+     * @return a new candidate policy
+     */
+    public static CandidatePolicy ipv6First() {
+        return new CandidatePolicy() {
+            @Override
+            public List<RtcCandidate> selectLocalCandidates(List<RtcCandidate> selected, List<RtcCandidate> candidates) {
+                return sortIpv6First(candidates);
+            }
+
+            @Override
+            public List<RtcCandidate> selectRemoteCandidates(List<RtcCandidate> selected, List<RtcCandidate> candidates) {
+                return sortIpv6First(candidates);
+            }
+        };
+    }
+
+    /**
+     * Creates a policy that limits the number of local and remote candidates of each type and component
+     * in a stream. The candidates that arrive first are kept.
+     * @param maxCandidates the maximum number of candidates of each type
+     * @return a new candidate policy
+     */
+    public static CandidatePolicy maxPerType(final int maxCandidates) {
+        if (maxCandidates < 0) {
+            throw new IllegalArgumentException("invalid candidate limit: " + maxCandidates);
+        }
+        return new CandidatePolicy() {
+            @Override
+            public List<RtcCandidate> selectLocalCandidates(List<RtcCandidate> selected, List<RtcCandidate> candidates) {
+                return limitPerType(selected, candidates, maxCandidates);
+            }
+
+            @Override
+            public List<RtcCandidate> selectRemoteCandidates(List<RtcCandidate> selected, List<RtcCandidate> candidates) {
+                return limitPerType(selected, candidates, maxCandidates);
+            }
+        };
+    }
+
+    /**
+     * Creates a policy that applies several policies in order, each policy is given the candidates
+     * selected by the previous one.
+     * @param policies the policies to apply
+     * @return a new candidate policy
+     */
+    public static CandidatePolicy chain(CandidatePolicy... policies) {
+        for (CandidatePolicy policy : policies) {
+            if (policy == null) {
+                throw new NullPointerException("policy should not be null");
+            }
+        }
+        final List<CandidatePolicy> policyList = new ArrayList<>(Arrays.asList(policies));
+        return new CandidatePolicy() {
+            @Override
+            public List<RtcCandidate> selectLocalCandidates(List<RtcCandidate> selected, List<RtcCandidate> candidates) {
+                for (CandidatePolicy policy : policyList) {
+                    candidates = policy.selectLocalCandidates(selected, candidates);
+                }
+                return candidates;
+            }
+
+            @Override
+            public List<RtcCandidate> selectRemoteCandidates(List<RtcCandidate> selected, List<RtcCandidate> candidates) {
+                for (CandidatePolicy policy : policyList) {
+                    candidates = policy.selectRemoteCandidates(selected, candidates);
+                }
+                return candidates;
+            }
+        };
+    }
+
+    private static boolean isIpv6(RtcCandidate candidate) {
+        String address = candidate.getAddress();
+        return address != null && address.indexOf(':') >= 0;
+    }
+
+    private static List<RtcCandidate> sortIpv6First(List<RtcCandidate> candidates) {
+        List<RtcCandidate> result = new ArrayList<>(candidates.size());
+        for (RtcCandidate candidate : candidates) {
+            if (isIpv6(candidate)) {
+                result.add(candidate);
+            }
+        }
+        for (RtcCandidate candidate : candidates) {
+            if (!isIpv6(candidate)) {
+                result.add(candidate);
+            }
+        }
+        return result;
+    }
+
+    private static List<RtcCandidate> limitPerType(List<RtcCandidate> selected, List<RtcCandidate> candidates, int maxCandidates) {
+        int typeCount = RtcCandidate.CandidateType.values().length;
+        // counts are indexed by component and candidate type
+        int[] counts = new int[RtcCandidate.ComponentType.values().length * typeCount];
+        for (RtcCandidate candidate : selected) {
+            counts[countIndex(candidate, typeCount)]++;
+        }
+        List<RtcCandidate> result = new ArrayList<>(candidates.size());
+        for (RtcCandidate candidate : candidates) {
+            int index = countIndex(candidate, typeCount);
+            if (counts[index] < maxCandidates) {
+                counts[index]++;
+                result.add(candidate);
+            }
+        }
+        return result;
+    }
+
+    private static int countIndex(RtcCandidate candidate, int typeCount) {
+        return candidate.getComponentType().ordinal() * typeCount + candidate.getType().ordinal();
+    }
+
+    /**
+     * A policy that drops the candidates that aren't accepted, in one or both directions.
+     */
+    private abstract static class Filter implements CandidatePolicy {
+        private final boolean mFilterLocal;
+        private final boolean mFilterRemote;
+
+        private Filter(boolean filterLocal, boolean filterRemote) {
+            mFilterLocal = filterLocal;
+            mFilterRemote = filterRemote;
+        }
+
+        abstract boolean accept(RtcCandidate candidate);
+
+        @Override
+        public List<RtcCandidate> selectLocalCandidates(List<RtcCandidate> selected, List<RtcCandidate> candidates) {
+            return mFilterLocal ? filter(candidates) : candidates;
+        }
+
+        @Override
+        public List<RtcCandidate> selectRemoteCandidates(List<RtcCandidate> selected, List<RtcCandidate> candidates) {
+            return mFilterRemote ? filter(candidates) : candidates;
+        }
+
+        private List<RtcCandidate> filter(List<RtcCandidate> candidates) {
+            List<RtcCandidate> result = new ArrayList<>(candidates.size());
+            for (RtcCandidate candidate : candidates) {
+                if (accept(candidate)) {
+                    result.add(candidate);
+                }
+            }
+            return result;
+        }
+    }
+}
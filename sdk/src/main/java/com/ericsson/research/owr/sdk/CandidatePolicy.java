@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2015, Ericsson AB.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package com.ericsson.research.owr.sdk;
+
+import java.util.List;
+
+/**
+ * A policy that selects which candidates of a stream are used, and in which order, before they are
+ * signaled to the peer or handed to the ICE agent. Dropping candidates that are known not to work
+ * reduces the number of connectivity checks and the size of the session descriptions.
+ *
+ * A policy is called for each stream separately, with the candidates that have already been selected
+ * for the stream, so it doesn't need to keep any state of its own. Both local and remote candidates
+ * are selected on the internal thread of the session that they belong to, so a policy is never called
+ * concurrently for the same session. It should return quickly, since it holds up the other events of the
+ * session, and a policy that is shared by several sessions may be called from several threads at once.
+ * Policies are set with RtcConfigs.withCandidatePolicy, and some common ones are found in CandidatePolicies.
+ */
+public interface CandidatePolicy {
+    /**
+     * Selects local candidates before they are added to the local description or delivered to the
+     * candidate listeners. Local candidates that are dropped are still used by the ICE agent, but the
+     * peer won't learn about them.
+     * @param selected an immutable list of the local candidates that have already been selected for the stream
+     * @param candidates an immutable list of new local candidates
+     * @return the candidates to use, in the order they should be signaled, never null
+     */
+    List<RtcCandidate> selectLocalCandidates(List<RtcCandidate> selected, List<RtcCandidate> candidates);
+
+    /**
+     * Selects remote candidates before they are handed to the ICE agent.
+     * @param selected an immutable list of the remote candidates that have already been selected for the stream
+     * @param candidates an immutable list of new remote candidates
+     * @return the candidates to use, in the order they should be added, never null
+     */
+    List<RtcCandidate> selectRemoteCandidates(List<RtcCandidate> selected, List<RtcCandidate> candidates);
+}
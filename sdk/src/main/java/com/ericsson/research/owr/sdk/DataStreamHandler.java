@@ -34,6 +34,7 @@ import com.ericsson.research.owr.Session;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 class DataStreamHandler extends StreamHandler implements DataSession.OnDataChannelRequestedListener, StreamSet.DataChannelDelegate {
     private static final String TAG = "DataStreamHandler";
@@ -45,21 +46,32 @@ class DataStreamHandler extends StreamHandler implements DataSession.OnDataChann
     private Session.DtlsKeyChangeListener mDtlsKeyChangeListener = new Session.DtlsKeyChangeListener() {
         @Override
         public void onDtlsKeyChanged(final String s) {
-            getMainHandler().post(new Runnable() {
+            runOnSessionThread(new Runnable() {
                 @Override
                 public void run() {
-                    getStream().setStreamMode(StreamMode.SEND_RECEIVE);
+                    handleDtlsKeyChanged();
                 }
             });
-            if (getSession() != null) {
-                getSession().removeDtlsKeyChangeListener(this);
-            }
-            mDtlsKeyChangeListener = null;
         }
     };
 
-    public DataStreamHandler(int index, StreamDescription streamDescription, StreamSet.DataStream dataStream) {
-        super(index, streamDescription, dataStream);
+    private void handleDtlsKeyChanged() {
+        if (mDtlsKeyChangeListener == null) {
+            return;
+        }
+        getCallbackExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                getStream().setStreamMode(StreamMode.SEND_RECEIVE);
+            }
+        });
+        getSession().removeDtlsKeyChangeListener(mDtlsKeyChangeListener);
+        mDtlsKeyChangeListener = null;
+    }
+
+    public DataStreamHandler(int index, StreamDescription streamDescription, StreamSet.DataStream dataStream, RtcConfig config,
+                             Executor sessionExecutor, Executor callbackExecutor, TransportPool.PreparedSession preparedSession) {
+        super(index, streamDescription, dataStream, config, sessionExecutor, callbackExecutor, preparedSession);
         if (dataStream == null) {
             return;
         }
@@ -83,7 +95,7 @@ class DataStreamHandler extends StreamHandler implements DataSession.OnDataChann
                 mode = StreamMode.SEND_RECEIVE;
             } else {
                 mode = StreamMode.INACTIVE;
-                getMainHandler().post(new Runnable() {
+                getCallbackExecutor().execute(new Runnable() {
                     @Override
                     public void run() {
                         getStream().setStreamMode(StreamMode.INACTIVE);
@@ -146,8 +158,12 @@ class DataStreamHandler extends StreamHandler implements DataSession.OnDataChann
     public void stop() {
         if (getDataSession() != null) {
             getDataSession().removeOnDataChannelRequestedListener(this);
+            if (mDtlsKeyChangeListener != null) {
+                getDataSession().removeDtlsKeyChangeListener(mDtlsKeyChangeListener);
+                mDtlsKeyChangeListener = null;
+            }
         }
-        if (getDataStream() != null) {
+        if (getDataStream() != null && !isReplaced()) {
             getDataStream().setDataChannelDelegate(null);
         }
         for (DataChannel dataChannel : mDataChannels) {
@@ -170,7 +186,7 @@ class DataStreamHandler extends StreamHandler implements DataSession.OnDataChann
 
         final DataChannel dataChannel = new DataChannel(ordered, max_packet_life_time, max_retransmits, protocol, negotiated, (short) id, label);
 
-        getMainHandler().post(new Runnable() {
+        getCallbackExecutor().execute(new Runnable() {
             @Override
             public void run() {
                 boolean keep = false;
@@ -181,16 +197,23 @@ class DataStreamHandler extends StreamHandler implements DataSession.OnDataChann
 
                 if (keep) {
                     Log.d(TAG, "adding datachannel to session: " + dataChannel);
-                    getDataSession().addDataChannel(dataChannel);
+                    addDataChannel(dataChannel);
                 }
             }
         });
     }
 
+    /**
+     * Called from any thread, the data channel is added on the session thread and dropped if the stream
+     * has been stopped by then.
+     */
     @Override
     public void addDataChannel(final DataChannel dataChannel) {
-        if (getDataSession() != null) {
-            getDataSession().addDataChannel(dataChannel);
-        }
+        runOnSessionThread(new Runnable() {
+            @Override
+            public void run() {
+                getDataSession().addDataChannel(dataChannel);
+            }
+        });
     }
 }
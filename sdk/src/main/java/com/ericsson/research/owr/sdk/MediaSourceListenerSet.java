@@ -25,42 +25,47 @@
  */
 package com.ericsson.research.owr.sdk;
 
-import android.os.Handler;
-import android.os.Looper;
-
 import com.ericsson.research.owr.MediaSource;
 
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 class MediaSourceListenerSet {
     private static final String TAG = "MediaSourceListenerSet";
 
-    private final List<WeakReference<MediaSourceListener>> mListeners = new ArrayList<>();
+    private final List<Entry> mListeners = new ArrayList<>();
     private MediaSource mPreviousMediaSource = null;
-    private static Handler sHandler = new Handler(Looper.getMainLooper());
 
-    public synchronized void addListener(final MediaSourceListener listener) {
+    public void addListener(final MediaSourceListener listener) {
+        addListener(listener, CallbackExecutors.mainThread());
+    }
+
+    public synchronized void addListener(final MediaSourceListener listener, final Executor executor) {
         if (listener == null) {
             throw new NullPointerException("listener may not be null");
         }
+        if (executor == null) {
+            throw new NullPointerException("executor may not be null");
+        }
         removeListener(listener);
-        mListeners.add(new WeakReference<>(listener));
-        sHandler.post(new Runnable() {
+        mListeners.add(new Entry(listener, executor));
+        final MediaSource mediaSource = mPreviousMediaSource;
+        executor.execute(new Runnable() {
             @Override
             public void run() {
-                listener.setMediaSource(mPreviousMediaSource);
+                listener.setMediaSource(mediaSource);
             }
         });
     }
 
     private void removeListener(MediaSourceListener removedListener) {
-        List<WeakReference<MediaSourceListener>> removed = new ArrayList<>();
-        for (WeakReference<MediaSourceListener> ref : mListeners) {
-            MediaSourceListener listener = ref.get();
+        List<Entry> removed = new ArrayList<>();
+        for (Entry entry : mListeners) {
+            MediaSourceListener listener = entry.mListenerRef.get();
             if (listener == null || listener == removedListener) {
-                removed.add(ref);
+                removed.add(entry);
             }
         }
         mListeners.removeAll(removed);
@@ -68,20 +73,30 @@ class MediaSourceListenerSet {
 
     public synchronized void notifyListeners(final MediaSource mediaSource) {
         mPreviousMediaSource = mediaSource;
-        List<WeakReference<MediaSourceListener>> removed = new ArrayList<>();
-        for (WeakReference<MediaSourceListener> ref : mListeners) {
-            final MediaSourceListener listener = ref.get();
+        List<Entry> removed = new ArrayList<>();
+        for (Entry entry : mListeners) {
+            final MediaSourceListener listener = entry.mListenerRef.get();
             if (listener != null) {
-                sHandler.post(new Runnable() {
+                entry.mExecutor.execute(new Runnable() {
                     @Override
                     public void run() {
                         listener.setMediaSource(mediaSource);
                     }
                 });
             } else {
-                removed.add(ref);
+                removed.add(entry);
             }
         }
         mListeners.removeAll(removed);
     }
+
+    private static class Entry {
+        private final WeakReference<MediaSourceListener> mListenerRef;
+        private final Executor mExecutor;
+
+        private Entry(MediaSourceListener listener, Executor executor) {
+            mListenerRef = new WeakReference<>(listener);
+            mExecutor = executor;
+        }
+    }
 }
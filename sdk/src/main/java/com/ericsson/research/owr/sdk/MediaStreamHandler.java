@@ -36,6 +36,7 @@ import com.ericsson.research.owr.RemoteMediaSource;
 import com.ericsson.research.owr.Session;
 
 import java.util.List;
+import java.util.concurrent.Executor;
 
 class MediaStreamHandler extends StreamHandler implements MediaSession.OnIncomingSourceListener, MediaSession.CnameChangeListener, StreamSet.MediaSourceDelegate, MediaSession.SendSsrcChangeListener {
     private static final String TAG = "MediaStreamHandler";
@@ -45,13 +46,17 @@ class MediaStreamHandler extends StreamHandler implements MediaSession.OnIncomin
     private boolean mHaveCname = false;
     private boolean mHaveSsrc = false;
 
-    MediaStreamHandler(int index, StreamDescription streamDescription, StreamSet.MediaStream mediaStream, RtcConfig config) {
-        super(index, streamDescription, mediaStream);
+    MediaStreamHandler(int index, StreamDescription streamDescription, StreamSet.MediaStream mediaStream, RtcConfig config,
+                       Executor sessionExecutor, Executor callbackExecutor, TransportPool.PreparedSession preparedSession) {
+        super(index, streamDescription, mediaStream, config, sessionExecutor, callbackExecutor, preparedSession);
         if (mediaStream == null) {
             return;
         }
-        getMediaSession().addCnameChangeListener(this);
-        getMediaSession().addSendSsrcChangeListener(this);
+        if (!isPrepared()) {
+            // a prepared session forwards these along with the events it got before the handler was created
+            getMediaSession().addCnameChangeListener(this);
+            getMediaSession().addSendSsrcChangeListener(this);
+        }
         getMediaSession().addOnIncomingSourceListener(this);
         getMediaStream().setMediaSourceDelegate(this);
 
@@ -181,7 +186,7 @@ class MediaStreamHandler extends StreamHandler implements MediaSession.OnIncomin
             getMediaSession().removeOnIncomingSourceListener(this);
             getMediaSession().setSendSource(null);
         }
-        if (getMediaStream() != null) {
+        if (getMediaStream() != null && !isReplaced()) {
             getMediaStream().onRemoteMediaSource(null);
             getMediaStream().setMediaSourceDelegate(null);
         }
@@ -189,35 +194,70 @@ class MediaStreamHandler extends StreamHandler implements MediaSession.OnIncomin
     }
 
     @Override
-    public void onCnameChanged(String cname) {
+    public void onCnameChanged(final String cname) {
+        runOnSessionThread(new Runnable() {
+            @Override
+            public void run() {
+                handleCname(cname);
+            }
+        });
+    }
+
+    private void handleCname(String cname) {
         getLocalStreamDescription().setCname(cname);
         mHaveCname = true;
+        markSetupEvent(StreamSetupTimeline.Event.CNAME);
 
         signalListenerIfReady();
     }
 
     @Override
     public void onSendSsrcChanged(final int ssrc) {
+        runOnSessionThread(new Runnable() {
+            @Override
+            public void run() {
+                handleSendSsrc(ssrc);
+            }
+        });
+    }
+
+    private void handleSendSsrc(int ssrc) {
         long unsignedSsrc = ssrc & 0xFFFFFFFFL;
         if (unsignedSsrc > 0) {
             getLocalStreamDescription().addSsrc(unsignedSsrc);
             mHaveSsrc = true;
+            markSetupEvent(StreamSetupTimeline.Event.SSRC);
 
             signalListenerIfReady();
         }
     }
 
     @Override
-    public void onIncomingSource(RemoteMediaSource remoteMediaSource) {
-        if (getSession() != null) {
-            getMediaStream().onRemoteMediaSource(remoteMediaSource);
-        }
+    public void onIncomingSource(final RemoteMediaSource remoteMediaSource) {
+        runOnSessionThread(new Runnable() {
+            @Override
+            public void run() {
+                getCallbackExecutor().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        getMediaStream().onRemoteMediaSource(remoteMediaSource);
+                    }
+                });
+            }
+        });
     }
 
+    /**
+     * Called by the media stream from any thread, the source is set on the session thread so that it can't
+     * race with the stream being stopped.
+     */
     @Override
-    public void setMediaSource(MediaSource mediaSource) {
-        if (getSession() != null) {
-            getMediaSession().setSendSource(mediaSource);
-        }
+    public void setMediaSource(final MediaSource mediaSource) {
+        runOnSessionThread(new Runnable() {
+            @Override
+            public void run() {
+                getMediaSession().setSendSource(mediaSource);
+            }
+        });
     }
 }
\ No newline at end of file
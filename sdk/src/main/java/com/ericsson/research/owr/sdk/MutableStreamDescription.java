@@ -32,6 +32,7 @@ import java.util.List;
 public class MutableStreamDescription implements StreamDescription {
     private StreamType mType;
     private StreamMode mMode;
+    private String mMid;
     private String mUfrag;
     private String mPassword;
     private List<RtcCandidate> mCandidates = new LinkedList<>();
@@ -66,6 +67,15 @@ public class MutableStreamDescription implements StreamDescription {
         mMode = mode;
     }
 
+    @Override
+    public String getMid() {
+        return mMid;
+    }
+
+    public void setMid(final String mid) {
+        mMid = mid;
+    }
+
     @Override
     public String getUfrag() {
         return mUfrag;
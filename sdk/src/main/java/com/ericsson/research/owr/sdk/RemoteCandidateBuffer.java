@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2015, Ericsson AB.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package com.ericsson.research.owr.sdk;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Holds remote candidates that arrive before the stream they belong to can use them. Candidates are kept
+ * per stream, either by index or by id, and candidates with the same foundation, component, address and
+ * port are only stored once. The total number of candidates is capped.
+ */
+class RemoteCandidateBuffer {
+    private static final String TAG = "RemoteCandidateBuffer";
+
+    private final int mLimit;
+    private final Map<Integer, Map<CandidateKey, RtcCandidate>> mByIndex = new HashMap<>();
+    private final Map<String, Map<CandidateKey, RtcCandidate>> mById = new HashMap<>();
+    private int mSize = 0;
+
+    RemoteCandidateBuffer(int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("invalid buffer limit: " + limit);
+        }
+        mLimit = limit;
+    }
+
+    /**
+     * Adds a candidate to the buffer.
+     * @param candidate the candidate to add
+     * @return true if the candidate was added, false if it was a duplicate, had no stream, or the buffer is full
+     */
+    boolean add(RtcCandidate candidate) {
+        Map<CandidateKey, RtcCandidate> bucket;
+        int index = candidate.getStreamIndex();
+        String id = candidate.getStreamId();
+
+        if (index >= 0) {
+            bucket = mByIndex.get(index);
+        } else if (id != null) {
+            bucket = mById.get(id);
+        } else {
+            return false;
+        }
+
+        CandidateKey key = new CandidateKey(candidate);
+        if (bucket != null && bucket.containsKey(key)) {
+            return false;
+        }
+        if (mSize >= mLimit) {
+            Log.w(TAG, "remote candidate buffer is full, dropping candidate for stream " + (index >= 0 ? index : id));
+            return false;
+        }
+        if (bucket == null) {
+            bucket = new LinkedHashMap<>();
+            if (index >= 0) {
+                mByIndex.put(index, bucket);
+            } else {
+                mById.put(id, bucket);
+            }
+        }
+        bucket.put(key, candidate);
+        mSize++;
+        return true;
+    }
+
+    /**
+     * Removes and returns all candidates for a stream, in the order they were added.
+     * @param streamIndex the index of the stream
+     * @param streamId the id of the stream, or null if the stream doesn't have one
+     * @return the candidates of the stream, or an empty list if there are none
+     */
+    List<RtcCandidate> take(int streamIndex, String streamId) {
+        Map<CandidateKey, RtcCandidate> byIndex = mByIndex.remove(streamIndex);
+        Map<CandidateKey, RtcCandidate> byId = streamId == null ? null : mById.remove(streamId);
+
+        if (byIndex == null && byId == null) {
+            return Collections.emptyList();
+        }
+        List<RtcCandidate> result = new ArrayList<>((byIndex == null ? 0 : byIndex.size()) + (byId == null ? 0 : byId.size()));
+        if (byIndex != null) {
+            mSize -= byIndex.size();
+            result.addAll(byIndex.values());
+        }
+        if (byId != null) {
+            mSize -= byId.size();
+            for (Map.Entry<CandidateKey, RtcCandidate> entry : byId.entrySet()) {
+                if (byIndex == null || !byIndex.containsKey(entry.getKey())) {
+                    result.add(entry.getValue());
+                }
+            }
+        }
+        return result;
+    }
+
+    int size() {
+        return mSize;
+    }
+
+    boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    void clear() {
+        mByIndex.clear();
+        mById.clear();
+        mSize = 0;
+    }
+
+    private static class CandidateKey {
+        private final String mFoundation;
+        private final RtcCandidate.ComponentType mComponentType;
+        private final String mAddress;
+        private final int mPort;
+        private final int mHashCode;
+
+        private CandidateKey(RtcCandidate candidate) {
+            mFoundation = candidate.getFoundation();
+            mComponentType = candidate.getComponentType();
+            mAddress = candidate.getAddress();
+            mPort = candidate.getPort();
+            mHashCode = Utils.hash(mFoundation, mComponentType, mAddress, mPort);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            CandidateKey other = (CandidateKey) o;
+            return mPort == other.mPort
+                    && mComponentType == other.mComponentType
+                    && Utils.objectsEqual(mFoundation, other.mFoundation)
+                    && Utils.objectsEqual(mAddress, other.mAddress);
+        }
+
+        @Override
+        public int hashCode() {
+            return mHashCode;
+        }
+    }
+}
@@ -142,6 +142,37 @@ class RtcCandidateImpl implements RtcCandidate {
         return mRelatedPort;
     }
 
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        RtcCandidateImpl other = (RtcCandidateImpl) o;
+        return mStreamIndex == other.mStreamIndex
+                && mPriority == other.mPriority
+                && mPort == other.mPort
+                && mRelatedPort == other.mRelatedPort
+                && mComponentType == other.mComponentType
+                && mTransportType == other.mTransportType
+                && mType == other.mType
+                && Utils.objectsEqual(mStreamId, other.mStreamId)
+                && Utils.objectsEqual(mUfrag, other.mUfrag)
+                && Utils.objectsEqual(mPassword, other.mPassword)
+                && Utils.objectsEqual(mFoundation, other.mFoundation)
+                && Utils.objectsEqual(mAddress, other.mAddress)
+                && Utils.objectsEqual(mRelatedAddress, other.mRelatedAddress);
+    }
+
+    @Override
+    public int hashCode() {
+        // the stream and credentials can still be set, so they are left out to keep the hash code stable
+        return Utils.hash(mFoundation, mComponentType, mTransportType, mPriority, mAddress, mPort, mType,
+                mRelatedAddress, mRelatedPort);
+    }
+
     static RtcCandidateImpl fromOwrCandidate(Candidate candidate) {
         return new RtcCandidateImpl(
                 -1, null,
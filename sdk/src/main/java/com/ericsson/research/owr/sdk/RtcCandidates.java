@@ -27,12 +27,13 @@ package com.ericsson.research.owr.sdk;
 
 import android.util.Log;
 
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Locale;
 
 /**
@@ -41,6 +42,8 @@ import java.util.Locale;
 public class RtcCandidates {
     private static final String TAG = "RtcCandidates";
 
+    private static final int MAX_PORT = 65535;
+
     private RtcCandidates(){}
 
     /**
@@ -116,6 +119,82 @@ public class RtcCandidates {
         return rtcCandidate;
     }
 
+    /**
+     * Converts a collection of candidates to an array of JSEP candidate objects, candidates that don't have any
+     * context information are left out.
+     * @param candidates the candidates to transform
+     * @return a new JSON array of JSEP candidate objects
+     */
+    public static JSONArray toJsepArray(Collection<RtcCandidate> candidates) {
+        if (candidates == null) {
+            throw new NullPointerException("candidates should not be null");
+        }
+        JSONArray json = new JSONArray();
+        for (RtcCandidate candidate : candidates) {
+            JSONObject jsep = toJsep(candidate);
+            if (jsep != null) {
+                json.put(jsep);
+            }
+        }
+        return json;
+    }
+
+    /**
+     * Converts an array of JSEP candidate objects to a list of RtcCandidates, entries that can not be
+     * converted are left out.
+     * @param json an array of JSEP candidate objects
+     * @return a new list of RtcCandidates, that can be passed to RtcSession.addRemoteCandidates
+     */
+    public static List<RtcCandidate> fromJsepArray(JSONArray json) {
+        if (json == null) {
+            throw new NullPointerException("json should not be null");
+        }
+        int length = json.length();
+        List<RtcCandidate> candidates = new ArrayList<>(length);
+        for (int i = 0; i < length; i++) {
+            JSONObject jsep = json.optJSONObject(i);
+            RtcCandidate candidate = jsep == null ? null : fromJsep(jsep);
+            if (candidate == null) {
+                Log.w(TAG, "ignoring invalid candidate at index " + i);
+            } else {
+                candidates.add(candidate);
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * Encodes a candidate in a compact binary format, as an alternative to JSEP when signaling bandwidth is limited.
+     * @param candidate the candidate to encode
+     * @return the encoded candidate, or null if the candidate doesn't have any context information
+     */
+    public static byte[] toBinary(RtcCandidate candidate) {
+        if (candidate == null) {
+            throw new NullPointerException("candidate should not be null");
+        }
+        if (candidate.getStreamIndex() < 0 && candidate.getStreamId() == null) {
+            return null;
+        }
+        return BinaryCodec.encode(candidate);
+    }
+
+    /**
+     * Decodes a candidate that was encoded with toBinary.
+     * @param data the encoded candidate
+     * @return a new RtcCandidate, or null if the data could not be decoded
+     */
+    public static RtcCandidate fromBinary(byte[] data) {
+        if (data == null) {
+            throw new NullPointerException("data should not be null");
+        }
+        try {
+            return BinaryCodec.decodeCandidate(data);
+        } catch (InvalidDescriptionException e) {
+            Log.w(TAG, "failed to decode binary candidate: " + e.getMessage());
+            return null;
+        }
+    }
+
     /**
      * Converts a candidate to a candidate attribute string with the format "candidate:..."
      * @param candidate the candidate to convert
@@ -238,109 +317,145 @@ public class RtcCandidates {
         return json;
     }
 
-    private static Pattern sSdpCandidateAttributePattern = Pattern.compile("^" +
-            "(?:a=)?candidate:" +
-            "(\\d+) " + // foundation
-            "(1|2) " + // component
-            "(UDP|TCP) " + // transport
-            "([\\d\\.]*) " + // priority
-            "([\\d\\.a-f:]*) " + // address, ipv4 or ipv6
-            "(\\d*)" + // port
-            " typ (host|srflx|prflx|relay)" + // type
-            "(?: raddr ([\\d\\.a-f:]*) rport (\\d*))?" + // reflexive address and port
-            "(?: tcptype (active|passive|so))?" + // tcp type
-            ".*" + // ignore the rest
-            "(?:\\r\\n)?$"
-            , Pattern.CASE_INSENSITIVE
-    );
-
-    @SuppressWarnings("FieldCanBeLocal") private static int PATTERN_GROUP_ATTRIBUTE_FOUNDATION = 1;
-    @SuppressWarnings("FieldCanBeLocal") private static int PATTERN_GROUP_ATTRIBUTE_COMPONENT = 2;
-    @SuppressWarnings("FieldCanBeLocal") private static int PATTERN_GROUP_ATTRIBUTE_TRANSPORT = 3;
-    @SuppressWarnings("FieldCanBeLocal") private static int PATTERN_GROUP_ATTRIBUTE_PRIORITY = 4;
-    @SuppressWarnings("FieldCanBeLocal") private static int PATTERN_GROUP_ATTRIBUTE_ADDRESS = 5;
-    @SuppressWarnings("FieldCanBeLocal") private static int PATTERN_GROUP_ATTRIBUTE_PORT = 6;
-    @SuppressWarnings("FieldCanBeLocal") private static int PATTERN_GROUP_ATTRIBUTE_TYPE = 7;
-    @SuppressWarnings("FieldCanBeLocal") private static int PATTERN_GROUP_ATTRIBUTE_RELATED_ADDRESS = 8;
-    @SuppressWarnings("FieldCanBeLocal") private static int PATTERN_GROUP_ATTRIBUTE_RELATED_PORT = 9;
-    @SuppressWarnings("FieldCanBeLocal") private static int PATTERN_GROUP_ATTRIBUTE_TCP_TYPE = 10;
-
     /**
-     * Parses an attribute line of the format "candidate:...." with an optional "a=" prefix
+     * Parses an attribute line of the format "candidate:...." with an optional "a=" prefix and "\r\n" suffix
+     *
+     * The line is tokenized in a single pass. Addresses can be IPv4 or IPv6, and the raddr, rport and tcptype
+     * extension attributes can appear in any order. Any other extension attributes are ignored.
      *
      * @param candidateAttribute the attribute string
      * @return a valid RtcCandidate without context information, or null if the attribute string could not be parsed
      */
     public static RtcCandidate fromSdpAttribute(String candidateAttribute) {
-        Matcher matcher = sSdpCandidateAttributePattern.matcher(candidateAttribute);
-        if (!matcher.matches()) {
+        if (candidateAttribute == null) {
+            throw new NullPointerException("candidateAttribute should not be null");
+        }
+        int start = 0;
+        int end = candidateAttribute.length();
+        if (end >= 2 && candidateAttribute.charAt(end - 2) == '\r' && candidateAttribute.charAt(end - 1) == '\n') {
+            end -= 2;
+        }
+        if (candidateAttribute.regionMatches(true, start, "a=", 0, 2)) {
+            start += 2;
+        }
+        if (!candidateAttribute.regionMatches(true, start, "candidate:", 0, 10)) {
             return null;
         }
+        CandidateTokenizer tokenizer = new CandidateTokenizer(candidateAttribute, start + 10, end);
 
-        String foundation = matcher.group(PATTERN_GROUP_ATTRIBUTE_FOUNDATION);
-        int componentId = Integer.parseInt(matcher.group(PATTERN_GROUP_ATTRIBUTE_COMPONENT), 10);
-        RtcCandidate.ComponentType componentType;
-        String transport = matcher.group(PATTERN_GROUP_ATTRIBUTE_TRANSPORT);
-        int priority = Integer.parseInt(matcher.group(PATTERN_GROUP_ATTRIBUTE_PRIORITY), 10);
-        String address = matcher.group(PATTERN_GROUP_ATTRIBUTE_ADDRESS);
-        int port = Integer.parseInt(matcher.group(PATTERN_GROUP_ATTRIBUTE_PORT), 10);
-        String type = matcher.group(PATTERN_GROUP_ATTRIBUTE_TYPE);
-        RtcCandidate.CandidateType candidateType;
-        String relatedAddress = matcher.group(PATTERN_GROUP_ATTRIBUTE_RELATED_ADDRESS);
-        int relatedPort = -1;
-        if (relatedAddress != null) {
-            relatedPort = Integer.parseInt(matcher.group(PATTERN_GROUP_ATTRIBUTE_RELATED_PORT), 10);
+        if (!tokenizer.nextField() || !tokenizer.isFoundation()) {
+            return null;
         }
-        String tcpType = matcher.group(PATTERN_GROUP_ATTRIBUTE_TCP_TYPE);
-        RtcCandidate.TransportType transportType;
+        String foundation = tokenizer.getToken();
 
-        if (componentId == 1) {
-            componentType = RtcCandidate.ComponentType.RTP;
-        } else {
-            componentType = RtcCandidate.ComponentType.RTCP;
+        if (!tokenizer.nextField() || !tokenizer.isSingleCharacter()) {
+            return null;
         }
-
-        switch (type.toLowerCase(Locale.ENGLISH)) {
-            case "host":
-                candidateType = RtcCandidate.CandidateType.HOST;
-                break;
-            case "srflx":
-                candidateType = RtcCandidate.CandidateType.SERVER_REFLEXIVE;
-                break;
-            case "prflx":
-                candidateType = RtcCandidate.CandidateType.PEER_REFLEXIVE;
+        RtcCandidate.ComponentType componentType;
+        switch (tokenizer.toInt(2)) {
+            case 1:
+                componentType = RtcCandidate.ComponentType.RTP;
                 break;
-            case "relay":
-                candidateType = RtcCandidate.CandidateType.RELAY;
+            case 2:
+                componentType = RtcCandidate.ComponentType.RTCP;
                 break;
             default:
                 return null;
         }
 
-        if ("udp".equals(transport.toLowerCase(Locale.ENGLISH))) {
-            transportType = RtcCandidate.TransportType.UDP;
+        if (!tokenizer.nextField()) {
+            return null;
+        }
+        boolean isUdp = tokenizer.tokenEquals("udp");
+        if (!isUdp && !tokenizer.tokenEquals("tcp")) {
+            return null;
+        }
+
+        if (!tokenizer.nextField()) {
+            return null;
+        }
+        int priority = tokenizer.toInt(Integer.MAX_VALUE);
+        if (priority < 0) {
+            return null;
+        }
+
+        if (!tokenizer.nextField() || !tokenizer.isAddress()) {
+            return null;
+        }
+        String address = tokenizer.getToken();
+
+        if (!tokenizer.nextField()) {
+            return null;
+        }
+        int port = tokenizer.toInt(MAX_PORT);
+        if (port < 0) {
+            return null;
+        }
+
+        if (!tokenizer.nextField() || !tokenizer.tokenEquals("typ") || !tokenizer.nextField()) {
+            return null;
+        }
+        RtcCandidate.CandidateType candidateType;
+        if (tokenizer.tokenEquals("host")) {
+            candidateType = RtcCandidate.CandidateType.HOST;
+        } else if (tokenizer.tokenEquals("srflx")) {
+            candidateType = RtcCandidate.CandidateType.SERVER_REFLEXIVE;
+        } else if (tokenizer.tokenEquals("prflx")) {
+            candidateType = RtcCandidate.CandidateType.PEER_REFLEXIVE;
+        } else if (tokenizer.tokenEquals("relay")) {
+            candidateType = RtcCandidate.CandidateType.RELAY;
         } else {
-            if (tcpType != null) {
-                switch (tcpType.toLowerCase(Locale.ENGLISH)) {
-                    case "active":
-                        transportType = RtcCandidate.TransportType.TCP_ACTIVE;
-                        break;
-                    case "passive":
-                        transportType = RtcCandidate.TransportType.TCP_PASSIVE;
-                        break;
-                    case "so":
-                        transportType = RtcCandidate.TransportType.TCP_SO;
-                        break;
-                    default:
-                        return null;
+            return null;
+        }
+
+        String relatedAddress = null;
+        int relatedPort = -1;
+        RtcCandidate.TransportType tcpType = null;
+        while (tokenizer.nextExtension()) {
+            if (tokenizer.tokenEquals("raddr")) {
+                if (!tokenizer.nextExtension() || !tokenizer.isAddress()) {
+                    return null;
+                }
+                relatedAddress = tokenizer.getToken();
+            } else if (tokenizer.tokenEquals("rport")) {
+                if (!tokenizer.nextExtension()) {
+                    return null;
+                }
+                relatedPort = tokenizer.toInt(MAX_PORT);
+                if (relatedPort < 0) {
+                    return null;
+                }
+            } else if (tokenizer.tokenEquals("tcptype")) {
+                if (!tokenizer.nextExtension()) {
+                    return null;
+                }
+                if (tokenizer.tokenEquals("active")) {
+                    tcpType = RtcCandidate.TransportType.TCP_ACTIVE;
+                } else if (tokenizer.tokenEquals("passive")) {
+                    tcpType = RtcCandidate.TransportType.TCP_PASSIVE;
+                } else if (tokenizer.tokenEquals("so")) {
+                    tcpType = RtcCandidate.TransportType.TCP_SO;
                 }
-            } else if (port == 0 || port == 9) {
-                transportType = RtcCandidate.TransportType.TCP_ACTIVE;
-                port = 9;
             } else {
-                return null;
+                // skip the value of an unknown extension attribute, such as generation or network-id
+                tokenizer.nextExtension();
             }
         }
+        if (tokenizer.isInvalid()) {
+            return null;
+        }
+
+        RtcCandidate.TransportType transportType;
+        if (isUdp) {
+            transportType = RtcCandidate.TransportType.UDP;
+        } else if (tcpType != null) {
+            transportType = tcpType;
+        } else if (port == 0 || port == 9) {
+            transportType = RtcCandidate.TransportType.TCP_ACTIVE;
+            port = 9;
+        } else {
+            return null;
+        }
 
         if (relatedAddress == null) {
             if (candidateType == RtcCandidate.CandidateType.HOST) {
@@ -348,11 +463,12 @@ public class RtcCandidates {
             } else {
                 return null;
             }
+        } else if (relatedPort < 0) {
+            return null;
         } else {
             return new RtcCandidateImpl(foundation, componentType, transportType, priority, address, port, candidateType, relatedAddress, relatedPort);
         }
     }
-
     public static RtcCandidate fromCandidateDescription(JSONObject json) throws JSONException {
         String foundation = json.getString("foundation");
         int componentId = json.getInt("componentId");
@@ -430,4 +546,136 @@ public class RtcCandidates {
             return new RtcCandidateImpl(foundation, componentType, transportType, priority, address, port, candidateType, relatedAddress, relatedPort);
         }
     }
+
+    /**
+     * Splits the part of a candidate attribute after "candidate:" into tokens, without creating any strings
+     * other than for the values that are kept.
+     */
+    private static class CandidateTokenizer {
+        private final String mText;
+        private final int mEnd;
+        private int mPosition;
+        private int mTokenStart;
+        private int mTokenEnd;
+        private boolean mInvalid = false;
+
+        CandidateTokenizer(String text, int start, int end) {
+            mText = text;
+            mEnd = end;
+            mPosition = start;
+        }
+
+        /**
+         * Reads one of the fields before the extension attributes, which are separated by exactly one space
+         * @return true if a non-empty field was read
+         */
+        boolean nextField() {
+            return readToken() && mTokenEnd > mTokenStart;
+        }
+
+        /**
+         * Reads a token among the extension attributes, where any number of spaces are allowed between tokens
+         * @return true if a token was read, false at the end of the line or if the line is invalid
+         */
+        boolean nextExtension() {
+            while (mPosition < mEnd && mText.charAt(mPosition) == ' ') {
+                mPosition++;
+            }
+            return readToken();
+        }
+
+        private boolean readToken() {
+            if (mInvalid || mPosition >= mEnd) {
+                return false;
+            }
+            mTokenStart = mPosition;
+            while (mPosition < mEnd) {
+                char c = mText.charAt(mPosition);
+                if (c == ' ') {
+                    break;
+                }
+                if (c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029') {
+                    mInvalid = true;
+                    return false;
+                }
+                mPosition++;
+            }
+            mTokenEnd = mPosition;
+            if (mPosition < mEnd) {
+                mPosition++;
+            }
+            return true;
+        }
+
+        boolean isInvalid() {
+            return mInvalid;
+        }
+
+        String getToken() {
+            return mText.substring(mTokenStart, mTokenEnd);
+        }
+
+        boolean isSingleCharacter() {
+            return mTokenEnd - mTokenStart == 1;
+        }
+
+        boolean tokenEquals(String value) {
+            int length = value.length();
+            return mTokenEnd - mTokenStart == length && mText.regionMatches(true, mTokenStart, value, 0, length);
+        }
+
+        /**
+         * @return the token as a non-negative integer, or -1 if it isn't a number or is larger than max
+         */
+        int toInt(int max) {
+            if (mTokenEnd == mTokenStart) {
+                return -1;
+            }
+            long value = 0;
+            for (int i = mTokenStart; i < mTokenEnd; i++) {
+                char c = mText.charAt(i);
+                if (c < '0' || c > '9') {
+                    return -1;
+                }
+                value = value * 10 + (c - '0');
+                if (value > max) {
+                    return -1;
+                }
+            }
+            return (int) value;
+        }
+
+        /**
+         * A foundation is 1 to 32 ice-chars, which are letters, digits, '+' and '/'
+         */
+        boolean isFoundation() {
+            if (mTokenEnd - mTokenStart > 32) {
+                return false;
+            }
+            for (int i = mTokenStart; i < mTokenEnd; i++) {
+                char c = mText.charAt(i);
+                if (!isAlphanumeric(c) && c != '+' && c != '/') {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Accepts IPv4 and IPv6 addresses, in any case
+         */
+        boolean isAddress() {
+            for (int i = mTokenStart; i < mTokenEnd; i++) {
+                char c = mText.charAt(i);
+                if (!(c >= '0' && c <= '9') && !(c >= 'a' && c <= 'f') && !(c >= 'A' && c <= 'F') && c != '.' && c != ':') {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static boolean isAlphanumeric(char c) {
+            return (c >= '0' && c <= '9') || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+        }
+    }
 }
@@ -62,6 +62,63 @@ public abstract class RtcConfig {
      */
     protected abstract Collection<HelperServer> getHelperServers();
 
+    /**
+     * Implementations may override this to deliver local candidates in batches. Candidates that are
+     * generated within the window are collected and delivered together once the window has passed.
+     * @return the batching window in milliseconds, or 0 if each candidate should be delivered separately
+     */
+    protected long getLocalCandidateBatchWindow() {
+        return 0;
+    }
+
+    /**
+     * Implementations may override this to limit the size of a local candidate batch. A batch is
+     * delivered straight away once it reaches this size, even if the batching window hasn't passed.
+     * @return the maximum number of candidates in a batch
+     */
+    protected int getLocalCandidateBatchSize() {
+        return Integer.MAX_VALUE;
+    }
+
+    /**
+     * Implementations may override this to change how many remote candidates are buffered while waiting
+     * for the remote description. Candidates that arrive when the buffer is full are dropped.
+     * @return the maximum number of buffered remote candidates
+     */
+    protected int getRemoteCandidateBufferLimit() {
+        return 256;
+    }
+
+    /**
+     * Implementations may override this to filter or reorder local and remote candidates before they are
+     * signaled or handed to the ICE agent.
+     * @return a candidate policy, or null if all candidates should be used in the order they arrive
+     */
+    protected CandidatePolicy getCandidatePolicy() {
+        return null;
+    }
+
+    /**
+     * Implementations may override this to use trickle-first mode, where the local description is created without
+     * any candidates, and all local candidates are delivered through the candidate listeners instead. The peer has
+     * to support trickle ICE. The description isn't created any sooner than it is otherwise, since the ICE
+     * credentials are only known once the first candidate has been gathered, which is also all that a description
+     * with candidates waits for. The mode only changes where the candidates are signaled.
+     * @return true if all local candidates should be trickled
+     */
+    protected boolean shouldTrickleAllCandidates() {
+        return false;
+    }
+
+    /**
+     * Implementations may override this to change how long the candidates of a prepared transport are used,
+     * see {@link RtcSessions#prepare}. Once the time has passed the transport is replaced by a new one.
+     * @return the time to live of prepared candidates in milliseconds
+     */
+    protected long getPreparedTransportTtl() {
+        return 30000;
+    }
+
     public static class HelperServer {
         private final HelperServerType mType;
         private final String mAddress;
@@ -47,6 +47,166 @@ public class RtcConfigs {
         return new Default(helperServers);
     }
 
+    /**
+     * Creates a config that delivers local candidates in batches, but otherwise behaves as the given config.
+     * @param config the config to wrap
+     * @param windowMillis the time in milliseconds that candidates are collected before they are delivered
+     * @param maxBatchSize the maximum number of candidates in a single batch
+     * @return a new config with local candidate batching
+     */
+    public static RtcConfig withLocalCandidateBatching(RtcConfig config, final long windowMillis, final int maxBatchSize) {
+        if (windowMillis < 0) {
+            throw new IllegalArgumentException("invalid batch window: " + windowMillis);
+        }
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("invalid batch size: " + maxBatchSize);
+        }
+        return new Wrapper(config) {
+            @Override
+            protected long getLocalCandidateBatchWindow() {
+                return windowMillis;
+            }
+
+            @Override
+            protected int getLocalCandidateBatchSize() {
+                return maxBatchSize;
+            }
+        };
+    }
+
+    /**
+     * Creates a config that limits the number of buffered remote candidates, but otherwise behaves as the given config.
+     * @param config the config to wrap
+     * @param limit the maximum number of remote candidates that are buffered before the remote description is set
+     * @return a new config with the remote candidate buffer limit
+     */
+    public static RtcConfig withRemoteCandidateBufferLimit(RtcConfig config, final int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("invalid buffer limit: " + limit);
+        }
+        return new Wrapper(config) {
+            @Override
+            protected int getRemoteCandidateBufferLimit() {
+                return limit;
+            }
+        };
+    }
+
+    /**
+     * Creates a config that selects candidates with a candidate policy, but otherwise behaves as the given config.
+     * @param config the config to wrap
+     * @param policy the policy that selects local and remote candidates
+     * @return a new config with the candidate policy
+     */
+    public static RtcConfig withCandidatePolicy(RtcConfig config, final CandidatePolicy policy) {
+        if (policy == null) {
+            throw new NullPointerException("policy should not be null");
+        }
+        return new Wrapper(config) {
+            @Override
+            protected CandidatePolicy getCandidatePolicy() {
+                return policy;
+            }
+        };
+    }
+
+    /**
+     * Creates a config that uses trickle-first mode, see {@link RtcConfig#shouldTrickleAllCandidates()},
+     * but otherwise behaves as the given config.
+     * @param config the config to wrap
+     * @return a new config that trickles all local candidates
+     */
+    public static RtcConfig withTrickleFirst(RtcConfig config) {
+        return new Wrapper(config) {
+            @Override
+            protected boolean shouldTrickleAllCandidates() {
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Creates a config that changes how long prepared candidates are used, but otherwise behaves as the given config.
+     * @param config the config to wrap
+     * @param ttlMillis the time to live of prepared candidates in milliseconds
+     * @return a new config with the prepared transport TTL
+     */
+    public static RtcConfig withPreparedTransportTtl(RtcConfig config, final long ttlMillis) {
+        if (ttlMillis <= 0) {
+            throw new IllegalArgumentException("invalid TTL: " + ttlMillis);
+        }
+        return new Wrapper(config) {
+            @Override
+            protected long getPreparedTransportTtl() {
+                return ttlMillis;
+            }
+        };
+    }
+
+    /**
+     * A config that forwards everything to another config, subclasses override the parts they change.
+     */
+    private static class Wrapper extends RtcConfig {
+        private final RtcConfig mConfig;
+
+        private Wrapper(RtcConfig config) {
+            if (config == null) {
+                throw new NullPointerException("config should not be null");
+            }
+            mConfig = config;
+        }
+
+        @Override
+        protected List<RtcPayload> getDefaultVideoPayloads() {
+            return mConfig.getDefaultVideoPayloads();
+        }
+
+        @Override
+        protected List<RtcPayload> getDefaultAudioPayloads() {
+            return mConfig.getDefaultAudioPayloads();
+        }
+
+        @Override
+        protected boolean shouldRespectRemotePayloadOrder() {
+            return mConfig.shouldRespectRemotePayloadOrder();
+        }
+
+        @Override
+        protected Collection<HelperServer> getHelperServers() {
+            return mConfig.getHelperServers();
+        }
+
+        @Override
+        protected long getLocalCandidateBatchWindow() {
+            return mConfig.getLocalCandidateBatchWindow();
+        }
+
+        @Override
+        protected int getLocalCandidateBatchSize() {
+            return mConfig.getLocalCandidateBatchSize();
+        }
+
+        @Override
+        protected int getRemoteCandidateBufferLimit() {
+            return mConfig.getRemoteCandidateBufferLimit();
+        }
+
+        @Override
+        protected CandidatePolicy getCandidatePolicy() {
+            return mConfig.getCandidatePolicy();
+        }
+
+        @Override
+        protected boolean shouldTrickleAllCandidates() {
+            return mConfig.shouldTrickleAllCandidates();
+        }
+
+        @Override
+        protected long getPreparedTransportTtl() {
+            return mConfig.getPreparedTransportTtl();
+        }
+    }
+
     private static class Default extends RtcConfig {
         private static final List<RtcPayload> sDefaultVideoPayloads = new ArrayList<>(3);
         static {
@@ -92,4 +92,28 @@ class RtcPayloadImpl implements RtcPayload {
     public boolean isCcmFir() {
         return mCcmFir;
     }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        RtcPayloadImpl other = (RtcPayloadImpl) o;
+        return mPayloadType == other.mPayloadType
+                && mClockRate == other.mClockRate
+                && mChannels == other.mChannels
+                && mNack == other.mNack
+                && mNackPli == other.mNackPli
+                && mCcmFir == other.mCcmFir
+                && Utils.objectsEqual(mEncodingName, other.mEncodingName)
+                && Utils.objectsEqual(mParameters, other.mParameters);
+    }
+
+    @Override
+    public int hashCode() {
+        return Utils.hash(mPayloadType, mEncodingName, mClockRate, mParameters, mChannels, mNack, mNackPli, mCcmFir);
+    }
 }
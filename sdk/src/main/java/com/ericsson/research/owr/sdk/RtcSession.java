@@ -25,8 +25,16 @@
  */
 package com.ericsson.research.owr.sdk;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Executor;
+
 /**
- * An interface representing a RTC session between two peers
+ * An interface representing a RTC session between two peers.
+ * The methods may be called from any thread, they are handled in order on a thread owned by the session.
+ * Once a session is active it can be renegotiated to add, remove or change streams without restarting it.
+ * Listeners are called on the main thread unless another executor is given, see {@link CallbackExecutors}.
+ * Callbacks that are given to the same executor are submitted in the order they happened.
  */
 public interface RtcSession {
 
@@ -36,12 +44,67 @@ public interface RtcSession {
      */
     void setOnLocalCandidateListener(OnLocalCandidateListener listener);
 
+    /**
+     * Sets the listener that will be called when a local candidate is generated.
+     * @param listener the listener
+     * @param executor the executor that the listener is called on
+     */
+    void setOnLocalCandidateListener(OnLocalCandidateListener listener, Executor executor);
+
+    /**
+     * Sets the listener that will be called with batches of local candidates, and once all local
+     * candidates have been generated. The size of the batches is controlled by the RtcConfig.
+     * @param listener the listener
+     */
+    void setOnLocalCandidatesListener(OnLocalCandidatesListener listener);
+
+    /**
+     * Sets the listener that will be called with batches of local candidates, and once all local
+     * candidates have been generated.
+     * @param listener the listener
+     * @param executor the executor that the listener is called on
+     */
+    void setOnLocalCandidatesListener(OnLocalCandidatesListener listener, Executor executor);
+
     /**
      * Sets the listener that will be called once a local description is ready to be sent to the peer.
      * @param listener the listener
      */
     void setOnLocalDescriptionListener(OnLocalDescriptionListener listener);
 
+    /**
+     * Sets the listener that will be called once a local description is ready to be sent to the peer.
+     * @param listener the listener
+     * @param executor the executor that the listener is called on
+     */
+    void setOnLocalDescriptionListener(OnLocalDescriptionListener listener, Executor executor);
+
+    /**
+     * Sets the listener that will be called with the setup timelines of all streams once the local description
+     * has been delivered.
+     * @param listener the listener
+     */
+    void setOnSetupTimelineListener(OnSetupTimelineListener listener);
+
+    /**
+     * Sets the listener that will be called with the setup timelines of all streams.
+     * @param listener the listener
+     * @param executor the executor that the listener is called on
+     */
+    void setOnSetupTimelineListener(OnSetupTimelineListener listener, Executor executor);
+
+    /**
+     * Returns the setup timelines of the streams of the session, which can also be used to find out why
+     * a session has not yet created its local description.
+     * @return a list with a timeline for each stream, or an empty list if the session hasn't been started
+     */
+    List<StreamSetupTimeline> getSetupTimelines();
+
+    /**
+     * @return a snapshot of the most recent state transitions and signaling events of the session
+     */
+    SessionTimeline getTimeline();
+
     /**
      * Start the session by getting ready to receive media, and generate a local description for the session.
      * If the remote description has already been set then media will sent as well.
@@ -51,8 +114,43 @@ public interface RtcSession {
     void start(StreamSet streamSet);
 
     /**
-     * Sets the remote description of the session. This method should only be called once, and only after
-     * setup has been called for outbound calls, and before setup for inbound calls.
+     * Start the session, calling the asynchronous callbacks of the stream set, such as received data channels,
+     * on the given executor instead of the main thread.
+     * @param streamSet the stream set that should be used for the call
+     * @param executor the executor that the callbacks of the stream set are called on
+     */
+    void start(StreamSet streamSet, Executor executor);
+
+    /**
+     * Starts a new offer/answer round on a session that is already set up, without interrupting the streams
+     * that are kept. Streams of the stream set that are already part of the session keep their transport and
+     * DTLS association, streams that are no longer in the set are made inactive, and new streams are added.
+     * Streams are matched by identity, so the same stream objects have to be used as when the session was started.
+     *
+     * If the session is active a new offer is created, and the answer should be passed to setRemoteDescription.
+     * If a new offer from the peer has been passed to setRemoteDescription, the answer to it is created.
+     * The new local description is delivered to the local description listener.
+     *
+     * @param streamSet the stream set that should be used for the rest of the call
+     */
+    void renegotiate(StreamSet streamSet);
+
+    /**
+     * Restarts ICE on an active session, for example after the device has changed network. Each active stream
+     * gets a new transport with new ICE credentials and candidates, while the streams of the stream set stay
+     * connected to the session. The old transports are kept until the answer has been received. Data channels
+     * are closed, since the SCTP association belongs to the old transport.
+     *
+     * A new offer is delivered to the local description listener, and the answer should be passed to
+     * setRemoteDescription. The peer answers the offer by calling {@link #renegotiate} with its stream set.
+     */
+    void restartIce();
+
+    /**
+     * Sets the remote description of the session. It should be called after setup for outbound calls, and
+     * before setup for inbound calls. Once the session is active it is called again for each renegotiation:
+     * with the answer after {@link #renegotiate} or {@link #restartIce} has created an offer, or with a new
+     * offer from the peer before calling {@link #renegotiate} to answer it.
      *
      * @param remoteDescription the SessionDescription received form the other peer.
      */
@@ -65,6 +163,14 @@ public interface RtcSession {
      */
     void addRemoteCandidate(RtcCandidate candidate);
 
+    /**
+     * Add a batch of RtcCandidates that are received from the other peer. This is equivalent to calling
+     * addRemoteCandidate for each candidate, but the candidates are handed to each stream in a single batch.
+     *
+     * @param candidates the candidates to add.
+     */
+    void addRemoteCandidates(Collection<RtcCandidate> candidates);
+
     /**
      * Ends the call, this has no effect if the session isn't active.
      */
@@ -84,6 +190,19 @@ public interface RtcSession {
         void onLocalCandidate(RtcCandidate candidate);
     }
 
+    interface OnLocalCandidatesListener {
+        /**
+         * Called when one or more local candidates have been generated.
+         * @param candidates local RtcCandidates that should be sent to the other peer.
+         */
+        void onLocalCandidates(List<RtcCandidate> candidates);
+
+        /**
+         * Called once candidate gathering is complete for all streams, no more local candidates will be generated.
+         */
+        void onEndOfCandidates();
+    }
+
     interface OnLocalDescriptionListener {
         /**
          * Called once the local description is ready to be sent to the peer.
@@ -91,4 +210,12 @@ public interface RtcSession {
          */
         void onLocalDescription(SessionDescription localDescription);
     }
+
+    interface OnSetupTimelineListener {
+        /**
+         * Called after the local description has been delivered.
+         * @param timelines the setup timelines of the streams, ordered by m-line index.
+         */
+        void onSetupTimeline(List<StreamSetupTimeline> timelines);
+    }
 }
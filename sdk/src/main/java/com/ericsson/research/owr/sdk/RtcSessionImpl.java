@@ -25,8 +25,6 @@
  */
 package com.ericsson.research.owr.sdk;
 
-import android.os.Handler;
-import android.os.Looper;
 import android.util.Log;
 import android.util.Pair;
 
@@ -42,46 +40,242 @@ import com.ericsson.research.owr.Session;
 import com.ericsson.research.owr.TransportAgent;
 
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
-import java.util.LinkedList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * The session is an actor: all calls and native events are handled in order on a single thread that is
+ * owned by the session, so none of the session state is shared between threads. Listeners are called on
+ * their executors, and the session thread exits when the session has been idle for a while.
+ */
 class RtcSessionImpl implements RtcSession, StreamHandler.RtcSessionDelegate {
     private static final String TAG = "RtcSessionImpl";
 
+    private static final long THREAD_KEEP_ALIVE_SECONDS = 30;
+    private static final int TIMELINE_CAPACITY = 256;
+
     private TransportAgent mTransportAgent;
 
     private final String mSessionId;
     private final RtcConfig mConfig;
 
     private SessionDescription mRemoteDescription = null;
-    private final Handler mMainHandler;
+    private final ScheduledThreadPoolExecutor mExecutor;
+    private volatile Thread mSessionThread = null;
 
-    private OnLocalCandidateListener mLocalCandidateListener = null;
+    private volatile Callback<OnLocalCandidateListener> mLocalCandidateListener = null;
+    private volatile Callback<OnLocalCandidatesListener> mLocalCandidatesListener = null;
+    private List<RtcCandidate> mLocalCandidateBatch = null;
+    private ScheduledFuture<?> mLocalCandidateBatchTimeout = null;
+    private boolean mEndOfCandidatesSent = false;
     private List<StreamHandler> mStreamHandlers;
-    private OnLocalDescriptionListener mLocalDescriptionListener;
-    private List<RtcCandidate> mRemoteCandidateBuffer;
+    private Executor mCallbackExecutor;
+    private List<StreamHandler> mReplacedStreamHandlers;
+    private Map<String, StreamHandler> mStreamHandlersByMid;
+    private volatile Callback<OnLocalDescriptionListener> mLocalDescriptionListener;
+    private volatile Callback<OnSetupTimelineListener> mSetupTimelineListener;
+    private RemoteCandidateBuffer mRemoteCandidateBuffer;
     private State mState;
+    private final SessionTimeline.Recorder mTimeline = new SessionTimeline.Recorder(TIMELINE_CAPACITY);
 
     private static Random sRandom = new Random();
 
     RtcSessionImpl(RtcConfig config) {
         mSessionId = "" + (sRandom.nextInt() + new Date().getTime());
         mConfig = config;
-        mState = State.STOPPED;
-        mMainHandler = new Handler(Looper.getMainLooper());
+        setState(State.STOPPED);
+        mExecutor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "RtcSession-" + mSessionId);
+                thread.setDaemon(true);
+                mSessionThread = thread;
+                return thread;
+            }
+        });
+        mExecutor.setKeepAliveTime(THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS);
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Used by the stream handlers to move native callbacks to the session thread
+     */
+    private final Executor mSessionExecutor = new Executor() {
+        @Override
+        public void execute(Runnable runnable) {
+            runOnSessionThread(runnable);
+        }
+    };
+
+    /**
+     * Queues a task on the session thread. Exceptions are logged, since there is no caller to report them to.
+     */
+    private void runOnSessionThread(final Runnable runnable) {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    runnable.run();
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "[RtcSession] task failed on session thread", e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Runs a task on the session thread and waits for the result. This is used by the few calls that have to
+     * report a result or an exception, the tasks are short and never wait for another thread, so the wait is short.
+     */
+    private <T> T runOnSessionThreadAndWait(Callable<T> callable) throws ExecutionException {
+        FutureTask<T> task = new FutureTask<>(callable);
+        if (Thread.currentThread() == mSessionThread) {
+            task.run();
+        } else {
+            mExecutor.execute(task);
+        }
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return task.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static RuntimeException propagate(ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof RuntimeException) {
+            return (RuntimeException) cause;
+        } else if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return new IllegalStateException(cause);
+    }
+
+    /**
+     * A listener together with the executor it should be called on, they are kept in a single
+     * object so that they can be replaced together while the session thread is using them.
+     */
+    private static class Callback<T> {
+        private final T mListener;
+        private final Executor mExecutor;
+
+        private Callback(T listener, Executor executor) {
+            mListener = listener;
+            mExecutor = executor;
+        }
+
+        private static <T> Callback<T> create(T listener, Executor executor) {
+            if (executor == null) {
+                throw new NullPointerException("executor should not be null");
+            }
+            return listener == null ? null : new Callback<>(listener, executor);
+        }
+    }
+
+    @Override
+    public void setOnLocalCandidateListener(final OnLocalCandidateListener listener) {
+        setOnLocalCandidateListener(listener, CallbackExecutors.mainThread());
+    }
+
+    @Override
+    public void setOnLocalCandidateListener(final OnLocalCandidateListener listener, final Executor executor) {
+        mLocalCandidateListener = Callback.create(listener, executor);
     }
 
     @Override
-    public synchronized void setOnLocalCandidateListener(final OnLocalCandidateListener listener) {
-        mLocalCandidateListener = listener;
+    public void setOnLocalCandidatesListener(final OnLocalCandidatesListener listener) {
+        setOnLocalCandidatesListener(listener, CallbackExecutors.mainThread());
+    }
+
+    @Override
+    public void setOnLocalCandidatesListener(final OnLocalCandidatesListener listener, final Executor executor) {
+        mLocalCandidatesListener = Callback.create(listener, executor);
     }
 
     @Override
     public void setOnLocalDescriptionListener(final OnLocalDescriptionListener listener) {
-        mLocalDescriptionListener = listener;
+        setOnLocalDescriptionListener(listener, CallbackExecutors.mainThread());
+    }
+
+    @Override
+    public void setOnLocalDescriptionListener(final OnLocalDescriptionListener listener, final Executor executor) {
+        mLocalDescriptionListener = Callback.create(listener, executor);
+    }
+
+    @Override
+    public void setOnSetupTimelineListener(final OnSetupTimelineListener listener) {
+        setOnSetupTimelineListener(listener, CallbackExecutors.mainThread());
+    }
+
+    @Override
+    public void setOnSetupTimelineListener(final OnSetupTimelineListener listener, final Executor executor) {
+        mSetupTimelineListener = Callback.create(listener, executor);
+    }
+
+    @Override
+    public List<StreamSetupTimeline> getSetupTimelines() {
+        try {
+            return runOnSessionThreadAndWait(new Callable<List<StreamSetupTimeline>>() {
+                @Override
+                public List<StreamSetupTimeline> call() {
+                    return collectSetupTimelines();
+                }
+            });
+        } catch (ExecutionException e) {
+            throw propagate(e);
+        }
+    }
+
+    @Override
+    public SessionTimeline getTimeline() {
+        try {
+            return runOnSessionThreadAndWait(new Callable<SessionTimeline>() {
+                @Override
+                public SessionTimeline call() {
+                    return mTimeline.snapshot();
+                }
+            });
+        } catch (ExecutionException e) {
+            throw propagate(e);
+        }
+    }
+
+    private void setState(State state) {
+        mState = state;
+        mTimeline.record(state.getTimelineEvent());
+    }
+
+    private List<StreamSetupTimeline> collectSetupTimelines() {
+        if (mStreamHandlers == null) {
+            return Collections.emptyList();
+        }
+        List<StreamSetupTimeline> timelines = new ArrayList<>(mStreamHandlers.size());
+        for (StreamHandler streamHandler : mStreamHandlers) {
+            timelines.add(streamHandler.getSetupTimeline());
+        }
+        return Collections.unmodifiableList(timelines);
     }
 
     @Override
@@ -91,8 +285,94 @@ class RtcSessionImpl implements RtcSession, StreamHandler.RtcSessionDelegate {
 
     @Override
     public void onLocalCandidate(final RtcCandidate candidate) {
-        if (mLocalCandidateListener != null) {
-            mLocalCandidateListener.onLocalCandidate(candidate);
+        if (mState == State.STOPPED) {
+            return;
+        }
+        mTimeline.record(SessionTimeline.Event.LOCAL_CANDIDATE, candidate.getStreamIndex());
+        long window = mConfig.getLocalCandidateBatchWindow();
+        if (mLocalCandidateBatch == null) {
+            mLocalCandidateBatch = new ArrayList<>();
+            if (window > 0) {
+                mLocalCandidateBatchTimeout = mExecutor.schedule(mFlushLocalCandidates, window, TimeUnit.MILLISECONDS);
+            }
+        }
+        mLocalCandidateBatch.add(candidate);
+        if (window <= 0 || mLocalCandidateBatch.size() >= mConfig.getLocalCandidateBatchSize()) {
+            flushLocalCandidates();
+        }
+    }
+
+    @Override
+    public void onCandidateGatheringDone() {
+        maybeSignalEndOfCandidates();
+    }
+
+    private final Runnable mFlushLocalCandidates = new Runnable() {
+        @Override
+        public void run() {
+            mLocalCandidateBatchTimeout = null;
+            flushLocalCandidates();
+        }
+    };
+
+    private void cancelLocalCandidateBatchTimeout() {
+        if (mLocalCandidateBatchTimeout != null) {
+            mLocalCandidateBatchTimeout.cancel(false);
+            mLocalCandidateBatchTimeout = null;
+        }
+    }
+
+    private void flushLocalCandidates() {
+        cancelLocalCandidateBatchTimeout();
+        final List<RtcCandidate> batch = mLocalCandidateBatch;
+        mLocalCandidateBatch = null;
+        if (batch == null) {
+            return;
+        }
+        final Callback<OnLocalCandidateListener> localCandidateListener = mLocalCandidateListener;
+        final Callback<OnLocalCandidatesListener> localCandidatesListener = mLocalCandidatesListener;
+        if (localCandidateListener != null) {
+            localCandidateListener.mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    for (RtcCandidate candidate : batch) {
+                        localCandidateListener.mListener.onLocalCandidate(candidate);
+                    }
+                }
+            });
+        }
+        if (localCandidatesListener != null) {
+            localCandidatesListener.mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    localCandidatesListener.mListener.onLocalCandidates(Collections.unmodifiableList(batch));
+                }
+            });
+        }
+    }
+
+    private void maybeSignalEndOfCandidates() {
+        // end-of-candidates is only meaningful once the local description has been sent
+        if (mEndOfCandidatesSent || mStreamHandlers == null || mState.isPending() || !mState.isStarted()) {
+            return;
+        }
+        for (StreamHandler streamHandler : mStreamHandlers) {
+            if (!streamHandler.isGatheringDone()) {
+                return;
+            }
+        }
+        log("candidate gathering done");
+        mTimeline.record(SessionTimeline.Event.END_OF_CANDIDATES);
+        mEndOfCandidatesSent = true;
+        flushLocalCandidates();
+        final Callback<OnLocalCandidatesListener> listener = mLocalCandidatesListener;
+        if (listener != null) {
+            listener.mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    listener.mListener.onEndOfCandidates();
+                }
+            });
         }
     }
 
@@ -101,7 +381,7 @@ class RtcSessionImpl implements RtcSession, StreamHandler.RtcSessionDelegate {
         if (mStreamHandlers == null) {
             streams = "[]";
         } else {
-            streams = Arrays.toString(mStreamHandlers.toArray(new StreamHandler[mStreamHandlers.size()]));
+            streams = mStreamHandlers.toString();
         }
         Log.d(TAG, "[RtcSession" +
                 " id=" + mSessionId +
@@ -112,67 +392,100 @@ class RtcSessionImpl implements RtcSession, StreamHandler.RtcSessionDelegate {
     }
 
     @Override
-    public synchronized void start(final StreamSet streamSet) {
-        if (mState.isStarted()) {
-            Log.w(TAG, "start called at wrong state: " + mState);
-            return;
-        }
+    public void start(final StreamSet streamSet) {
+        start(streamSet, CallbackExecutors.mainThread());
+    }
+
+    @Override
+    public void start(final StreamSet streamSet, final Executor executor) {
         if (streamSet == null) {
             throw new NullPointerException("streamSet may not be null");
         }
+        if (executor == null) {
+            throw new NullPointerException("executor should not be null");
+        }
+        runOnSessionThread(new Runnable() {
+            @Override
+            public void run() {
+                handleStart(streamSet, executor);
+            }
+        });
+    }
+
+    private void handleStart(StreamSet streamSet, Executor callbackExecutor) {
+        if (mState.isStarted() || mStreamHandlers != null) {
+            Log.w(TAG, "start called at wrong state: " + mState);
+            return;
+        }
         log("setup called");
+        mTimeline.record(SessionTimeline.Event.START);
+        mCallbackExecutor = callbackExecutor;
 
         boolean isInitiator = mState == State.STOPPED;
 
-        mTransportAgent = new TransportAgent(isInitiator);
+        TransportPool.PreparedTransport preparedTransport = null;
+        if (isInitiator) {
+            preparedTransport = TransportPool.take(mConfig, getPreparableStreamTypes(streamSet));
+        }
 
-        for (RtcConfig.HelperServer helperServer : mConfig.getHelperServers()) {
-            mTransportAgent.addHelperServer(
-                    helperServer.getType(),
-                    helperServer.getAddress(),
-                    helperServer.getPort(),
-                    helperServer.getUsername(),
-                    helperServer.getPassword()
-            );
+        if (preparedTransport != null) {
+            log("using prepared transport");
+            mTransportAgent = preparedTransport.getTransportAgent();
+        } else {
+            mTransportAgent = new TransportAgent(isInitiator);
+
+            for (RtcConfig.HelperServer helperServer : mConfig.getHelperServers()) {
+                mTransportAgent.addHelperServer(
+                        helperServer.getType(),
+                        helperServer.getAddress(),
+                        helperServer.getPort(),
+                        helperServer.getUsername(),
+                        helperServer.getPassword()
+                );
+            }
         }
 
-        mStreamHandlers = new LinkedList<>();
+        mStreamHandlers = new ArrayList<>();
+        mEndOfCandidatesSent = false;
         int index = 0;
         if (isInitiator) {
             // For outbound calls we initiate all streams without any remote description
             for (StreamSet.Stream stream : streamSet.getStreams()) {
-                mStreamHandlers.add(createStreamHandler(index, null, stream));
+                TransportPool.PreparedSession preparedSession = null;
+                if (preparedTransport != null) {
+                    preparedSession = preparedTransport.getSession(index);
+                }
+                mStreamHandlers.add(createStreamHandler(index, null, stream, callbackExecutor, preparedSession));
                 index++;
             }
         } else {
             for (Pair<StreamDescription, StreamSet.Stream> pair : Utils.resolveOfferedStreams(mRemoteDescription, streamSet.getStreams())) {
                 StreamDescription description = pair.first;
                 StreamSet.Stream stream = pair.second;
-                mStreamHandlers.add(createStreamHandler(index, description, stream));
+                mStreamHandlers.add(createStreamHandler(index, description, stream, callbackExecutor, null));
                 index++;
             }
         }
+        mStreamHandlersByMid = new HashMap<>();
         for (StreamHandler handler : mStreamHandlers) {
-            if (handler.getSession() != null) {
-                mTransportAgent.addSession(handler.getSession());
-            }
+            registerStreamHandler(handler);
         }
 
         if (mState == State.STOPPED) {
-            mState = State.PENDING_A;
+            setState(State.PENDING_A);
         } else {
-            mState = State.PENDING_B;
+            setState(State.PENDING_B);
         }
 
-        if (mRemoteDescription != null && mRemoteCandidateBuffer != null) {
-            for (RtcCandidate candidate : mRemoteCandidateBuffer) {
-                addRemoteCandidate(candidate);
+        if (mRemoteDescription != null) {
+            for (StreamHandler handler : mStreamHandlers) {
+                replayRemoteCandidates(handler);
             }
-            mRemoteCandidateBuffer = null;
+            clearRemoteCandidateBuffer();
         }
         log("initial setup complete");
 
-        mMainHandler.post(new Runnable() {
+        runOnSessionThread(new Runnable() {
             @Override
             public void run() {
                 // we might be ready straight away if there are no active streams.
@@ -182,7 +495,175 @@ class RtcSessionImpl implements RtcSession, StreamHandler.RtcSessionDelegate {
         });
     }
 
-    private synchronized void maybeFinishSetup() {
+    private void registerStreamHandler(StreamHandler handler) {
+        // streams without a mid are only found by their index
+        if (handler.getMid() != null) {
+            mStreamHandlersByMid.put(handler.getMid(), handler);
+        }
+        if (handler.getSession() != null && !handler.isPrepared()) {
+            mTransportAgent.addSession(handler.getSession());
+        }
+    }
+
+    @Override
+    public void renegotiate(final StreamSet streamSet) {
+        if (streamSet == null) {
+            throw new NullPointerException("streamSet may not be null");
+        }
+        runOnSessionThread(new Runnable() {
+            @Override
+            public void run() {
+                handleRenegotiate(streamSet);
+            }
+        });
+    }
+
+    private void handleRenegotiate(StreamSet streamSet) {
+        boolean isOfferer;
+        if (mState == State.ACTIVE) {
+            isOfferer = true;
+        } else if (mState == State.HAS_OFFER && mStreamHandlers != null) {
+            isOfferer = false;
+        } else {
+            Log.w(TAG, "renegotiate called at wrong state: " + mState);
+            return;
+        }
+        log("renegotiation called");
+        mTimeline.record(SessionTimeline.Event.RENEGOTIATE);
+
+        // streams that are already part of the session keep their handler, and with it their transport and DTLS association
+        List<? extends StreamSet.Stream> streams = streamSet.getStreams();
+        List<StreamSet.Stream> newStreams = new ArrayList<>(streams);
+        for (StreamHandler handler : mStreamHandlers) {
+            StreamSet.Stream stream = handler.getStream();
+            if (stream == null || handler.getSession() == null) {
+                continue;
+            }
+            if (!newStreams.remove(stream)) {
+                handler.deactivate();
+            }
+        }
+
+        int existingCount = mStreamHandlers.size();
+        if (isOfferer) {
+            for (StreamSet.Stream stream : newStreams) {
+                StreamHandler handler = createStreamHandler(mStreamHandlers.size(), null, stream, mCallbackExecutor, null);
+                mStreamHandlers.add(handler);
+                registerStreamHandler(handler);
+            }
+            setState(State.PENDING_A);
+        } else {
+            List<StreamDescription> streamDescriptions = mRemoteDescription.getStreamDescriptions();
+            for (int i = 0; i < existingCount; i++) {
+                StreamHandler handler = mStreamHandlers.get(i);
+                if (handler.getSession() == null) {
+                    continue;
+                }
+                StreamDescription streamDescription = streamDescriptions.get(i);
+                if (streamDescription.getMode() == StreamMode.INACTIVE) {
+                    handler.deactivate();
+                } else if (isIceRestart(handler, streamDescription)) {
+                    Log.d(TAG, "[RtcSession] restarting ICE for " + handler);
+                    StreamHandler replacement = createStreamHandler(i, streamDescription, handler.getStream(), mCallbackExecutor, null);
+                    replaceStreamHandler(handler, replacement);
+                    handler.stop();
+                    replayRemoteCandidates(replacement);
+                } else {
+                    handler.setRemoteStreamDescription(streamDescription);
+                    replayRemoteCandidates(handler);
+                }
+            }
+            List<StreamDescription> addedDescriptions = streamDescriptions.subList(existingCount, streamDescriptions.size());
+            for (Pair<StreamDescription, StreamSet.Stream> pair : Utils.resolveOfferedStreams(addedDescriptions, newStreams)) {
+                StreamHandler handler = createStreamHandler(mStreamHandlers.size(), pair.first, pair.second, mCallbackExecutor, null);
+                mStreamHandlers.add(handler);
+                registerStreamHandler(handler);
+                replayRemoteCandidates(handler);
+            }
+            clearRemoteCandidateBuffer();
+            setState(State.PENDING_B);
+        }
+        log("added " + (mStreamHandlers.size() - existingCount) + " streams");
+
+        mEndOfCandidatesSent = false;
+        runOnSessionThread(new Runnable() {
+            @Override
+            public void run() {
+                maybeFinishSetup();
+            }
+        });
+    }
+
+    @Override
+    public void restartIce() {
+        runOnSessionThread(new Runnable() {
+            @Override
+            public void run() {
+                handleRestartIce();
+            }
+        });
+    }
+
+    private void handleRestartIce() {
+        if (mState != State.ACTIVE) {
+            Log.w(TAG, "restartIce called at wrong state: " + mState);
+            return;
+        }
+        log("ICE restart called");
+        mTimeline.record(SessionTimeline.Event.ICE_RESTART);
+
+        // the old handlers keep the media flowing until the answer arrives
+        mReplacedStreamHandlers = new ArrayList<>();
+        for (int i = 0; i < mStreamHandlers.size(); i++) {
+            StreamHandler handler = mStreamHandlers.get(i);
+            if (handler.getStream() == null || handler.getSession() == null) {
+                continue;
+            }
+            StreamHandler replacement = createStreamHandler(i, null, handler.getStream(), mCallbackExecutor, null);
+            replacement.getLocalStreamDescription().setMid(handler.getMid());
+            replaceStreamHandler(handler, replacement);
+            mReplacedStreamHandlers.add(handler);
+        }
+        setState(State.PENDING_A);
+        mEndOfCandidatesSent = false;
+        runOnSessionThread(new Runnable() {
+            @Override
+            public void run() {
+                maybeFinishSetup();
+            }
+        });
+    }
+
+    private void replaceStreamHandler(StreamHandler handler, StreamHandler replacement) {
+        handler.markReplaced();
+        mStreamHandlers.set(handler.getIndex(), replacement);
+        registerStreamHandler(replacement);
+        if (handler.getRemoteMid() != null) {
+            mStreamHandlersByMid.put(handler.getRemoteMid(), replacement);
+        }
+    }
+
+    private void stopReplacedStreamHandlers() {
+        if (mReplacedStreamHandlers != null) {
+            for (StreamHandler handler : mReplacedStreamHandlers) {
+                handler.stop();
+            }
+            mReplacedStreamHandlers = null;
+        }
+    }
+
+    /**
+     * @return true if the peer has changed the ICE credentials of a stream, which means that it's restarting ICE
+     */
+    private static boolean isIceRestart(StreamHandler handler, StreamDescription streamDescription) {
+        StreamDescription current = handler.getRemoteStreamDescription();
+        if (current == null || current.getUfrag() == null) {
+            return false;
+        }
+        return !current.getUfrag().equals(streamDescription.getUfrag());
+    }
+
+    private void maybeFinishSetup() {
         final SessionDescription sessionDescription;
 
         if (!mState.isPending()) {
@@ -200,10 +681,10 @@ class RtcSessionImpl implements RtcSession, StreamHandler.RtcSessionDelegate {
 
         if (mState == State.PENDING_A) {
             type = SessionDescription.Type.OFFER;
-            mState = State.WAIT_ANSWER;
+            setState(State.WAIT_ANSWER);
         } else if (mState == State.PENDING_B) {
             type = SessionDescription.Type.ANSWER;
-            mState = State.ACTIVE;
+            setState(State.ACTIVE);
         } else {
             Log.e(TAG, "invalid state when finishing setup: " + mState);
             return;
@@ -216,26 +697,79 @@ class RtcSessionImpl implements RtcSession, StreamHandler.RtcSessionDelegate {
         }
 
         sessionDescription = new SessionDescriptionImpl(type, mSessionId, streamDescriptions);
+        mTimeline.record(SessionTimeline.Event.LOCAL_DESCRIPTION);
+        final List<StreamSetupTimeline> timelines = collectSetupTimelines();
+        log("setup timelines: " + timelines);
 
-        mMainHandler.post(new Runnable() {
-            @Override
-            public void run() {
-                if (mLocalDescriptionListener != null) {
-                    mLocalDescriptionListener.onLocalDescription(sessionDescription);
+        final Callback<OnLocalDescriptionListener> localDescriptionListener = mLocalDescriptionListener;
+        if (localDescriptionListener != null) {
+            localDescriptionListener.mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    localDescriptionListener.mListener.onLocalDescription(sessionDescription);
                 }
+            });
+        }
+        final Callback<OnSetupTimelineListener> setupTimelineListener = mSetupTimelineListener;
+        if (setupTimelineListener != null) {
+            setupTimelineListener.mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    setupTimelineListener.mListener.onSetupTimeline(timelines);
+                }
+            });
+        }
+        // in trickle-first mode the candidates that were gathered so far follow right after the description
+        for (StreamHandler streamHandler : mStreamHandlers) {
+            for (RtcCandidate candidate : streamHandler.takePendingLocalCandidates()) {
+                onLocalCandidate(candidate);
             }
-        });
+        }
+        maybeSignalEndOfCandidates();
     }
 
     private void handleOffer(final SessionDescription remoteDescription) throws InvalidDescriptionException {
+        if (mState == State.ACTIVE) {
+            handleRenegotiationOffer(remoteDescription);
+            return;
+        }
         if (mState != State.STOPPED) {
             Log.w(TAG, "got offer at invalid state: " + mState);
             return;
         }
 
         mRemoteDescription = remoteDescription;
-        mState = State.HAS_OFFER;
+        setState(State.HAS_OFFER);
         log("received offer");
+        mTimeline.record(SessionTimeline.Event.REMOTE_OFFER);
+
+        if (!remoteDescription.getBundleGroup().isEmpty()) {
+            // each stream has its own transport, so the answer leaves out the group and the offerer
+            // falls back to using a separate transport for each m-line
+            log("declining BUNDLE group " + remoteDescription.getBundleGroup());
+        }
+    }
+
+    /**
+     * A new offer for an active session, it is answered once renegotiate is called with the stream set to use.
+     */
+    private void handleRenegotiationOffer(SessionDescription remoteDescription) throws InvalidDescriptionException {
+        List<StreamDescription> streamDescriptions = remoteDescription.getStreamDescriptions();
+        if (streamDescriptions.size() < mStreamHandlers.size()) {
+            throw new InvalidDescriptionException("renegotiation offer removes m-lines: " +
+                    streamDescriptions.size() + " < " + mStreamHandlers.size());
+        }
+        for (int i = 0; i < mStreamHandlers.size(); i++) {
+            StreamType type = mStreamHandlers.get(i).getLocalStreamDescription().getType();
+            if (streamDescriptions.get(i).getType() != type) {
+                throw new InvalidDescriptionException("renegotiation offer changes the type of stream " + i + ": " +
+                        streamDescriptions.get(i).getType() + " != " + type);
+            }
+        }
+        mRemoteDescription = remoteDescription;
+        setState(State.HAS_OFFER);
+        log("received renegotiation offer");
+        mTimeline.record(SessionTimeline.Event.REMOTE_OFFER);
     }
 
     private void handleAnswer(final SessionDescription remoteDescription) throws InvalidDescriptionException {
@@ -245,6 +779,12 @@ class RtcSessionImpl implements RtcSession, StreamHandler.RtcSessionDelegate {
         }
         mRemoteDescription = remoteDescription;
         log("received answer");
+        mTimeline.record(SessionTimeline.Event.REMOTE_ANSWER);
+
+        if (!remoteDescription.getBundleGroup().isEmpty()) {
+            throw new InvalidDescriptionException("answer has a BUNDLE group that wasn't offered: " +
+                    remoteDescription.getBundleGroup());
+        }
 
         List<StreamDescription> streamDescriptions = remoteDescription.getStreamDescriptions();
         int numStreamDescriptions = streamDescriptions.size();
@@ -258,28 +798,77 @@ class RtcSessionImpl implements RtcSession, StreamHandler.RtcSessionDelegate {
         for (int i = 0; i < size; i++) {
             StreamDescription streamDescription = streamDescriptions.get(i);
             StreamHandler streamHandler = mStreamHandlers.get(i);
-            if (streamDescription.getType() != streamHandler.getStream().getType()) {
+            StreamType type = streamHandler.getLocalStreamDescription().getType();
+            if (streamDescription.getType() != type) {
                 throw new InvalidDescriptionException("stream description types do not match: " +
-                        streamDescription.getType() + " != " + streamHandler.getStream().getType());
+                        streamDescription.getType() + " != " + type);
+            }
+            if (streamHandler.getSession() == null) {
+                // removed during renegotiation, the m-line stays inactive
+                continue;
             }
             streamHandler.setRemoteStreamDescription(streamDescription);
+            String remoteMid = streamHandler.getRemoteMid();
+            if (remoteMid != null && !mStreamHandlersByMid.containsKey(remoteMid)) {
+                mStreamHandlersByMid.put(remoteMid, streamHandler);
+            }
+            replayRemoteCandidates(streamHandler);
         }
 
-        mState = State.ACTIVE;
+        setState(State.ACTIVE);
+        clearRemoteCandidateBuffer();
+        stopReplacedStreamHandlers();
+    }
 
-        if (mRemoteCandidateBuffer != null) {
-            for (RtcCandidate candidate : mRemoteCandidateBuffer) {
-                addRemoteCandidate(candidate);
-            }
-            mRemoteCandidateBuffer = null;
+    private void bufferRemoteCandidate(RtcCandidate candidate) {
+        if (mRemoteCandidateBuffer == null) {
+            mRemoteCandidateBuffer = new RemoteCandidateBuffer(mConfig.getRemoteCandidateBufferLimit());
         }
+        mRemoteCandidateBuffer.add(candidate);
+        mTimeline.record(SessionTimeline.Event.REMOTE_CANDIDATE_BUFFERED, candidate.getStreamIndex());
+    }
+
+    private void replayRemoteCandidates(StreamHandler streamHandler) {
+        if (mRemoteCandidateBuffer == null) {
+            return;
+        }
+        List<RtcCandidate> candidates = mRemoteCandidateBuffer.take(streamHandler.getIndex(), streamHandler.getRemoteMid());
+        if (!candidates.isEmpty()) {
+            Log.d(TAG, "[RtcSession] replaying " + candidates.size() + " buffered candidates for " + streamHandler);
+            streamHandler.onRemoteCandidates(candidates);
+        }
+    }
+
+    private void clearRemoteCandidateBuffer() {
+        if (mRemoteCandidateBuffer != null && !mRemoteCandidateBuffer.isEmpty()) {
+            Log.w(TAG, "[RtcSession] dropping " + mRemoteCandidateBuffer.size() + " buffered candidates without a stream");
+        }
+        mRemoteCandidateBuffer = null;
     }
 
     @Override
-    public synchronized void setRemoteDescription(final SessionDescription remoteDescription) throws InvalidDescriptionException {
+    public void setRemoteDescription(final SessionDescription remoteDescription) throws InvalidDescriptionException {
         if (remoteDescription == null) {
             throw new NullPointerException("remote description should not be null");
         }
+        // waits for the session thread, so that an invalid description can be reported to the caller
+        try {
+            runOnSessionThreadAndWait(new Callable<Void>() {
+                @Override
+                public Void call() throws InvalidDescriptionException {
+                    handleRemoteDescription(remoteDescription);
+                    return null;
+                }
+            });
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof InvalidDescriptionException) {
+                throw (InvalidDescriptionException) e.getCause();
+            }
+            throw propagate(e);
+        }
+    }
+
+    private void handleRemoteDescription(SessionDescription remoteDescription) throws InvalidDescriptionException {
         if (remoteDescription.getType() == SessionDescription.Type.OFFER) {
             handleOffer(remoteDescription);
         } else if (remoteDescription.getType() == SessionDescription.Type.ANSWER) {
@@ -290,97 +879,230 @@ class RtcSessionImpl implements RtcSession, StreamHandler.RtcSessionDelegate {
     }
 
     @Override
-    public synchronized void addRemoteCandidate(final RtcCandidate candidate) {
+    public void addRemoteCandidate(final RtcCandidate candidate) {
+        if (candidate == null) {
+            throw new NullPointerException("candidate should not be null");
+        }
+        runOnSessionThread(new Runnable() {
+            @Override
+            public void run() {
+                handleRemoteCandidate(candidate);
+            }
+        });
+    }
+
+    private void handleRemoteCandidate(RtcCandidate candidate) {
         if (mState == State.STOPPED) {
             return;
         } else if (mRemoteDescription == null || mState == State.HAS_OFFER) {
-            if (mRemoteCandidateBuffer == null) {
-                mRemoteCandidateBuffer = new LinkedList<>();
-            }
-            mRemoteCandidateBuffer.add(candidate);
+            bufferRemoteCandidate(candidate);
             Log.d(TAG, "[RtcSession] buffering candidate for stream " + candidate.getStreamIndex());
             return;
         }
 
-        StreamHandler streamHandler = null;
-        int index = candidate.getStreamIndex();
-//        String id = candidate.getStreamId();
-
-        if (index < 0) {
-            // TODO: use id?
-/*            if (id != null) {
-                for (StreamHandler handler : mStreamHandlers) {
-                    if (id.equals(handler.getStream().getId())) {
-                        streamHandler = handler;
-                        break;
-                    }
-                }
-            }*/
-        } else if (index < mStreamHandlers.size()) {
-            streamHandler = mStreamHandlers.get(index);
-        }
-
-        if (streamHandler != null) {
+        StreamHandler streamHandler = getStreamHandler(candidate);
+        if (shouldBufferRemoteCandidate(streamHandler)) {
+            bufferRemoteCandidate(candidate);
+            Log.d(TAG, "[RtcSession] buffering candidate for stream " + candidate.getStreamIndex());
+        } else if (streamHandler != null) {
             Log.d(TAG, "[RtcSession] got remote candidate for " + streamHandler);
+            mTimeline.record(SessionTimeline.Event.REMOTE_CANDIDATE, streamHandler.getIndex());
             streamHandler.onRemoteCandidate(candidate);
         }
     }
 
+    /**
+     * Candidates for streams that are being added by a renegotiation are buffered until the stream has a remote description.
+     */
+    private boolean shouldBufferRemoteCandidate(StreamHandler streamHandler) {
+        if (streamHandler == null) {
+            return mState != State.ACTIVE;
+        }
+        return streamHandler.getSession() != null && !streamHandler.haveRemoteDescription();
+    }
+
+    @Override
+    public void addRemoteCandidates(final Collection<RtcCandidate> candidates) {
+        if (candidates == null) {
+            throw new NullPointerException("candidates should not be null");
+        }
+        if (candidates.isEmpty()) {
+            return;
+        }
+        // copied, since the caller may modify the collection before the session thread gets to it
+        final List<RtcCandidate> copy = new ArrayList<>(candidates);
+        runOnSessionThread(new Runnable() {
+            @Override
+            public void run() {
+                handleRemoteCandidates(copy);
+            }
+        });
+    }
+
+    private void handleRemoteCandidates(List<RtcCandidate> candidates) {
+        if (mState == State.STOPPED) {
+            return;
+        } else if (mRemoteDescription == null || mState == State.HAS_OFFER) {
+            for (RtcCandidate candidate : candidates) {
+                bufferRemoteCandidate(candidate);
+            }
+            Log.d(TAG, "[RtcSession] buffering " + candidates.size() + " candidates");
+            return;
+        }
+
+        // group the candidates by stream, so that each stream handler gets a single batch
+        List<List<RtcCandidate>> batches = new ArrayList<>(mStreamHandlers.size());
+        for (int i = 0; i < mStreamHandlers.size(); i++) {
+            batches.add(null);
+        }
+        for (RtcCandidate candidate : candidates) {
+            StreamHandler streamHandler = getStreamHandler(candidate);
+            if (shouldBufferRemoteCandidate(streamHandler)) {
+                bufferRemoteCandidate(candidate);
+                continue;
+            } else if (streamHandler == null) {
+                continue;
+            }
+            List<RtcCandidate> batch = batches.get(streamHandler.getIndex());
+            if (batch == null) {
+                batch = new ArrayList<>();
+                batches.set(streamHandler.getIndex(), batch);
+            }
+            batch.add(candidate);
+            mTimeline.record(SessionTimeline.Event.REMOTE_CANDIDATE, streamHandler.getIndex());
+        }
+        for (int i = 0; i < batches.size(); i++) {
+            List<RtcCandidate> batch = batches.get(i);
+            if (batch != null) {
+                StreamHandler streamHandler = mStreamHandlers.get(i);
+                Log.d(TAG, "[RtcSession] got " + batch.size() + " remote candidates for " + streamHandler);
+                streamHandler.onRemoteCandidates(batch);
+            }
+        }
+    }
+
+    private StreamHandler getStreamHandler(RtcCandidate candidate) {
+        if (mStreamHandlers == null) {
+            return null;
+        }
+        // the mid takes precedence over the index, as it still identifies the right stream if the peer reorders them
+        String mid = candidate.getStreamId();
+        if (mid != null) {
+            StreamHandler streamHandler = mStreamHandlersByMid.get(mid);
+            if (streamHandler != null) {
+                return streamHandler;
+            }
+        }
+        int index = candidate.getStreamIndex();
+        if (index >= 0 && index < mStreamHandlers.size()) {
+            return mStreamHandlers.get(index);
+        }
+        return null;
+    }
+
     @Override
     public void stop() {
-        mState = State.STOPPED;
+        runOnSessionThread(new Runnable() {
+            @Override
+            public void run() {
+                handleStop();
+            }
+        });
+    }
+
+    private void handleStop() {
+        setState(State.STOPPED);
+        cancelLocalCandidateBatchTimeout();
+        mLocalCandidateBatch = null;
 
         if (mStreamHandlers != null) {
             for (StreamHandler streamHandler : mStreamHandlers) {
                 streamHandler.stop();
             }
         }
+        stopReplacedStreamHandlers();
 
         mRemoteCandidateBuffer = null;
         mRemoteDescription = null;
         mTransportAgent = null;
         mStreamHandlers = null;
+        mStreamHandlersByMid = null;
     }
 
     @Override
     public String dumpPipelineGraph() {
-        if (mTransportAgent != null) {
-            return mTransportAgent.getDotData();
+        try {
+            return runOnSessionThreadAndWait(new Callable<String>() {
+                @Override
+                public String call() {
+                    return mTransportAgent != null ? mTransportAgent.getDotData() : null;
+                }
+            });
+        } catch (ExecutionException e) {
+            throw propagate(e);
         }
-        return null;
     }
 
-    private StreamHandler createStreamHandler(int index, StreamDescription streamDescription, StreamSet.Stream stream) {
+    /**
+     * @return the types of the streams of the stream set, with null for the streams that can't use a prepared session
+     */
+    private static List<StreamType> getPreparableStreamTypes(StreamSet streamSet) {
+        List<StreamType> streamTypes = new ArrayList<>();
+        for (StreamSet.Stream stream : streamSet.getStreams()) {
+            if (stream instanceof StreamSet.MediaStream) {
+                StreamSet.MediaStream mediaStream = (StreamSet.MediaStream) stream;
+                // inactive media streams don't use rtcp-mux, which the prepared sessions are set up with
+                boolean active = mediaStream.wantSend() || mediaStream.wantReceive();
+                streamTypes.add(active ? stream.getType() : null);
+            } else {
+                streamTypes.add(stream.getType());
+            }
+        }
+        return streamTypes;
+    }
+
+    private StreamHandler createStreamHandler(int index, StreamDescription streamDescription, StreamSet.Stream stream,
+                                             Executor callbackExecutor, TransportPool.PreparedSession preparedSession) {
         StreamHandler streamHandler;
         if (stream == null) {
             if (streamDescription.getType() == StreamType.DATA) {
-                streamHandler = new DataStreamHandler(index, streamDescription, null);
+                streamHandler = new DataStreamHandler(index, streamDescription, null, mConfig, mSessionExecutor,
+                        callbackExecutor, null);
             } else {
-                streamHandler = new MediaStreamHandler(index, streamDescription, null, mConfig);
+                streamHandler = new MediaStreamHandler(index, streamDescription, null, mConfig, mSessionExecutor,
+                        callbackExecutor, null);
             }
         } else if (stream.getType() == StreamType.DATA) {
-            streamHandler = new DataStreamHandler(index, streamDescription, (StreamSet.DataStream) stream);
+            streamHandler = new DataStreamHandler(index, streamDescription, (StreamSet.DataStream) stream, mConfig,
+                    mSessionExecutor, callbackExecutor, preparedSession);
         } else {
-            streamHandler = new MediaStreamHandler(index, streamDescription, (StreamSet.MediaStream) stream, mConfig);
+            streamHandler = new MediaStreamHandler(index, streamDescription, (StreamSet.MediaStream) stream, mConfig,
+                    mSessionExecutor, callbackExecutor, preparedSession);
         }
         streamHandler.setRtcSessionDelegate(this);
         return streamHandler;
     }
 
     private enum State {
-        STOPPED(false, false),
-        PENDING_A(true, true),
-        WAIT_ANSWER(false, true),
-        HAS_OFFER(false, false),
-        PENDING_B(true, true),
-        ACTIVE(false, true);
+        STOPPED(false, false, SessionTimeline.Event.STOPPED),
+        PENDING_A(true, true, SessionTimeline.Event.PENDING_OFFER),
+        WAIT_ANSWER(false, true, SessionTimeline.Event.WAIT_ANSWER),
+        HAS_OFFER(false, false, SessionTimeline.Event.HAS_OFFER),
+        PENDING_B(true, true, SessionTimeline.Event.PENDING_ANSWER),
+        ACTIVE(false, true, SessionTimeline.Event.ACTIVE);
 
         private final boolean mPending;
         private final boolean mStopped;
+        private final SessionTimeline.Event mTimelineEvent;
 
-        State(boolean pending, boolean stopped) {
+        State(boolean pending, boolean stopped, SessionTimeline.Event timelineEvent) {
             mPending = pending;
             mStopped = stopped;
+            mTimelineEvent = timelineEvent;
+        }
+
+        public SessionTimeline.Event getTimelineEvent() {
+            return mTimelineEvent;
         }
 
         public boolean isPending() {
@@ -25,6 +25,8 @@
  */
 package com.ericsson.research.owr.sdk;
 
+import java.util.List;
+
 public class RtcSessions {
     private static final String TAG = "RtcSessions";
 
@@ -33,4 +35,39 @@ public class RtcSessions {
     public static RtcSession create(RtcConfig config) {
         return new RtcSessionImpl(config);
     }
+
+    /**
+     * Prepares SDP processing on a background thread, so that the first session description that is
+     * handled isn't slowed down by initialization. This can be called at application start, and calling
+     * it more than once is harmless.
+     */
+    public static void warmUp() {
+        SdpProcessor.warmUp(false);
+    }
+
+    /**
+     * Starts gathering candidates for an outbound call before it is made, so that the offer can be created
+     * without waiting for STUN and TURN servers. The next session that is created with the same config object
+     * and started as the initiator, with active streams of the same types in the same order, will use the
+     * prepared candidates. Candidates are gathered again once they are older than the TTL of the config,
+     * until they are used or {@link #cancelPrepare} is called, but at most four times. A prepared call that
+     * isn't made within five TTLs is dropped, so that its STUN and TURN gathering doesn't go on forever.
+     * Each call to prepare is used by at most one session.
+     *
+     * @param config the config that will be used to create the session
+     * @param expectedStreams the types of the streams of the stream set that will be used to start the session
+     */
+    public static void prepare(RtcConfig config, List<StreamType> expectedStreams) {
+        TransportPool.prepare(config, expectedStreams);
+    }
+
+    /**
+     * Stops gathering candidates for a call that was prepared with the config.
+     *
+     * @param config the config that was passed to prepare
+     * @return true if a call was prepared with the config
+     */
+    public static boolean cancelPrepare(RtcConfig config) {
+        return TransportPool.cancel(config);
+    }
 }
@@ -0,0 +1,676 @@
+/*
+ * Copyright (c) 2015, Ericsson AB.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package com.ericsson.research.owr.sdk;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Generates SDP in the same format as SDP.generate in sdp.js.
+ *
+ * Session descriptions are written straight from the StreamDescription model into a single
+ * StringBuilder, while the JSON variant is kept for descriptions that only exist in the sdp.js
+ * JSON format. Values that are missing from the JSON are written as empty strings, where sdp.js
+ * would leave the template placeholder in the output.
+ *
+ * BUNDLE groups are parsed but never written. Every stream still has its own transport, so a
+ * generated description must not ask the peer to bundle them.
+ */
+class SdpGenerator {
+    private static final String TAG = "SdpGenerator";
+
+    private static final String CRLF = "\r\n";
+
+    private SdpGenerator() {}
+
+    /**
+     * Generates the SDP for a session description, the output is the same as passing the JSON
+     * representation of the session description to sdp.js
+     * @param sessionDescription the session description to generate SDP for
+     * @return the SDP
+     */
+    static String generate(SessionDescription sessionDescription) {
+        if (sessionDescription == null) {
+            throw new NullPointerException("session description should not be null");
+        }
+        List<StreamDescription> streamDescriptions = sessionDescription.getStreamDescriptions();
+        StringBuilder sb = new StringBuilder(estimateLength(streamDescriptions));
+
+        String sessionId = sessionDescription.getSessionId();
+        sb.append("v=0\r\n");
+        sb.append("o=- ").append(sessionId != null ? sessionId : randomSessionId()).append(" 1 IN IP4 127.0.0.1\r\n");
+        sb.append("s=-\r\n");
+        sb.append("t=0 0\r\n");
+
+        List<String> mediaStreamIds = new ArrayList<>(streamDescriptions.size());
+        for (StreamDescription streamDescription : streamDescriptions) {
+            String mediaStreamId = streamDescription.getMediaStreamId();
+            if (!isEmpty(mediaStreamId) && !isEmpty(streamDescription.getMediaStreamTrackId())
+                    && !mediaStreamIds.contains(mediaStreamId)) {
+                mediaStreamIds.add(mediaStreamId);
+            }
+        }
+        appendMsidSemantic(sb, mediaStreamIds);
+
+        for (StreamDescription streamDescription : streamDescriptions) {
+            if (streamDescription instanceof StreamDescriptionImpl) {
+                // immutable stream descriptions cache their media section, so it can be shared between sessions
+                sb.append(((StreamDescriptionImpl) streamDescription).getSdp());
+            } else {
+                appendStreamDescription(sb, streamDescription);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Generates the SDP media section for a stream description, starting with the m-line
+     * @param streamDescription the stream description to generate SDP for
+     * @return the SDP media section
+     */
+    static String generate(StreamDescription streamDescription) {
+        if (streamDescription == null) {
+            throw new NullPointerException("stream description should not be null");
+        }
+        StringBuilder sb = new StringBuilder(estimateLength(Collections.singletonList(streamDescription)));
+        appendStreamDescription(sb, streamDescription);
+        return sb.toString();
+    }
+
+    private static void appendStreamDescription(StringBuilder sb, StreamDescription streamDescription) {
+        StreamType streamType = streamDescription.getType();
+        boolean isData = streamType == StreamType.DATA;
+        boolean isVideo = streamType == StreamType.VIDEO;
+        List<RtcPayload> payloads = streamDescription.getPayloads();
+
+        sb.append("m=").append(mediaTypeName(streamType)).append(" 1 ");
+        sb.append(isData ? "DTLS/SCTP" : "RTP/SAVPF").append(' ');
+        if (isData) {
+            sb.append(streamDescription.getSctpPort());
+        } else {
+            for (int i = 0; i < payloads.size(); i++) {
+                if (i > 0) {
+                    sb.append(' ');
+                }
+                sb.append(payloads.get(i).getPayloadType());
+            }
+        }
+        sb.append(CRLF);
+        sb.append("c=IN IP4 0.0.0.0\r\n");
+
+        if (streamDescription.isRtcpMux()) {
+            sb.append("a=rtcp-mux\r\n");
+        }
+        sb.append("a=").append(modeName(streamDescription.getMode())).append(CRLF);
+        String mid = streamDescription.getMid();
+        if (!isEmpty(mid)) {
+            sb.append("a=mid:").append(mid).append(CRLF);
+        }
+
+        if (!isData) {
+            for (RtcPayload payload : payloads) {
+                sb.append("a=rtpmap:").append(payload.getPayloadType()).append(' ');
+                appendString(sb, payload.getEncodingName());
+                sb.append('/').append(payload.getClockRate());
+                int channels = isVideo ? 0 : payload.getChannels();
+                if (channels != 0 && channels != 1) {
+                    sb.append('/').append(channels);
+                }
+                sb.append(CRLF);
+            }
+            for (RtcPayload payload : payloads) {
+                Map<String, Object> parameters = payload.getParameters();
+                if (parameters != null) {
+                    sb.append("a=fmtp:").append(payload.getPayloadType()).append(' ');
+                    boolean first = true;
+                    for (Map.Entry<String, Object> parameter : parameters.entrySet()) {
+                        appendParameter(sb, first, parameter.getKey(), parameter.getValue());
+                        first = false;
+                    }
+                    sb.append(CRLF);
+                }
+            }
+            if (isVideo) {
+                for (RtcPayload payload : payloads) {
+                    if (payload.isNack()) {
+                        sb.append("a=rtcp-fb:").append(payload.getPayloadType()).append(" nack\r\n");
+                    }
+                }
+                for (RtcPayload payload : payloads) {
+                    if (payload.isNackPli()) {
+                        sb.append("a=rtcp-fb:").append(payload.getPayloadType()).append(" nack pli\r\n");
+                    }
+                }
+                for (RtcPayload payload : payloads) {
+                    if (payload.isCcmFir()) {
+                        sb.append("a=rtcp-fb:").append(payload.getPayloadType()).append(" ccm fir\r\n");
+                    }
+                }
+            }
+        }
+
+        String cname = streamDescription.getCname();
+        String mediaStreamId = streamDescription.getMediaStreamId();
+        String mediaStreamTrackId = streamDescription.getMediaStreamTrackId();
+        boolean hasMsid = !isEmpty(mediaStreamId) && !isEmpty(mediaStreamTrackId);
+        List<Long> ssrcs = streamDescription.getSsrcs();
+        if (!isEmpty(cname) && !ssrcs.isEmpty()) {
+            for (long ssrc : ssrcs) {
+                sb.append("a=ssrc:").append(ssrc).append(" cname:").append(cname).append(CRLF);
+            }
+            if (hasMsid) {
+                for (long ssrc : ssrcs) {
+                    sb.append("a=ssrc:").append(ssrc).append(" msid:").append(mediaStreamId)
+                            .append(' ').append(mediaStreamTrackId).append(CRLF);
+                }
+            }
+        } else if (hasMsid) {
+            sb.append("a=msid:").append(mediaStreamId).append(' ').append(mediaStreamTrackId).append(CRLF);
+        }
+
+        sb.append("a=ice-ufrag:");
+        appendString(sb, streamDescription.getUfrag());
+        sb.append("\r\na=ice-pwd:");
+        appendString(sb, streamDescription.getPassword());
+        sb.append(CRLF);
+        for (RtcCandidate candidate : streamDescription.getCandidates()) {
+            appendCandidate(sb, candidate);
+        }
+
+        String fingerprint = streamDescription.getFingerprint();
+        if (!isEmpty(fingerprint)) {
+            sb.append("a=fingerprint:");
+            appendString(sb, streamDescription.getFingerprintHashFunction());
+            sb.append(' ').append(fingerprint).append(CRLF);
+        }
+        String setup = streamDescription.getDtlsSetup();
+        sb.append("a=setup:").append(setup != null ? setup : "actpass").append(CRLF);
+
+        if (isData) {
+            sb.append("a=sctpmap:").append(streamDescription.getSctpPort()).append(' ');
+            appendString(sb, streamDescription.getAppLabel());
+            if (streamDescription.getSctpStreamCount() >= 0) {
+                sb.append(' ').append(streamDescription.getSctpStreamCount());
+            }
+            sb.append(CRLF);
+        }
+    }
+
+    private static void appendCandidate(StringBuilder sb, RtcCandidate candidate) {
+        sb.append("a=candidate:");
+        appendString(sb, candidate.getFoundation());
+        sb.append(' ').append(candidate.getComponentType().ordinal() + 1);
+        sb.append(candidate.getTransportType() == RtcCandidate.TransportType.UDP ? " UDP " : " TCP ");
+        sb.append(candidate.getPriority()).append(' ');
+        appendString(sb, candidate.getAddress());
+        int port = candidate.getPort();
+        sb.append(' ').append(port != 0 ? port : 9);
+        sb.append(" typ ").append(candidateTypeName(candidate.getType()));
+
+        if (candidate.getType() != RtcCandidate.CandidateType.HOST) {
+            String relatedAddress = candidate.getRelatedAddress();
+            if (relatedAddress != null) {
+                sb.append(" raddr ").append(relatedAddress);
+            }
+            int relatedPort = candidate.getRelatedPort();
+            sb.append(" rport ").append(relatedPort != 0 ? relatedPort : 9);
+        }
+
+        switch (candidate.getTransportType()) {
+            case TCP_ACTIVE:
+                sb.append(" tcptype active");
+                break;
+            case TCP_PASSIVE:
+                sb.append(" tcptype passive");
+                break;
+            case TCP_SO:
+                sb.append(" tcptype so");
+                break;
+        }
+        sb.append(CRLF);
+    }
+
+    /**
+     * Generates SDP from the sdp.js JSON format
+     * @param json the JSON description of the SDP
+     * @return the SDP
+     * @throws InvalidDescriptionException if the JSON has an invalid structure
+     */
+    static String generate(JSONObject json) throws InvalidDescriptionException {
+        if (json == null) {
+            throw new NullPointerException("json should not be null");
+        }
+        JSONArray mediaDescriptions = optArray(json, "mediaDescriptions");
+        StringBuilder sb = new StringBuilder(256 + 1024 * mediaDescriptions.length());
+
+        JSONObject originator = json.optJSONObject("originator");
+        sb.append("v=").append(valueOrDefault(json, "version", "0")).append(CRLF);
+        sb.append("o=").append(valueOrDefault(originator, "username", "-")).append(' ');
+        if (originator != null && originator.has("sessionId")) {
+            sb.append(valueOrDefault(originator, "sessionId", ""));
+        } else {
+            sb.append(randomSessionId());
+        }
+        sb.append(' ').append(valueOrDefault(originator, "sessionVersion", "1"));
+        sb.append(' ').append(valueOrDefault(originator, "netType", "IN"));
+        sb.append(' ').append(valueOrDefault(originator, "addressType", "IP4"));
+        sb.append(' ').append(valueOrDefault(originator, "address", "127.0.0.1")).append(CRLF);
+        sb.append("s=").append(valueOrDefault(json, "sessionName", "-")).append(CRLF);
+        sb.append("t=").append(valueOrDefault(json, "startTime", "0"));
+        sb.append(' ').append(valueOrDefault(json, "stopTime", "0")).append(CRLF);
+
+        List<JSONObject> mediaDescriptionList = new ArrayList<>(mediaDescriptions.length());
+        List<String> mediaStreamIds = new ArrayList<>(mediaDescriptions.length());
+        for (int i = 0; i < mediaDescriptions.length(); i++) {
+            JSONObject mediaDescription = mediaDescriptions.optJSONObject(i);
+            if (mediaDescription == null) {
+                throw new InvalidDescriptionException("media description is not an object: " + mediaDescriptions.opt(i));
+            }
+            mediaDescriptionList.add(mediaDescription);
+            Object mediaStreamId = mediaDescription.opt("mediaStreamId");
+            if (isTruthy(mediaStreamId) && isTruthy(mediaDescription.opt("mediaStreamTrackId"))) {
+                String id = templateValue(mediaStreamId);
+                if (!mediaStreamIds.contains(id)) {
+                    mediaStreamIds.add(id);
+                }
+            }
+        }
+        appendMsidSemantic(sb, mediaStreamIds);
+
+        for (JSONObject mediaDescription : mediaDescriptionList) {
+            appendMediaDescription(sb, mediaDescription);
+        }
+        return sb.toString();
+    }
+
+    private static void appendMediaDescription(StringBuilder sb, JSONObject json) throws InvalidDescriptionException {
+        JSONArray payloads = optArray(json, "payloads");
+        JSONObject rtcp = json.optJSONObject("rtcp");
+        JSONObject sctp = isTruthy(json.opt("sctp")) ? json.optJSONObject("sctp") : null;
+
+        sb.append("m=").append(valueOrDefault(json, "type", ""));
+        sb.append(' ').append(valueOrDefault(json, "port", "1"));
+        sb.append(' ').append(valueOrDefault(json, "protocol", "RTP/SAVPF")).append(' ');
+        if (payloads.length() > 0) {
+            for (int i = 0; i < payloads.length(); i++) {
+                if (i > 0) {
+                    sb.append(' ');
+                }
+                sb.append(valueOrDefault(payloads.optJSONObject(i), "type", ""));
+            }
+        } else if (sctp != null) {
+            sb.append(valueOrDefault(sctp, "port", ""));
+        }
+        sb.append(CRLF);
+
+        sb.append("c=").append(valueOrDefault(json, "netType", "IN"));
+        sb.append(' ').append(valueOrDefault(json, "addressType", "IP4"));
+        sb.append(' ').append(valueOrDefault(json, "address", "0.0.0.0")).append(CRLF);
+
+        if (rtcp != null && isTruthy(rtcp.opt("port"))) {
+            sb.append("a=rtcp:").append(templateValue(rtcp.opt("port")));
+            Object address = rtcp.has("address") ? rtcp.opt("address") : "";
+            if (isTruthy(address)) {
+                appendOptional(sb, " ", rtcp.has("netType") ? templateValue(rtcp.opt("netType")) : "IN");
+                appendOptional(sb, " ", rtcp.has("addressType") ? templateValue(rtcp.opt("addressType")) : "IP4");
+            } else {
+                sb.append("  ");
+            }
+            appendOptional(sb, " ", templateValue(address));
+            sb.append(CRLF);
+        }
+        if (rtcp != null && isTruthy(rtcp.opt("mux"))) {
+            sb.append("a=rtcp-mux\r\n");
+        }
+        sb.append("a=").append(valueOrDefault(json, "mode", "sendrecv")).append(CRLF);
+        Object mid = json.opt("mid");
+        if (isTruthy(mid)) {
+            sb.append("a=mid:").append(templateValue(mid)).append(CRLF);
+        }
+
+        for (int i = 0; i < payloads.length(); i++) {
+            JSONObject payload = payloads.optJSONObject(i);
+            sb.append("a=rtpmap:").append(valueOrDefault(payload, "type", ""));
+            sb.append(' ').append(valueOrDefault(payload, "encodingName", ""));
+            sb.append('/').append(valueOrDefault(payload, "clockRate", ""));
+            Object channels = payload != null ? payload.opt("channels") : null;
+            if (isTruthy(channels) && !"1".equals(templateValue(channels))) {
+                sb.append('/').append(templateValue(channels));
+            }
+            sb.append(CRLF);
+        }
+        for (int i = 0; i < payloads.length(); i++) {
+            JSONObject payload = payloads.optJSONObject(i);
+            if (payload != null && isTruthy(payload.opt("parameters"))) {
+                sb.append("a=fmtp:").append(valueOrDefault(payload, "type", "")).append(' ');
+                JSONObject parameters = payload.optJSONObject("parameters");
+                if (parameters != null) {
+                    boolean first = true;
+                    Iterator keys = parameters.keys();
+                    while (keys.hasNext()) {
+                        String key = (String) keys.next();
+                        appendParameter(sb, first, key, parameters.opt(key));
+                        first = false;
+                    }
+                }
+                sb.append(CRLF);
+            }
+        }
+        appendRtcpFeedback(sb, payloads, "nack", " nack\r\n");
+        appendRtcpFeedback(sb, payloads, "nackpli", " nack pli\r\n");
+        appendRtcpFeedback(sb, payloads, "ccmfir", " ccm fir\r\n");
+
+        Object cname = json.opt("cname");
+        Object ssrcs = json.opt("ssrcs");
+        boolean hasMsid = isTruthy(json.opt("mediaStreamId")) && isTruthy(json.opt("mediaStreamTrackId"));
+        if (isTruthy(cname) && isTruthy(ssrcs)) {
+            JSONArray ssrcArray = json.optJSONArray("ssrcs");
+            int ssrcCount = ssrcArray != null ? ssrcArray.length() : 0;
+            for (int i = 0; i < ssrcCount; i++) {
+                sb.append("a=ssrc:");
+                appendString(sb, templateValue(ssrcArray.opt(i)));
+                sb.append(" cname:").append(templateValue(cname)).append(CRLF);
+            }
+            if (hasMsid) {
+                for (int i = 0; i < ssrcCount; i++) {
+                    sb.append("a=");
+                    String ssrc = templateValue(ssrcArray.opt(i));
+                    if (ssrc != null) {
+                        sb.append("ssrc:").append(ssrc).append(' ');
+                    }
+                    appendMsid(sb, json);
+                }
+            }
+        } else if (hasMsid) {
+            sb.append("a=");
+            appendMsid(sb, json);
+        }
+
+        JSONObject ice = isTruthy(json.opt("ice")) ? json.optJSONObject("ice") : null;
+        if (ice != null) {
+            sb.append("a=ice-ufrag:").append(valueOrDefault(ice, "ufrag", "")).append(CRLF);
+            sb.append("a=ice-pwd:").append(valueOrDefault(ice, "password", "")).append(CRLF);
+            JSONArray candidates = ice.optJSONArray("candidates");
+            if (candidates != null) {
+                for (int i = 0; i < candidates.length(); i++) {
+                    JSONObject candidate = candidates.optJSONObject(i);
+                    sb.append("a=candidate:").append(valueOrDefault(candidate, "foundation", ""));
+                    sb.append(' ').append(valueOrDefault(candidate, "componentId", ""));
+                    sb.append(' ').append(valueOrDefault(candidate, "transport", ""));
+                    sb.append(' ').append(valueOrDefault(candidate, "priority", ""));
+                    sb.append(' ').append(valueOrDefault(candidate, "address", ""));
+                    sb.append(' ').append(valueOrDefault(candidate, "port", ""));
+                    sb.append(" typ ").append(valueOrDefault(candidate, "type", ""));
+                    appendOptional(sb, " raddr ", templateValue(candidate, "relatedAddress"));
+                    appendOptional(sb, " rport ", templateValue(candidate, "relatedPort"));
+                    appendOptional(sb, " tcptype ", templateValue(candidate, "tcpType"));
+                    sb.append(CRLF);
+                }
+            }
+        }
+
+        JSONObject dtls = isTruthy(json.opt("dtls")) ? json.optJSONObject("dtls") : null;
+        if (dtls != null) {
+            if (isTruthy(dtls.opt("fingerprint"))) {
+                sb.append("a=fingerprint:").append(valueOrDefault(dtls, "fingerprintHashFunction", ""));
+                sb.append(' ').append(templateValue(dtls.opt("fingerprint"))).append(CRLF);
+            }
+            sb.append("a=setup:").append(valueOrDefault(dtls, "setup", "actpass")).append(CRLF);
+        }
+
+        if (sctp != null) {
+            sb.append("a=sctpmap:").append(valueOrDefault(sctp, "port", ""));
+            sb.append(' ').append(valueOrDefault(sctp, "app", ""));
+            appendOptional(sb, " ", templateValue(sctp, "streams"));
+            sb.append(CRLF);
+        }
+    }
+
+    private static void appendRtcpFeedback(StringBuilder sb, JSONArray payloads, String key, String line) {
+        for (int i = 0; i < payloads.length(); i++) {
+            JSONObject payload = payloads.optJSONObject(i);
+            if (payload != null && isTruthy(payload.opt(key))) {
+                sb.append("a=rtcp-fb:").append(valueOrDefault(payload, "type", "")).append(line);
+            }
+        }
+    }
+
+    private static void appendMsid(StringBuilder sb, JSONObject json) {
+        sb.append("msid:").append(templateValue(json.opt("mediaStreamId")));
+        sb.append(' ').append(templateValue(json.opt("mediaStreamTrackId"))).append(CRLF);
+    }
+
+    private static void appendMsidSemantic(StringBuilder sb, List<String> mediaStreamIds) {
+        if (mediaStreamIds.isEmpty()) {
+            return;
+        }
+        sb.append("a=msid-semantic:WMS");
+        for (String mediaStreamId : mediaStreamIds) {
+            sb.append(' ').append(mediaStreamId);
+        }
+        sb.append(CRLF);
+    }
+
+    /**
+     * Appends a fmtp parameter, converting the camel case key back to the dashed form used in SDP.
+     */
+    private static void appendParameter(StringBuilder sb, boolean first, String key, Object value) {
+        if (!first) {
+            sb.append(';');
+        }
+        int length = key.length();
+        for (int i = 0; i < length; i++) {
+            char c = key.charAt(i);
+            if (c >= 'A' && c <= 'Z' && i + 1 < length && key.charAt(i + 1) >= 'a' && key.charAt(i + 1) <= 'z') {
+                sb.append('-').append(Character.toLowerCase(c));
+            } else {
+                sb.append(c);
+            }
+        }
+        sb.append('=');
+        if (value == null || value == JSONObject.NULL) {
+            sb.append("null");
+        } else {
+            sb.append(templateValue(value));
+        }
+    }
+
+    private static void appendOptional(StringBuilder sb, String prefix, String value) {
+        if (value != null) {
+            sb.append(prefix).append(value);
+        }
+    }
+
+    private static void appendString(StringBuilder sb, String value) {
+        if (value != null) {
+            sb.append(value);
+        }
+    }
+
+    private static JSONArray optArray(JSONObject json, String key) throws InvalidDescriptionException {
+        if (!json.has(key)) {
+            return new JSONArray();
+        }
+        JSONArray array = json.optJSONArray(key);
+        if (array == null) {
+            throw new InvalidDescriptionException(key + " is not an array");
+        }
+        return array;
+    }
+
+    /**
+     * @return the value in the same form as sdp.js would insert it into a template, the default value if the
+     * key is missing, or an empty string if the value is null
+     */
+    private static String valueOrDefault(JSONObject json, String key, String defaultValue) {
+        if (json == null || !json.has(key)) {
+            return defaultValue;
+        }
+        String value = templateValue(json.opt(key));
+        return value != null ? value : "";
+    }
+
+    private static String templateValue(JSONObject json, String key) {
+        return json == null ? null : templateValue(json.opt(key));
+    }
+
+    /**
+     * @return the value as converted to a string by javascript, or null if sdp.js would leave it out
+     */
+    private static String templateValue(Object value) {
+        if (value == null || value == JSONObject.NULL) {
+            return null;
+        } else if (value instanceof Number) {
+            return formatNumber((Number) value);
+        } else if (value instanceof JSONObject) {
+            return "[object Object]";
+        } else if (value instanceof JSONArray) {
+            JSONArray array = (JSONArray) value;
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < array.length(); i++) {
+                if (i > 0) {
+                    sb.append(',');
+                }
+                appendString(sb, templateValue(array.opt(i)));
+            }
+            return sb.toString();
+        }
+        return value.toString();
+    }
+
+    private static boolean isTruthy(Object value) {
+        if (value == null || value == JSONObject.NULL) {
+            return false;
+        } else if (value instanceof Boolean) {
+            return (Boolean) value;
+        } else if (value instanceof Number) {
+            double number = ((Number) value).doubleValue();
+            return number != 0 && !Double.isNaN(number);
+        } else if (value instanceof String) {
+            return !((String) value).isEmpty();
+        }
+        return true;
+    }
+
+    private static boolean isEmpty(String value) {
+        return value == null || value.isEmpty();
+    }
+
+    /**
+     * Formats a number in the same way as javascript's Number.prototype.toString
+     */
+    static String formatNumber(Number number) {
+        if (number instanceof Integer || number instanceof Long || number instanceof Short || number instanceof Byte) {
+            return number.toString();
+        }
+        double value = number.doubleValue();
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return value > 0 ? "Infinity" : value < 0 ? "-Infinity" : "NaN";
+        }
+        if (value == Math.rint(value) && Math.abs(value) < Long.MAX_VALUE) {
+            return Long.toString((long) value);
+        }
+        double magnitude = Math.abs(value);
+        BigDecimal decimal = new BigDecimal(Double.toString(value)).stripTrailingZeros();
+        if (magnitude >= 1e-6 && magnitude < 1e21) {
+            return decimal.toPlainString();
+        }
+        String unscaled = decimal.unscaledValue().abs().toString();
+        int exponent = unscaled.length() - 1 - decimal.scale();
+        StringBuilder sb = new StringBuilder();
+        if (value < 0) {
+            sb.append('-');
+        }
+        sb.append(unscaled.charAt(0));
+        if (unscaled.length() > 1) {
+            sb.append('.').append(unscaled, 1, unscaled.length());
+        }
+        sb.append('e').append(exponent < 0 ? "-" : "+").append(Math.abs(exponent));
+        return sb.toString();
+    }
+
+    private static String randomSessionId() {
+        return Long.toString((long) ((Math.random() + System.currentTimeMillis()) * 1e6));
+    }
+
+    private static int estimateLength(List<StreamDescription> streamDescriptions) {
+        int length = 128;
+        for (StreamDescription streamDescription : streamDescriptions) {
+            length += 384 + 64 * streamDescription.getPayloads().size() + 96 * streamDescription.getCandidates().size();
+        }
+        return length;
+    }
+
+    private static String mediaTypeName(StreamType streamType) {
+        switch (streamType) {
+            case AUDIO:
+                return "audio";
+            case VIDEO:
+                return "video";
+            case DATA:
+                return "application";
+            default:
+                return "unknown";
+        }
+    }
+
+    private static String modeName(StreamMode mode) {
+        switch (mode) {
+            case SEND_RECEIVE:
+                return "sendrecv";
+            case SEND_ONLY:
+                return "sendonly";
+            case RECEIVE_ONLY:
+                return "recvonly";
+            case INACTIVE:
+                return "inactive";
+            default:
+                throw new IllegalArgumentException("invalid stream mode: " + mode);
+        }
+    }
+
+    private static String candidateTypeName(RtcCandidate.CandidateType candidateType) {
+        switch (candidateType) {
+            case HOST:
+                return "host";
+            case SERVER_REFLEXIVE:
+                return "srflx";
+            case PEER_REFLEXIVE:
+                return "prflx";
+            case RELAY:
+                return "relay";
+            default:
+                throw new IllegalArgumentException("invalid candidate type: " + candidateType);
+        }
+    }
+}
@@ -0,0 +1,1531 @@
+/*
+ * Copyright (c) 2015, Ericsson AB.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package com.ericsson.research.owr.sdk;
+
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A single-pass SDP parser that produces the same JSON structure as SDP.parse in sdp.js.
+ *
+ * The sdp.js parser runs one regular expression per attribute over every media block, and then
+ * falls back to the session block for some attributes. This parser instead visits each line once,
+ * records the first line that matches each attribute in the block it belongs to, and applies the
+ * same fallbacks once the whole description has been read.
+ *
+ * The parsed description can either be turned into JSON, or directly into a SessionDescription, in
+ * which case it is validated in the same way as by SessionDescriptions.fromJsep.
+ *
+ * The parser works on any CharSequence and only creates strings for the values that it extracts, so
+ * SDP that is read from a Reader or a UTF-8 ByteBuffer is parsed without creating a string for the
+ * whole description or for each line.
+ *
+ * A new parser is created for each description and there is no shared state, so any number of
+ * descriptions can be parsed concurrently.
+ */
+class SdpParser {
+    private static final String TAG = "SdpParser";
+
+    private static final int CLASS_DIGIT = 0;           // [\d]
+    private static final int CLASS_WORD = 1;            // [\w\-]
+    private static final int CLASS_FMTP = 2;            // [\w\-=;]
+    private static final int CLASS_USERNAME = 3;        // [\w\-@\.]
+    private static final int CLASS_ADDRESS = 4;         // [\d\.a-f\:]
+    private static final int CLASS_ADDRESS_ANY_CASE = 5;// [\d\.a-f\:] with the i flag
+    private static final int CLASS_PRIORITY = 6;        // [\d\.]
+    private static final int CLASS_CNAME = 7;           // [\w+/\-@\.]
+    private static final int CLASS_MSID = 8;            // [\w+/\-=]
+    private static final int CLASS_ICE = 9;             // [\w+/]
+    private static final int CLASS_LETTER = 10;         // [a-z] with the i flag
+    private static final int CLASS_FINGERPRINT = 11;    // [A-Fa-f\d\:]
+    private static final int CLASS_FORMAT = 12;         // [\d ]
+    private static final int CLASS_PROTOCOL = 13;       // [A-Z/]
+    private static final int CLASS_TOKEN = 14;          // [\w!#$%&'*+\-.^`{|}~]
+
+    private static final int READ_BUFFER_SIZE = 4096;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final CharSequence mSdp;
+    private final Block mSessionBlock = new Block();
+    private final List<Block> mMediaBlocks = new ArrayList<>();
+
+    private Object mVersion = null;
+    private boolean mHaveOriginator = false;
+    private String mUsername;
+    private String mSessionId;
+    private Object mSessionVersion;
+    private String mOriginatorAddressType;
+    private String mOriginatorAddress;
+    private String mSessionName = null;
+    private Object mStartTime = null;
+    private Object mStopTime = null;
+    private boolean mHasMediaStreamId = false;
+    private List<String> mBundleGroup = null;
+
+    private SdpParser(CharSequence sdp) {
+        mSdp = sdp;
+    }
+
+    /**
+     * Parses SDP into the JSON format used by sdp.js
+     * @param sdp the SDP to parse
+     * @return a new JSON object, never null
+     * @throws JSONException if the JSON object could not be created
+     */
+    static JSONObject parse(CharSequence sdp) throws JSONException {
+        if (sdp == null) {
+            throw new NullPointerException("sdp should not be null");
+        }
+        SdpParser parser = new SdpParser(sdp);
+        parser.parseLines();
+        return parser.toJson();
+    }
+
+    /**
+     * Parses SDP directly into a SessionDescription, without going through JSON.
+     * @param type the type of the description
+     * @param sdp the SDP to parse
+     * @return a new session description, never null
+     * @throws InvalidDescriptionException if the SDP is missing information needed by the session description
+     */
+    static SessionDescription parse(SessionDescription.Type type, CharSequence sdp) throws InvalidDescriptionException {
+        if (type == null) {
+            throw new NullPointerException("type should not be null");
+        }
+        if (sdp == null) {
+            throw new NullPointerException("sdp should not be null");
+        }
+        SdpParser parser = new SdpParser(sdp);
+        parser.parseLines();
+        return parser.toSessionDescription(type);
+    }
+
+    /**
+     * Reads all characters from a reader into a buffer that can be parsed without creating a string.
+     */
+    static CharSequence read(Reader reader) throws IOException {
+        char[] buffer = new char[READ_BUFFER_SIZE];
+        int length = 0;
+        while (true) {
+            if (length == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            int count = reader.read(buffer, length, buffer.length - length);
+            if (count < 0) {
+                return new CharArraySequence(buffer, length);
+            }
+            length += count;
+        }
+    }
+
+    /**
+     * Decodes the remaining bytes of a UTF-8 buffer, the decoded characters never take up more space
+     * than the bytes, so a single buffer of the same size is used for the result.
+     * @throws InvalidDescriptionException if the bytes aren't valid UTF-8
+     */
+    static CharSequence decode(ByteBuffer buffer) throws InvalidDescriptionException {
+        CharBuffer result = CharBuffer.allocate(buffer.remaining());
+        CharsetDecoder decoder = UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        CoderResult coderResult = decoder.decode(buffer, result, true);
+        if (!coderResult.isError()) {
+            coderResult = decoder.flush(result);
+        }
+        if (coderResult.isError()) {
+            throw new InvalidDescriptionException("SDP is not valid UTF-8: " + coderResult);
+        }
+        return new CharArraySequence(result.array(), result.position());
+    }
+
+    private void parseLines() {
+        final CharSequence sdp = mSdp;
+        final int length = sdp.length();
+        Block block = mSessionBlock;
+        int lineStart = 0;
+
+        while (lineStart < length) {
+            int lineEnd = lineStart;
+            while (lineEnd < length && !isLineTerminator(sdp.charAt(lineEnd))) {
+                lineEnd++;
+            }
+            int nextLine = lineEnd + 1;
+
+            if (lineEnd - lineStart >= 2 && sdp.charAt(lineStart + 1) == '=') {
+                Block mediaBlock = null;
+                if (sdp.charAt(lineStart) == 'm') {
+                    // media lines only start a new block if they are terminated by "\r\n" or "\n"
+                    if (lineEnd < length && sdp.charAt(lineEnd) == '\n') {
+                        mediaBlock = parseMediaLine(lineStart, lineEnd);
+                    } else if (lineEnd + 1 < length && sdp.charAt(lineEnd) == '\r' && sdp.charAt(lineEnd + 1) == '\n') {
+                        mediaBlock = parseMediaLine(lineStart, lineEnd);
+                        nextLine = lineEnd + 2;
+                    }
+                }
+                if (mediaBlock != null) {
+                    mMediaBlocks.add(mediaBlock);
+                    block = mediaBlock;
+                } else {
+                    parseLine(block, lineStart, lineEnd);
+                }
+            }
+            lineStart = nextLine;
+        }
+    }
+
+    private Block parseMediaLine(int start, int end) {
+        final CharSequence sdp = mSdp;
+        String type;
+        int pos = start + 2;
+        if (startsWith("audio ", pos)) {
+            type = "audio";
+        } else if (startsWith("video ", pos)) {
+            type = "video";
+        } else if (startsWith("application ", pos)) {
+            type = "application";
+        } else {
+            return null;
+        }
+        pos += type.length() + 1;
+
+        int portEnd = scan(pos, end, CLASS_DIGIT);
+        if (portEnd == pos || !charEquals(portEnd, end, ' ')) {
+            return null;
+        }
+        int protocolStart = portEnd + 1;
+        int protocolEnd = scan(protocolStart, end, CLASS_PROTOCOL);
+        if (protocolEnd == protocolStart || scan(protocolEnd, end, CLASS_FORMAT) != end) {
+            return null;
+        }
+
+        Block block = new Block();
+        block.mType = type;
+        block.mPort = substring(pos, portEnd);
+        block.mProtocol = substring(protocolStart, protocolEnd);
+
+        // same as splitting the leading-whitespace-trimmed format list on / +/, an empty token is NaN
+        List<Payload> payloads = new ArrayList<>();
+        int tokenStart = protocolEnd;
+        while (tokenStart < end && sdp.charAt(tokenStart) == ' ') {
+            tokenStart++;
+        }
+        while (true) {
+            int tokenEnd = scan(tokenStart, end, CLASS_DIGIT);
+            payloads.add(new Payload(parseInteger(tokenStart, tokenEnd)));
+            if (tokenEnd >= end) {
+                break;
+            }
+            tokenStart = tokenEnd;
+            while (tokenStart < end && sdp.charAt(tokenStart) == ' ') {
+                tokenStart++;
+            }
+        }
+        block.mPayloads = payloads;
+        return block;
+    }
+
+    private void parseLine(Block block, int start, int end) {
+        final CharSequence sdp = mSdp;
+        boolean isSession = block == mSessionBlock;
+
+        switch (sdp.charAt(start)) {
+            case 'v':
+                if (isSession && mVersion == null) {
+                    int digitsEnd = scan(start + 2, end, CLASS_DIGIT);
+                    if (digitsEnd > start + 2) {
+                        mVersion = parseInteger(start + 2, digitsEnd);
+                    }
+                }
+                break;
+            case 'o':
+                if (isSession && !mHaveOriginator) {
+                    parseOriginator(start, end);
+                }
+                break;
+            case 's':
+                if (isSession && mSessionName == null) {
+                    mSessionName = substring(start + 2, end);
+                }
+                break;
+            case 't':
+                if (isSession && mStartTime == null) {
+                    int startEnd = scan(start + 2, end, CLASS_DIGIT);
+                    if (startEnd > start + 2 && charEquals(startEnd, end, ' ')) {
+                        int stopEnd = scan(startEnd + 1, end, CLASS_DIGIT);
+                        if (stopEnd > startEnd + 1) {
+                            mStartTime = parseInteger(start + 2, startEnd);
+                            mStopTime = parseInteger(startEnd + 1, stopEnd);
+                        }
+                    }
+                }
+                break;
+            case 'c':
+                if (block.mAddress == null && startsWith("c=IN IP", start) && end - start > 8
+                        && isIpVersion(sdp.charAt(start + 7)) && sdp.charAt(start + 8) == ' ') {
+                    int addressEnd = scan(start + 9, end, CLASS_ADDRESS);
+                    if (addressEnd > start + 9) {
+                        block.mAddressType = substring(start + 5, start + 8);
+                        block.mAddress = substring(start + 9, addressEnd);
+                    }
+                }
+                break;
+            case 'a':
+            case 'A':
+                parseAttribute(block, isSession, start, end);
+                break;
+        }
+    }
+
+    private void parseOriginator(int start, int end) {
+        final CharSequence sdp = mSdp;
+        int usernameEnd = scan(start + 2, end, CLASS_USERNAME);
+        if (usernameEnd == start + 2 || !charEquals(usernameEnd, end, ' ')) {
+            return;
+        }
+        int sessionIdStart = usernameEnd + 1;
+        int sessionIdEnd = scan(sessionIdStart, end, CLASS_DIGIT);
+        if (sessionIdEnd == sessionIdStart || !charEquals(sessionIdEnd, end, ' ')) {
+            return;
+        }
+        int versionStart = sessionIdEnd + 1;
+        int versionEnd = scan(versionStart, end, CLASS_DIGIT);
+        if (versionEnd == versionStart || !startsWith(" IN IP", versionEnd) || versionEnd + 7 >= end
+                || !isIpVersion(sdp.charAt(versionEnd + 6)) || sdp.charAt(versionEnd + 7) != ' ') {
+            return;
+        }
+        int addressStart = versionEnd + 8;
+        int addressEnd = scan(addressStart, end, CLASS_ADDRESS);
+        if (addressEnd == addressStart) {
+            return;
+        }
+        mHaveOriginator = true;
+        mUsername = substring(start + 2, usernameEnd);
+        mSessionId = substring(sessionIdStart, sessionIdEnd);
+        mSessionVersion = parseInteger(versionStart, versionEnd);
+        mOriginatorAddressType = substring(versionEnd + 4, versionEnd + 7);
+        mOriginatorAddress = substring(addressStart, addressEnd);
+    }
+
+    private void parseAttribute(Block block, boolean isSession, int start, int end) {
+        final CharSequence sdp = mSdp;
+
+        // candidate and fingerprint are the only case-insensitive attributes in sdp.js
+        if (regionMatchesIgnoreCase("a=candidate:", start)) {
+            if (!isSession) {
+                parseCandidate(block, start + 12, end);
+            }
+            return;
+        }
+        if (regionMatchesIgnoreCase("a=fingerprint:", start)) {
+            if (block.mFingerprint == null) {
+                parseFingerprint(block, start + 14, end);
+            }
+            return;
+        }
+        if (sdp.charAt(start) != 'a') {
+            return;
+        }
+        int pos = start + 2;
+
+        if (startsWith("rtpmap:", pos)) {
+            if (!isSession) {
+                parseRtpMap(block, pos + 7, end);
+            }
+        } else if (startsWith("fmtp:", pos)) {
+            if (!isSession) {
+                parseFmtp(block, pos + 5, end);
+            }
+        } else if (startsWith("rtcp-fb:", pos)) {
+            if (!isSession) {
+                parseRtcpFb(block, pos + 8, end);
+            }
+        } else if (startsWith("ssrc:", pos)) {
+            if (!isSession) {
+                parseSsrc(block, pos + 5, end);
+            }
+        } else if (startsWith("msid:", pos)) {
+            if (!isSession && mHasMediaStreamId && block.mMediaStreamId == null) {
+                parseMsid(block, pos + 5, end);
+            }
+        } else if (startsWith("mid:", pos)) {
+            if (!isSession && block.mMid == null) {
+                int midEnd = scan(pos + 4, end, CLASS_TOKEN);
+                if (midEnd > pos + 4) {
+                    block.mMid = substring(pos + 4, midEnd);
+                }
+            }
+        } else if (startsWith("ice-ufrag:", pos)) {
+            if (block.mUfrag == null) {
+                block.mUfrag = substring(pos + 10, scan(pos + 10, end, CLASS_ICE));
+            }
+        } else if (startsWith("ice-pwd:", pos)) {
+            if (block.mPassword == null) {
+                block.mPassword = substring(pos + 8, scan(pos + 8, end, CLASS_ICE));
+            }
+        } else if (startsWith("setup:", pos)) {
+            if (block.mSetup == null) {
+                pos += 6;
+                if (startsWith("actpass", pos)) {
+                    block.mSetup = "actpass";
+                } else if (startsWith("active", pos)) {
+                    block.mSetup = "active";
+                } else if (startsWith("passive", pos)) {
+                    block.mSetup = "passive";
+                }
+            }
+        } else if (startsWith("rtcp-mux", pos)) {
+            block.mRtcpMux = true;
+        } else if (startsWith("rtcp:", pos)) {
+            if (!isSession && block.mRtcpPort == null) {
+                parseRtcp(block, pos + 5, end);
+            }
+        } else if (startsWith("sctpmap:", pos)) {
+            if (!isSession && block.mSctpApp == null) {
+                parseSctpMap(block, pos + 8, end);
+            }
+        } else if (startsWith("group:BUNDLE ", pos)) {
+            if (isSession && mBundleGroup == null) {
+                parseBundleGroup(pos + 13, end);
+            }
+        } else if (startsWith("msid-semantic:", pos)) {
+            if (isSession) {
+                pos += 14;
+                while (pos < end && sdp.charAt(pos) == ' ') {
+                    pos++;
+                }
+                mHasMediaStreamId |= startsWith("WMS ", pos);
+            }
+        } else if (block.mMode == null) {
+            if (startsWith("sendrecv", pos)) {
+                block.mMode = "sendrecv";
+            } else if (startsWith("sendonly", pos)) {
+                block.mMode = "sendonly";
+            } else if (startsWith("recvonly", pos)) {
+                block.mMode = "recvonly";
+            } else if (startsWith("inactive", pos)) {
+                block.mMode = "inactive";
+            }
+        }
+    }
+
+    private void parseRtpMap(Block block, int pos, int end) {
+        final CharSequence sdp = mSdp;
+        int keyEnd = scan(pos, end, CLASS_DIGIT);
+        if (!charEquals(keyEnd, end, ' ')) {
+            return;
+        }
+        int encodingStart = keyEnd + 1;
+        int encodingEnd = scan(encodingStart, end, CLASS_WORD);
+        if (encodingEnd == encodingStart || !charEquals(encodingEnd, end, '/')) {
+            return;
+        }
+        int clockRateEnd = scan(encodingEnd + 1, end, CLASS_DIGIT);
+        if (clockRateEnd == encodingEnd + 1) {
+            return;
+        }
+        int channelsStart = clockRateEnd;
+        if (charEquals(channelsStart, end, '/')) {
+            channelsStart++;
+        }
+        int channelsEnd = scan(channelsStart, end, CLASS_DIGIT);
+
+        for (Payload payload : block.mPayloads) {
+            if (payload.mEncodingName == null && payload.keyMatches(sdp, pos, keyEnd)) {
+                payload.mEncodingName = substring(encodingStart, encodingEnd);
+                payload.mClockRate = parseInteger(encodingEnd + 1, clockRateEnd);
+                payload.mChannels = channelsEnd > channelsStart ? parseInteger(channelsStart, channelsEnd) : null;
+            }
+        }
+    }
+
+    private void parseFmtp(Block block, int pos, int end) {
+        final CharSequence sdp = mSdp;
+        int keyEnd = scan(pos, end, CLASS_DIGIT);
+        if (!charEquals(keyEnd, end, ' ')) {
+            return;
+        }
+        int parametersEnd = scan(keyEnd + 1, end, CLASS_FMTP);
+        if (parametersEnd == keyEnd + 1) {
+            return;
+        }
+        for (Payload payload : block.mPayloads) {
+            if (payload.mParameters == null && payload.keyMatches(sdp, pos, keyEnd)) {
+                payload.mParameters = substring(keyEnd + 1, parametersEnd);
+            }
+        }
+    }
+
+    private void parseRtcpFb(Block block, int pos, int end) {
+        final CharSequence sdp = mSdp;
+        int keyEnd = scan(pos, end, CLASS_DIGIT);
+        int feedback;
+        if (startsWith(" nack", keyEnd) && keyEnd + 5 == end) {
+            feedback = Payload.FEEDBACK_NACK;
+        } else if (startsWith(" nack pli", keyEnd) && keyEnd + 9 == end) {
+            feedback = Payload.FEEDBACK_NACK_PLI;
+        } else if (startsWith(" ccm fir", keyEnd) && keyEnd + 8 == end) {
+            feedback = Payload.FEEDBACK_CCM_FIR;
+        } else {
+            return;
+        }
+        for (Payload payload : block.mPayloads) {
+            if (payload.keyMatches(sdp, pos, keyEnd)) {
+                payload.mFeedback |= feedback;
+            }
+        }
+    }
+
+    private void parseSsrc(Block block, int pos, int end) {
+        final CharSequence sdp = mSdp;
+        int ssrcEnd = scan(pos, end, CLASS_DIGIT);
+        if (ssrcEnd == pos || !charEquals(ssrcEnd, end, ' ')) {
+            return;
+        }
+        if (startsWith("cname:", ssrcEnd + 1)) {
+            int cnameStart = ssrcEnd + 7;
+            int cnameEnd = scan(cnameStart, end, CLASS_CNAME);
+            if (cnameEnd > cnameStart) {
+                if (block.mSsrcs == null) {
+                    block.mSsrcs = new ArrayList<>();
+                    block.mCname = substring(cnameStart, cnameEnd);
+                }
+                block.mSsrcs.add(parseInteger(pos, ssrcEnd));
+            }
+        } else if (startsWith("msid:", ssrcEnd + 1)) {
+            if (mHasMediaStreamId && block.mMediaStreamId == null) {
+                parseMsid(block, ssrcEnd + 6, end);
+            }
+        }
+    }
+
+    private void parseMsid(Block block, int pos, int end) {
+        final CharSequence sdp = mSdp;
+        int idEnd = scan(pos, end, CLASS_MSID);
+        if (idEnd == pos || !charEquals(idEnd, end, ' ')) {
+            return;
+        }
+        int trackStart = idEnd;
+        while (trackStart < end && sdp.charAt(trackStart) == ' ') {
+            trackStart++;
+        }
+        int trackEnd = scan(trackStart, end, CLASS_MSID);
+        if (trackEnd == trackStart) {
+            return;
+        }
+        block.mMediaStreamId = substring(pos, idEnd);
+        block.mMediaStreamTrackId = substring(trackStart, trackEnd);
+    }
+
+    private void parseBundleGroup(int pos, int end) {
+        List<String> mids = new ArrayList<>();
+        while (pos < end) {
+            int midEnd = scan(pos, end, CLASS_TOKEN);
+            if (midEnd > pos) {
+                mids.add(substring(pos, midEnd));
+                pos = midEnd;
+            }
+            if (!charEquals(pos, end, ' ')) {
+                break;
+            }
+            pos++;
+        }
+        mBundleGroup = mids;
+    }
+
+    private void parseRtcp(Block block, int pos, int end) {
+        final CharSequence sdp = mSdp;
+        int portEnd = scan(pos, end, CLASS_DIGIT);
+        if (portEnd == pos) {
+            return;
+        }
+        block.mRtcpPort = parseInteger(pos, portEnd);
+        if (startsWith(" IN IP", portEnd) && portEnd + 7 < end
+                && isIpVersion(sdp.charAt(portEnd + 6)) && sdp.charAt(portEnd + 7) == ' ') {
+            int addressEnd = scan(portEnd + 8, end, CLASS_ADDRESS);
+            if (addressEnd > portEnd + 8) {
+                block.mRtcpAddressType = substring(portEnd + 4, portEnd + 7);
+                block.mRtcpAddress = substring(portEnd + 8, addressEnd);
+            }
+        }
+    }
+
+    private void parseSctpMap(Block block, int pos, int end) {
+        final CharSequence sdp = mSdp;
+        int keyEnd = scan(pos, end, CLASS_DIGIT);
+        if (!charEquals(keyEnd, end, ' ') || block.mPayloads.isEmpty()
+                || !block.mPayloads.get(0).keyMatches(sdp, pos, keyEnd)) {
+            return;
+        }
+        int appEnd = scan(keyEnd + 1, end, CLASS_WORD);
+        if (appEnd == keyEnd + 1) {
+            return;
+        }
+        block.mSctpApp = substring(keyEnd + 1, appEnd);
+        if (charEquals(appEnd, end, ' ')) {
+            int streamsEnd = scan(appEnd + 1, end, CLASS_DIGIT);
+            if (streamsEnd > appEnd + 1) {
+                block.mSctpStreams = parseInteger(appEnd + 1, streamsEnd);
+            }
+        }
+    }
+
+    private void parseFingerprint(Block block, int pos, int end) {
+        final CharSequence sdp = mSdp;
+        String hashFunction;
+        if (regionMatchesIgnoreCase("sha-1 ", pos)) {
+            hashFunction = "sha-1";
+        } else if (regionMatchesIgnoreCase("sha-256 ", pos)) {
+            hashFunction = "sha-256";
+        } else {
+            return;
+        }
+        int fingerprintStart = pos + hashFunction.length() + 1;
+        int fingerprintEnd = scan(fingerprintStart, end, CLASS_FINGERPRINT);
+        if (fingerprintEnd == fingerprintStart) {
+            return;
+        }
+        block.mFingerprintHashFunction = hashFunction;
+        block.mFingerprint = substring(fingerprintStart, fingerprintEnd).toUpperCase(Locale.ENGLISH);
+    }
+
+    private void parseCandidate(Block block, int pos, int end) {
+        final CharSequence sdp = mSdp;
+
+        int foundationEnd = scan(pos, end, CLASS_DIGIT);
+        if (foundationEnd == pos || !charEquals(foundationEnd, end, ' ')) {
+            return;
+        }
+        int componentStart = foundationEnd + 1;
+        if (!charInClass(componentStart, end, CLASS_DIGIT) || !charEquals(componentStart + 1, end, ' ')) {
+            return;
+        }
+        int transportStart = componentStart + 2;
+        if (!regionMatchesIgnoreCase("UDP ", transportStart) && !regionMatchesIgnoreCase("TCP ", transportStart)) {
+            return;
+        }
+        int priorityStart = transportStart + 4;
+        int priorityEnd = scan(priorityStart, end, CLASS_PRIORITY);
+        if (!charEquals(priorityEnd, end, ' ')) {
+            return;
+        }
+        int addressStart = priorityEnd + 1;
+        int addressEnd = scan(addressStart, end, CLASS_ADDRESS_ANY_CASE);
+        if (!charEquals(addressEnd, end, ' ')) {
+            return;
+        }
+        int portStart = addressEnd + 1;
+        int portEnd = scan(portStart, end, CLASS_DIGIT);
+        if (!regionMatchesIgnoreCase(" typ ", portEnd)) {
+            return;
+        }
+        int typeStart = portEnd + 5;
+        int typeEnd = scan(typeStart, end, CLASS_LETTER);
+        int pos2 = typeEnd;
+
+        String relatedAddress = null;
+        Object relatedPort = null;
+        boolean haveRelatedAddress = false;
+        if (regionMatchesIgnoreCase(" raddr ", pos2)) {
+            int relatedAddressStart = pos2 + 7;
+            int relatedAddressEnd = scan(relatedAddressStart, end, CLASS_ADDRESS_ANY_CASE);
+            if (regionMatchesIgnoreCase(" rport ", relatedAddressEnd)) {
+                int relatedPortStart = relatedAddressEnd + 7;
+                int relatedPortEnd = scan(relatedPortStart, end, CLASS_DIGIT);
+                haveRelatedAddress = true;
+                relatedAddress = substring(relatedAddressStart, relatedAddressEnd);
+                relatedPort = parseInteger(relatedPortStart, relatedPortEnd);
+                pos2 = relatedPortEnd;
+            }
+        }
+
+        String tcpType = null;
+        if (regionMatchesIgnoreCase(" tcptype ", pos2)) {
+            int tcpTypeStart = pos2 + 9;
+            if (regionMatchesIgnoreCase("active", tcpTypeStart)) {
+                tcpType = substring(tcpTypeStart, tcpTypeStart + 6);
+            } else if (regionMatchesIgnoreCase("passive", tcpTypeStart)) {
+                tcpType = substring(tcpTypeStart, tcpTypeStart + 7);
+            } else if (regionMatchesIgnoreCase("so", tcpTypeStart)) {
+                tcpType = substring(tcpTypeStart, tcpTypeStart + 2);
+            }
+        }
+
+        if (block.mCandidates == null) {
+            block.mCandidates = new ArrayList<>();
+        }
+
+        Candidate candidate = new Candidate();
+        candidate.mFoundation = substring(pos, foundationEnd);
+        candidate.mComponentId = sdp.charAt(componentStart) - '0';
+        candidate.mTransport = substring(transportStart, transportStart + 3).toUpperCase(Locale.ENGLISH);
+        candidate.mPriority = parseInteger(priorityStart, priorityEnd);
+        candidate.mAddress = substring(addressStart, addressEnd);
+        candidate.mPort = parseInteger(portStart, portEnd);
+        candidate.mType = substring(typeStart, typeEnd);
+        if (relatedAddress != null && !relatedAddress.isEmpty()) {
+            candidate.mRelatedAddress = relatedAddress;
+        }
+        candidate.mHaveRelatedPort = haveRelatedAddress;
+        candidate.mRelatedPort = relatedPort;
+
+        if (tcpType != null) {
+            candidate.mTcpType = tcpType;
+        } else if ("TCP".equals(candidate.mTransport)) {
+            if (isZeroOrNine(candidate.mPort)) {
+                candidate.mTcpType = "active";
+                candidate.mPort = 9;
+            } else {
+                return;
+            }
+        }
+        block.mCandidates.add(candidate);
+    }
+
+    private JSONObject toJson() throws JSONException {
+        JSONObject json = new JSONObject();
+        if (mVersion != null) {
+            json.put("version", mVersion);
+        }
+        if (mHaveOriginator) {
+            JSONObject originator = new JSONObject();
+            originator.put("username", mUsername);
+            originator.put("sessionId", mSessionId);
+            originator.put("sessionVersion", mSessionVersion);
+            originator.put("netType", "IN");
+            originator.put("addressType", mOriginatorAddressType);
+            originator.put("address", mOriginatorAddress);
+            json.put("originator", originator);
+        }
+        if (mSessionName != null) {
+            json.put("sessionName", mSessionName);
+        }
+        if (mStartTime != null) {
+            json.put("startTime", mStartTime);
+            json.put("stopTime", mStopTime);
+        }
+        if (mBundleGroup != null) {
+            json.put("bundle", new JSONArray(mBundleGroup));
+        }
+
+        JSONArray mediaDescriptions = new JSONArray();
+        for (Block block : mMediaBlocks) {
+            mediaDescriptions.put(mediaBlockToJson(block));
+        }
+        json.put("mediaDescriptions", mediaDescriptions);
+        return json;
+    }
+
+    private JSONObject mediaBlockToJson(Block block) throws JSONException {
+        final Block session = mSessionBlock;
+        JSONObject json = new JSONObject();
+        json.put("type", block.mType);
+        json.put("port", block.mPort);
+        json.put("protocol", block.mProtocol);
+
+        Block connection = block.mAddress != null ? block : session;
+        if (connection.mAddress != null) {
+            json.put("netType", "IN");
+            json.put("addressType", connection.mAddressType);
+            json.put("address", connection.mAddress);
+        }
+        String mode = block.mMode != null ? block.mMode : session.mMode;
+        if (mode != null) {
+            json.put("mode", mode);
+        }
+        if (block.mMid != null) {
+            json.put("mid", block.mMid);
+        }
+
+        String protocol = block.mProtocol;
+        if (protocol.contains("RTP/AVP") || protocol.contains("RTP/SAVP")) {
+            JSONArray payloads = new JSONArray();
+            for (Payload payload : block.mPayloads) {
+                payloads.put(payloadToJson(payload, block.mType));
+            }
+            json.put("payloads", payloads);
+        }
+
+        JSONObject rtcp = null;
+        if (block.mRtcpPort != null) {
+            rtcp = new JSONObject();
+            rtcp.put("netType", "IN");
+            rtcp.put("port", block.mRtcpPort);
+            if (block.mRtcpAddress != null) {
+                rtcp.put("addressType", block.mRtcpAddressType);
+                rtcp.put("address", block.mRtcpAddress);
+            }
+        }
+        if (block.mRtcpMux || session.mRtcpMux) {
+            if (rtcp == null) {
+                rtcp = new JSONObject();
+            }
+            rtcp.put("mux", true);
+        }
+        if (rtcp != null) {
+            json.put("rtcp", rtcp);
+        }
+
+        if (block.mSsrcs != null) {
+            JSONArray ssrcs = new JSONArray();
+            for (Object ssrc : block.mSsrcs) {
+                ssrcs.put(ssrc);
+            }
+            json.put("ssrcs", ssrcs);
+            json.put("cname", block.mCname);
+        }
+
+        if (block.mMediaStreamId != null) {
+            json.put("mediaStreamId", block.mMediaStreamId);
+            json.put("mediaStreamTrackId", block.mMediaStreamTrackId);
+        }
+
+        JSONObject ice = null;
+        String ufrag = block.mUfrag != null ? block.mUfrag : session.mUfrag;
+        String password = block.mPassword != null ? block.mPassword : session.mPassword;
+        if (ufrag != null && password != null) {
+            ice = new JSONObject();
+            ice.put("ufrag", ufrag);
+            ice.put("password", password);
+        }
+        if (block.mCandidates != null) {
+            if (ice == null) {
+                ice = new JSONObject();
+            }
+            JSONArray candidates = new JSONArray();
+            for (Candidate candidate : block.mCandidates) {
+                candidates.put(candidate.toJson());
+            }
+            ice.put("candidates", candidates);
+        }
+        if (ice != null) {
+            json.put("ice", ice);
+        }
+
+        JSONObject dtls = null;
+        Block fingerprint = block.mFingerprint != null ? block : session;
+        if (fingerprint.mFingerprint != null) {
+            dtls = new JSONObject();
+            dtls.put("fingerprintHashFunction", fingerprint.mFingerprintHashFunction);
+            dtls.put("fingerprint", fingerprint.mFingerprint);
+        }
+        String setup = block.mSetup != null ? block.mSetup : session.mSetup;
+        if (setup != null) {
+            if (dtls == null) {
+                dtls = new JSONObject();
+            }
+            dtls.put("setup", setup);
+        }
+        if (dtls != null) {
+            json.put("dtls", dtls);
+        }
+
+        if ("DTLS/SCTP".equals(protocol)) {
+            JSONObject sctp = new JSONObject();
+            sctp.put("port", block.mPayloads.get(0).mPayloadType);
+            if (block.mSctpApp != null) {
+                sctp.put("app", block.mSctpApp);
+                if (block.mSctpStreams != null) {
+                    sctp.put("streams", block.mSctpStreams);
+                }
+            }
+            json.put("sctp", sctp);
+        }
+
+        return json;
+    }
+
+    private JSONObject payloadToJson(Payload payload, String mediaType) throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("type", payload.mPayloadType);
+
+        if (payload.mEncodingName != null) {
+            json.put("encodingName", payload.mEncodingName);
+            json.put("clockRate", payload.mClockRate);
+            if ("audio".equals(mediaType)) {
+                json.put("channels", isZeroOrNull(payload.mChannels) ? 1 : payload.mChannels);
+            } else if ("video".equals(mediaType)) {
+                json.put("nack", (payload.mFeedback & Payload.FEEDBACK_NACK) != 0);
+                json.put("nackpli", (payload.mFeedback & Payload.FEEDBACK_NACK_PLI) != 0);
+                json.put("ccmfir", (payload.mFeedback & Payload.FEEDBACK_CCM_FIR) != 0);
+            }
+        } else if (isInteger(payload.mPayloadType, 0) || isInteger(payload.mPayloadType, 8)) {
+            json.put("encodingName", isInteger(payload.mPayloadType, 8) ? "PCMA" : "PCMU");
+            json.put("clockRate", 8000);
+            json.put("channels", 1);
+        }
+
+        if (payload.mParameters != null) {
+            JSONObject parameters = new JSONObject();
+            for (Map.Entry<String, Object> parameter : parseParameters(payload.mParameters).entrySet()) {
+                parameters.put(parameter.getKey(), parameter.getValue());
+            }
+            json.put("parameters", parameters);
+        }
+        return json;
+    }
+
+    private SessionDescription toSessionDescription(SessionDescription.Type type) throws InvalidDescriptionException {
+        if (mMediaBlocks.isEmpty()) {
+            Log.w(TAG, "media descriptions array is empty");
+        }
+        List<StreamDescription> streamDescriptions = new ArrayList<>(mMediaBlocks.size());
+        for (int i = 0; i < mMediaBlocks.size(); i++) {
+            try {
+                streamDescriptions.add(mediaBlockToStreamDescription(mMediaBlocks.get(i), i));
+            } catch (JSONException e) {
+                throw new InvalidDescriptionException("Failed to parse media description", e);
+            }
+        }
+        return new SessionDescriptionImpl(type, mHaveOriginator ? mSessionId : null, streamDescriptions, mBundleGroup);
+    }
+
+    /**
+     * Creates a stream description from a media block. Information that is missing is handled in the same
+     * way as when the JSON form is read by SessionDescriptions, a JSONException is thrown where it would
+     * fail to read a required field.
+     */
+    private StreamDescription mediaBlockToStreamDescription(Block block, int index) throws JSONException {
+        final Block session = mSessionBlock;
+        StreamType streamType;
+        switch (block.mType) {
+            case "audio":
+                streamType = StreamType.AUDIO;
+                break;
+            case "video":
+                streamType = StreamType.VIDEO;
+                break;
+            default:
+                streamType = StreamType.DATA;
+                break;
+        }
+
+        String modeString = block.mMode != null ? block.mMode : session.mMode;
+        StreamMode mode = StreamMode.SEND_RECEIVE;
+        if ("sendonly".equals(modeString)) {
+            mode = StreamMode.SEND_ONLY;
+        } else if ("recvonly".equals(modeString)) {
+            mode = StreamMode.RECEIVE_ONLY;
+        } else if ("inactive".equals(modeString)) {
+            mode = StreamMode.INACTIVE;
+        }
+
+        String ufrag = block.mUfrag != null ? block.mUfrag : session.mUfrag;
+        String password = block.mPassword != null ? block.mPassword : session.mPassword;
+        List<RtcCandidate> candidates = null;
+        if (block.mCandidates != null) {
+            if (ufrag == null || password == null) {
+                throw new JSONException("candidates without ice credentials");
+            }
+            candidates = new ArrayList<>(block.mCandidates.size());
+            for (Candidate candidate : block.mCandidates) {
+                try {
+                    candidates.add(candidate.toRtcCandidate(index, block.mMediaStreamId, ufrag, password));
+                } catch (JSONException exception) {
+                    Log.w(TAG, "failed to read candidate: " + exception);
+                }
+            }
+        } else if (ufrag == null || password == null) {
+            ufrag = null;
+            password = null;
+        }
+
+        Block fingerprint = block.mFingerprint != null ? block : session;
+        if (fingerprint.mFingerprint == null) {
+            throw new JSONException("no fingerprint");
+        }
+        String setup = block.mSetup != null ? block.mSetup : session.mSetup;
+        String dtlsSetup = setup != null ? setup : "";
+
+        if (streamType == StreamType.DATA) {
+            if (!"DTLS/SCTP".equals(block.mProtocol)) {
+                throw new JSONException("no sctp description");
+            }
+            int sctpPort = toInt(block.mPayloads.get(0).mPayloadType);
+            if (block.mSctpApp == null) {
+                throw new JSONException("no sctp app label");
+            }
+            int streamCount = block.mSctpStreams != null ? toInt(block.mSctpStreams) : -1;
+            return new StreamDescriptionImpl(streamType, mode, ufrag, password, candidates, dtlsSetup,
+                    fingerprint.mFingerprint, fingerprint.mFingerprintHashFunction, sctpPort, streamCount, block.mSctpApp,
+                    block.mMid);
+        }
+
+        String protocol = block.mProtocol;
+        if (!protocol.contains("RTP/AVP") && !protocol.contains("RTP/SAVP")) {
+            throw new JSONException("no payloads");
+        }
+        List<Long> ssrcs = null;
+        if (block.mSsrcs != null) {
+            ssrcs = new ArrayList<>(block.mSsrcs.size());
+            for (Object ssrc : block.mSsrcs) {
+                ssrcs.add(((Number) ssrc).longValue());
+            }
+        }
+        List<RtcPayload> payloads = new ArrayList<>(block.mPayloads.size());
+        for (Payload payload : block.mPayloads) {
+            RtcPayload rtcPayload = payload.toRtcPayload(streamType);
+            if (rtcPayload != null) {
+                payloads.add(rtcPayload);
+            }
+        }
+        return new StreamDescriptionImpl(streamType, mode, ufrag, password, candidates, dtlsSetup,
+                fingerprint.mFingerprint, fingerprint.mFingerprintHashFunction, block.mMediaStreamId,
+                block.mMediaStreamTrackId, block.mCname, block.mRtcpMux || session.mRtcpMux, ssrcs, payloads, block.mMid);
+    }
+
+    /**
+     * Parses a fmtp parameter list in the same way as sdp.js: each key=value pair is extracted,
+     * dashes in keys are converted to camel case, and numeric values are converted to numbers.
+     */
+    private static Map<String, Object> parseParameters(String parameters) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        int length = parameters.length();
+        int pos = 0;
+        while (pos < length) {
+            int keyEnd = scan(parameters, pos, length, CLASS_WORD);
+            if (keyEnd == pos) {
+                pos++;
+                continue;
+            }
+            int valueEnd = keyEnd;
+            if (keyEnd < length && parameters.charAt(keyEnd) == '=') {
+                valueEnd = scan(parameters, keyEnd + 1, length, CLASS_WORD);
+            }
+            if (valueEnd <= keyEnd + 1) {
+                // no match anywhere in this key, skip past it
+                pos = keyEnd;
+                continue;
+            }
+            String key = camelCase(parameters, pos, keyEnd);
+            String value = parameters.substring(keyEnd + 1, valueEnd);
+            map.put(key, toNumberIfNumeric(value));
+            pos = valueEnd;
+            if (pos < length && parameters.charAt(pos) == ';') {
+                pos++;
+            }
+        }
+        return map;
+    }
+
+    private static String camelCase(String text, int start, int end) {
+        StringBuilder sb = new StringBuilder(end - start);
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c == '-' && i + 1 < end && text.charAt(i + 1) >= 'a' && text.charAt(i + 1) <= 'z') {
+                sb.append(Character.toUpperCase(text.charAt(i + 1)));
+                i++;
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Converts a parameter value to a number using the same rules as the unary + operator in
+     * JavaScript, restricted to the characters that are allowed in a parameter value.
+     * @return a number, JSONObject.NULL for infinite values, or the value itself if it isn't numeric
+     */
+    private static Object toNumberIfNumeric(String value) {
+        int length = value.length();
+        int pos = 0;
+
+        if (length > 2 && value.charAt(0) == '0' && (value.charAt(1) == 'x' || value.charAt(1) == 'X')) {
+            for (int i = 2; i < length; i++) {
+                if (Character.digit(value.charAt(i), 16) < 0) {
+                    return value;
+                }
+            }
+            return toInteger(new BigInteger(value.substring(2), 16).doubleValue());
+        }
+        if (pos < length && value.charAt(pos) == '-') {
+            pos++;
+        }
+        if (value.startsWith("Infinity", pos) && pos + 8 == length) {
+            return JSONObject.NULL;
+        }
+        int digitsEnd = scan(value, pos, length, CLASS_DIGIT);
+        if (digitsEnd == pos) {
+            return value;
+        }
+        if (digitsEnd < length) {
+            char e = value.charAt(digitsEnd);
+            if (e != 'e' && e != 'E') {
+                return value;
+            }
+            int exponentStart = digitsEnd + 1;
+            if (exponentStart < length && value.charAt(exponentStart) == '-') {
+                exponentStart++;
+            }
+            if (exponentStart == length || scan(value, exponentStart, length, CLASS_DIGIT) != length) {
+                return value;
+            }
+        }
+        return toInteger(Double.parseDouble(value));
+    }
+
+    /**
+     * @return the number as an Integer or Long if it is integral, JSONObject.NULL if it is infinite
+     */
+    private static Object toInteger(double number) {
+        if (Double.isInfinite(number)) {
+            return JSONObject.NULL;
+        }
+        if (number == Math.rint(number) && Math.abs(number) < Long.MAX_VALUE) {
+            return integerValue((long) number);
+        }
+        return number;
+    }
+
+    private Object parseInteger(int start, int end) {
+        return parseInteger(mSdp, start, end);
+    }
+
+    /**
+     * Parses the leading digits in the range in the same way as parseInt in JavaScript.
+     * @return an Integer or Long, or JSONObject.NULL if the range doesn't start with a digit
+     */
+    private static Object parseInteger(CharSequence text, int start, int end) {
+        int digitsEnd = scan(text, start, end, CLASS_DIGIT);
+        if (digitsEnd == start) {
+            return JSONObject.NULL;
+        }
+        if (digitsEnd - start > 18) {
+            return Double.parseDouble(text.subSequence(start, digitsEnd).toString());
+        }
+        long value = 0;
+        for (int i = start; i < digitsEnd; i++) {
+            value = value * 10 + (text.charAt(i) - '0');
+        }
+        return integerValue(value);
+    }
+
+    private static Object integerValue(long value) {
+        if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+            return (int) value;
+        }
+        return value;
+    }
+
+    /**
+     * Converts a parsed number to an int in the same way as JSONObject.getInt.
+     * @throws JSONException if the value isn't a number
+     */
+    private static int toInt(Object number) throws JSONException {
+        if (!(number instanceof Number)) {
+            throw new JSONException("not a number: " + number);
+        }
+        return ((Number) number).intValue();
+    }
+
+    private static boolean isInteger(Object number, long value) {
+        return (number instanceof Integer || number instanceof Long) && ((Number) number).longValue() == value;
+    }
+
+    private static boolean isZeroOrNull(Object number) {
+        return number == null || number == JSONObject.NULL || isInteger(number, 0);
+    }
+
+    private static boolean isZeroOrNine(Object number) {
+        return isInteger(number, 0) || isInteger(number, 9);
+    }
+
+    private static boolean isIpVersion(char c) {
+        return c == '4' || c == '6';
+    }
+
+    private static boolean isLineTerminator(char c) {
+        return c == '\n' || c == '\r' || c == '\u2028' || c == '\u2029';
+    }
+
+    private boolean startsWith(String prefix, int pos) {
+        final CharSequence sdp = mSdp;
+        int length = prefix.length();
+        if (pos < 0 || pos + length > sdp.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (sdp.charAt(pos + i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Same as String.regionMatches with ignoreCase set, for a prefix that only contains ASCII characters
+     */
+    private boolean regionMatchesIgnoreCase(String prefix, int pos) {
+        final CharSequence sdp = mSdp;
+        int length = prefix.length();
+        if (pos < 0 || pos + length > sdp.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            char c = sdp.charAt(pos + i);
+            char p = prefix.charAt(i);
+            if (c != p && Character.toUpperCase(c) != Character.toUpperCase(p)
+                    && Character.toLowerCase(c) != Character.toLowerCase(p)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String substring(int start, int end) {
+        return mSdp.subSequence(start, end).toString();
+    }
+
+    private boolean charEquals(int pos, int end, char c) {
+        return pos < end && mSdp.charAt(pos) == c;
+    }
+
+    private boolean charInClass(int pos, int end, int charClass) {
+        return pos < end && isInClass(mSdp.charAt(pos), charClass);
+    }
+
+    private int scan(int pos, int end, int charClass) {
+        return scan(mSdp, pos, end, charClass);
+    }
+
+    /**
+     * @return the index of the first character at or after pos that isn't in the character class, or end
+     */
+    private static int scan(CharSequence text, int pos, int end, int charClass) {
+        while (pos < end && isInClass(text.charAt(pos), charClass)) {
+            pos++;
+        }
+        return pos;
+    }
+
+    private static boolean isInClass(char c, int charClass) {
+        boolean isDigit = c >= '0' && c <= '9';
+        boolean isWord = isDigit || c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c == '_';
+        switch (charClass) {
+            case CLASS_DIGIT:
+                return isDigit;
+            case CLASS_WORD:
+                return isWord || c == '-';
+            case CLASS_FMTP:
+                return isWord || c == '-' || c == '=' || c == ';';
+            case CLASS_USERNAME:
+                return isWord || c == '-' || c == '@' || c == '.';
+            case CLASS_ADDRESS:
+                return isDigit || c == '.' || c == ':' || c >= 'a' && c <= 'f';
+            case CLASS_ADDRESS_ANY_CASE:
+                return isDigit || c == '.' || c == ':' || c >= 'a' && c <= 'f' || c >= 'A' && c <= 'F';
+            case CLASS_PRIORITY:
+                return isDigit || c == '.';
+            case CLASS_CNAME:
+                return isWord || c == '+' || c == '/' || c == '-' || c == '@' || c == '.';
+            case CLASS_MSID:
+                return isWord || c == '+' || c == '/' || c == '-' || c == '=';
+            case CLASS_ICE:
+                return isWord || c == '+' || c == '/';
+            case CLASS_LETTER:
+                return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z';
+            case CLASS_FINGERPRINT:
+                return isDigit || c == ':' || c >= 'a' && c <= 'f' || c >= 'A' && c <= 'F';
+            case CLASS_FORMAT:
+                return isDigit || c == ' ';
+            case CLASS_PROTOCOL:
+                return c >= 'A' && c <= 'Z' || c == '/';
+            case CLASS_TOKEN:
+                return isWord || c == '!' || c >= '#' && c <= '\'' || c == '*' || c == '+' || c == '-' || c == '.'
+                        || c == '^' || c == '`' || c >= '{' && c <= '~';
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * The attributes found in a session or media block. Only the first matching line of each attribute is kept.
+     */
+    private static class Block {
+        private String mType;
+        private String mPort;
+        private String mProtocol;
+        private List<Payload> mPayloads;
+
+        private String mAddressType;
+        private String mAddress;
+        private String mMode;
+        private String mMid;
+        private boolean mRtcpMux;
+        private Object mRtcpPort;
+        private String mRtcpAddressType;
+        private String mRtcpAddress;
+        private List<Object> mSsrcs;
+        private String mCname;
+        private String mMediaStreamId;
+        private String mMediaStreamTrackId;
+        private String mUfrag;
+        private String mPassword;
+        private List<Candidate> mCandidates;
+        private String mFingerprintHashFunction;
+        private String mFingerprint;
+        private String mSetup;
+        private String mSctpApp;
+        private Object mSctpStreams;
+    }
+
+    private static class Payload {
+        private static final int FEEDBACK_NACK = 1;
+        private static final int FEEDBACK_NACK_PLI = 2;
+        private static final int FEEDBACK_CCM_FIR = 4;
+
+        private final Object mPayloadType;
+        private final String mKey;
+        private String mEncodingName;
+        private Object mClockRate;
+        private Object mChannels;
+        private String mParameters;
+        private int mFeedback;
+
+        private Payload(Object payloadType) {
+            mPayloadType = payloadType;
+            // the payload type is inserted into the attribute patterns as text, and NaN as an empty string
+            if (payloadType == JSONObject.NULL) {
+                mKey = "";
+            } else if (payloadType instanceof Double) {
+                mKey = String.format(Locale.ENGLISH, "%.0f", (Double) payloadType);
+            } else {
+                mKey = payloadType.toString();
+            }
+        }
+
+        private boolean keyMatches(CharSequence text, int start, int end) {
+            if (end - start != mKey.length()) {
+                return false;
+            }
+            for (int i = start; i < end; i++) {
+                if (text.charAt(i) != mKey.charAt(i - start)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * @return a new payload, or null if it is missing required information
+         */
+        private RtcPayload toRtcPayload(StreamType streamType) {
+            String encodingName = mEncodingName;
+            int clockRate;
+            int channels = 0;
+            boolean nack = false;
+            boolean nackPli = false;
+            boolean ccmFir = false;
+
+            if (encodingName != null) {
+                if (!(mClockRate instanceof Number)) {
+                    Log.d(TAG, "ignoring payload \"" + encodingName + "\": invalid clock rate");
+                    return null;
+                }
+                clockRate = ((Number) mClockRate).intValue();
+                if (streamType == StreamType.AUDIO) {
+                    channels = isZeroOrNull(mChannels) ? 1 : ((Number) mChannels).intValue();
+                } else {
+                    nack = (mFeedback & FEEDBACK_NACK) != 0;
+                    nackPli = (mFeedback & FEEDBACK_NACK_PLI) != 0;
+                    ccmFir = (mFeedback & FEEDBACK_CCM_FIR) != 0;
+                }
+            } else if (isInteger(mPayloadType, 0) || isInteger(mPayloadType, 8)) {
+                encodingName = isInteger(mPayloadType, 8) ? "PCMA" : "PCMU";
+                clockRate = 8000;
+                channels = 1;
+            } else {
+                Log.d(TAG, "ignoring payload \"<unknown>\": no encoding name");
+                return null;
+            }
+            if (!(mPayloadType instanceof Number)) {
+                Log.d(TAG, "ignoring payload \"" + encodingName + "\": invalid payload type");
+                return null;
+            }
+
+            Map<String, Object> parameters = null;
+            if (mParameters != null) {
+                parameters = parseParameters(mParameters);
+                if (parameters.isEmpty()) {
+                    parameters = null;
+                }
+            }
+            return new RtcPayloadImpl(((Number) mPayloadType).intValue(), encodingName, clockRate, parameters,
+                    channels, nack, nackPli, ccmFir);
+        }
+    }
+
+    private static class Candidate {
+        private String mFoundation;
+        private int mComponentId;
+        private String mTransport;
+        private Object mPriority;
+        private String mAddress;
+        private Object mPort;
+        private String mType;
+        private String mRelatedAddress;
+        private boolean mHaveRelatedPort;
+        private Object mRelatedPort;
+        private String mTcpType;
+
+        private JSONObject toJson() throws JSONException {
+            JSONObject json = new JSONObject();
+            json.put("foundation", mFoundation);
+            json.put("componentId", mComponentId);
+            json.put("transport", mTransport);
+            json.put("priority", mPriority);
+            json.put("address", mAddress);
+            json.put("port", mPort);
+            json.put("type", mType);
+            if (mRelatedAddress != null) {
+                json.put("relatedAddress", mRelatedAddress);
+            }
+            if (mHaveRelatedPort) {
+                json.put("relatedPort", mRelatedPort);
+            }
+            if (mTcpType != null) {
+                json.put("tcpType", mTcpType);
+            }
+            return json;
+        }
+
+        private RtcCandidate toRtcCandidate(int streamIndex, String streamId, String ufrag, String password) throws JSONException {
+            RtcCandidate.ComponentType componentType;
+            switch (mComponentId) {
+                case 1:
+                    componentType = RtcCandidate.ComponentType.RTP;
+                    break;
+                case 2:
+                    componentType = RtcCandidate.ComponentType.RTCP;
+                    break;
+                default:
+                    throw new JSONException("unknown component id: " + mComponentId);
+            }
+            int port = toInt(mPort);
+            int priority = toInt(mPriority);
+
+            RtcCandidate.TransportType transportType;
+            if ("UDP".equals(mTransport)) {
+                transportType = RtcCandidate.TransportType.UDP;
+            } else {
+                switch (mTcpType) {
+                    case "active":
+                        transportType = RtcCandidate.TransportType.TCP_ACTIVE;
+                        break;
+                    case "passive":
+                        transportType = RtcCandidate.TransportType.TCP_PASSIVE;
+                        break;
+                    case "so":
+                        transportType = RtcCandidate.TransportType.TCP_SO;
+                        break;
+                    default:
+                        throw new JSONException("unknown tcp type: " + mTcpType);
+                }
+            }
+
+            RtcCandidate.CandidateType type;
+            switch (mType) {
+                case "host":
+                    type = RtcCandidate.CandidateType.HOST;
+                    break;
+                case "srflx":
+                    type = RtcCandidate.CandidateType.SERVER_REFLEXIVE;
+                    break;
+                case "prflx":
+                    type = RtcCandidate.CandidateType.PEER_REFLEXIVE;
+                    break;
+                case "relay":
+                    type = RtcCandidate.CandidateType.RELAY;
+                    break;
+                default:
+                    throw new JSONException("unknown candidate type: " + mType);
+            }
+
+            String relatedAddress = mRelatedAddress != null ? mRelatedAddress : "";
+            int relatedPort = mHaveRelatedPort && mRelatedPort instanceof Number ? ((Number) mRelatedPort).intValue() : 0;
+            return new RtcCandidateImpl(streamIndex, streamId, ufrag, password, mFoundation, componentType,
+                    transportType, priority, mAddress, port, type, relatedAddress, relatedPort);
+        }
+    }
+
+    /**
+     * A CharSequence view of the start of a char array, which is cheaper to read from than a CharBuffer.
+     */
+    private static final class CharArraySequence implements CharSequence {
+        private final char[] mChars;
+        private final int mLength;
+
+        private CharArraySequence(char[] chars, int length) {
+            mChars = chars;
+            mLength = length;
+        }
+
+        @Override
+        public int length() {
+            return mLength;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index >= mLength) {
+                throw new IndexOutOfBoundsException("index " + index + " is out of range, length is " + mLength);
+            }
+            return mChars[index];
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            if (start < 0 || end > mLength || start > end) {
+                throw new IndexOutOfBoundsException("invalid range [" + start + ", " + end + "), length is " + mLength);
+            }
+            return new String(mChars, start, end - start);
+        }
+
+        @Override
+        public String toString() {
+            return new String(mChars, 0, mLength);
+        }
+    }
+}
@@ -25,6 +25,8 @@
  */
 package com.ericsson.research.owr.sdk;
 
+import android.util.Log;
+
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.mozilla.javascript.Context;
@@ -37,7 +39,28 @@ import java.util.Locale;
 class SdpProcessor {
     private static final String TAG = "SdpProcessor";
 
+    private static final String sWarmUpSdp = "v=0\r\n" +
+            "o=- 1 1 IN IP4 127.0.0.1\r\n" +
+            "s=-\r\n" +
+            "t=0 0\r\n" +
+            "m=audio 9 RTP/SAVPF 111 0\r\n" +
+            "c=IN IP4 0.0.0.0\r\n" +
+            "a=rtcp-mux\r\n" +
+            "a=sendrecv\r\n" +
+            "a=rtpmap:111 opus/48000/2\r\n" +
+            "a=fmtp:111 minptime=10\r\n" +
+            "a=ssrc:1 cname:warmup\r\n" +
+            "a=ice-ufrag:abc\r\n" +
+            "a=ice-pwd:abcdefghijklmnopqrstuvwx\r\n" +
+            "a=candidate:1 1 UDP 2130706431 10.0.0.1 5000 typ host\r\n" +
+            "a=fingerprint:sha-256 00:11:22:33\r\n" +
+            "a=setup:actpass\r\n";
+
     private static SdpProcessor sInstance = null;
+    private static boolean sInitializing = false;
+    private static long sScriptInitTime = -1;
+    private static boolean sCodecWarmUpStarted = false;
+    private static long sCodecWarmUpTime = -1;
 
     private final ScriptableObject mScope;
     private final Function mSdpToJsonFunction;
@@ -65,23 +88,150 @@ class SdpProcessor {
             context.evaluateString(mScope, sSdpJsSource, "sdp.js", 1, null);
             mSdpToJsonFunction = context.compileFunction(mScope, "function sdpToJson(sdp) { return JSON.stringify(SDP.parse(sdp)); }", "sdpToJson", 1, null);
             mJsonToSdpFunction = context.compileFunction(mScope, "function jsonToSdp(sdp) { return SDP.generate(JSON.parse(sdp)); }", "jsonToSdp", 1, null);
+            // the scope is shared between all threads that enter their own context to call the functions,
+            // sealing it makes sure that nothing can be modified behind the back of another thread
+            mScope.sealObject();
         } finally {
             Context.exit();
         }
     }
 
-    static JSONObject sdpToJson(String sdp) throws InvalidDescriptionException {
+    /**
+     * Starts warming up SDP processing on a background thread. The parser and generator are run once
+     * so that they are loaded and initialized before the first real description arrives, and if
+     * includeScript is true, the sdp.js engine is initialized as well. Calls that need the sdp.js
+     * engine while it is being initialized wait for the warm-up instead of starting a second one.
+     */
+    static void warmUp(boolean includeScript) {
+        boolean startCodecWarmUp;
+        boolean startScriptInit = false;
+        synchronized (SdpProcessor.class) {
+            startCodecWarmUp = !sCodecWarmUpStarted;
+            sCodecWarmUpStarted = true;
+            if (includeScript && sInstance == null && !sInitializing) {
+                sInitializing = true;
+                startScriptInit = true;
+            }
+        }
+        if (!startCodecWarmUp && !startScriptInit) {
+            return;
+        }
+        final boolean warmUpCodec = startCodecWarmUp;
+        final boolean initializeScript = startScriptInit;
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                if (warmUpCodec) {
+                    warmUpCodec();
+                }
+                if (initializeScript) {
+                    try {
+                        initialize();
+                    } catch (RuntimeException e) {
+                        Log.w(TAG, "failed to initialize sdp.js: " + e);
+                    }
+                }
+            }
+        }, "SdpProcessor warm-up");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * @return the time in nanoseconds it took to run the parser and generator the first time during
+     * warm-up, or -1 if warm-up hasn't finished
+     */
+    static synchronized long getCodecWarmUpTime() {
+        return sCodecWarmUpTime;
+    }
+
+    /**
+     * @return the time in nanoseconds it took to initialize the sdp.js engine, or -1 if it isn't initialized
+     */
+    static synchronized long getScriptInitTime() {
+        return sScriptInitTime;
+    }
+
+    private static void warmUpCodec() {
+        long start = System.nanoTime();
+        try {
+            SessionDescription description = SdpParser.parse(SessionDescription.Type.OFFER, sWarmUpSdp);
+            SdpGenerator.generate(description);
+            SdpGenerator.generate(SdpParser.parse(sWarmUpSdp));
+        } catch (InvalidDescriptionException | JSONException e) {
+            Log.w(TAG, "failed to warm up sdp processing: " + e);
+            return;
+        }
+        long time = System.nanoTime() - start;
         synchronized (SdpProcessor.class) {
-            if (sInstance == null) {
-                sInstance = new SdpProcessor();
+            sCodecWarmUpTime = time;
+        }
+        Log.d(TAG, "sdp processing warmed up in " + time / 1000 + "us");
+    }
+
+    private static SdpProcessor getInstance() {
+        synchronized (SdpProcessor.class) {
+            boolean interrupted = false;
+            while (sInitializing) {
+                try {
+                    SdpProcessor.class.wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            if (sInstance != null) {
+                return sInstance;
             }
+            sInitializing = true;
         }
+        return initialize();
+    }
+
+    private static SdpProcessor initialize() {
+        long start = System.nanoTime();
+        SdpProcessor instance = null;
+        try {
+            instance = new SdpProcessor();
+        } finally {
+            long time = System.nanoTime() - start;
+            synchronized (SdpProcessor.class) {
+                sInstance = instance;
+                sInitializing = false;
+                if (instance != null) {
+                    sScriptInitTime = time;
+                }
+                SdpProcessor.class.notifyAll();
+            }
+            if (instance != null) {
+                Log.d(TAG, "sdp.js initialized in " + time / 1000000 + "ms");
+            }
+        }
+        return instance;
+    }
+
+    static JSONObject sdpToJson(String sdp) throws InvalidDescriptionException {
+        try {
+            return SdpParser.parse(sdp);
+        } catch (JSONException e) {
+            throw new InvalidDescriptionException("failed to parse json generated from SDP", e);
+        }
+    }
+
+    /**
+     * Parses the SDP using sdp.js instead of SdpParser. This is a lot slower than sdpToJson, and is
+     * only kept as a reference implementation to compare against.
+     */
+    static JSONObject sdpToJsonWithScript(String sdp) throws InvalidDescriptionException {
+        SdpProcessor instance = getInstance();
         Context context = Context.enter();
         context.setOptimizationLevel(-1);
         context.setLanguageVersion(Context.VERSION_1_8);
         try {
-            ScriptableObject scope = sInstance.getScope();
-            Object result = sInstance.getSdpToJsonFunction().call(context, scope, scope, new Object[]{sdp});
+            ScriptableObject scope = instance.getScope();
+            Object result = instance.getSdpToJsonFunction().call(context, scope, scope, new Object[]{sdp});
             try {
                 return new JSONObject(result.toString());
             } catch (JSONException e) {
@@ -95,17 +245,21 @@ class SdpProcessor {
     }
 
     static String jsonToSdp(JSONObject json) throws InvalidDescriptionException {
-        synchronized (SdpProcessor.class) {
-            if (sInstance == null) {
-                sInstance = new SdpProcessor();
-            }
-        }
+        return SdpGenerator.generate(json);
+    }
+
+    /**
+     * Generates SDP using sdp.js instead of SdpGenerator. Like sdpToJsonWithScript, this is only kept
+     * as a reference implementation to compare against.
+     */
+    static String jsonToSdpWithScript(JSONObject json) throws InvalidDescriptionException {
+        SdpProcessor instance = getInstance();
         Context context = Context.enter();
         context.setOptimizationLevel(-1);
         context.setLanguageVersion(Context.VERSION_1_8);
         try {
-            ScriptableObject scope = sInstance.getScope();
-            Object result = sInstance.getJsonToSdpFunction().call(context, scope, scope, new Object[]{json.toString()});
+            ScriptableObject scope = instance.getScope();
+            Object result = instance.getJsonToSdpFunction().call(context, scope, scope, new Object[]{json.toString()});
             return "" + result;
         } catch (EvaluatorException e) {
             throw new InvalidDescriptionException("failed to parse sdp: " + e.getMessage(), e);
@@ -127,9 +281,11 @@ class SdpProcessor {
             "        \"sline\": \"^s=(.*)$\",\n" +
             "        \"tline\": \"^t=([\\\\d]+) ([\\\\d]+).*$\",\n" +
             "        \"cline\": \"^c=IN (IP[46]) ([\\\\d\\\\.a-f\\\\:]+).*$\",\n" +
+            "        \"bundle\": \"^a=group:BUNDLE ([\\\\w!#$%&'*+\\\\-.^`{|}~ ]*).*$\",\n" +
             "        \"msidsemantic\": \"^a=msid-semantic: *WMS .*$\",\n" +
             "        \"mblock\": \"^m=(audio|video|application) ([\\\\d]+) ([A-Z/]+)([\\\\d ]*)$\\\\r?\\\\n\",\n" +
             "        \"mode\": \"^a=(sendrecv|sendonly|recvonly|inactive).*$\",\n" +
+            "        \"mid\": \"^a=mid:([\\\\w!#$%&'*+\\\\-.^`{|}~]+).*$\",\n" +
             "        \"rtpmap\": \"^a=rtpmap:${type} ([\\\\w\\\\-]+)/([\\\\d]+)/?([\\\\d]+)?.*$\",\n" +
             "        \"fmtp\": \"^a=fmtp:${type} ([\\\\w\\\\-=;]+).*$\",\n" +
             "        \"param\": \"([\\\\w\\\\-]+)=([\\\\w\\\\-]+);?\",\n" +
@@ -166,6 +322,7 @@ class SdpProcessor {
             "            \"${rtcpLine}\" +\n" +
             "            \"${rtcpMuxLine}\" +\n" +
             "            \"a=${mode}\\r\\n\" +\n" +
+            "            \"${midLine}\" +\n" +
             "            \"${rtpMapLines}\" +\n" +
             "            \"${fmtpLines}\" +\n" +
             "            \"${nackLines}\" +\n" +
@@ -181,6 +338,7 @@ class SdpProcessor {
             "\n" +
             "        \"rtcp\": \"a=rtcp:${port}${[ ]netType}${[ ]addressType}${[ ]address}\\r\\n\",\n" +
             "        \"rtcpMux\": \"a=rtcp-mux\\r\\n\",\n" +
+            "        \"mid\": \"a=mid:${mid}\\r\\n\",\n" +
             "\n" +
             "        \"rtpMap\": \"a=rtpmap:${type} ${encodingName}/${clockRate}${[/]channels}\\r\\n\",\n" +
             "        \"fmtp\": \"a=fmtp:${type} ${parameters}\\r\\n\",\n" +
@@ -263,6 +421,12 @@ class SdpProcessor {
             "            sdpObj.startTime = parseInt(sessionTime[1]);\n" +
             "            sdpObj.stopTime = parseInt(sessionTime[2]);\n" +
             "        }\n" +
+            "        var bundle = match(sblock, regexps.bundle, \"m\");\n" +
+            "        if (bundle) {\n" +
+            "            sdpObj.bundle = bundle[1].split(\" \").filter(function (mid) {\n" +
+            "                return !!mid;\n" +
+            "            });\n" +
+            "        }\n" +
             "        var hasMediaStreamId = !!match(sblock, regexps.msidsemantic, \"m\");\n" +
             "        sdpObj.mediaDescriptions = [];\n" +
             "\n" +
@@ -288,6 +452,9 @@ class SdpProcessor {
             "            var mode = match(mblock, regexps.mode, \"m\", sblock);\n" +
             "            if (mode)\n" +
             "                mediaDescription.mode = mode[1];\n" +
+            "            var mid = match(mblock, regexps.mid, \"m\");\n" +
+            "            if (mid)\n" +
+            "                mediaDescription.mid = mid[1];\n" +
             "\n" +
             "            var payloadTypes = [];\n" +
             "            if (match(mediaDescription.protocol, \"RTP/S?AVPF?\")) {\n" +
@@ -489,6 +656,8 @@ class SdpProcessor {
             "                \"rtcp\": {}\n" +
             "            });\n" +
             "            var mblock = fillTemplate(templates.mblock, mediaDescription);\n" +
+            "            var midLine = mediaDescription.mid ? fillTemplate(templates.mid, mediaDescription) : \"\";\n" +
+            "            mblock = fillTemplate(mblock, { \"midLine\": midLine });\n" +
             "\n" +
             "            var payloadInfo = {\"rtpMapLines\": \"\", \"fmtpLines\": \"\", \"nackLines\": \"\",\n" +
             "                \"nackpliLines\": \"\", \"ccmfirLines\": \"\"};\n" +
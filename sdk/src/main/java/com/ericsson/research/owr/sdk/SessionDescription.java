@@ -46,6 +46,14 @@ public interface SessionDescription {
      */
     String getSessionId();
 
+    /**
+     * The BUNDLE group is only carried through parsing, diffing and the JSON and binary formats. Streams don't
+     * share a transport yet, so the group is never written to generated SDP and sessions never accept it.
+     *
+     * @return an immutable list of the mids in the BUNDLE group of the description, or an empty list if there is none
+     */
+    List<String> getBundleGroup();
+
     /**
      * @param streamType a stream type
      * @return true if the session description contains a stream of type streamType, false otherwise
@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2015, Ericsson AB.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package com.ericsson.research.owr.sdk;
+
+import java.util.List;
+
+/**
+ * An interface for the difference between two session descriptions, with stream descriptions
+ * compared per m-line index. A diff is created with SessionDescriptions.diff and applied with
+ * SessionDescriptions.patch.
+ */
+public interface SessionDescriptionDiff {
+    /**
+     * @return the type of the new session description
+     */
+    SessionDescription.Type getType();
+
+    /**
+     * @return the session id of the new session description
+     */
+    String getSessionId();
+
+    /**
+     * @return the BUNDLE group of the new session description
+     */
+    List<String> getBundleGroup();
+
+    /**
+     * @return the number of stream descriptions in the new session description
+     */
+    int getStreamCount();
+
+    /**
+     * @return an immutable list of the m-line indices of the stream descriptions that were changed or added, in ascending order
+     */
+    List<Integer> getChangedStreamIndices();
+
+    /**
+     * @param index an m-line index
+     * @return the new stream description at the index, or null if it is unchanged
+     */
+    StreamDescription getStreamDescription(int index);
+
+    /**
+     * @return true if the two session descriptions are equal, false otherwise
+     */
+    boolean isEmpty();
+}
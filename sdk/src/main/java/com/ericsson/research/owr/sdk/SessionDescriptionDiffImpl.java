@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2015, Ericsson AB.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package com.ericsson.research.owr.sdk;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+class SessionDescriptionDiffImpl implements SessionDescriptionDiff {
+    public static final String TAG = "SessionDescriptionDiffImpl";
+
+    private final SessionDescription.Type mType;
+    private final String mSessionId;
+    private final List<String> mBundleGroup;
+    // indexed by m-line, null for the stream descriptions that are unchanged
+    private final StreamDescription[] mStreamDescriptions;
+    private final List<Integer> mChangedStreamIndices;
+    private final boolean mEmpty;
+
+    SessionDescriptionDiffImpl(SessionDescription.Type type, String sessionId, List<String> bundleGroup, StreamDescription[] streamDescriptions, boolean empty) {
+        mType = type;
+        mSessionId = sessionId;
+        mBundleGroup = bundleGroup;
+        mStreamDescriptions = streamDescriptions;
+        List<Integer> changedStreamIndices = new ArrayList<>();
+        for (int i = 0; i < streamDescriptions.length; i++) {
+            if (streamDescriptions[i] != null) {
+                changedStreamIndices.add(i);
+            }
+        }
+        mChangedStreamIndices = Collections.unmodifiableList(changedStreamIndices);
+        mEmpty = empty;
+    }
+
+    @Override
+    public SessionDescription.Type getType() {
+        return mType;
+    }
+
+    @Override
+    public String getSessionId() {
+        return mSessionId;
+    }
+
+    @Override
+    public List<String> getBundleGroup() {
+        return mBundleGroup;
+    }
+
+    @Override
+    public int getStreamCount() {
+        return mStreamDescriptions.length;
+    }
+
+    @Override
+    public List<Integer> getChangedStreamIndices() {
+        return mChangedStreamIndices;
+    }
+
+    @Override
+    public StreamDescription getStreamDescription(int index) {
+        if (index < 0 || index >= mStreamDescriptions.length) {
+            throw new IndexOutOfBoundsException("invalid stream index: " + index);
+        }
+        return mStreamDescriptions[index];
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return mEmpty;
+    }
+}
@@ -25,23 +25,49 @@
  */
 package com.ericsson.research.owr.sdk;
 
+import org.json.JSONObject;
+
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
+/**
+ * An immutable session description. Since it can't change, the SDP and JSEP representations are only
+ * generated the first time they are needed, and then reused.
+ */
 class SessionDescriptionImpl implements SessionDescription {
     public static final String TAG = "SessionDescriptionImpl";
 
     private final List<StreamDescription> mStreamDescriptions;
     private final String mSessionId;
     private final Type mType;
+    private final List<String> mBundleGroup;
+
+    private int mHashCode = 0;
+    private volatile String mSdp = null;
+    private volatile JSONObject mJsep = null;
 
     SessionDescriptionImpl(Type type, String sessionId, List<StreamDescription> streamDescriptions) {
+        this(type, sessionId, streamDescriptions, null);
+    }
+
+    SessionDescriptionImpl(Type type, String sessionId, List<StreamDescription> streamDescriptions, List<String> bundleGroup) {
         mType = type;
         mSessionId = sessionId;
+        if (bundleGroup == null || bundleGroup.isEmpty()) {
+            mBundleGroup = Collections.emptyList();
+        } else {
+            mBundleGroup = Collections.unmodifiableList(new ArrayList<>(bundleGroup));
+        }
         if (streamDescriptions == null) {
             mStreamDescriptions = Collections.emptyList();
         } else {
-            mStreamDescriptions = Collections.unmodifiableList(streamDescriptions);
+            // stream descriptions that can be modified are copied, so that the cached representations stay valid
+            List<StreamDescription> copies = new ArrayList<>(streamDescriptions.size());
+            for (StreamDescription streamDescription : streamDescriptions) {
+                copies.add(StreamDescriptionImpl.copyOf(streamDescription));
+            }
+            mStreamDescriptions = Collections.unmodifiableList(copies);
         }
     }
 
@@ -60,6 +86,11 @@ class SessionDescriptionImpl implements SessionDescription {
         return mSessionId;
     }
 
+    @Override
+    public List<String> getBundleGroup() {
+        return mBundleGroup;
+    }
+
     @Override
     public boolean hasStreamType(StreamType streamType) {
         for (StreamDescription streamDescription : mStreamDescriptions) {
@@ -69,4 +100,53 @@ class SessionDescriptionImpl implements SessionDescription {
         }
         return false;
     }
+
+    /**
+     * @return the SDP for this description, generated on the first call
+     */
+    String getSdp() {
+        String sdp = mSdp;
+        if (sdp == null) {
+            sdp = SdpGenerator.generate(this);
+            mSdp = sdp;
+        }
+        return sdp;
+    }
+
+    /**
+     * @return a copy of the JSEP message for this description, the message is only created on the first call
+     */
+    JSONObject getJsep() {
+        JSONObject jsep = mJsep;
+        if (jsep == null) {
+            jsep = SessionDescriptions.createJsep(this);
+            mJsep = jsep;
+        }
+        return SessionDescriptions.copyJson(jsep);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        SessionDescriptionImpl other = (SessionDescriptionImpl) o;
+        return mType == other.mType
+                && Utils.objectsEqual(mSessionId, other.mSessionId)
+                && mStreamDescriptions.equals(other.mStreamDescriptions)
+                && mBundleGroup.equals(other.mBundleGroup);
+    }
+
+    @Override
+    public int hashCode() {
+        int hashCode = mHashCode;
+        if (hashCode == 0) {
+            hashCode = Utils.hash(mType, mSessionId, mStreamDescriptions, mBundleGroup);
+            mHashCode = hashCode;
+        }
+        return hashCode;
+    }
 }
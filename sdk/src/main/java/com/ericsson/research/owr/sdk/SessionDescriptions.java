@@ -31,6 +31,9 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -53,16 +56,6 @@ public class SessionDescriptions {
             throw new InvalidDescriptionException("jsep message has no type", e);
         }
 
-        sdp = json.optJSONObject("sessionDescription");
-        if (sdp == null) {
-            try {
-                sdpStr = json.getString("sdp");
-            } catch (JSONException e) {
-                throw new InvalidDescriptionException("jsep message has no sdp", e);
-            }
-            sdp = SdpProcessor.sdpToJson(sdpStr);
-        }
-
         SessionDescription.Type descriptionType;
         switch (type) {
             case "offer":
@@ -75,6 +68,16 @@ public class SessionDescriptions {
                 throw new InvalidDescriptionException("invalid jsep message type: " + type);
         }
 
+        sdp = json.optJSONObject("sessionDescription");
+        if (sdp == null) {
+            try {
+                sdpStr = json.getString("sdp");
+            } catch (JSONException e) {
+                throw new InvalidDescriptionException("jsep message has no sdp", e);
+            }
+            return SdpParser.parse(descriptionType, sdpStr);
+        }
+
         JSONObject originator;
         originator = sdp.optJSONObject("originator");
 
@@ -83,6 +86,18 @@ public class SessionDescriptions {
             sessionId = originator.optString("sessionId", null);
         }
 
+        List<String> bundleGroup = null;
+        JSONArray bundle = sdp.optJSONArray("bundle");
+        if (bundle != null) {
+            bundleGroup = new ArrayList<>(bundle.length());
+            for (int i = 0; i < bundle.length(); i++) {
+                String mid = bundle.optString(i, null);
+                if (mid != null && !mid.isEmpty()) {
+                    bundleGroup.add(mid);
+                }
+            }
+        }
+
         JSONArray mediaDescriptions;
         try {
             mediaDescriptions = sdp.getJSONArray("mediaDescriptions");
@@ -107,7 +122,130 @@ public class SessionDescriptions {
             }
         }
 
-        return new SessionDescriptionImpl(descriptionType, sessionId, streamDescriptions);
+        return new SessionDescriptionImpl(descriptionType, sessionId, streamDescriptions, bundleGroup);
+    }
+
+    /**
+     * Parses SDP directly into a session description, without creating a JSON representation of it.
+     * The SDP can be any CharSequence, such as a String, a StringBuilder or a CharBuffer, and is parsed without
+     * being copied into a string.
+     * @param type the type of the description
+     * @param sdp the SDP to parse
+     * @return a new session description, never null
+     * @throws InvalidDescriptionException if the SDP is not a valid session description
+     */
+    public static SessionDescription fromSdp(SessionDescription.Type type, CharSequence sdp) throws InvalidDescriptionException {
+        return SdpParser.parse(type, sdp);
+    }
+
+    /**
+     * Reads SDP from a reader until the end of the stream, and parses it into a session description.
+     * The reader is not closed.
+     * @param type the type of the description
+     * @param reader the reader to read SDP from
+     * @return a new session description, never null
+     * @throws IOException if the SDP could not be read
+     * @throws InvalidDescriptionException if the SDP is not a valid session description
+     */
+    public static SessionDescription fromSdp(SessionDescription.Type type, Reader reader) throws IOException, InvalidDescriptionException {
+        if (reader == null) {
+            throw new NullPointerException("reader should not be null");
+        }
+        return SdpParser.parse(type, SdpParser.read(reader));
+    }
+
+    /**
+     * Parses UTF-8 encoded SDP into a session description. The bytes between the position and the limit of the buffer
+     * are parsed, and the position of the buffer is advanced to its limit.
+     * @param type the type of the description
+     * @param buffer a buffer containing UTF-8 encoded SDP
+     * @return a new session description, never null
+     * @throws InvalidDescriptionException if the SDP is not valid UTF-8, or not a valid session description
+     */
+    public static SessionDescription fromSdp(SessionDescription.Type type, ByteBuffer buffer) throws InvalidDescriptionException {
+        if (buffer == null) {
+            throw new NullPointerException("buffer should not be null");
+        }
+        return SdpParser.parse(type, SdpParser.decode(buffer));
+    }
+
+    /**
+     * Generates SDP directly from a session description, without creating a JSON representation of it.
+     * @param sessionDescription the session description
+     * @return the SDP, never null
+     */
+    public static String toSdp(SessionDescription sessionDescription) {
+        if (sessionDescription == null) {
+            throw new NullPointerException("sessionDescription should not be null");
+        }
+        if (sessionDescription instanceof SessionDescriptionImpl) {
+            return ((SessionDescriptionImpl) sessionDescription).getSdp();
+        }
+        return SdpGenerator.generate(sessionDescription);
+    }
+
+    /**
+     * Computes the difference between two session descriptions. Stream descriptions are compared
+     * per m-line index, and only the ones that differ are included in the diff.
+     * @param from the old session description
+     * @param to the new session description
+     * @return the difference between the two descriptions
+     */
+    public static SessionDescriptionDiff diff(SessionDescription from, SessionDescription to) {
+        if (from == null) {
+            throw new NullPointerException("from should not be null");
+        }
+        if (to == null) {
+            throw new NullPointerException("to should not be null");
+        }
+        List<StreamDescription> fromStreams = from.getStreamDescriptions();
+        List<StreamDescription> toStreams = to.getStreamDescriptions();
+        StreamDescription[] changed = new StreamDescription[toStreams.size()];
+        boolean empty = from.getType() == to.getType()
+                && Utils.objectsEqual(from.getSessionId(), to.getSessionId())
+                && from.getBundleGroup().equals(to.getBundleGroup())
+                && fromStreams.size() == toStreams.size();
+
+        for (int i = 0; i < toStreams.size(); i++) {
+            StreamDescriptionImpl toStream = StreamDescriptionImpl.copyOf(toStreams.get(i));
+            if (i >= fromStreams.size() || !toStream.equals(StreamDescriptionImpl.copyOf(fromStreams.get(i)))) {
+                changed[i] = toStream;
+                empty = false;
+            }
+        }
+        return new SessionDescriptionDiffImpl(to.getType(), to.getSessionId(), to.getBundleGroup(), changed, empty);
+    }
+
+    /**
+     * Applies a diff to a session description. Stream descriptions that aren't changed by the diff
+     * are reused, along with any SDP that has already been generated for them.
+     * @param sessionDescription the session description to apply the diff to
+     * @param diff a diff created from sessionDescription, or a description that is equal to it
+     * @return the new session description
+     */
+    public static SessionDescription patch(SessionDescription sessionDescription, SessionDescriptionDiff diff) {
+        if (sessionDescription == null) {
+            throw new NullPointerException("sessionDescription should not be null");
+        }
+        if (diff == null) {
+            throw new NullPointerException("diff should not be null");
+        }
+        if (diff.isEmpty()) {
+            return sessionDescription;
+        }
+        List<StreamDescription> streamDescriptions = sessionDescription.getStreamDescriptions();
+        List<StreamDescription> result = new ArrayList<>(diff.getStreamCount());
+        for (int i = 0; i < diff.getStreamCount(); i++) {
+            StreamDescription streamDescription = diff.getStreamDescription(i);
+            if (streamDescription == null) {
+                if (i >= streamDescriptions.size()) {
+                    throw new IllegalArgumentException("diff does not match session description, stream " + i + " is missing");
+                }
+                streamDescription = streamDescriptions.get(i);
+            }
+            result.add(streamDescription);
+        }
+        return new SessionDescriptionImpl(diff.getType(), diff.getSessionId(), result, diff.getBundleGroup());
     }
 
     private static StreamDescription mediaDescriptionJsonToStreamDescription(JSONObject json, int index) throws JSONException, InvalidDescriptionException {
@@ -164,6 +302,10 @@ public class SessionDescriptions {
         }
 
         id = json.optString("mediaStreamId", null);
+        String mid = json.isNull("mid") ? null : json.optString("mid", null);
+        if (mid != null && mid.isEmpty()) {
+            mid = null;
+        }
 
         if (streamType == StreamType.DATA) {
             rtcpMux = false;
@@ -202,7 +344,7 @@ public class SessionDescriptions {
             appLabel = sctp.getString("app");
             sctpStreamCount = sctp.optInt("streams", -1);
 
-            return new StreamDescriptionImpl(streamType, mode, ufrag, password, candidates, dtlsSetup, fingerprint, fingerprintHashFunction, sctpPort, sctpStreamCount, appLabel);
+            return new StreamDescriptionImpl(streamType, mode, ufrag, password, candidates, dtlsSetup, fingerprint, fingerprintHashFunction, sctpPort, sctpStreamCount, appLabel, mid);
         } else { // audio or video
             cname = json.optString("cname", null);
             mediaStreamId = json.optString("mediaStreamId", null);
@@ -237,7 +379,7 @@ public class SessionDescriptions {
                     Log.d(TAG, "ignoring payload \"" + encodingName + "\": " + e.getMessage());
                 }
             }
-            return new StreamDescriptionImpl(streamType, mode, ufrag, password, candidates, dtlsSetup, fingerprint, fingerprintHashFunction, mediaStreamId, mediaStreamTrackId, cname, rtcpMux, ssrcs, payloads);
+            return new StreamDescriptionImpl(streamType, mode, ufrag, password, candidates, dtlsSetup, fingerprint, fingerprintHashFunction, mediaStreamId, mediaStreamTrackId, cname, rtcpMux, ssrcs, payloads, mid);
         }
     }
 
@@ -320,6 +462,39 @@ public class SessionDescriptions {
     }
 
     public static JSONObject toJsep(SessionDescription sessionDescription) {
+        if (sessionDescription instanceof SessionDescriptionImpl) {
+            return ((SessionDescriptionImpl) sessionDescription).getJsep();
+        }
+        return createJsep(sessionDescription);
+    }
+
+    /**
+     * Encodes a session description in a compact binary format, as an alternative to JSEP when signaling bandwidth is limited.
+     * The message is versioned, and can be decoded with fromBinary.
+     * @param sessionDescription the session description to encode
+     * @return the encoded session description
+     */
+    public static byte[] toBinary(SessionDescription sessionDescription) {
+        if (sessionDescription == null) {
+            throw new NullPointerException("sessionDescription should not be null");
+        }
+        return BinaryCodec.encode(sessionDescription);
+    }
+
+    /**
+     * Decodes a session description that was encoded with toBinary.
+     * @param data the encoded session description
+     * @return a new session description
+     * @throws InvalidDescriptionException if the data is malformed or was encoded with an unsupported version
+     */
+    public static SessionDescription fromBinary(byte[] data) throws InvalidDescriptionException {
+        if (data == null) {
+            throw new NullPointerException("data should not be null");
+        }
+        return BinaryCodec.decodeSessionDescription(data);
+    }
+
+    static JSONObject createJsep(SessionDescription sessionDescription) {
         JSONObject json = new JSONObject();
         String type;
         String sdpStr;
@@ -336,12 +511,7 @@ public class SessionDescriptions {
                 throw new IllegalArgumentException("invalid description type: " + sessionDescription.getType());
         }
 
-        try {
-            JSONObject sdpJson = sessionDescriptionToOwrJson(sessionDescription);
-            sdpStr = SdpProcessor.jsonToSdp(sdpJson);
-        } catch (InvalidDescriptionException | JSONException e) {
-            throw new IllegalArgumentException("json to sdp conversion failed: " + e.getMessage(), e);
-        }
+        sdpStr = toSdp(sessionDescription);
 
         try {
             description = sessionDescriptionToOwrJson(sessionDescription);
@@ -359,6 +529,37 @@ public class SessionDescriptions {
         }
     }
 
+    /**
+     * @return a deep copy of a JSON object, so that cached JSON can be handed out without being modified
+     */
+    static JSONObject copyJson(JSONObject json) {
+        JSONObject copy = new JSONObject();
+        Iterator it = json.keys();
+        try {
+            while (it.hasNext()) {
+                String key = (String) it.next();
+                copy.put(key, copyJsonValue(json.opt(key)));
+            }
+        } catch (JSONException e) {
+            throw new IllegalArgumentException("failed to copy json: " + e.getMessage(), e);
+        }
+        return copy;
+    }
+
+    private static Object copyJsonValue(Object value) {
+        if (value instanceof JSONObject) {
+            return copyJson((JSONObject) value);
+        } else if (value instanceof JSONArray) {
+            JSONArray array = (JSONArray) value;
+            JSONArray copy = new JSONArray();
+            for (int i = 0; i < array.length(); i++) {
+                copy.put(copyJsonValue(array.opt(i)));
+            }
+            return copy;
+        }
+        return value;
+    }
+
     private static JSONObject sessionDescriptionToOwrJson(SessionDescription sessionDescription) throws JSONException {
         JSONObject json = new JSONObject();
 
@@ -376,6 +577,10 @@ public class SessionDescriptions {
         json.put("startTime", 0);
         json.put("stopTime", 0);
 
+        if (!sessionDescription.getBundleGroup().isEmpty()) {
+            json.put("bundle", new JSONArray(sessionDescription.getBundleGroup()));
+        }
+
         JSONArray streamDescriptions = new JSONArray();
         for (StreamDescription streamDescription : sessionDescription.getStreamDescriptions()) {
             streamDescriptions.put(streamDescriptionToOwrJson(streamDescription));
@@ -423,6 +628,7 @@ public class SessionDescriptions {
                 json.put("mode", "inactive");
                 break;
         }
+        json.put("mid", streamDescription.getMid());
         json.put("cname", streamDescription.getCname());
         json.put("mediaStreamId", streamDescription.getMediaStreamId());
         json.put("mediaStreamTrackId", streamDescription.getMediaStreamTrackId());
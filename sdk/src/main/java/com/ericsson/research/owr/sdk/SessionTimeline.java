@@ -0,0 +1,208 @@
+/*
+ * Copyright (c) 2015, Ericsson AB.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package com.ericsson.research.owr.sdk;
+
+import java.util.Locale;
+
+/**
+ * An immutable snapshot of the most recent events of an RtcSession, such as state transitions and exchanged
+ * descriptions and candidates, in the order they happened. It can be used to compute offer/answer latencies
+ * of a call without parsing logs.
+ *
+ * Times are in nanoseconds on the System.nanoTime clock, which is monotonic but only meaningful as a
+ * difference between two times in the same process.
+ */
+public final class SessionTimeline {
+    /**
+     * The stream index of events that don't belong to a stream, and the index returned when an event isn't found.
+     */
+    public static final int NONE = -1;
+
+    private final Event[] mEvents;
+    private final long[] mTimes;
+    private final int[] mStreamIndices;
+    private final long mDroppedCount;
+
+    private SessionTimeline(Event[] events, long[] times, int[] streamIndices, long droppedCount) {
+        mEvents = events;
+        mTimes = times;
+        mStreamIndices = streamIndices;
+        mDroppedCount = droppedCount;
+    }
+
+    /**
+     * @return the number of events in the timeline
+     */
+    public int size() {
+        return mEvents.length;
+    }
+
+    /**
+     * @return the number of older events that were dropped because the timeline was full
+     */
+    public long getDroppedCount() {
+        return mDroppedCount;
+    }
+
+    /**
+     * @param index the index of an event, starting with the oldest one
+     * @return the event
+     */
+    public Event getEvent(int index) {
+        return mEvents[index];
+    }
+
+    /**
+     * @param index the index of an event, starting with the oldest one
+     * @return the time of the event in nanoseconds
+     */
+    public long getTimeNanos(int index) {
+        return mTimes[index];
+    }
+
+    /**
+     * @param index the index of an event, starting with the oldest one
+     * @return the m-line index of the stream that the event belongs to, or NONE
+     */
+    public int getStreamIndex(int index) {
+        return mStreamIndices[index];
+    }
+
+    /**
+     * @param event an event
+     * @param fromIndex the index to start searching from
+     * @return the index of the first occurrence of the event at or after fromIndex, or NONE
+     */
+    public int indexOf(Event event, int fromIndex) {
+        for (int i = Math.max(fromIndex, 0); i < mEvents.length; i++) {
+            if (mEvents[i] == event) {
+                return i;
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     * @param from the event to measure from
+     * @param to the event to measure to
+     * @return the time in nanoseconds from the first occurrence of from to the first occurrence of to after it,
+     * or NONE if either of them isn't in the timeline
+     */
+    public long getNanosBetween(Event from, Event to) {
+        int fromIndex = indexOf(from, 0);
+        if (fromIndex == NONE) {
+            return NONE;
+        }
+        int toIndex = indexOf(to, fromIndex + 1);
+        if (toIndex == NONE) {
+            return NONE;
+        }
+        return mTimes[toIndex] - mTimes[fromIndex];
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("SessionTimeline{");
+        sb.append("dropped=").append(mDroppedCount);
+        long start = mTimes.length > 0 ? mTimes[0] : 0;
+        for (int i = 0; i < mEvents.length; i++) {
+            sb.append(", ").append(mEvents[i].name().toLowerCase(Locale.US));
+            if (mStreamIndices[i] != NONE) {
+                sb.append('[').append(mStreamIndices[i]).append(']');
+            }
+            sb.append('=').append((mTimes[i] - start) / 1000).append("us");
+        }
+        return sb.append('}').toString();
+    }
+
+    /**
+     * The events of a session. The first six are the states of the session, which are recorded each time the
+     * session enters them. PENDING_OFFER and PENDING_ANSWER are the states where the local description is being
+     * set up, and the session is ACTIVE once both descriptions are known.
+     */
+    public enum Event {
+        STOPPED, PENDING_OFFER, WAIT_ANSWER, HAS_OFFER, PENDING_ANSWER, ACTIVE,
+        START, RENEGOTIATE, ICE_RESTART,
+        LOCAL_DESCRIPTION, LOCAL_CANDIDATE, END_OF_CANDIDATES,
+        REMOTE_OFFER, REMOTE_ANSWER, REMOTE_CANDIDATE, REMOTE_CANDIDATE_BUFFERED;
+
+        /**
+         * @return true if the event is a state of the session
+         */
+        public boolean isState() {
+            return ordinal() <= ACTIVE.ordinal();
+        }
+    }
+
+    /**
+     * Records events into a fixed-size ring buffer, where the oldest events are overwritten once it's full.
+     * Recording doesn't allocate, and the recorder is only used on the thread of the session.
+     */
+    static class Recorder {
+        private final Event[] mEvents;
+        private final long[] mTimes;
+        private final int[] mStreamIndices;
+        private int mNext = 0;
+        private long mCount = 0;
+
+        Recorder(int capacity) {
+            if (capacity <= 0) {
+                throw new IllegalArgumentException("capacity must be positive: " + capacity);
+            }
+            mEvents = new Event[capacity];
+            mTimes = new long[capacity];
+            mStreamIndices = new int[capacity];
+        }
+
+        void record(Event event) {
+            record(event, NONE);
+        }
+
+        void record(Event event, int streamIndex) {
+            mEvents[mNext] = event;
+            mTimes[mNext] = System.nanoTime();
+            mStreamIndices[mNext] = streamIndex;
+            mNext = (mNext + 1) % mEvents.length;
+            mCount++;
+        }
+
+        SessionTimeline snapshot() {
+            int capacity = mEvents.length;
+            int size = (int) Math.min(mCount, capacity);
+            int first = size < capacity ? 0 : mNext;
+            Event[] events = new Event[size];
+            long[] times = new long[size];
+            int[] streamIndices = new int[size];
+            for (int i = 0; i < size; i++) {
+                int index = (first + i) % capacity;
+                events[i] = mEvents[index];
+                times[i] = mTimes[index];
+                streamIndices[i] = mStreamIndices[index];
+            }
+            return new SessionTimeline(events, times, streamIndices, mCount - size);
+        }
+    }
+}
@@ -35,6 +35,11 @@ public interface StreamDescription {
 
     public StreamMode getMode();
 
+    /**
+     * @return the media identification of the stream, or null if it doesn't have one
+     */
+    public String getMid();
+
     public String getUfrag();
 
     public String getPassword();
@@ -25,6 +25,7 @@
  */
 package com.ericsson.research.owr.sdk;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
@@ -33,6 +34,7 @@ class StreamDescriptionImpl implements StreamDescription {
 
     private final StreamType mType;
     private final StreamMode mMode;
+    private final String mMid;
     private final String mUfrag;
     private final String mPassword;
     private final List<RtcCandidate> mCandidates;
@@ -51,9 +53,13 @@ class StreamDescriptionImpl implements StreamDescription {
     private final int mSctpStreamCount;
     private final String mAppLabel;
 
-    private StreamDescriptionImpl(StreamType streamType, StreamMode mode, String ufrag, String password, List<RtcCandidate> candidates, String dtlsSetup, String fingerprint, String fingerprintHashFunction, String mediaStreamId, String mediaStreamTrackId, String cname, boolean rtcpMux, List<Long> ssrcs, List<RtcPayload> payloads, int sctpPort, int sctpStreamCount, String appLabel) {
+    private int mHashCode = 0;
+    private volatile String mSdp = null;
+
+    private StreamDescriptionImpl(StreamType streamType, StreamMode mode, String ufrag, String password, List<RtcCandidate> candidates, String dtlsSetup, String fingerprint, String fingerprintHashFunction, String mediaStreamId, String mediaStreamTrackId, String cname, boolean rtcpMux, List<Long> ssrcs, List<RtcPayload> payloads, int sctpPort, int sctpStreamCount, String appLabel, String mid) {
         mType = streamType;
         mMode = mode;
+        mMid = mid;
         mUfrag = ufrag;
         mPassword = password;
         if (candidates == null) {
@@ -84,11 +90,37 @@ class StreamDescriptionImpl implements StreamDescription {
     }
 
     StreamDescriptionImpl(StreamType streamType, StreamMode mode, String ufrag, String password, List<RtcCandidate> candidates, String dtlsSetup, String fingerprint, String fingerprintHashFunction, String mediaStreamId, String mediaStreamTrackId, String cname, boolean rtcpMux, List<Long> ssrcs, List<RtcPayload> payloads) {
-        this(streamType, mode, ufrag, password, candidates, dtlsSetup, fingerprint, fingerprintHashFunction, mediaStreamId, mediaStreamTrackId, cname, rtcpMux, ssrcs, payloads, -1, -1, null);
+        this(streamType, mode, ufrag, password, candidates, dtlsSetup, fingerprint, fingerprintHashFunction, mediaStreamId, mediaStreamTrackId, cname, rtcpMux, ssrcs, payloads, null);
+    }
+
+    StreamDescriptionImpl(StreamType streamType, StreamMode mode, String ufrag, String password, List<RtcCandidate> candidates, String dtlsSetup, String fingerprint, String fingerprintHashFunction, String mediaStreamId, String mediaStreamTrackId, String cname, boolean rtcpMux, List<Long> ssrcs, List<RtcPayload> payloads, String mid) {
+        this(streamType, mode, ufrag, password, candidates, dtlsSetup, fingerprint, fingerprintHashFunction, mediaStreamId, mediaStreamTrackId, cname, rtcpMux, ssrcs, payloads, -1, -1, null, mid);
     }
 
     StreamDescriptionImpl(StreamType streamType, StreamMode mode, String ufrag, String password, List<RtcCandidate> candidates, String dtlsSetup, String fingerprint, String fingerprintHashFunction, int sctpPort, int sctpStreamCount, String appLabel) {
-        this(streamType, mode, ufrag, password, candidates, dtlsSetup, fingerprint, fingerprintHashFunction, null, null, null, false, null, null, sctpPort, sctpStreamCount, appLabel);
+        this(streamType, mode, ufrag, password, candidates, dtlsSetup, fingerprint, fingerprintHashFunction, sctpPort, sctpStreamCount, appLabel, null);
+    }
+
+    StreamDescriptionImpl(StreamType streamType, StreamMode mode, String ufrag, String password, List<RtcCandidate> candidates, String dtlsSetup, String fingerprint, String fingerprintHashFunction, int sctpPort, int sctpStreamCount, String appLabel, String mid) {
+        this(streamType, mode, ufrag, password, candidates, dtlsSetup, fingerprint, fingerprintHashFunction, null, null, null, false, null, null, sctpPort, sctpStreamCount, appLabel, mid);
+    }
+
+    /**
+     * Returns an immutable copy of a stream description, or the stream description itself if it is already immutable.
+     */
+    static StreamDescriptionImpl copyOf(StreamDescription streamDescription) {
+        if (streamDescription instanceof StreamDescriptionImpl) {
+            return (StreamDescriptionImpl) streamDescription;
+        }
+        return new StreamDescriptionImpl(streamDescription.getType(), streamDescription.getMode(),
+                streamDescription.getUfrag(), streamDescription.getPassword(),
+                new ArrayList<>(streamDescription.getCandidates()), streamDescription.getDtlsSetup(),
+                streamDescription.getFingerprint(), streamDescription.getFingerprintHashFunction(),
+                streamDescription.getMediaStreamId(), streamDescription.getMediaStreamTrackId(),
+                streamDescription.getCname(), streamDescription.isRtcpMux(),
+                new ArrayList<>(streamDescription.getSsrcs()), new ArrayList<>(streamDescription.getPayloads()),
+                streamDescription.getSctpPort(), streamDescription.getSctpStreamCount(), streamDescription.getAppLabel(),
+                streamDescription.getMid());
     }
 
     @Override
@@ -101,6 +133,11 @@ class StreamDescriptionImpl implements StreamDescription {
         return mMode;
     }
 
+    @Override
+    public String getMid() {
+        return mMid;
+    }
+
     @Override
     public String getUfrag() {
         return mUfrag;
@@ -174,4 +211,57 @@ class StreamDescriptionImpl implements StreamDescription {
     public String getAppLabel() {
         return mAppLabel;
     }
+
+    /**
+     * @return the SDP media section for this stream description, generated on the first call
+     */
+    String getSdp() {
+        String sdp = mSdp;
+        if (sdp == null) {
+            sdp = SdpGenerator.generate(this);
+            mSdp = sdp;
+        }
+        return sdp;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        StreamDescriptionImpl other = (StreamDescriptionImpl) o;
+        return mType == other.mType
+                && mMode == other.mMode
+                && mRtcpMux == other.mRtcpMux
+                && mSctpPort == other.mSctpPort
+                && mSctpStreamCount == other.mSctpStreamCount
+                && Utils.objectsEqual(mMid, other.mMid)
+                && Utils.objectsEqual(mUfrag, other.mUfrag)
+                && Utils.objectsEqual(mPassword, other.mPassword)
+                && Utils.objectsEqual(mDtlsSetup, other.mDtlsSetup)
+                && Utils.objectsEqual(mFingerprint, other.mFingerprint)
+                && Utils.objectsEqual(mFingerprintHashFunction, other.mFingerprintHashFunction)
+                && Utils.objectsEqual(mMediaStreamId, other.mMediaStreamId)
+                && Utils.objectsEqual(mMediaStreamTrackId, other.mMediaStreamTrackId)
+                && Utils.objectsEqual(mCname, other.mCname)
+                && Utils.objectsEqual(mAppLabel, other.mAppLabel)
+                && mSsrcs.equals(other.mSsrcs)
+                && mPayloads.equals(other.mPayloads)
+                && mCandidates.equals(other.mCandidates);
+    }
+
+    @Override
+    public int hashCode() {
+        int hashCode = mHashCode;
+        if (hashCode == 0) {
+            hashCode = Utils.hash(mType, mMode, mUfrag, mPassword, mCandidates, mDtlsSetup, mFingerprint,
+                    mFingerprintHashFunction, mMediaStreamId, mMediaStreamTrackId, mCname, mRtcpMux, mSsrcs,
+                    mPayloads, mSctpPort, mSctpStreamCount, mAppLabel, mMid);
+            mHashCode = hashCode;
+        }
+        return hashCode;
+    }
 }
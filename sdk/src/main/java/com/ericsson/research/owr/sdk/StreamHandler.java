@@ -25,17 +25,26 @@
  */
 package com.ericsson.research.owr.sdk;
 
-import android.os.Handler;
-import android.os.Looper;
 import android.util.Log;
 
 import com.ericsson.research.owr.Candidate;
 import com.ericsson.research.owr.Session;
 
 import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
 
 // TODO: verify peer cert
-abstract class StreamHandler implements Session.DtlsCertificateChangeListener, Session.OnNewCandidateListener {
+/**
+ * Handles a single stream of an RtcSession. The stream handler is confined to the thread of the session,
+ * callbacks from the native session are moved to that thread through the session executor.
+ */
+abstract class StreamHandler implements Session.DtlsCertificateChangeListener, Session.OnNewCandidateListener,
+        Session.OnCandidateGatheringDoneListener {
     private static final String TAG = "StreamHandler";
 
     private static final String DEFAULT_HASH_FUNCTION = "sha-256";
@@ -43,19 +52,44 @@ abstract class StreamHandler implements Session.DtlsCertificateChangeListener, S
     private final StreamSet.Stream mStream;
     private final MutableStreamDescription mLocalStreamDescription;
     private final int mIndex;
+    private final CandidatePolicy mCandidatePolicy;
+    private final boolean mTrickleAllCandidates;
+    private final Executor mSessionExecutor;
+    private final Executor mCallbackExecutor;
+    private final TransportPool.PreparedSession mPreparedSession;
+    private final List<RtcCandidate> mPendingLocalCandidates = new ArrayList<>();
+    private final List<RtcCandidate> mSelectedLocalCandidates = new ArrayList<>();
+    private final List<RtcCandidate> mSelectedRemoteCandidates = new ArrayList<>();
+    private final Set<String> mRemoteCandidateKeys = new HashSet<>();
+    private final StreamSetupTimeline.Recorder mSetupTimeline = new StreamSetupTimeline.Recorder();
     private StreamDescription mRemoteStreamDescription;
     private Session mSession;
     private boolean mHaveCandidate = false;
     private boolean mHaveFingerprint = false;
     private boolean mLocalDescriptionCreated = false;
-    private Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private boolean mGatheringDone = false;
+    private boolean mReplaced = false;
     private WeakReference<RtcSessionDelegate> mRtcSessionDelegateRef = new WeakReference<>(null);
 
-    StreamHandler(int index, StreamDescription streamDescription, StreamSet.Stream stream) {
+    StreamHandler(int index, StreamDescription streamDescription, StreamSet.Stream stream, RtcConfig config,
+                  Executor sessionExecutor, Executor callbackExecutor, TransportPool.PreparedSession preparedSession) {
+        mSessionExecutor = sessionExecutor;
+        mCallbackExecutor = callbackExecutor;
+        mPreparedSession = stream != null ? preparedSession : null;
         mLocalStreamDescription = new MutableStreamDescription();
         mRemoteStreamDescription = streamDescription;
         mIndex = index;
         mStream = stream;
+        mCandidatePolicy = config.getCandidatePolicy();
+        mTrickleAllCandidates = config.shouldTrickleAllCandidates();
+
+        // answers use the mids of the offer, and offers number the streams by their index. If the offer has no
+        // mids the answer can't have any either, and the stream is only identified by its index
+        if (streamDescription != null) {
+            mLocalStreamDescription.setMid(streamDescription.getMid());
+        } else {
+            mLocalStreamDescription.setMid(String.valueOf(index));
+        }
 
         if (stream == null) { // Inactive stream
             mLocalStreamDescription.setMode(StreamMode.INACTIVE);
@@ -63,19 +97,25 @@ abstract class StreamHandler implements Session.DtlsCertificateChangeListener, S
             return;
         }
 
-        mSession = createSession(streamDescription != null);
+        if (mPreparedSession != null) {
+            mSession = mPreparedSession.getSession();
+        } else {
+            mSession = createSession(streamDescription != null);
+        }
+        markSetupEvent(StreamSetupTimeline.Event.SESSION_CREATED);
 
         if (streamDescription != null) {
-            for (RtcCandidate rtcCandidate : getRemoteStreamDescription().getCandidates()) {
-                Candidate candidate = Utils.transformCandidate(rtcCandidate);
-                candidate.setUfrag(streamDescription.getUfrag());
-                candidate.setPassword(streamDescription.getPassword());
-                mSession.addRemoteCandidate(candidate);
-            }
+            addRemoteCandidates(streamDescription.getCandidates(), streamDescription.getUfrag(), streamDescription.getPassword());
         }
 
-        mSession.addDtlsCertificateChangeListener(this);
-        mSession.addOnNewCandidateListener(this);
+        if (mPreparedSession != null) {
+            // the prepared session replays what it has gathered so far, the events end up on the session thread
+            mPreparedSession.setTarget(this);
+        } else {
+            mSession.addDtlsCertificateChangeListener(this);
+            mSession.addOnNewCandidateListener(this);
+            mSession.addOnCandidateGatheringDoneListener(this);
+        }
 
         mLocalStreamDescription.setType(getStream().getType());
 
@@ -104,10 +144,34 @@ abstract class StreamHandler implements Session.DtlsCertificateChangeListener, S
         return mIndex;
     }
 
+    /**
+     * @return the local mid of the stream, or null if the stream was offered without one
+     */
+    public String getMid() {
+        return mLocalStreamDescription.getMid();
+    }
+
+    /**
+     * @return the mid that the peer uses for the stream, which is the local mid unless the peer answered with a different one
+     */
+    public String getRemoteMid() {
+        if (mRemoteStreamDescription != null && mRemoteStreamDescription.getMid() != null) {
+            return mRemoteStreamDescription.getMid();
+        }
+        return getMid();
+    }
+
     public Session getSession() {
         return mSession;
     }
 
+    /**
+     * @return true if the session was taken from a prepared transport, in which case it is already part of a transport agent
+     */
+    public boolean isPrepared() {
+        return mPreparedSession != null;
+    }
+
     public StreamSet.Stream getStream() {
         return mStream;
     }
@@ -121,30 +185,100 @@ abstract class StreamHandler implements Session.DtlsCertificateChangeListener, S
     }
 
     public StreamDescription finishLocalStreamDescription() {
+        // in trickle-first mode the candidates are kept until they can be trickled after the description
+        if (!mTrickleAllCandidates) {
+            for (RtcCandidate candidate : selectCandidates(true, mPendingLocalCandidates)) {
+                getLocalStreamDescription().addCandidate(candidate);
+            }
+            mPendingLocalCandidates.clear();
+        }
         mLocalDescriptionCreated = true;
+        markSetupEvent(StreamSetupTimeline.Event.LOCAL_DESCRIPTION);
         return getLocalStreamDescription();
     }
 
+    /**
+     * Takes the candidates that were gathered before the local description was created but not put in it,
+     * which only happens in trickle-first mode.
+     * @return the selected candidates, in the order they were gathered
+     */
+    public List<RtcCandidate> takePendingLocalCandidates() {
+        List<RtcCandidate> selected = new ArrayList<>(selectCandidates(true, mPendingLocalCandidates));
+        mPendingLocalCandidates.clear();
+        return selected;
+    }
+
+    /**
+     * The ICE credentials are only available from the candidates of the session, so a stream isn't ready
+     * before its first candidate has been gathered. This is the same in trickle-first mode, which therefore
+     * doesn't make the description available any sooner.
+     */
     public boolean isReady() {
         boolean isInactive = getLocalStreamDescription().getMode() == StreamMode.INACTIVE;
         return mHaveCandidate && mHaveFingerprint || isInactive;
     }
 
+    /**
+     * Records the first time that a setup event happens for this stream
+     */
+    void markSetupEvent(StreamSetupTimeline.Event event) {
+        mSetupTimeline.mark(event);
+    }
+
+    /**
+     * @return a snapshot of the setup timeline of this stream
+     */
+    public StreamSetupTimeline getSetupTimeline() {
+        return mSetupTimeline.snapshot(getIndex(), getMid(), getLocalStreamDescription().getType());
+    }
+
+    public boolean isGatheringDone() {
+        return mGatheringDone || getSession() == null;
+    }
+
+    /**
+     * Sets the remote description of the stream, which is done again for each renegotiation. Only the candidates
+     * that haven't been added to the session before are added, the rest are already known from earlier descriptions
+     * or trickled candidates.
+     */
     public void setRemoteStreamDescription(StreamDescription remoteStreamDescription) {
         mRemoteStreamDescription = remoteStreamDescription;
+        addRemoteCandidates(remoteStreamDescription.getCandidates(), remoteStreamDescription.getUfrag(),
+                remoteStreamDescription.getPassword());
+    }
 
-        for (RtcCandidate rtcCandidate : getRemoteStreamDescription().getCandidates()) {
-            Candidate candidate = Utils.transformCandidate(rtcCandidate);
-            candidate.setUfrag(remoteStreamDescription.getUfrag());
-            candidate.setPassword(remoteStreamDescription.getPassword());
-            getSession().addRemoteCandidate(candidate);
+    /**
+     * Stops the stream but keeps its m-line as inactive, which is what happens to streams that are removed
+     * when a session is renegotiated.
+     */
+    public void deactivate() {
+        Log.d(TAG, "[RtcSession] deactivating " + this);
+        getLocalStreamDescription().setMode(StreamMode.INACTIVE);
+        if (getStream() != null) {
+            getStream().setStreamMode(StreamMode.INACTIVE);
         }
+        stop();
+    }
+
+    /**
+     * Marks the stream handler as replaced by a new handler for the same stream, which happens when ICE is restarted.
+     * A replaced handler leaves the stream alone when it's stopped, since the stream belongs to the new handler.
+     */
+    public void markReplaced() {
+        mReplaced = true;
+    }
+
+    public boolean isReplaced() {
+        return mReplaced;
     }
 
     public void stop() {
-        if (getSession() != null) {
+        if (mPreparedSession != null) {
+            mPreparedSession.release();
+        } else if (getSession() != null) {
             getSession().removeDtlsCertificateChangeListener(this);
             getSession().removeOnNewCandidateListener(this);
+            getSession().removeOnCandidateGatheringDoneListener(this);
         }
         mSession = null;
         mRemoteStreamDescription = null;
@@ -152,42 +286,84 @@ abstract class StreamHandler implements Session.DtlsCertificateChangeListener, S
 
     public void signalListenerIfReady() {
         RtcSessionDelegate delegate = mRtcSessionDelegateRef.get();
-        if (delegate != null && isReady()) {
-            delegate.onReady();
+        if (isReady()) {
+            markSetupEvent(StreamSetupTimeline.Event.READY);
+            if (delegate != null) {
+                delegate.onReady();
+            }
         }
     }
 
+    /**
+     * Runs a native callback on the session thread, callbacks that arrive after the stream has been stopped are dropped.
+     */
+    void runOnSessionThread(final Runnable runnable) {
+        mSessionExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (getSession() != null) {
+                    runnable.run();
+                }
+            }
+        });
+    }
+
     @Override
-    public synchronized void onDtlsCertificateChanged(String pem) {
+    public void onDtlsCertificateChanged(final String pem) {
+        runOnSessionThread(new Runnable() {
+            @Override
+            public void run() {
+                handleDtlsCertificate(pem);
+            }
+        });
+    }
+
+    private void handleDtlsCertificate(String pem) {
         String fingerprintHashFunction = getLocalStreamDescription().getFingerprintHashFunction();
         String fingerprint = Utils.fingerprintFromPem(pem, fingerprintHashFunction);
         getLocalStreamDescription().setFingerprint(fingerprint);
         mHaveFingerprint = true;
+        markSetupEvent(StreamSetupTimeline.Event.FINGERPRINT);
         signalListenerIfReady();
     }
 
     @Override
-    public synchronized void onNewCandidate(Candidate candidate) {
+    public void onNewCandidate(final Candidate candidate) {
+        runOnSessionThread(new Runnable() {
+            @Override
+            public void run() {
+                handleNewCandidate(candidate);
+            }
+        });
+    }
+
+    private void handleNewCandidate(Candidate candidate) {
         if (!mHaveCandidate) {
+            markSetupEvent(StreamSetupTimeline.Event.FIRST_CANDIDATE);
             getLocalStreamDescription().setUfrag(candidate.getUfrag());
             getLocalStreamDescription().setPassword(candidate.getPassword());
         }
 
         final RtcCandidateImpl rtcCandidate = RtcCandidateImpl.fromOwrCandidate(candidate);
+        List<RtcCandidate> selected = Collections.emptyList();
         if (mLocalDescriptionCreated) {
-            Log.d(TAG, "[RtcSession] got local candidate for " + this);
             rtcCandidate.setStreamIndex(getIndex());
-            mMainHandler.post(new Runnable() {
-                @Override
-                public void run() {
-                    RtcSessionDelegate delegate = mRtcSessionDelegateRef.get();
-                    if (delegate != null) {
-                        delegate.onLocalCandidate(rtcCandidate);
-                    }
-                }
-            });
+            rtcCandidate.setStreamId(getMid());
+            selected = selectCandidates(true, Collections.<RtcCandidate>singletonList(rtcCandidate));
         } else {
-            getLocalStreamDescription().addCandidate(rtcCandidate);
+            if (mTrickleAllCandidates) {
+                rtcCandidate.setStreamIndex(getIndex());
+                rtcCandidate.setStreamId(getMid());
+            }
+            mPendingLocalCandidates.add(rtcCandidate);
+        }
+        // the delegate passes the candidate on through the session thread to the listener's executor, possibly in a batch
+        RtcSessionDelegate delegate = mRtcSessionDelegateRef.get();
+        for (RtcCandidate selectedCandidate : selected) {
+            Log.d(TAG, "[RtcSession] got local candidate for " + this);
+            if (delegate != null) {
+                delegate.onLocalCandidate(selectedCandidate);
+            }
         }
 
 
@@ -197,18 +373,97 @@ abstract class StreamHandler implements Session.DtlsCertificateChangeListener, S
         }
     }
 
+    @Override
+    public void onCandidateGatheringDone() {
+        runOnSessionThread(new Runnable() {
+            @Override
+            public void run() {
+                handleCandidateGatheringDone();
+            }
+        });
+    }
+
+    private void handleCandidateGatheringDone() {
+        Log.d(TAG, "[RtcSession] candidate gathering done for " + this);
+        mGatheringDone = true;
+        RtcSessionDelegate delegate = mRtcSessionDelegateRef.get();
+        if (delegate != null) {
+            delegate.onCandidateGatheringDone();
+        }
+    }
+
     public void onRemoteCandidate(RtcCandidate rtcCandidate) {
-        if (getStream() == null) {
+        onRemoteCandidates(Collections.singletonList(rtcCandidate));
+    }
+
+    public void onRemoteCandidates(List<RtcCandidate> rtcCandidates) {
+        if (getStream() == null || getSession() == null) {
             return;
         }
-        boolean isRtcp = rtcCandidate.getComponentType() == RtcCandidate.ComponentType.RTCP;
-        if (getLocalStreamDescription().isRtcpMux() && isRtcp) {
+        boolean isRtcpMux = getLocalStreamDescription().isRtcpMux();
+        List<RtcCandidate> candidates = new ArrayList<>(rtcCandidates.size());
+        for (RtcCandidate rtcCandidate : rtcCandidates) {
+            boolean isRtcp = rtcCandidate.getComponentType() == RtcCandidate.ComponentType.RTCP;
+            if (!isRtcpMux || !isRtcp) {
+                candidates.add(rtcCandidate);
+            }
+        }
+        addRemoteCandidates(candidates, getRemoteStreamDescription().getUfrag(), getRemoteStreamDescription().getPassword());
+    }
+
+    private void addRemoteCandidates(List<RtcCandidate> rtcCandidates, String ufrag, String password) {
+        List<RtcCandidate> unseen = new ArrayList<>(rtcCandidates.size());
+        for (RtcCandidate rtcCandidate : rtcCandidates) {
+            if (mRemoteCandidateKeys.add(remoteCandidateKey(rtcCandidate))) {
+                unseen.add(rtcCandidate);
+            }
+        }
+        if (unseen.isEmpty()) {
             return;
         }
-        Candidate candidate = Utils.transformCandidate(rtcCandidate);
-        candidate.setUfrag(getRemoteStreamDescription().getUfrag());
-        candidate.setPassword(getRemoteStreamDescription().getPassword());
-        getSession().addRemoteCandidate(candidate);
+        Session session = getSession();
+        for (RtcCandidate rtcCandidate : selectCandidates(false, unseen)) {
+            Candidate candidate = Utils.transformCandidate(rtcCandidate);
+            candidate.setUfrag(ufrag);
+            candidate.setPassword(password);
+            session.addRemoteCandidate(candidate);
+        }
+    }
+
+    /**
+     * The same candidate can be signaled both in a description and as a trickled candidate, with a different
+     * stream index or mid, so candidates are told apart by their transport address.
+     */
+    private static String remoteCandidateKey(RtcCandidate candidate) {
+        return candidate.getComponentType() + " " + candidate.getTransportType() + " " +
+                candidate.getAddress() + " " + candidate.getPort();
+    }
+
+    /**
+     * Runs candidates through the candidate policy, if there is one, and remembers the ones that are selected.
+     * Like everything else in the stream handler, this is only called on the session thread.
+     */
+    private List<RtcCandidate> selectCandidates(boolean isLocal, List<RtcCandidate> candidates) {
+        if (mCandidatePolicy == null || candidates.isEmpty()) {
+            return candidates;
+        }
+        List<RtcCandidate> previous = isLocal ? mSelectedLocalCandidates : mSelectedRemoteCandidates;
+        List<RtcCandidate> selected;
+        if (isLocal) {
+            selected = mCandidatePolicy.selectLocalCandidates(Collections.unmodifiableList(previous),
+                    Collections.unmodifiableList(candidates));
+        } else {
+            selected = mCandidatePolicy.selectRemoteCandidates(Collections.unmodifiableList(previous),
+                    Collections.unmodifiableList(candidates));
+        }
+        if (selected.size() < candidates.size()) {
+            Log.d(TAG, "[RtcSession] candidate policy dropped " + (candidates.size() - selected.size()) +
+                    (isLocal ? " local" : " remote") + " candidates for " + this);
+        }
+        // copy the selection before remembering it, since the policy may return one of the lists it was given
+        selected = new ArrayList<>(selected);
+        previous.addAll(selected);
+        return selected;
     }
 
     public void setRtcSessionDelegate(RtcSessionDelegate delegate) {
@@ -219,10 +474,15 @@ abstract class StreamHandler implements Session.DtlsCertificateChangeListener, S
         void onReady();
 
         void onLocalCandidate(RtcCandidate candidate);
+
+        void onCandidateGatheringDone();
     }
 
-    public Handler getMainHandler() {
-        return mMainHandler;
+    /**
+     * @return the executor that asynchronous callbacks to the stream set are made on
+     */
+    public Executor getCallbackExecutor() {
+        return mCallbackExecutor;
     }
 
     @Override
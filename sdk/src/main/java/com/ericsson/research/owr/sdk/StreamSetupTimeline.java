@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2015, Ericsson AB.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package com.ericsson.research.owr.sdk;
+
+import android.os.SystemClock;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * An immutable snapshot of the setup of a stream in an RtcSession, with the time at which each setup
+ * event happened. A session can't create its local description until every stream is ready, so the
+ * timelines show which part of the setup is holding it back.
+ *
+ * Times are in milliseconds on the SystemClock.elapsedRealtime clock, so timelines of different
+ * streams and sessions can be compared with each other.
+ */
+public final class StreamSetupTimeline {
+    /**
+     * The time of an event that hasn't happened yet.
+     */
+    public static final long NOT_REACHED = -1;
+
+    private final int mStreamIndex;
+    private final String mMid;
+    private final StreamType mStreamType;
+    private final long[] mTimes;
+
+    StreamSetupTimeline(int streamIndex, String mid, StreamType streamType, long[] times) {
+        mStreamIndex = streamIndex;
+        mMid = mid;
+        mStreamType = streamType;
+        mTimes = times.clone();
+    }
+
+    /**
+     * @return the m-line index of the stream
+     */
+    public int getStreamIndex() {
+        return mStreamIndex;
+    }
+
+    /**
+     * @return the local mid of the stream
+     */
+    public String getMid() {
+        return mMid;
+    }
+
+    /**
+     * @return the type of the stream
+     */
+    public StreamType getStreamType() {
+        return mStreamType;
+    }
+
+    /**
+     * @param event a setup event
+     * @return the time at which the event first happened, or NOT_REACHED
+     */
+    public long getTime(Event event) {
+        return mTimes[event.ordinal()];
+    }
+
+    /**
+     * @param event a setup event
+     * @return true if the event has happened
+     */
+    public boolean hasReached(Event event) {
+        return mTimes[event.ordinal()] != NOT_REACHED;
+    }
+
+    /**
+     * @param event a setup event
+     * @return the time in milliseconds from the creation of the session to the event, or NOT_REACHED if
+     * either of them hasn't happened
+     */
+    public long getTimeSinceCreation(Event event) {
+        long created = mTimes[Event.SESSION_CREATED.ordinal()];
+        long time = mTimes[event.ordinal()];
+        if (created == NOT_REACHED || time == NOT_REACHED) {
+            return NOT_REACHED;
+        }
+        return time - created;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        StreamSetupTimeline other = (StreamSetupTimeline) o;
+        return mStreamIndex == other.mStreamIndex
+                && mStreamType == other.mStreamType
+                && Utils.objectsEqual(mMid, other.mMid)
+                && Arrays.equals(mTimes, other.mTimes);
+    }
+
+    @Override
+    public int hashCode() {
+        return Utils.hash(mStreamIndex, mMid, mStreamType, Arrays.hashCode(mTimes));
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("StreamSetupTimeline{");
+        sb.append(mStreamType).append(' ').append(mStreamIndex);
+        for (Event event : Event.values()) {
+            sb.append(", ").append(event.name().toLowerCase(Locale.US)).append('=');
+            long time = getTimeSinceCreation(event);
+            if (time == NOT_REACHED) {
+                sb.append('-');
+            } else {
+                sb.append(time).append("ms");
+            }
+        }
+        return sb.append('}').toString();
+    }
+
+    /**
+     * The events in the setup of a stream, in the order they usually happen. Media streams are ready once
+     * they have a candidate, a fingerprint, an SSRC and a CNAME, while data streams don't need the last two.
+     */
+    public enum Event {
+        SESSION_CREATED, FIRST_CANDIDATE, FINGERPRINT, SSRC, CNAME, READY, LOCAL_DESCRIPTION
+    }
+
+    /**
+     * Records the first time of each event, it is only used on the thread of the session.
+     */
+    static class Recorder {
+        private final long[] mTimes = new long[Event.values().length];
+
+        Recorder() {
+            Arrays.fill(mTimes, NOT_REACHED);
+        }
+
+        void mark(Event event) {
+            if (mTimes[event.ordinal()] == NOT_REACHED) {
+                mTimes[event.ordinal()] = SystemClock.elapsedRealtime();
+            }
+        }
+
+        StreamSetupTimeline snapshot(int streamIndex, String mid, StreamType streamType) {
+            return new StreamSetupTimeline(streamIndex, mid, streamType, mTimes);
+        }
+    }
+}
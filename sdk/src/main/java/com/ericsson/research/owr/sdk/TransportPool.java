@@ -0,0 +1,427 @@
+/*
+ * Copyright (c) 2015, Ericsson AB.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package com.ericsson.research.owr.sdk;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.ericsson.research.owr.Candidate;
+import com.ericsson.research.owr.DataSession;
+import com.ericsson.research.owr.MediaSession;
+import com.ericsson.research.owr.Session;
+import com.ericsson.research.owr.TransportAgent;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps transport agents with sessions that have started gathering candidates before a call is made, so that
+ * the STUN and TURN round trips are out of the way once the session is started. A prepared transport is
+ * replaced with a new one once its candidates are older than the TTL of the config, and it is used at most once.
+ * A transport that isn't used is only replaced MAX_REFRESH_COUNT times, so that an app that prepares a call and
+ * never makes it doesn't keep gathering candidates and allocating TURN relays forever.
+ */
+class TransportPool {
+    private static final String TAG = "TransportPool";
+
+    private static final long THREAD_KEEP_ALIVE_SECONDS = 10;
+    static final int MAX_REFRESH_COUNT = 4;
+
+    private static final Map<RtcConfig, PreparedTransport> sPreparedTransports = new HashMap<>();
+    private static ScheduledThreadPoolExecutor sExecutor = null;
+
+    private TransportPool() {}
+
+    /**
+     * Starts gathering candidates for the given streams, replacing any transport that is already prepared for the config.
+     */
+    static synchronized void prepare(RtcConfig config, List<StreamType> streamTypes) {
+        if (config == null) {
+            throw new NullPointerException("config should not be null");
+        }
+        if (streamTypes == null) {
+            throw new NullPointerException("stream types should not be null");
+        }
+        if (streamTypes.isEmpty()) {
+            throw new IllegalArgumentException("no streams to prepare");
+        }
+        for (StreamType streamType : streamTypes) {
+            if (streamType == null) {
+                throw new NullPointerException("stream type should not be null");
+            }
+        }
+        cancel(config);
+        PreparedTransport preparedTransport = new PreparedTransport(config, new ArrayList<>(streamTypes), 0);
+        sPreparedTransports.put(config, preparedTransport);
+        scheduleRefresh(preparedTransport);
+        Log.d(TAG, "prepared transport for " + streamTypes);
+    }
+
+    /**
+     * Stops refreshing the transport that is prepared for the config, if any, and releases its sessions.
+     * @return true if a transport was prepared
+     */
+    static synchronized boolean cancel(RtcConfig config) {
+        PreparedTransport preparedTransport = sPreparedTransports.remove(config);
+        if (preparedTransport == null) {
+            return false;
+        }
+        preparedTransport.cancelRefresh();
+        preparedTransport.release();
+        return true;
+    }
+
+    /**
+     * @return the transport that is prepared for the config without taking it, or null if there is none
+     */
+    static synchronized PreparedTransport peek(RtcConfig config) {
+        return sPreparedTransports.get(config);
+    }
+
+    /**
+     * Takes the transport that is prepared for the config, if it was prepared for the same streams and hasn't expired.
+     * @param streamTypes the types of the streams, in order, where inactive streams are null
+     * @return the prepared transport, or null if there is no suitable transport
+     */
+    static synchronized PreparedTransport take(RtcConfig config, List<StreamType> streamTypes) {
+        PreparedTransport preparedTransport = sPreparedTransports.get(config);
+        if (preparedTransport == null) {
+            return null;
+        }
+        if (!preparedTransport.getStreamTypes().equals(streamTypes)) {
+            Log.d(TAG, "prepared transport for " + preparedTransport.getStreamTypes() + " does not match " + streamTypes);
+            return null;
+        }
+        if (preparedTransport.isExpired()) {
+            // the refresh is late, it's better to gather from scratch than to use stale candidates
+            Log.d(TAG, "prepared transport has expired");
+            return null;
+        }
+        sPreparedTransports.remove(config);
+        preparedTransport.cancelRefresh();
+        return preparedTransport;
+    }
+
+    private static void scheduleRefresh(final PreparedTransport preparedTransport) {
+        if (sExecutor == null) {
+            sExecutor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, TAG);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            sExecutor.setKeepAliveTime(THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS);
+            sExecutor.allowCoreThreadTimeOut(true);
+        }
+        preparedTransport.mRefresh = sExecutor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                refresh(preparedTransport);
+            }
+        }, preparedTransport.getTtl(), TimeUnit.MILLISECONDS);
+    }
+
+    private static synchronized void refresh(PreparedTransport preparedTransport) {
+        RtcConfig config = preparedTransport.getConfig();
+        if (sPreparedTransports.get(config) != preparedTransport) {
+            return;
+        }
+        preparedTransport.release();
+        if (preparedTransport.getRefreshCount() >= MAX_REFRESH_COUNT) {
+            Log.d(TAG, "prepared transport for " + preparedTransport.getStreamTypes() + " was not used, dropping it");
+            sPreparedTransports.remove(config);
+            return;
+        }
+        Log.d(TAG, "refreshing prepared transport for " + preparedTransport.getStreamTypes());
+        PreparedTransport fresh = new PreparedTransport(config, preparedTransport.getStreamTypes(),
+                preparedTransport.getRefreshCount() + 1);
+        sPreparedTransports.put(config, fresh);
+        scheduleRefresh(fresh);
+    }
+
+    /**
+     * A transport agent with a session for each prepared stream, the sessions have already been added to the agent.
+     */
+    static class PreparedTransport {
+        private final RtcConfig mConfig;
+        private final List<StreamType> mStreamTypes;
+        private final TransportAgent mTransportAgent;
+        private final List<PreparedSession> mSessions;
+        private final long mCreationTime;
+        private final long mTtl;
+        private final int mRefreshCount;
+        private ScheduledFuture<?> mRefresh = null;
+
+        private PreparedTransport(RtcConfig config, List<StreamType> streamTypes, int refreshCount) {
+            mConfig = config;
+            mRefreshCount = refreshCount;
+            mStreamTypes = Collections.unmodifiableList(streamTypes);
+            mCreationTime = SystemClock.elapsedRealtime();
+            mTtl = config.getPreparedTransportTtl();
+
+            // prepared transports are only used for outbound calls, so the agent is controlling and the sessions are DTLS servers
+            mTransportAgent = new TransportAgent(true);
+            for (RtcConfig.HelperServer helperServer : config.getHelperServers()) {
+                mTransportAgent.addHelperServer(
+                        helperServer.getType(),
+                        helperServer.getAddress(),
+                        helperServer.getPort(),
+                        helperServer.getUsername(),
+                        helperServer.getPassword()
+                );
+            }
+            List<PreparedSession> sessions = new ArrayList<>(streamTypes.size());
+            for (StreamType streamType : streamTypes) {
+                Session session;
+                if (streamType == StreamType.DATA) {
+                    session = new DataSession(false);
+                } else {
+                    MediaSession mediaSession = new MediaSession(false);
+                    // offers always use rtcp-mux, and it has to be set before the session starts gathering
+                    mediaSession.setRtcpMux(true);
+                    session = mediaSession;
+                }
+                PreparedSession preparedSession = new PreparedSession(session);
+                sessions.add(preparedSession);
+                mTransportAgent.addSession(session);
+            }
+            mSessions = Collections.unmodifiableList(sessions);
+        }
+
+        RtcConfig getConfig() {
+            return mConfig;
+        }
+
+        List<StreamType> getStreamTypes() {
+            return mStreamTypes;
+        }
+
+        TransportAgent getTransportAgent() {
+            return mTransportAgent;
+        }
+
+        PreparedSession getSession(int index) {
+            return mSessions.get(index);
+        }
+
+        long getTtl() {
+            return mTtl;
+        }
+
+        /**
+         * @return the number of transports that were replaced before this one
+         */
+        int getRefreshCount() {
+            return mRefreshCount;
+        }
+
+        boolean isExpired() {
+            return SystemClock.elapsedRealtime() - mCreationTime >= mTtl;
+        }
+
+        private void cancelRefresh() {
+            if (mRefresh != null) {
+                mRefresh.cancel(false);
+                mRefresh = null;
+            }
+        }
+
+        private void release() {
+            for (PreparedSession session : mSessions) {
+                session.release();
+            }
+        }
+    }
+
+    /**
+     * A session that has been gathering candidates before it got a stream handler. The events of the session are
+     * kept until a handler is attached, and are then replayed to it in order, after which events are forwarded.
+     */
+    static class PreparedSession implements Session.DtlsCertificateChangeListener, Session.OnNewCandidateListener,
+            Session.OnCandidateGatheringDoneListener, MediaSession.CnameChangeListener, MediaSession.SendSsrcChangeListener {
+        private final Session mSession;
+        private final List<Object> mEvents = new ArrayList<>();
+        private StreamHandler mTarget = null;
+        private boolean mHasTarget = false;
+        private boolean mReleased = false;
+
+        // marks the end of candidate gathering in the event list
+        private static final Object GATHERING_DONE = new Object();
+
+        private static class CnameEvent {
+            private final String mCname;
+
+            private CnameEvent(String cname) {
+                mCname = cname;
+            }
+        }
+
+        private static class SendSsrcEvent {
+            private final int mSsrc;
+
+            private SendSsrcEvent(int ssrc) {
+                mSsrc = ssrc;
+            }
+        }
+
+        PreparedSession(Session session) {
+            mSession = session;
+            session.addDtlsCertificateChangeListener(this);
+            session.addOnNewCandidateListener(this);
+            session.addOnCandidateGatheringDoneListener(this);
+            // the CNAME and SSRC of a media session can be set while it's gathering, before there is a handler
+            if (session instanceof MediaSession) {
+                ((MediaSession) session).addCnameChangeListener(this);
+                ((MediaSession) session).addSendSsrcChangeListener(this);
+            }
+        }
+
+        Session getSession() {
+            return mSession;
+        }
+
+        /**
+         * Attaches the stream handler that events are forwarded to, a prepared session can only be attached once.
+         * The CNAME and SSRC events of media sessions are forwarded as well, so media stream handlers that use
+         * a prepared session shouldn't listen for them on the session themselves.
+         */
+        synchronized void setTarget(StreamHandler target) {
+            if (mHasTarget || mReleased) {
+                throw new IllegalStateException("prepared session has already been used");
+            }
+            mHasTarget = true;
+            mTarget = target;
+            for (Object event : mEvents) {
+                if (event == GATHERING_DONE) {
+                    target.onCandidateGatheringDone();
+                } else if (event instanceof Candidate) {
+                    target.onNewCandidate((Candidate) event);
+                } else if (event instanceof CnameEvent) {
+                    forwardCname(target, ((CnameEvent) event).mCname);
+                } else if (event instanceof SendSsrcEvent) {
+                    forwardSendSsrc(target, ((SendSsrcEvent) event).mSsrc);
+                } else {
+                    target.onDtlsCertificateChanged((String) event);
+                }
+            }
+            mEvents.clear();
+        }
+
+        /**
+         * Stops listening to the session and drops the events that haven't been forwarded. This is done once the
+         * session is replaced or cancelled, or once the stream handler that it was attached to is stopped.
+         */
+        synchronized void release() {
+            if (mReleased) {
+                return;
+            }
+            mReleased = true;
+            mTarget = null;
+            mEvents.clear();
+            mSession.removeDtlsCertificateChangeListener(this);
+            mSession.removeOnNewCandidateListener(this);
+            mSession.removeOnCandidateGatheringDoneListener(this);
+            if (mSession instanceof MediaSession) {
+                ((MediaSession) mSession).removeCnameChangeListener(this);
+                ((MediaSession) mSession).removeSendSsrcChangeListener(this);
+            }
+        }
+
+        synchronized boolean isReleased() {
+            return mReleased;
+        }
+
+        synchronized int getPendingEventCount() {
+            return mEvents.size();
+        }
+
+        @Override
+        public synchronized void onDtlsCertificateChanged(String pem) {
+            if (mTarget != null) {
+                mTarget.onDtlsCertificateChanged(pem);
+            } else if (!mHasTarget && !mReleased) {
+                mEvents.add(pem);
+            }
+        }
+
+        @Override
+        public synchronized void onNewCandidate(Candidate candidate) {
+            if (mTarget != null) {
+                mTarget.onNewCandidate(candidate);
+            } else if (!mHasTarget && !mReleased) {
+                mEvents.add(candidate);
+            }
+        }
+
+        @Override
+        public synchronized void onCandidateGatheringDone() {
+            if (mTarget != null) {
+                mTarget.onCandidateGatheringDone();
+            } else if (!mHasTarget && !mReleased) {
+                mEvents.add(GATHERING_DONE);
+            }
+        }
+
+        @Override
+        public synchronized void onCnameChanged(String cname) {
+            if (mTarget != null) {
+                forwardCname(mTarget, cname);
+            } else if (!mHasTarget && !mReleased) {
+                mEvents.add(new CnameEvent(cname));
+            }
+        }
+
+        @Override
+        public synchronized void onSendSsrcChanged(int ssrc) {
+            if (mTarget != null) {
+                forwardSendSsrc(mTarget, ssrc);
+            } else if (!mHasTarget && !mReleased) {
+                mEvents.add(new SendSsrcEvent(ssrc));
+            }
+        }
+
+        private static void forwardCname(StreamHandler target, String cname) {
+            if (target instanceof MediaSession.CnameChangeListener) {
+                ((MediaSession.CnameChangeListener) target).onCnameChanged(cname);
+            }
+        }
+
+        private static void forwardSendSsrc(StreamHandler target, int ssrc) {
+            if (target instanceof MediaSession.SendSsrcChangeListener) {
+                ((MediaSession.SendSsrcChangeListener) target).onSendSsrcChanged(ssrc);
+            }
+        }
+    }
+}
@@ -43,6 +43,7 @@ import com.ericsson.research.owr.VideoPayload;
 import java.io.UnsupportedEncodingException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -257,6 +258,20 @@ class Utils {
         return result;
     }
 
+    /**
+     * Same as Objects.equals, which isn't available on all supported API levels
+     */
+    static boolean objectsEqual(Object a, Object b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    /**
+     * Same as Objects.hash, which isn't available on all supported API levels
+     */
+    static int hash(Object... values) {
+        return Arrays.hashCode(values);
+    }
+
     private static final Random sRandom = new Random();
 
     static String randomString(int length) {
@@ -304,6 +319,14 @@ class Utils {
         if (remoteDescription.getType() == SessionDescription.Type.ANSWER) {
             throw new IllegalArgumentException("remote session description should not be an answer");
         }
+        return resolveOfferedStreams(remoteDescription.getStreamDescriptions(), streams);
+    }
+
+    /**
+     * Pairs offered stream descriptions with the streams of the same type, in order. Descriptions without a
+     * matching stream are paired with null, and streams without a matching description are made inactive.
+     */
+    static List<Pair<StreamDescription, StreamSet.Stream>> resolveOfferedStreams(List<StreamDescription> streamDescriptions, List<? extends StreamSet.Stream> streams) {
         List<Pair<StreamDescription, StreamSet.Stream>> result = new LinkedList<>();
         // For inbound calls the requested streams are split by type
         Queue<StreamSet.Stream> audioStreams = new LinkedList<>();
@@ -323,7 +346,7 @@ class Utils {
             }
         }
         // Pair each requested stream with a stream from the remote session description
-        for (StreamDescription streamDescription : remoteDescription.getStreamDescriptions()) {
+        for (StreamDescription streamDescription : streamDescriptions) {
             StreamSet.Stream stream = null;
             switch (streamDescription.getType()) {
                 case AUDIO: